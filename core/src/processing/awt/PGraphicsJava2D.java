@@ -2302,6 +2302,24 @@ public class PGraphicsJava2D extends PGraphics {
   }
 
 
+  @Override
+  protected boolean getVisibleBounds(float[] bounds) {
+    AffineTransform inverse;
+    try {
+      inverse = g2.getTransform().createInverse();
+    } catch (NoninvertibleTransformException e) {
+      return false;
+    }
+    Rectangle2D view = inverse.createTransformedShape(
+      new Rectangle(0, 0, pixelWidth, pixelHeight)).getBounds2D();
+    bounds[0] = (float) view.getMinX();
+    bounds[1] = (float) view.getMinY();
+    bounds[2] = (float) view.getMaxX();
+    bounds[3] = (float) view.getMaxY();
+    return true;
+  }
+
+
   @Override
   public PMatrix2D getMatrix(PMatrix2D target) {
     if (target == null) {
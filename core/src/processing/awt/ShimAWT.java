@@ -29,6 +29,7 @@ import javax.swing.filechooser.FileSystemView;
 import processing.core.PApplet;
 import processing.core.PConstants;
 import processing.core.PImage;
+import processing.core.PNGDecoder;
 
 
 /**
@@ -371,19 +372,38 @@ public class ShimAWT implements PConstants {
     extension = extension.toLowerCase();
 
     if (extension.equals("tga")) {
-      try {
-        InputStream input = sketch.createInput(filename);
-        if (input == null) return null;
+      byte[] bytes = sketch.loadBytes(filename);
+      if (bytes == null) return null;
 
-        PImage image = PImage.loadTGA(input);
-        if (image != null) {
-          image.parent = sketch;
+      PImage image = PImage.loadTGA(bytes);
+      if (image != null) {
+        image.parent = sketch;
+      }
+      return image;
+    }
+
+    // Decode PNG and uncompressed TIFF files straight into pixels[],
+    // without AWT. Interlaced PNG and compressed TIFF files return null,
+    // and go through the slower paths below.
+    if (extension.equals("png") ||
+        extension.equals("tif") || extension.equals("tiff")) {
+      byte[] bytes = sketch.loadBytes(filename);
+      if (bytes == null) return null;
+
+      PImage image = null;
+      if (PNGDecoder.isPNG(bytes)) {
+        try {
+          image = PNGDecoder.decode(bytes);
+        } catch (IOException e) {
+          System.err.println("Could not decode " + filename + ": " +
+                             e.getMessage());
         }
+      } else if (!extension.equals("png")) {
+        image = PImage.loadTIFF(bytes);
+      }
+      if (image != null) {
+        image.parent = sketch;
         return image;
-
-      } catch (IOException e) {
-        e.printStackTrace();
-        return null;
       }
     }
 
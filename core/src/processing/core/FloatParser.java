@@ -0,0 +1,151 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads decimal numbers straight from the bytes of a file, without making
+ * a String for each of them, for the SVG and OBJ loaders.
+ * <p>
+ * Numbers with up to 15 significant digits and a small exponent, which is
+ * about all of them in practice, are converted with a single division or
+ * multiplication by an exact power of ten, which is correctly rounded.
+ * Anything else goes through Float.parseFloat().
+ */
+class FloatParser {
+  static final double[] POWERS_OF_TEN = {
+    1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,
+    1e8,  1e9,  1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+    1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+
+  /**
+   * Returns where the number that starts at start ends, or start if there
+   * is no number there. A number ends wherever the next one can start, so
+   * in "1.5.5" the first one is 1.5, and in "1-2" it's 1. An exponent only
+   * belongs to the number when it has digits.
+   */
+  static int scan(byte[] data, int start, int end) {
+    int i = start;
+    if (i < end && (data[i] == '-' || data[i] == '+')) i++;
+    boolean found = false;
+    while (i < end && isDigit(data[i])) {
+      found = true;
+      i++;
+    }
+    if (i < end && data[i] == '.') {
+      i++;
+      while (i < end && isDigit(data[i])) {
+        found = true;
+        i++;
+      }
+    }
+    if (!found) return start;
+
+    if (i < end && (data[i] == 'e' || data[i] == 'E')) {
+      int j = i + 1;
+      if (j < end && (data[j] == '-' || data[j] == '+')) j++;
+      if (j < end && isDigit(data[j])) {
+        while (j < end && isDigit(data[j])) j++;
+        i = j;
+      }
+    }
+    return i;
+  }
+
+
+  /**
+   * Parses the number between start and end, which throws a
+   * NumberFormatException if it's not a number.
+   */
+  static float parse(byte[] data, int start, int end) {
+    int i = start;
+    boolean negative = i < end && data[i] == '-';
+    if (negative || (i < end && data[i] == '+')) i++;
+
+    // Up to 18 significant digits fit in the long, the rest only
+    // contribute to the exponent.
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean found = false;
+    byte b;
+    while (i < end && isDigit(b = data[i])) {
+      if (digits < 18) {
+        mantissa = mantissa * 10 + (b - '0');
+        if (mantissa != 0) digits++;
+      } else {
+        exponent++;
+      }
+      found = true;
+      i++;
+    }
+    if (i < end && data[i] == '.') {
+      i++;
+      while (i < end && isDigit(b = data[i])) {
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (b - '0');
+          if (mantissa != 0) digits++;
+          exponent--;
+        }
+        found = true;
+        i++;
+      }
+    }
+    if (found && i < end && (data[i] == 'e' || data[i] == 'E')) {
+      i++;
+      boolean negativeExp = i < end && data[i] == '-';
+      if (negativeExp || (i < end && data[i] == '+')) i++;
+      found = i < end;
+      int e = 0;
+      while (i < end && isDigit(b = data[i])) {
+        if (e < 1000) e = e * 10 + (b - '0');
+        i++;
+      }
+      exponent += negativeExp ? -e : e;
+    }
+
+    if (found && i == end) {
+      if (mantissa == 0) {
+        return negative ? -0f : 0f;
+      }
+      if (mantissa < (1L << 53) && -22 <= exponent && exponent <= 22) {
+        // both the mantissa and the power of ten are exact doubles,
+        // so a single operation gives a correctly rounded result
+        double value = exponent < 0 ?
+          mantissa / POWERS_OF_TEN[-exponent] :
+          mantissa * POWERS_OF_TEN[exponent];
+        return (float) (negative ? -value : value);
+      }
+    }
+    return Float.parseFloat(new String(data, start, end - start,
+                                       StandardCharsets.ISO_8859_1));
+  }
+
+
+  static boolean isDigit(byte b) {
+    return '0' <= b && b <= '9';
+  }
+}
@@ -0,0 +1,136 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces the frames of the animation thread on an absolute schedule: frame
+ * n starts at start + n * period, so that oversleeping one frame doesn't
+ * push back all the ones after it. A frame that runs late is followed right
+ * away by the next one, to catch up. When more than a whole period behind,
+ * the schedule starts over from the current time instead of drawing a
+ * burst of frames.
+ * <p>
+ * Waiting for the next frame is done in three phases: a coarse sleep that
+ * ends early by SLEEP_MARGIN, since sleeps often overshoot by a millisecond
+ * or more, then short parks, then spinning for the last SPIN_NANOS.
+ */
+class FramePacer {
+  static final long SLEEP_MARGIN = 2000000L;
+  static final long SPIN_NANOS = 100000L;
+
+  /**
+   * The system clock and ways to wait, replaced in the tests.
+   */
+  interface Clock {
+    long nanoTime();
+    void sleep(long nanos) throws InterruptedException;
+    void park(long nanos);
+    void spin();
+  }
+
+  static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long nanos) throws InterruptedException {
+      Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+    }
+
+    @Override
+    public void park(long nanos) {
+      LockSupport.parkNanos(nanos);
+    }
+
+    @Override
+    public void spin() {
+      Thread.onSpinWait();
+    }
+  };
+
+  protected Clock clock;
+
+  /** Start time of the current frame, or -1 before start(). */
+  protected long deadline = -1;
+
+
+  FramePacer() {
+    this(SYSTEM_CLOCK);
+  }
+
+
+  FramePacer(Clock clock) {
+    this.clock = clock;
+  }
+
+
+  /**
+   * Starts the schedule with the frame that's starting now. Also called
+   * after the sketch was paused.
+   */
+  void start() {
+    deadline = clock.nanoTime();
+  }
+
+
+  /**
+   * Waits until the next frame is due, period nanoseconds after the
+   * previous one on the schedule. Returns false if it was already due,
+   * so that there was nothing to wait for.
+   */
+  boolean waitForNextFrame(long period) {
+    long now = clock.nanoTime();
+    if (deadline == -1) {
+      deadline = now;
+    }
+    deadline += period;
+    if (now - deadline > period) {
+      // more than a frame behind, don't try to catch up
+      deadline = now;
+    }
+    return waitUntil(deadline);
+  }
+
+
+  protected boolean waitUntil(long time) {
+    long remaining = time - clock.nanoTime();
+    if (remaining <= 0) return false;
+
+    if (remaining > SLEEP_MARGIN) {
+      try {
+        clock.sleep(remaining - SLEEP_MARGIN);
+      } catch (InterruptedException e) { }
+    }
+    while ((remaining = time - clock.nanoTime()) > SPIN_NANOS) {
+      clock.park(remaining - SPIN_NANOS);
+    }
+    while (time - clock.nanoTime() > 0) {
+      clock.spin();
+    }
+    return true;
+  }
+}
@@ -0,0 +1,145 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.Arrays;
+
+/**
+ * Times between the frames of a sketch, to tell how smoothly it runs, which
+ * the averaged frameRate hides. Keeps the most recent frame times for the
+ * percentiles, and counts the frames that missed their deadline since the
+ * last reset(): those that came more than half a frame period late, so
+ * that at least one frame was skipped on screen.
+ * <p>
+ * Returned by getFrameStats() in PApplet. Times are in milliseconds.
+ */
+public class FrameTimeStats {
+  static final int DEFAULT_CAPACITY = 600;
+
+  protected long[] times;
+  protected int count;
+  protected int next;
+
+  protected long frameCount;
+  protected long missedCount;
+  protected long maxNanos;
+
+
+  public FrameTimeStats() {
+    this(DEFAULT_CAPACITY);
+  }
+
+
+  /**
+   * @param capacity number of recent frames used for the percentiles
+   */
+  public FrameTimeStats(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("At least one frame is needed");
+    }
+    times = new long[capacity];
+  }
+
+
+  /**
+   * Adds the time since the previous frame, which was meant to take
+   * periodNanos, or 0 if there was no target.
+   */
+  public synchronized void addFrame(long nanos, long periodNanos) {
+    times[next] = nanos;
+    next = (next + 1) % times.length;
+    if (count < times.length) count++;
+
+    frameCount++;
+    if (periodNanos > 0 && nanos > periodNanos + periodNanos / 2) {
+      missedCount++;
+    }
+    if (nanos > maxNanos) maxNanos = nanos;
+  }
+
+
+  /**
+   * Time under which the given percentage of the recent frames took,
+   * like 50 for the median.
+   */
+  public synchronized float getPercentile(float percent) {
+    if (count == 0) return 0;
+    long[] sorted = Arrays.copyOf(times, count);
+    Arrays.sort(sorted);
+    // nearest rank
+    int rank = (int) Math.ceil(percent / 100 * count);
+    int index = Math.max(0, Math.min(count - 1, rank - 1));
+    return sorted[index] / 1e6f;
+  }
+
+
+  public float getP50() {
+    return getPercentile(50);
+  }
+
+
+  public float getP95() {
+    return getPercentile(95);
+  }
+
+
+  public float getP99() {
+    return getPercentile(99);
+  }
+
+
+  /** The longest frame since the last reset(). */
+  public synchronized float getMax() {
+    return maxNanos / 1e6f;
+  }
+
+
+  /** Number of frames since the last reset(). */
+  public synchronized long getFrameCount() {
+    return frameCount;
+  }
+
+
+  /** Number of frames that missed their deadline since the last reset(). */
+  public synchronized long getMissedDeadlines() {
+    return missedCount;
+  }
+
+
+  public synchronized void reset() {
+    count = 0;
+    next = 0;
+    frameCount = 0;
+    missedCount = 0;
+    maxNanos = 0;
+  }
+
+
+  @Override
+  public String toString() {
+    return String.format("p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, " +
+                         "max %.2f ms, missed %d of %d frames",
+                         getP50(), getP95(), getP99(), getMax(),
+                         getMissedDeadlines(), getFrameCount());
+  }
+}
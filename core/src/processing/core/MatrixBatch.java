@@ -0,0 +1,90 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+/**
+ * Runs one of the multAll() loops of PMatrix2D and PMatrix3D over a range
+ * of vertices. Batches smaller than twice PARALLEL_MIN_COUNT are
+ * transformed by the matrix itself in the calling thread, larger ones are
+ * split by ParallelRange into chunks of at least that many vertices,
+ * transformed in parallel.
+ */
+class MatrixBatch implements ParallelRange.Body {
+  static final int PARALLEL_MIN_COUNT = 1 << 15;
+
+  interface Kernel {
+    void mult(float[] src, int srcOff, float[] dst, int dstOff,
+              int count, int stride);
+  }
+
+  protected final Kernel kernel;
+  protected final float[] src, dst;
+  protected final int srcOff, dstOff;
+  protected final int stride;
+
+
+  MatrixBatch(Kernel kernel, float[] src, int srcOff, float[] dst, int dstOff,
+              int stride) {
+    this.kernel = kernel;
+    this.src = src;
+    this.srcOff = srcOff;
+    this.dst = dst;
+    this.dstOff = dstOff;
+    this.stride = stride;
+  }
+
+
+  @Override
+  public void run(int first, int last) {
+    kernel.mult(src, srcOff + first * stride, dst, dstOff + first * stride,
+                last - first, stride);
+  }
+
+
+  /**
+   * Checks that the arrays can hold count vertices of size floats, and
+   * returns true if there are enough of them to be worth run(), otherwise
+   * the matrix runs its loop directly, without making any objects.
+   */
+  static boolean isParallel(int size, float[] src, int srcOff,
+                            float[] dst, int dstOff, int count, int stride) {
+    if (stride < size) {
+      throw new IllegalArgumentException("The stride must be at least " + size);
+    }
+    if (count <= 0) return false;
+    int last = (count - 1) * stride + size;
+    if (srcOff < 0 || src.length < srcOff + last ||
+        dstOff < 0 || dst.length < dstOff + last) {
+      throw new ArrayIndexOutOfBoundsException("The arrays are too short for " +
+                                               count + " vertices");
+    }
+    return ParallelRange.chunks(count, PARALLEL_MIN_COUNT) > 1;
+  }
+
+
+  static void run(Kernel kernel, float[] src, int srcOff,
+                  float[] dst, int dstOff, int count, int stride) {
+    ParallelRange.run(count, PARALLEL_MIN_COUNT,
+                      new MatrixBatch(kernel, src, srcOff, dst, dstOff, stride));
+  }
+}
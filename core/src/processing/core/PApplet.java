@@ -659,6 +659,14 @@ public class PApplet implements PConstants {
    */
   long millisOffset = System.currentTimeMillis();
 
+  /**
+   * Time of the current frame in nanoseconds, when the frames are stepped
+   * on a fixed clock by PSurfaceHeadless, or -1 to use the system clock.
+   * <p>
+   * Used by millis() and to update frameRate.
+   */
+  long frameClockNanos = -1;
+
   /**
    *
    * The system variable <b>frameRate</b> contains the approximate frame rate
@@ -707,6 +715,17 @@ public class PApplet implements PConstants {
   // ok to be static because it's not possible to mix enabled/disabled
   static protected boolean disableAWT;
 
+  /**
+   * true if the sketch runs without a display, on a PSurfaceHeadless.
+   */
+  protected boolean headless;
+
+  /**
+   * false if the sketch shares the process with other sketches, see
+   * SketchRunner, so that exit() only stops this sketch.
+   */
+  protected boolean exitProcess = true;
+
   // messages to send if attached as an external vm
 
   /**
@@ -756,6 +775,15 @@ public class PApplet implements PConstants {
 
   static public final String ARGS_UI_SCALE = "--ui-scale";
 
+  /** Run without a display, drawing frames back to back on a fixed clock */
+  static public final String ARGS_HEADLESS = "--headless";
+
+  /** Number of frames to draw before stopping, when running headless */
+  static public final String ARGS_FRAMES = "--frames";
+
+  /** File name pattern to save every frame to, when running headless */
+  static public final String ARGS_EXPORT = "--export";
+
   /**
    * When run externally to a PdeEditor,
    * this is sent by the sketch when it quits.
@@ -840,7 +868,10 @@ public class PApplet implements PConstants {
   void handleSettings() {
     insideSettings = true;
 
-    if (!disableAWT) {
+    if (headless) {
+      // no display to measure, displayWidth/displayHeight stay 0
+
+    } else if (!disableAWT) {
       displayWidth = ShimAWT.getDisplayWidth();
       displayHeight = ShimAWT.getDisplayHeight();
     } else {
@@ -1030,6 +1061,9 @@ public class PApplet implements PConstants {
   * (1-indexed to match the Preferences dialog box)
   */
   public int displayDensity(int display) {
+    if (headless) {
+      return 1;
+    }
     if (!disableAWT) {
       return ShimAWT.getDisplayDensity(display);
     }
@@ -2018,6 +2052,15 @@ public class PApplet implements PConstants {
   /** Last time in nanoseconds that frameRate was checked */
   protected long frameRateLastNanos = 0;
 
+  /** Frame rate set with frameRate(), to tell which frames were late */
+  protected float frameRateTarget = 60;
+
+  /** Times between frames, see getFrameStats() */
+  protected FrameTimeStats frameStats = new FrameTimeStats();
+
+  /** true if the previous frame was drawn by the loop, not by redraw() */
+  protected boolean frameStatsLooping;
+
 
   public void handleDraw() {
     if (g == null) return;
@@ -2045,7 +2088,7 @@ public class PApplet implements PConstants {
       scale(ratioScale);
     }
 
-    long now = System.nanoTime();
+    long now = (frameClockNanos >= 0) ? frameClockNanos : System.nanoTime();
 
     if (frameCount == 0) {
       setup();
@@ -2081,6 +2124,13 @@ public class PApplet implements PConstants {
         frameRate = (float) (1.0 / avgFrameTimeSecs);
       }
 
+      // Frames after noLoop() or the first one don't say how smoothly
+      // the sketch runs, since there was no deadline to meet.
+      if (looping && frameStatsLooping && frameCount > 1) {
+        long period = (long) (1e9 / frameRateTarget);
+        frameStats.addFrame(now - frameRateLastNanos, period);
+      }
+
       // post move and resize events to the sketch here
       dequeueWindowEvents();
 
@@ -2105,6 +2155,8 @@ public class PApplet implements PConstants {
 
       handleMethods("draw");
 
+      g.recordFrame();
+
       redraw = false;  // unset 'redraw' flag in case it was set
       // (only do this once draw() has run, not just setup())
     }
@@ -2119,11 +2171,22 @@ public class PApplet implements PConstants {
       handleMethods("post");
     }
 
+    frameStatsLooping = looping;
     frameRateLastNanos = now;
     frameCount++;
   }
 
 
+  /**
+   * Times between the recent frames, like the 95th percentile, and the
+   * number of frames that missed their deadline. Unlike frameRate, which
+   * is an average, this tells whether the animation runs smoothly.
+   */
+  public FrameTimeStats getFrameStats() {
+    return frameStats;
+  }
+
+
 //  /** Not official API, not guaranteed to work in the future. */
 //  public boolean canDraw() {
 //    return g != null && (looping || redraw);
@@ -2873,6 +2936,9 @@ public class PApplet implements PConstants {
    *
    */
   public int millis() {
+    if (frameClockNanos >= 0) {
+      return (int) (frameClockNanos / 1000000L);
+    }
     return (int) (System.currentTimeMillis() - millisOffset);
   }
 
@@ -3053,10 +3119,27 @@ public class PApplet implements PConstants {
    * @see PApplet#redraw()
    */
   public void frameRate(float fps) {
+    if (fps > 0) {
+      frameRateTarget = fps;
+    }
     surface.setFrameRate(fps);
   }
 
 
+  /**
+   * Sets how the animation thread waits between frames. With
+   * PSurface.PACING_SLEEP, the default, it sleeps for the rest of each
+   * frame. PSurface.PACING_PRECISE keeps the frames on a fixed schedule
+   * by spinning for the last moments before each one, which uses more CPU.
+   *
+   * @param pacing PSurface.PACING_SLEEP or PSurface.PACING_PRECISE
+   * @see PApplet#frameRate(float)
+   */
+  public void framePacing(int pacing) {
+    surface.setFramePacing(pacing);
+  }
+
+
   //////////////////////////////////////////////////////////////
 
 
@@ -3394,7 +3477,9 @@ public class PApplet implements PConstants {
    * they have in mind when cleaning up.
    */
   public void exitActual() {
-    System.exit(0);
+    if (exitProcess) {
+      System.exit(0);
+    }
   }
 
 
@@ -3418,6 +3503,12 @@ public class PApplet implements PConstants {
       }
       // run dispose() methods registered by libraries
       handleMethods("dispose");
+
+      // images already requested still finish loading
+      if (requestImagePool != null) {
+        requestImagePool.shutdown();
+        requestImagePool = null;
+      }
     }
 
     if (platform == MACOS) {
@@ -3589,6 +3680,53 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Starts recording every frame drawn to a QuickTime movie, without
+   * saving an image per frame like <b>saveFrame()</b>. The movie plays at
+   * 60 frames per second, unless another rate is given. Hash marks (####)
+   * in the file name are replaced by the current <b>frameCount</b>, as with
+   * <b>saveFrame()</b>. Frames are compressed on other threads; if they
+   * can't keep up, drawing waits for them, or when <b>dropFrames</b> is
+   * true, frames are skipped instead. Call <b>endMovie()</b> to finish
+   * the movie. Not to be confused with <b>beginRecord()</b>, which draws
+   * to a file with another renderer.
+   *
+   * @param filename name of the movie, usually ending with ".mov"
+   * @see PApplet#endMovie()
+   * @see PApplet#saveFrame(String)
+   */
+  public void beginMovie(String filename) {
+    beginMovie(filename, 60);
+  }
+
+
+  /**
+   * @param fps frames per second of the movie
+   */
+  public void beginMovie(String filename, float fps) {
+    beginMovie(filename, fps, false);
+  }
+
+
+  /**
+   * @param dropFrames true to skip frames instead of waiting for the encoders
+   */
+  public void beginMovie(String filename, float fps, boolean dropFrames) {
+    g.beginMovie(saveFile(insertFrame(filename)), fps, dropFrames);
+  }
+
+
+  /**
+   * Finishes the movie started with <b>beginMovie()</b>. This is also
+   * done when the sketch exits.
+   *
+   * @see PApplet#beginMovie(String)
+   */
+  public void endMovie() {
+    g.endMovie();
+  }
+
+
   /**
    * Check a string for #### signs to see if the frame number should be
    * inserted. Used for functions like saveFrame() and beginRecord() to
@@ -3597,6 +3735,13 @@ public class PApplet implements PConstants {
    * intended to be the frame number.
    */
   public String insertFrame(String what) {
+    return insertFrame(what, frameCount);
+  }
+
+
+  // Also used by PSurfaceHeadless, which numbers the frames it exports
+  // after they're drawn, once frameCount has moved on
+  static String insertFrame(String what, int frame) {
     int first = what.indexOf('#');
     int last = what.lastIndexOf('#');
 
@@ -3604,7 +3749,7 @@ public class PApplet implements PConstants {
       String prefix = what.substring(0, first);
       int count = last - first + 1;
       String suffix = what.substring(last + 1);
-      return prefix + nf(frameCount, count) + suffix;
+      return prefix + nf(frame, count) + suffix;
     }
     return what;  // no change
   }
@@ -5167,7 +5312,13 @@ public class PApplet implements PConstants {
 
     // if the image loading thread pool hasn't been created, create it
     if (requestImagePool == null) {
-      ThreadFactory factory = r -> new Thread(r, REQUEST_IMAGE_THREAD_PREFIX);
+      // Named after the sketch, to tell them apart when several are running
+      String name = REQUEST_IMAGE_THREAD_PREFIX + "-" + getClass().getSimpleName();
+      ThreadFactory factory = r -> {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+      };
       requestImagePool = Executors.newFixedThreadPool(4, factory);
     }
     requestImagePool.execute(() -> {
@@ -8473,24 +8624,27 @@ public class PApplet implements PConstants {
   }
 
 
+  // The patterns are cached per thread below, this is only kept for
+  // code that still refers to it
   static protected LinkedHashMap<String, Pattern> matchPatterns;
 
+  // Each thread keeps its own patterns, so that sketches running on
+  // other threads don't wait for each other
+  static private final ThreadLocal<LinkedHashMap<String, Pattern>> threadMatchPatterns =
+    ThreadLocal.withInitial(() -> new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+        // Limit the number of match patterns at 10 most recently used
+        return size() == 10;
+      }
+    });
+
   static Pattern matchPattern(String regexp) {
-    Pattern p = null;
-    if (matchPatterns == null) {
-      matchPatterns = new LinkedHashMap<>(16, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
-          // Limit the number of match patterns at 10 most recently used
-          return size() == 10;
-        }
-      };
-    } else {
-      p = matchPatterns.get(regexp);
-    }
+    LinkedHashMap<String, Pattern> patterns = threadMatchPatterns.get();
+    Pattern p = patterns.get(regexp);
     if (p == null) {
       p = Pattern.compile(regexp, Pattern.MULTILINE | Pattern.DOTALL);
-      matchPatterns.put(regexp, p);
+      patterns.put(regexp, p);
     }
     return p;
   }
@@ -9000,11 +9154,22 @@ public class PApplet implements PConstants {
 
 
   /**
-   * Integer number formatter.
+   * The last number formatters used by a thread. NumberFormat isn't
+   * thread-safe, so each thread has its own, instead of all the sketches
+   * waiting for a shared one.
    */
-  static private NumberFormat int_nf;
-  static private int int_nf_digits;
-  static private boolean int_nf_commas;
+  static private class NumberFormats {
+    NumberFormat int_nf;
+    int int_nf_digits;
+    boolean int_nf_commas;
+
+    NumberFormat float_nf;
+    int float_nf_left, float_nf_right;
+    boolean float_nf_commas;
+  }
+
+  static private final ThreadLocal<NumberFormats> numberFormats =
+    ThreadLocal.withInitial(NumberFormats::new);
 
 
   /**
@@ -9044,18 +9209,19 @@ public class PApplet implements PConstants {
    * @param num the number to format
    */
   static public String nf(int num, int digits) {
-    if ((int_nf != null) &&
-        (int_nf_digits == digits) &&
-        !int_nf_commas) {
-      return int_nf.format(num);
+    NumberFormats f = numberFormats.get();
+    if ((f.int_nf != null) &&
+        (f.int_nf_digits == digits) &&
+        !f.int_nf_commas) {
+      return f.int_nf.format(num);
     }
 
-    int_nf = NumberFormat.getInstance();
-    int_nf.setGroupingUsed(false); // no commas
-    int_nf_commas = false;
-    int_nf.setMinimumIntegerDigits(digits);
-    int_nf_digits = digits;
-    return int_nf.format(num);
+    f.int_nf = NumberFormat.getInstance();
+    f.int_nf.setGroupingUsed(false); // no commas
+    f.int_nf_commas = false;
+    f.int_nf.setMinimumIntegerDigits(digits);
+    f.int_nf_digits = digits;
+    return f.int_nf.format(num);
   }
 
 
@@ -9093,18 +9259,19 @@ public class PApplet implements PConstants {
    * @param num the number to format
    */
   static public String nfc(int num) {
-    if ((int_nf != null) &&
-        (int_nf_digits == 0) &&
-        int_nf_commas) {
-      return int_nf.format(num);
+    NumberFormats f = numberFormats.get();
+    if ((f.int_nf != null) &&
+        (f.int_nf_digits == 0) &&
+        f.int_nf_commas) {
+      return f.int_nf.format(num);
     }
 
-    int_nf = NumberFormat.getInstance();
-    int_nf.setGroupingUsed(true);
-    int_nf_commas = true;
-    int_nf.setMinimumIntegerDigits(0);
-    int_nf_digits = 0;
-    return int_nf.format(num);
+    f.int_nf = NumberFormat.getInstance();
+    f.int_nf.setGroupingUsed(true);
+    f.int_nf_commas = true;
+    f.int_nf.setMinimumIntegerDigits(0);
+    f.int_nf_digits = 0;
+    return f.int_nf.format(num);
   }
 
 
@@ -9180,10 +9347,6 @@ public class PApplet implements PConstants {
 
   // FLOAT NUMBER FORMATTING
 
-  static private NumberFormat float_nf;
-  static private int float_nf_left, float_nf_right;
-  static private boolean float_nf_commas;
-
   /**
    * @param left number of digits to the left of the decimal point
    * @param right number of digits to the right of the decimal point
@@ -9197,25 +9360,26 @@ public class PApplet implements PConstants {
   }
 
   static public String nf(float num, int left, int right) {
-    if ((float_nf != null) &&
-        (float_nf_left == left) &&
-        (float_nf_right == right) &&
-        !float_nf_commas) {
-      return float_nf.format(num);
+    NumberFormats f = numberFormats.get();
+    if ((f.float_nf != null) &&
+        (f.float_nf_left == left) &&
+        (f.float_nf_right == right) &&
+        !f.float_nf_commas) {
+      return f.float_nf.format(num);
     }
 
-    float_nf = NumberFormat.getInstance();
-    float_nf.setGroupingUsed(false);
-    float_nf_commas = false;
+    f.float_nf = NumberFormat.getInstance();
+    f.float_nf.setGroupingUsed(false);
+    f.float_nf_commas = false;
 
-    if (left != 0) float_nf.setMinimumIntegerDigits(left);
+    if (left != 0) f.float_nf.setMinimumIntegerDigits(left);
     if (right != 0) {
-      float_nf.setMinimumFractionDigits(right);
-      float_nf.setMaximumFractionDigits(right);
+      f.float_nf.setMinimumFractionDigits(right);
+      f.float_nf.setMaximumFractionDigits(right);
     }
-    float_nf_left = left;
-    float_nf_right = right;
-    return float_nf.format(num);
+    f.float_nf_left = left;
+    f.float_nf_right = right;
+    return f.float_nf.format(num);
   }
 
   /**
@@ -9230,24 +9394,25 @@ public class PApplet implements PConstants {
   }
 
   static public String nfc(float num, int right) {
-    if ((float_nf != null) &&
-        (float_nf_left == 0) &&
-        (float_nf_right == right) &&
-        float_nf_commas) {
-      return float_nf.format(num);
+    NumberFormats f = numberFormats.get();
+    if ((f.float_nf != null) &&
+        (f.float_nf_left == 0) &&
+        (f.float_nf_right == right) &&
+        f.float_nf_commas) {
+      return f.float_nf.format(num);
     }
 
-    float_nf = NumberFormat.getInstance();
-    float_nf.setGroupingUsed(true);
-    float_nf_commas = true;
+    f.float_nf = NumberFormat.getInstance();
+    f.float_nf.setGroupingUsed(true);
+    f.float_nf_commas = true;
 
     if (right != 0) {
-      float_nf.setMinimumFractionDigits(right);
-      float_nf.setMaximumFractionDigits(right);
+      f.float_nf.setMinimumFractionDigits(right);
+      f.float_nf.setMaximumFractionDigits(right);
     }
-    float_nf_left = 0;
-    float_nf_right = right;
-    return float_nf.format(num);
+    f.float_nf_left = 0;
+    f.float_nf_right = right;
+    return f.float_nf.format(num);
   }
 
 
@@ -9938,6 +10103,10 @@ public class PApplet implements PConstants {
     boolean fullScreen = false;
     float uiScale = 0;
 
+    boolean headless = false;
+    int frameLimit = 0;
+    String exportPattern = null;
+
     String param, value;
     String folder = calcSketchPath();
 
@@ -10001,6 +10170,18 @@ public class PApplet implements PConstants {
               System.err.println("Could not parse " + value + " for " + ARGS_UI_SCALE);
             }
             break;
+
+          case ARGS_FRAMES:
+            frameLimit = parseInt(value, 0);
+            if (frameLimit <= 0) {
+              System.err.println("Could not parse " + value + " for " + ARGS_FRAMES);
+              frameLimit = 0;
+            }
+            break;
+
+          case ARGS_EXPORT:
+            exportPattern = value;
+            break;
         }
       } else {
         switch (args[argIndex]) {
@@ -10020,6 +10201,10 @@ public class PApplet implements PConstants {
             fullScreen = true;
             break;
 
+          case ARGS_HEADLESS:
+            headless = true;
+            break;
+
           default:
             name = args[argIndex];
             break label;  // because of break, argIndex won't increment again
@@ -10028,7 +10213,16 @@ public class PApplet implements PConstants {
       argIndex++;
     }
 
-    if (platform == WINDOWS) {
+    if (!headless && (frameLimit != 0 || exportPattern != null)) {
+      System.err.println(ARGS_FRAMES + " and " + ARGS_EXPORT + " only work with " +
+                         ARGS_HEADLESS + ", they will be ignored");
+    }
+
+    if (headless) {
+      // Must be set before anything touches AWT
+      System.setProperty("java.awt.headless", "true");
+
+    } else if (platform == WINDOWS) {
       // Set DPI scaling to either 1 or 2, but avoid fractional
       // settings such as 125% and 250% that make things look gross.
       // Also applies to 300% since that is not even a thing.
@@ -10054,7 +10248,7 @@ public class PApplet implements PConstants {
       }
     }
 
-    if (!disableAWT) {
+    if (!disableAWT && !headless) {
       ShimAWT.initRun();
     }
 
@@ -10077,7 +10271,7 @@ public class PApplet implements PConstants {
 
     // TODO When disabling AWT for LWJGL or others, we need to figure out
     //      how to make Cmd-Q and the rest of this still work properly.
-    if (platform == MACOS && !disableAWT) {
+    if (platform == MACOS && !disableAWT && !headless) {
       try {
         final String td = "processing.core.ThinkDifferent";
         Class<?> thinkDifferent =
@@ -10096,6 +10290,7 @@ public class PApplet implements PConstants {
 
     sketch.present = present;
     sketch.fullScreen = fullScreen;
+    sketch.headless = headless;
 
     // For 3.0.1, moved this above handleSettings() so that loadImage() can be
     // used inside settings(). Sets a terrible precedent, but the alternative
@@ -10120,6 +10315,14 @@ public class PApplet implements PConstants {
 
     final PSurface surface = sketch.initSurface();
 
+    if (headless) {
+      PSurfaceHeadless headlessSurface = (PSurfaceHeadless) surface;
+      headlessSurface.setFrameLimit(frameLimit);
+      headlessSurface.setFrameExport(exportPattern);
+      sketch.startSurface();
+      return;
+    }
+
     if (present) {
       if (hideStop) {
         stopColor = 0;  // they'll get the hint
@@ -10156,8 +10359,47 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Sets up a sketch to run without a display, and returns its surface.
+   * Call run() on the surface to run the sketch on the calling thread, or
+   * startThread() to run it on its own animation thread.
+   * <p>
+   * Only renderers that don't need OpenGL can be used headless.
+   */
+  static public PSurfaceHeadless initHeadless(PApplet sketch) {
+    // Must be set before anything touches AWT
+    System.setProperty("java.awt.headless", "true");
+    sketch.headless = true;
+    sketch.handleSettings();
+    return (PSurfaceHeadless) sketch.initSurface();
+  }
+
+
+  /**
+   * Runs a sketch without a display on the calling thread, until it has
+   * drawn the given number of frames (or forever with 0), or it calls
+   * exit() or noLoop(). The frames are drawn back to back on a fixed clock.
+   *
+   * @see PSurfaceHeadless
+   */
+  static public void runHeadless(PApplet sketch, int frames) {
+    PSurfaceHeadless surface = initHeadless(sketch);
+    surface.setFrameLimit(frames);
+    surface.run();
+  }
+
+
   protected PSurface initSurface() {
     g = createPrimaryGraphics();
+    if (headless) {
+      if (g.isGL()) {
+        throw new IllegalStateException(sketchRenderer() + " cannot be " +
+                                        "used without a display");
+      }
+      surface = new PSurfaceHeadless(g);
+      surface.initOffscreen(this);
+      return surface;
+    }
     surface = g.createSurface();
 
     // Create fake Frame object to warn user about the changes
@@ -11952,6 +12194,21 @@ public class PApplet implements PConstants {
   }
 
 
+  /**
+   * Sets the maximum distance in pixels between Bézier and Catmull-Rom
+   * curves and the line segments used to draw them, when
+   * hint(ENABLE_ADAPTIVE_CURVES) is set. The default value is 0.25.
+   *
+   * @param tolerance maximum distance in pixels, greater than 0
+   * @see PGraphics#bezierDetail(int)
+   * @see PGraphics#curveDetail(int)
+   */
+  public void curveTolerance(float tolerance) {
+    if (recorder != null) recorder.curveTolerance(tolerance);
+    g.curveTolerance(tolerance);
+  }
+
+
   /**
    *
    * Modifies the quality of forms created with <b>curve()</b> and
@@ -524,5 +524,20 @@ public interface PConstants {
   int DISABLE_ASYNC_SAVEFRAME    =  12;
   int ENABLE_ASYNC_SAVEFRAME     = -12;
 
-  int HINT_COUNT                 =  13;
+  int ENABLE_FAST_DEPTH_SORT     =  13;
+  int DISABLE_FAST_DEPTH_SORT    = -13;
+
+  int ENABLE_STREAMING_BUFFERS   =  14;
+  int DISABLE_STREAMING_BUFFERS  = -14;
+
+  int ENABLE_SHAPE_INSTANCING    =  15;
+  int DISABLE_SHAPE_INSTANCING   = -15;
+
+  int ENABLE_ADAPTIVE_CURVES     =  16;
+  int DISABLE_ADAPTIVE_CURVES    = -16;
+
+  int DISABLE_DEPTH_SORT_REFINE  =  17;
+  int ENABLE_DEPTH_SORT_REFINE   = -17;
+
+  int HINT_COUNT                 =  18;
 }
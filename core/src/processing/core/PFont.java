@@ -32,6 +32,12 @@ import java.awt.image.*;
 import java.io.*;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
@@ -130,6 +136,18 @@ public class PFont implements PConstants {
    */
   protected int[] ascii;
 
+  /**
+   * Hash table from code points to glyphs, using open addressing so that
+   * finding a glyph takes the same time in any alphabet, including the
+   * supplementary planes. Keys are the code points, -1 for an empty slot.
+   * The advance of each glyph for a font of size 1 is kept alongside it,
+   * so that measuring text doesn't need to touch the glyphs at all.
+   */
+  protected int[] tableKeys;
+  protected Glyph[] tableGlyphs;
+  protected float[] tableWidths;
+  protected int tableCount;
+
   /**
    * True if this font is set to load dynamically. This is the default when
    * createFont() method is called without a character set. Bitmap versions of
@@ -181,6 +199,26 @@ public class PFont implements PConstants {
   protected FontMetrics lazyMetrics;
   protected int[] lazySamples;
 
+  /**
+   * True if missing glyphs of a lazy font are drawn on a background thread.
+   * Until they're ready, a blank placeholder with the right advance is used
+   * so that text() never waits for them.
+   */
+  protected boolean async;
+
+  // Code points being drawn in the background, and glyphs that are done
+  // and wait to be added to the font by the thread that uses it
+  protected final Set<Integer> asyncPending = ConcurrentHashMap.newKeySet();
+  protected final Queue<Glyph> asyncReady = new ConcurrentLinkedQueue<>();
+
+  static private final String GLYPH_THREAD_NAME = "PFont glyphs";
+  // shared by all fonts, created the first time it's needed
+  static private ExecutorService glyphPool;
+  // Scratch surface of each pool thread, reused for every font of the
+  // same size, so that the threads don't keep one for each font
+  static private final ThreadLocal<GlyphRaster> poolRaster =
+    new ThreadLocal<>();
+
   // Debugging for https://github.com/processing/processing4/issues/278
   private final boolean DEBUG_P4_0278 = false;
 
@@ -244,31 +282,12 @@ public class PFont implements PConstants {
     ascii = new int[128];
     Arrays.fill(ascii, -1);
 
-    int mbox3 = size * 3;
-
-    lazyImage = new BufferedImage(mbox3, mbox3, BufferedImage.TYPE_INT_RGB);
-    lazyGraphics = (Graphics2D) lazyImage.getGraphics();
-    lazyGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                                  smooth ?
-                                  RenderingHints.VALUE_ANTIALIAS_ON :
-                                  RenderingHints.VALUE_ANTIALIAS_OFF);
-
-    // adding this for post-1.0.9
-    lazyGraphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
-                                  smooth ?
-                                  RenderingHints.VALUE_TEXT_ANTIALIAS_ON :
-                                  RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
-
-    // Trying to track down https://github.com/processing/processing4/issues/278
-    // But at least on macOS, it's still smooth when this is called from Create Font.
-    lazyGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                                  smooth ?
-                                  RenderingHints.VALUE_INTERPOLATION_BICUBIC :
-                                  RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-
-    lazyGraphics.setFont(font);
-    lazyMetrics = lazyGraphics.getFontMetrics();
-    lazySamples = new int[mbox3 * mbox3];
+    GlyphRaster raster = new GlyphRaster(size);
+    raster.setFont(font, smooth);
+    lazyImage = raster.image;
+    lazyGraphics = raster.graphics;
+    lazyMetrics = raster.metrics;
+    lazySamples = raster.samples;
 
     // These values are terrible/unusable. Verified again for Processing 1.1.
     // They vary widely per-platform and per-font, so instead we'll use the
@@ -457,19 +476,30 @@ public class PFont implements PConstants {
    * @param c character to create an image for.
    */
   protected void addGlyph(char c) {
-    Glyph glyph = new Glyph(c);
+    addGlyph((int) c);
+  }
+
+
+  /**
+   * Create a new glyph, and add the code point to the current font.
+   * @param codePoint character to create an image for, which can be
+   *                  outside of the Basic Multilingual Plane.
+   */
+  protected void addGlyph(int codePoint) {
+    insertGlyph(new Glyph(codePoint));
+  }
 
+
+  /**
+   * Adds the glyph to the font, keeping the glyphs sorted by code point.
+   */
+  protected void insertGlyph(Glyph glyph) {
+    int codePoint = glyph.value;
     if (glyphCount == glyphs.length) {
       glyphs = (Glyph[]) PApplet.expand(glyphs);
     }
-    if (glyphCount == 0) {
-      glyph.index = 0;
-      glyphs[glyphCount] = glyph;
-      if (glyph.value < 128) {
-        ascii[glyph.value] = 0;
-      }
-
-    } else if (glyphs[glyphCount-1].value < glyph.value) {
+    if (glyphCount == 0 || glyphs[glyphCount-1].value < glyph.value) {
+      glyph.index = glyphCount;
       glyphs[glyphCount] = glyph;
       if (glyph.value < 128) {
         ascii[glyph.value] = glyphCount;
@@ -477,9 +507,10 @@ public class PFont implements PConstants {
 
     } else {
       for (int i = 0; i < glyphCount; i++) {
-        if (glyphs[i].value > c) {
+        if (glyphs[i].value > codePoint) {
           for (int j = glyphCount; j > i; --j) {
             glyphs[j] = glyphs[j-1];
+            glyphs[j].index = j;
             if (glyphs[j].value < 128) {
               ascii[glyphs[j].value] = j;
             }
@@ -487,12 +518,212 @@ public class PFont implements PConstants {
           glyph.index = i;
           glyphs[i] = glyph;
           // cache locations of the ascii charset
-          if (c < 128) ascii[c] = i;
+          if (codePoint < 128) ascii[codePoint] = i;
           break;
         }
       }
     }
     glyphCount++;
+    tableAdd(glyph);
+  }
+
+
+  /**
+   * Rebuilds the code point table from the glyphs array. Only needed
+   * when the glyphs were set by some other means than addGlyph().
+   */
+  protected void buildTable() {
+    int capacity = 16;
+    while (capacity < 2 * glyphCount) capacity <<= 1;
+    tableKeys = new int[capacity];
+    Arrays.fill(tableKeys, -1);
+    tableGlyphs = new Glyph[capacity];
+    tableWidths = new float[capacity];
+    tableCount = 0;
+    for (int i = 0; i < glyphCount; i++) {
+      tablePut(glyphs[i]);
+    }
+  }
+
+
+  protected void tableAdd(Glyph glyph) {
+    if (tableKeys == null || tableCount != glyphCount - 1 ||
+        tableKeys.length < 2 * glyphCount) {
+      buildTable();  // adds the new glyph too
+    } else {
+      tablePut(glyph);
+    }
+  }
+
+
+  private void tablePut(Glyph glyph) {
+    int mask = tableKeys.length - 1;
+    int slot = tableHash(glyph.value) & mask;
+    while (tableKeys[slot] != -1 && tableKeys[slot] != glyph.value) {
+      slot = (slot + 1) & mask;
+    }
+    tableCount++;
+    tableKeys[slot] = glyph.value;
+    tableGlyphs[slot] = glyph;
+    tableWidths[slot] = (float) glyph.setWidth / (float) size;
+  }
+
+
+  static protected int tableHash(int codePoint) {
+    int h = codePoint * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+  /**
+   * Returns the slot of the code point in the glyph table, creating the
+   * glyph first for lazy fonts, or -1 if the font doesn't have it.
+   */
+  protected int tableSlot(int codePoint) {
+    if (!asyncReady.isEmpty()) {
+      publishGlyphs();
+    }
+    int slot = tableSlotActual(codePoint);
+    if (slot == -1 && lazy && font != null && font.canDisplay(codePoint)) {
+      if (async) {
+        insertGlyph(new Glyph(codePoint, lazyMetrics));
+        rasterizeLater(codePoint);
+      } else {
+        addGlyph(codePoint);
+      }
+      slot = tableSlotActual(codePoint);
+    }
+    return slot;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Sets whether the missing glyphs of a font made with createFont() are
+   * drawn on a background thread, so that showing new characters never
+   * holds up a frame. Until a glyph is ready, text() leaves a blank space
+   * of the right width in its place.
+   */
+  public void setAsync(boolean async) {
+    this.async = async;
+  }
+
+
+  public boolean isAsync() {
+    return async;
+  }
+
+
+  /**
+   * Starts drawing the glyphs for the characters of the text on a
+   * background thread, so that they are ready by the time the text is
+   * shown. Only has an effect on fonts made with createFont() and no
+   * character set. Can be called from any thread.
+   */
+  public void requestGlyphs(CharSequence text) {
+    text.codePoints().forEach(this::requestGlyph);
+  }
+
+
+  /**
+   * Starts drawing the glyphs for the code points from first to last,
+   * inclusive, on a background thread.
+   */
+  public void requestGlyphs(int first, int last) {
+    for (int codePoint = first; codePoint <= last; codePoint++) {
+      requestGlyph(codePoint);
+    }
+  }
+
+
+  protected void requestGlyph(int codePoint) {
+    if (lazy && font != null && font.canDisplay(codePoint)) {
+      rasterizeLater(codePoint);
+    }
+  }
+
+
+  protected void rasterizeLater(int codePoint) {
+    if (asyncPending.add(codePoint)) {
+      glyphPool().execute(() -> {
+        try {
+          GlyphRaster raster = poolRaster.get();
+          if (raster == null || raster.size != size) {
+            raster = new GlyphRaster(size);
+            poolRaster.set(raster);
+          }
+          raster.setFont(font, smooth);
+          asyncReady.add(new Glyph(codePoint, raster));
+        } catch (RuntimeException e) {
+          // the placeholder stays, showWarning() only reports it once
+          PGraphics.showWarning("Could not draw the glyphs of " + name +
+                                " in the background: " + e);
+        } finally {
+          asyncPending.remove(codePoint);
+        }
+      });
+    }
+  }
+
+
+  static synchronized private ExecutorService glyphPool() {
+    if (glyphPool == null) {
+      int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+      glyphPool = Executors.newFixedThreadPool(threads, r -> {
+        Thread thread = new Thread(r, GLYPH_THREAD_NAME);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return glyphPool;
+  }
+
+
+  /**
+   * Adds the glyphs drawn in the background to the font, replacing their
+   * placeholders. Called by the thread that uses the font, so that the
+   * glyph arrays are only ever changed from there.
+   */
+  protected void publishGlyphs() {
+    Glyph glyph;
+    while ((glyph = asyncReady.poll()) != null) {
+      int slot = tableSlotActual(glyph.value);
+      if (slot == -1) {
+        insertGlyph(glyph);
+      } else if (tableGlyphs[slot].placeholder) {
+        glyph.index = tableGlyphs[slot].index;
+        glyphs[glyph.index] = glyph;
+        tableGlyphs[slot] = glyph;
+        tableWidths[slot] = (float) glyph.setWidth / (float) size;
+      }
+    }
+  }
+
+
+  /**
+   * Returns true if no glyphs are being drawn in the background. The ones
+   * that are done show up the next time the font is used.
+   */
+  public boolean isReady() {
+    return asyncPending.isEmpty();
+  }
+
+
+  protected int tableSlotActual(int codePoint) {
+    if (tableKeys == null || tableCount != glyphCount) {
+      buildTable();
+    }
+    int[] keys = tableKeys;
+    int mask = keys.length - 1;
+    int slot = tableHash(codePoint) & mask;
+    while (true) {
+      int key = keys[slot];
+      if (key == codePoint) return slot;
+      if (key == -1) return -1;
+      slot = (slot + 1) & mask;
+    }
   }
 
 
@@ -607,8 +838,19 @@ public class PFont implements PConstants {
 
 
   public Glyph getGlyph(char c) {
-    int index = index(c);
-    return (index == -1) ? null : glyphs[index];
+    int slot = tableSlot(c);
+    return (slot == -1) ? null : tableGlyphs[slot];
+  }
+
+
+  /**
+   * Same as getGlyph(char), but also works with characters outside of the
+   * Basic Multilingual Plane, which take two chars in a String.
+   * @param codePoint the Unicode code point of the character
+   */
+  public Glyph getGlyphForCodePoint(int codePoint) {
+    int slot = tableSlot(codePoint);
+    return (slot == -1) ? null : tableGlyphs[slot];
   }
 
 
@@ -617,24 +859,8 @@ public class PFont implements PConstants {
    * @return index into arrays or -1 if not found
    */
   protected int index(char c) {
-    if (lazy) {
-      int index = indexActual(c);
-      if (index != -1) {
-        return index;
-      }
-      if (font != null && font.canDisplay(c)) {
-        // create the glyph
-        addGlyph(c);
-        // now where did i put that?
-        return indexActual(c);
-
-      } else {
-        return -1;
-      }
-
-    } else {
-      return indexActual(c);
-    }
+    int slot = tableSlot(c);
+    return (slot == -1) ? -1 : tableGlyphs[slot].index;
   }
 
 
@@ -647,9 +873,8 @@ public class PFont implements PConstants {
     // quicker lookup for the ascii fellers
     if (c < 128) return ascii[c];
 
-    // some other unicode char, hunt it out
-    //return index_hunt(c, 0, value.length-1);
-    return indexHunt(c, 0, glyphCount-1);
+    int slot = tableSlotActual(c);
+    return (slot == -1) ? -1 : tableGlyphs[slot].index;
   }
 
 
@@ -702,12 +927,18 @@ public class PFont implements PConstants {
    * Width of this character for a font of size 1.
    */
   public float width(char c) {
-    if (c == 32) return width('i');
+    return width((int) c);
+  }
 
-    int cc = index(c);
-    if (cc == -1) return 0;
 
-    return ((float) glyphs[cc].setWidth / (float) size);
+  /**
+   * Width of the character with this code point for a font of size 1.
+   */
+  public float width(int codePoint) {
+    if (codePoint == 32) codePoint = 'i';
+
+    int slot = tableSlot(codePoint);
+    return (slot == -1) ? 0 : tableWidths[slot];
   }
 
 
@@ -965,6 +1196,19 @@ public class PFont implements PConstants {
     public int topExtent;
     public int leftExtent;
 
+    /** True for the blank stand-in of a glyph that's drawn in the background */
+    protected boolean placeholder;
+
+
+    /**
+     * True if this is the blank stand-in of a glyph that's still being
+     * drawn, see setAsync(). It draws nothing, and is replaced in the font
+     * when the glyph is ready.
+     */
+    public boolean isPlaceholder() {
+      return placeholder;
+    }
+
 
     public Glyph() {
       index = -1;
@@ -1045,6 +1289,32 @@ public class PFont implements PConstants {
 
 
     protected Glyph(char c) {
+      this((int) c);
+    }
+
+
+    protected Glyph(int c) {
+      this(c, new GlyphRaster(lazyImage, lazyGraphics, lazyMetrics, lazySamples));
+    }
+
+
+    // Blank placeholder with the advance of the character
+    protected Glyph(int c, FontMetrics metrics) {
+      value = c;
+      index = -1;
+      width = 1;
+      height = 1;
+      setWidth = metrics.charWidth(c);
+      image = new PImage(1, 1, ALPHA);
+      placeholder = true;
+    }
+
+
+    protected Glyph(int c, GlyphRaster scratch) {
+      Graphics2D lazyGraphics = scratch.graphics;
+      FontMetrics lazyMetrics = scratch.metrics;
+      int[] lazySamples = scratch.samples;
+
       if (DEBUG_P4_0278 && c == 'd') {
         System.out.println(lazyGraphics.getRenderingHint(RenderingHints.KEY_ANTIALIASING));
         System.out.println(lazyGraphics.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING));
@@ -1055,9 +1325,9 @@ public class PFont implements PConstants {
       lazyGraphics.setColor(Color.white);
       lazyGraphics.fillRect(0, 0, mbox3, mbox3);
       lazyGraphics.setColor(Color.black);
-      lazyGraphics.drawString(String.valueOf(c), size, size * 2);
+      lazyGraphics.drawString(new String(Character.toChars(c)), size, size * 2);
 
-      WritableRaster raster = lazyImage.getRaster();
+      WritableRaster raster = scratch.image.getRaster();
       raster.getDataElements(0, 0, mbox3, mbox3, lazySamples);
 
       int minX = 1000, maxX = 0;
@@ -1125,4 +1395,62 @@ public class PFont implements PConstants {
       }
     }
   }
+
+
+  /**
+   * Image that glyphs are drawn into to find their pixels and extents.
+   * Each thread that creates glyphs needs its own, which can be used for
+   * any font of the same size.
+   */
+  static protected class GlyphRaster {
+    int size;
+    BufferedImage image;
+    Graphics2D graphics;
+    FontMetrics metrics;
+    int[] samples;
+
+
+    GlyphRaster(int size) {
+      int mbox3 = size * 3;
+
+      this.size = size;
+      image = new BufferedImage(mbox3, mbox3, BufferedImage.TYPE_INT_RGB);
+      graphics = (Graphics2D) image.getGraphics();
+      samples = new int[mbox3 * mbox3];
+    }
+
+
+    void setFont(Font font, boolean smooth) {
+      graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                smooth ?
+                                RenderingHints.VALUE_ANTIALIAS_ON :
+                                RenderingHints.VALUE_ANTIALIAS_OFF);
+
+      // adding this for post-1.0.9
+      graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                                smooth ?
+                                RenderingHints.VALUE_TEXT_ANTIALIAS_ON :
+                                RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+
+      // Trying to track down https://github.com/processing/processing4/issues/278
+      // But at least on macOS, it's still smooth when this is called from Create Font.
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                smooth ?
+                                RenderingHints.VALUE_INTERPOLATION_BICUBIC :
+                                RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+
+      graphics.setFont(font);
+      metrics = graphics.getFontMetrics();
+    }
+
+
+    GlyphRaster(BufferedImage image, Graphics2D graphics,
+                FontMetrics metrics, int[] samples) {
+      this.size = image.getWidth() / 3;
+      this.image = image;
+      this.graphics = graphics;
+      this.metrics = metrics;
+      this.samples = samples;
+    }
+  }
 }
@@ -32,17 +32,23 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Image;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.WeakHashMap;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -599,6 +605,24 @@ public class PGraphics extends PImage implements PConstants {
 
   // ........................................................
 
+  /**
+   * Maximum distance in pixels between a curve and the line segments used
+   * to draw it, when hint(ENABLE_ADAPTIVE_CURVES) is set.
+   */
+  protected float curveTolerance = 0.25f;
+
+  /** Upper bound on the number of segments of an adaptive curve. */
+  static public final int MAX_CURVE_SEGMENTS = 256;
+
+  // forward differencing matrices for the last segment count used by an
+  // adaptive curve, so that curves of similar size don't recompute them
+  protected PMatrix3D adaptiveBezierMatrix;
+  protected int adaptiveBezierSegments;
+  protected PMatrix3D adaptiveCurveMatrix;
+  protected int adaptiveCurveSegments;
+
+  // ........................................................
+
   // spline vertices
 
   protected float[][] curveVertices;
@@ -640,6 +664,9 @@ public class PGraphics extends PImage implements PConstants {
   protected int[] textBreakStart;
   protected int[] textBreakStop;
 
+  /** Line breaks and widths of the strings drawn most recently */
+  protected TextLayout.Cache textLayouts = new TextLayout.Cache();
+
   // ........................................................
 
   public boolean edge = true;
@@ -785,7 +812,8 @@ public class PGraphics extends PImage implements PConstants {
    * endRaw(), in order to shut things off.
    */
   public void dispose() {  // ignore
-    if (primaryGraphics && asyncImageSaver != null) {
+    endMovie();
+    if (asyncImageSaver != null) {
       asyncImageSaver.dispose();
       asyncImageSaver = null;
     }
@@ -1097,6 +1125,39 @@ public class PGraphics extends PImage implements PConstants {
    * lines in P3D and OPENGL. This can slow performance considerably, and the
    * algorithm is not yet perfect. Restore the default with <b>hint(DISABLE_DEPTH_SORT)</b>.
    * <br/> <br/>
+   * <b>hint(ENABLE_FAST_DEPTH_SORT)</b> - P3D only - Enable depth sorting,
+   * but sort the triangles by the depth of their centers instead of testing
+   * every pair of overlapping triangles. This is much faster with thousands
+   * of transparent triangles, but intersecting geometry may be drawn in the
+   * wrong order. Use <b>hint(DISABLE_FAST_DEPTH_SORT)</b> to go back to the
+   * regular depth sorting.
+   * <br/> <br/>
+   * <b>hint(DISABLE_DEPTH_SORT_REFINE)</b> - P3D only - Skip the pass of the
+   * fast depth sorting that swaps neighboring triangles which overlap in the
+   * wrong order. Sorting gets a bit faster, and a bit less accurate. Restore
+   * the default with <b>hint(ENABLE_DEPTH_SORT_REFINE)</b>.
+   * <br/> <br/>
+   * <b>hint(ENABLE_STREAMING_BUFFERS)</b> - P2D/P3D only - Write the geometry
+   * drawn with beginShape() and endShape() into large vertex buffers that are
+   * reused between frames, instead of uploading it into new buffers every
+   * time it is drawn. This can speed up sketches that draw many shapes every
+   * frame, but it requires OpenGL sync objects. Restore the default with
+   * <b>hint(DISABLE_STREAMING_BUFFERS)</b>.
+   * <br/> <br/>
+   * <b>hint(ENABLE_SHAPE_INSTANCING)</b> - P2D/P3D only - Draw consecutive
+   * calls to shape() with the same shape in a single instanced draw call.
+   * Each call can use a different transformation, and the fill color of
+   * shapes with disableStyle(). Shapes that are lit, drawn with a custom
+   * shader, or have 3D strokes are drawn one at a time. Requires OpenGL 3.3.
+   * Restore the default with <b>hint(DISABLE_SHAPE_INSTANCING)</b>.
+   * <br/> <br/>
+   * <b>hint(ENABLE_ADAPTIVE_CURVES)</b> - Draw Bézier and Catmull-Rom
+   * curves with as many segments as their size on screen requires, instead
+   * of the fixed number set by bezierDetail() and curveDetail(). Each curve
+   * stays within <b>curveTolerance()</b> pixels (0.25 by default) of its
+   * segments, so small curves use fewer vertices and large curves look
+   * smoother. Restore the default with <b>hint(DISABLE_ADAPTIVE_CURVES)</b>.
+   * <br/> <br/>
    * <b>hint(DISABLE_OPENGL_ERROR_REPORT)</b> - Speeds up the P3D renderer setting
    * by not checking for errors while running. Undo with <b>hint(ENABLE_OPENGL_ERROR_REPORT)</b>.
    * <br/> <br/>
@@ -2161,12 +2222,15 @@ public class PGraphics extends PImage implements PConstants {
                            float x4, float y4) {
     bezierInitCheck();
     bezierVertexCheck();
-    PMatrix3D draw = bezierDrawMatrix;
 
     float[] prev = vertices[vertexCount-1];
     float x1 = prev[X];
     float y1 = prev[Y];
 
+    int segments = bezierSegments(curveTolerance / curveScale(),
+                                  x1, y1, 0, x2, y2, 0, x3, y3, 0, x4, y4, 0);
+    PMatrix3D draw = bezierDrawMatrix(segments);
+
     float xplot1 = draw.m10*x1 + draw.m11*x2 + draw.m12*x3 + draw.m13*x4;
     float xplot2 = draw.m20*x1 + draw.m21*x2 + draw.m22*x3 + draw.m23*x4;
     float xplot3 = draw.m30*x1 + draw.m31*x2 + draw.m32*x3 + draw.m33*x4;
@@ -2175,7 +2239,7 @@ public class PGraphics extends PImage implements PConstants {
     float yplot2 = draw.m20*y1 + draw.m21*y2 + draw.m22*y3 + draw.m23*y4;
     float yplot3 = draw.m30*y1 + draw.m31*y2 + draw.m32*y3 + draw.m33*y4;
 
-    for (int j = 0; j < bezierDetail; j++) {
+    for (int j = 0; j < segments; j++) {
       x1 += xplot1; xplot1 += xplot2; xplot2 += xplot3;
       y1 += yplot1; yplot1 += yplot2; yplot2 += yplot3;
       vertex(x1, y1);
@@ -2217,13 +2281,16 @@ public class PGraphics extends PImage implements PConstants {
                            float x4, float y4, float z4) {
     bezierInitCheck();
     bezierVertexCheck();
-    PMatrix3D draw = bezierDrawMatrix;
 
     float[] prev = vertices[vertexCount-1];
     float x1 = prev[X];
     float y1 = prev[Y];
     float z1 = prev[Z];
 
+    int segments = bezierSegments(curveTolerance / curveScale(),
+                                  x1, y1, z1, x2, y2, z2, x3, y3, z3, x4, y4, z4);
+    PMatrix3D draw = bezierDrawMatrix(segments);
+
     float xplot1 = draw.m10*x1 + draw.m11*x2 + draw.m12*x3 + draw.m13*x4;
     float xplot2 = draw.m20*x1 + draw.m21*x2 + draw.m22*x3 + draw.m23*x4;
     float xplot3 = draw.m30*x1 + draw.m31*x2 + draw.m32*x3 + draw.m33*x4;
@@ -2236,7 +2303,7 @@ public class PGraphics extends PImage implements PConstants {
     float zplot2 = draw.m20*z1 + draw.m21*z2 + draw.m22*z3 + draw.m23*z4;
     float zplot3 = draw.m30*z1 + draw.m31*z2 + draw.m32*z3 + draw.m33*z4;
 
-    for (int j = 0; j < bezierDetail; j++) {
+    for (int j = 0; j < segments; j++) {
       x1 += xplot1; xplot1 += xplot2; xplot2 += xplot3;
       y1 += yplot1; yplot1 += yplot2; yplot2 += yplot3;
       z1 += zplot1; zplot1 += zplot2; zplot2 += zplot3;
@@ -2410,7 +2477,9 @@ public class PGraphics extends PImage implements PConstants {
     float x0 = x2;
     float y0 = y2;
 
-    PMatrix3D draw = curveDrawMatrix;
+    int segments = curveSegments(curveTolerance / curveScale(),
+                                 x1, y1, 0, x2, y2, 0, x3, y3, 0, x4, y4, 0);
+    PMatrix3D draw = curveDrawMatrix(segments);
 
     float xplot1 = draw.m10*x1 + draw.m11*x2 + draw.m12*x3 + draw.m13*x4;
     float xplot2 = draw.m20*x1 + draw.m21*x2 + draw.m22*x3 + draw.m23*x4;
@@ -2424,7 +2493,7 @@ public class PGraphics extends PImage implements PConstants {
     int savedCount = curveVertexCount;
 
     vertex(x0, y0);
-    for (int j = 0; j < curveDetail; j++) {
+    for (int j = 0; j < segments; j++) {
       x0 += xplot1; xplot1 += xplot2; xplot2 += xplot3;
       y0 += yplot1; yplot1 += yplot2; yplot2 += yplot3;
       vertex(x0, y0);
@@ -2445,7 +2514,9 @@ public class PGraphics extends PImage implements PConstants {
     float y0 = y2;
     float z0 = z2;
 
-    PMatrix3D draw = curveDrawMatrix;
+    int segments = curveSegments(curveTolerance / curveScale(),
+                                 x1, y1, z1, x2, y2, z2, x3, y3, z3, x4, y4, z4);
+    PMatrix3D draw = curveDrawMatrix(segments);
 
     float xplot1 = draw.m10*x1 + draw.m11*x2 + draw.m12*x3 + draw.m13*x4;
     float xplot2 = draw.m20*x1 + draw.m21*x2 + draw.m22*x3 + draw.m23*x4;
@@ -2463,7 +2534,7 @@ public class PGraphics extends PImage implements PConstants {
     float zplot3 = draw.m30*z1 + draw.m31*z2 + draw.m32*z3 + draw.m33*z4;
 
     vertex(x0, y0, z0);
-    for (int j = 0; j < curveDetail; j++) {
+    for (int j = 0; j < segments; j++) {
       x0 += xplot1; xplot1 += xplot2; xplot2 += xplot3;
       y0 += yplot1; yplot1 += yplot2; yplot2 += yplot3;
       z0 += zplot1; zplot1 += zplot2; zplot2 += zplot3;
@@ -3610,6 +3681,24 @@ public class PGraphics extends PImage implements PConstants {
   }
 
 
+  /**
+   * Sets the maximum distance in pixels between Bézier and Catmull-Rom
+   * curves and the line segments used to draw them, when
+   * hint(ENABLE_ADAPTIVE_CURVES) is set. The default value is 0.25.
+   *
+   * @param tolerance maximum distance in pixels, greater than 0
+   * @see PGraphics#bezierDetail(int)
+   * @see PGraphics#curveDetail(int)
+   */
+  public void curveTolerance(float tolerance) {
+    if (!(tolerance > 0) || Float.isInfinite(tolerance)) {
+      throw new IllegalArgumentException("curveTolerance() must be a " +
+                                         "positive number, not " + tolerance);
+    }
+    curveTolerance = tolerance;
+  }
+
+
   /**
    *
    * Modifies the quality of forms created with <b>curve()</b> and
@@ -3685,6 +3774,7 @@ public class PGraphics extends PImage implements PConstants {
     // multiply the basis and forward diff matrices together
     // saves much time since this needn't be done for each curve
     curveDrawMatrix.apply(curveBasisMatrix);
+    adaptiveCurveSegments = 0;
   }
 
 
@@ -3765,6 +3855,124 @@ public class PGraphics extends PImage implements PConstants {
   // SPLINE UTILITY FUNCTIONS (used by both Bezier and Catmull-Rom)
 
 
+  /**
+   * Returns the number of line segments used to draw a cubic Bézier curve,
+   * either bezierDetail, or after hint(ENABLE_ADAPTIVE_CURVES), the fewest
+   * segments that keep the curve within tolerance, in model coordinates.
+   */
+  protected int bezierSegments(float tolerance,
+                               float x1, float y1, float z1,
+                               float x2, float y2, float z2,
+                               float x3, float y3, float z3,
+                               float x4, float y4, float z4) {
+    if (!hints[ENABLE_ADAPTIVE_CURVES]) return bezierDetail;
+    return bezierSegmentCount(tolerance, x1, y1, z1, x2, y2, z2,
+                              x3, y3, z3, x4, y4, z4);
+  }
+
+
+  /**
+   * Returns the number of line segments used to draw a Catmull-Rom curve
+   * segment, either curveDetail or the adaptive count of the Bézier curve
+   * with the same shape.
+   */
+  protected int curveSegments(float tolerance,
+                              float x1, float y1, float z1,
+                              float x2, float y2, float z2,
+                              float x3, float y3, float z3,
+                              float x4, float y4, float z4) {
+    if (!hints[ENABLE_ADAPTIVE_CURVES]) return curveDetail;
+    curveInitCheck();
+    PMatrix3D cb = curveToBezierMatrix;
+    return bezierSegmentCount(tolerance,
+      cb.m00*x1 + cb.m01*x2 + cb.m02*x3 + cb.m03*x4,
+      cb.m00*y1 + cb.m01*y2 + cb.m02*y3 + cb.m03*y4,
+      cb.m00*z1 + cb.m01*z2 + cb.m02*z3 + cb.m03*z4,
+      cb.m10*x1 + cb.m11*x2 + cb.m12*x3 + cb.m13*x4,
+      cb.m10*y1 + cb.m11*y2 + cb.m12*y3 + cb.m13*y4,
+      cb.m10*z1 + cb.m11*z2 + cb.m12*z3 + cb.m13*z4,
+      cb.m20*x1 + cb.m21*x2 + cb.m22*x3 + cb.m23*x4,
+      cb.m20*y1 + cb.m21*y2 + cb.m22*y3 + cb.m23*y4,
+      cb.m20*z1 + cb.m21*z2 + cb.m22*z3 + cb.m23*z4,
+      cb.m30*x1 + cb.m31*x2 + cb.m32*x3 + cb.m33*x4,
+      cb.m30*y1 + cb.m31*y2 + cb.m32*y3 + cb.m33*y4,
+      cb.m30*z1 + cb.m31*z2 + cb.m32*z3 + cb.m33*z4);
+  }
+
+
+  /**
+   * How many pixels one unit of the current coordinate system covers, used
+   * to convert curveTolerance into model coordinates. Renderers that keep
+   * their own transformation matrix should override this.
+   */
+  protected float curveScale() {
+    return 1;
+  }
+
+
+  /**
+   * Returns the smallest number of equal steps in t such that the line
+   * segments between them are never further than tolerance from the cubic
+   * Bézier curve with the given control points. This uses Wang's formula,
+   * which bounds the error by the largest second difference of the control
+   * points, so flat curves get a single segment and large or sharply bent
+   * curves get more of them, up to MAX_CURVE_SEGMENTS.
+   */
+  static protected int bezierSegmentCount(float tolerance,
+                                          float x1, float y1, float z1,
+                                          float x2, float y2, float z2,
+                                          float x3, float y3, float z3,
+                                          float x4, float y4, float z4) {
+    float ax = x1 - 2*x2 + x3;
+    float ay = y1 - 2*y2 + y3;
+    float az = z1 - 2*z2 + z3;
+    float bx = x2 - 2*x3 + x4;
+    float by = y2 - 2*y3 + y4;
+    float bz = z2 - 2*z3 + z4;
+    float dd = Math.max(ax*ax + ay*ay + az*az, bx*bx + by*by + bz*bz);
+    if (dd == 0) return 1;
+    if (!(tolerance > 0)) return MAX_CURVE_SEGMENTS;
+    // n^2 >= d * (d - 1) / 8 * max|second difference| / tolerance, with d = 3
+    double n = Math.ceil(Math.sqrt(0.75 * Math.sqrt(dd) / tolerance));
+    if (n < 1) return 1;
+    if (n > MAX_CURVE_SEGMENTS) return MAX_CURVE_SEGMENTS;
+    return (int) n;
+  }
+
+
+  /**
+   * Forward differencing matrix to draw a Bézier curve with the given
+   * number of segments.
+   */
+  protected PMatrix3D bezierDrawMatrix(int segments) {
+    if (segments == bezierDetail) return bezierDrawMatrix;
+    if (adaptiveBezierMatrix == null) adaptiveBezierMatrix = new PMatrix3D();
+    if (adaptiveBezierSegments != segments) {
+      splineForward(segments, adaptiveBezierMatrix);
+      adaptiveBezierMatrix.apply(bezierBasisMatrix);
+      adaptiveBezierSegments = segments;
+    }
+    return adaptiveBezierMatrix;
+  }
+
+
+  /**
+   * Forward differencing matrix to draw a Catmull-Rom curve segment with
+   * the given number of segments.
+   */
+  protected PMatrix3D curveDrawMatrix(int segments) {
+    curveInitCheck();
+    if (segments == curveDetail) return curveDrawMatrix;
+    if (adaptiveCurveMatrix == null) adaptiveCurveMatrix = new PMatrix3D();
+    if (adaptiveCurveSegments != segments) {
+      splineForward(segments, adaptiveCurveMatrix);
+      adaptiveCurveMatrix.apply(curveBasisMatrix);
+      adaptiveCurveSegments = segments;
+    }
+    return adaptiveCurveMatrix;
+  }
+
+
   /**
    * Setup forward-differencing matrix to be used for speedy
    * curve rendering. It's based on using a specific number
@@ -4586,25 +4794,12 @@ public class PGraphics extends PImage implements PConstants {
       defaultFontOrDeath("textWidth");
     }
 
-    int length = str.length();
-    if (length > textWidthBuffer.length) {
-      textWidthBuffer = new char[length + 10];
-    }
-    str.getChars(0, length, textWidthBuffer, 0);
-
+    TextLayout layout = textLayout(str, Float.NaN);
     float wide = 0;
-    int index = 0;
-    int start = 0;
-
-    while (index < length) {
-      if (textWidthBuffer[index] == '\n') {
-        wide = Math.max(wide, textWidthImpl(textWidthBuffer, start, index));
-        start = index+1;
+    for (int i = 0; i < layout.lineCount; i++) {
+      if (layout.lineStart[i] < layout.lineStop[i]) {
+        wide = Math.max(wide, layout.lineWidth(this, i));
       }
-      index++;
-    }
-    if (start < length) {
-      wide = Math.max(wide, textWidthImpl(textWidthBuffer, start, index));
     }
     return wide;
   }
@@ -4627,8 +4822,13 @@ public class PGraphics extends PImage implements PConstants {
   protected float textWidthImpl(char[] buffer, int start, int stop) {
     float wide = 0;
     for (int i = start; i < stop; i++) {
+      int c = buffer[i];
+      if (Character.isHighSurrogate(buffer[i]) && i + 1 < stop &&
+          Character.isLowSurrogate(buffer[i + 1])) {
+        c = Character.toCodePoint(buffer[i], buffer[++i]);
+      }
       // could add kerning here, but it just ain't implemented
-      wide += textFont.width(buffer[i]) * textSize;
+      wide += textFont.width(c) * textSize;
     }
     return wide;
   }
@@ -4724,12 +4924,14 @@ public class PGraphics extends PImage implements PConstants {
       defaultFontOrDeath("text");
     }
 
-    int length = str.length();
-    if (length > textBuffer.length) {
-      textBuffer = new char[length + 10];
+    TextLayout layout = textLayout(str, Float.NaN);
+    y = textAlignY(y, textLeading * (layout.lineCount - 1));
+    for (int i = 0; i < layout.lineCount; i++) {
+      if (layout.lineStart[i] < layout.lineStop[i]) {
+        textLayoutLineImpl(layout, i, x, y);
+      }
+      y += textLeading;
     }
-    str.getChars(0, length, textBuffer, 0);
-    text(textBuffer, 0, length, x, y);
   }
 
 
@@ -4750,6 +4952,29 @@ public class PGraphics extends PImage implements PConstants {
         high += textLeading;
       }
     }
+    y = textAlignY(y, high);
+
+//    int start = 0;
+    int index = 0;
+    while (index < stop) { //length) {
+      if (chars[index] == '\n') {
+        textLineAlignImpl(chars, start, index, x, y);
+        start = index + 1;
+        y += textLeading;
+      }
+      index++;
+    }
+    if (start < stop) {  //length) {
+      textLineAlignImpl(chars, start, index, x, y);
+    }
+  }
+
+
+  /**
+   * Moves the baseline of the first line of text according to textAlignY,
+   * given the height of the additional lines.
+   */
+  protected float textAlignY(float y, float high) {
     if (textAlignY == CENTER) {
       // for a single line, this adds half the textAscent to y
       // for multiple lines, subtract half the additional height
@@ -4766,20 +4991,7 @@ public class PGraphics extends PImage implements PConstants {
     //} else if (textAlignY == BASELINE) {
       // do nothing
     }
-
-//    int start = 0;
-    int index = 0;
-    while (index < stop) { //length) {
-      if (chars[index] == '\n') {
-        textLineAlignImpl(chars, start, index, x, y);
-        start = index + 1;
-        y += textLeading;
-      }
-      index++;
-    }
-    if (start < stop) {  //length) {
-      textLineAlignImpl(chars, start, index, x, y);
-    }
+    return y;
   }
 
 
@@ -4871,33 +5083,7 @@ public class PGraphics extends PImage implements PConstants {
 
 //    float spaceWidth = textWidth(' ');
 
-    if (textBreakStart == null) {
-      textBreakStart = new int[20];
-      textBreakStop = new int[20];
-    }
-    textBreakCount = 0;
-
-    int length = str.length();
-    if (length + 1 > textBuffer.length) {
-      textBuffer = new char[length + 1];
-    }
-    str.getChars(0, length, textBuffer, 0);
-    // add a fake newline to simplify calculations
-    textBuffer[length++] = '\n';
-
-    int sentenceStart = 0;
-    for (int i = 0; i < length; i++) {
-      if (textBuffer[i] == '\n') {
-//        currentY = textSentence(textBuffer, sentenceStart, i,
-//                                lineX, boxWidth, currentY, y2, spaceWidth);
-        boolean legit =
-          textSentence(textBuffer, sentenceStart, i, boxWidth);
-        if (!legit) break;
-//      if (Float.isNaN(currentY)) break;  // word too big (or error)
-//      if (currentY > y2) break;  // past the box
-        sentenceStart = i + 1;
-      }
-    }
+    TextLayout layout = textLayout(str, boxWidth);
 
     // lineX is the position where the text starts, which is adjusted
     // to left/center/right based on the current textAlign
@@ -4915,33 +5101,96 @@ public class PGraphics extends PImage implements PConstants {
     // outside the box. [0151]
     float topAndBottom = textAscent() + textDescent();
     int lineFitCount = 1 + PApplet.floor((boxHeight - topAndBottom) / textLeading);
-    int lineCount = Math.min(textBreakCount, lineFitCount);
+    int lineCount = Math.min(layout.lineCount, lineFitCount);
 
     if (textAlignY == CENTER) {
       float lineHigh = textAscent() + textLeading * (lineCount - 1);
       float y = y1 + textAscent() + (boxHeight - lineHigh) / 2;
       for (int i = 0; i < lineCount; i++) {
-        textLineAlignImpl(textBuffer, textBreakStart[i], textBreakStop[i], lineX, y);
+        textLayoutLineImpl(layout, i, lineX, y);
         y += textLeading;
       }
 
     } else if (textAlignY == BOTTOM) {
       float y = y2 - textDescent() - textLeading * (lineCount - 1);
       for (int i = 0; i < lineCount; i++) {
-        textLineAlignImpl(textBuffer, textBreakStart[i], textBreakStop[i], lineX, y);
+        textLayoutLineImpl(layout, i, lineX, y);
         y += textLeading;
       }
 
     } else {  // TOP or BASELINE just go to the default
       float y = y1 + textAscent();
       for (int i = 0; i < lineCount; i++) {
-        textLineAlignImpl(textBuffer, textBreakStart[i], textBreakStop[i], lineX, y);
+        textLayoutLineImpl(layout, i, lineX, y);
         y += textLeading;
       }
     }
   }
 
 
+  /**
+   * Returns where the text breaks into lines with the current font and size,
+   * either at its newlines when boxWidth is NaN, or to fit in a box that
+   * wide. Layouts are cached, so that text drawn again and again is only
+   * scanned and measured the first time.
+   */
+  protected TextLayout textLayout(String str, float boxWidth) {
+    TextLayout layout = textLayouts.get(str, textFont, textSize, boxWidth);
+    if (layout != null) return layout;
+
+    layout = new TextLayout(str, textFont, textSize, boxWidth);
+    int length = str.length();
+    char[] chars = new char[length + 1];
+    str.getChars(0, length, chars, 0);
+    // add a fake newline to simplify calculations
+    chars[length] = '\n';
+    layout.chars = chars;
+
+    if (textBreakStart == null) {
+      textBreakStart = new int[20];
+      textBreakStop = new int[20];
+    }
+    textBreakCount = 0;
+
+    int sentenceStart = 0;
+    for (int i = 0; i <= length; i++) {
+      if (chars[i] == '\n') {
+        if (Float.isNaN(boxWidth)) {
+          textSentenceBreak(sentenceStart, i);
+        } else {
+//        currentY = textSentence(textBuffer, sentenceStart, i,
+//                                lineX, boxWidth, currentY, y2, spaceWidth);
+          boolean legit = textSentence(chars, sentenceStart, i, boxWidth);
+          if (!legit) break;
+//      if (Float.isNaN(currentY)) break;  // word too big (or error)
+//      if (currentY > y2) break;  // past the box
+        }
+        sentenceStart = i + 1;
+      }
+    }
+    layout.setLines(textBreakCount, textBreakStart, textBreakStop);
+    textLayouts.add(layout);
+    return layout;
+  }
+
+
+  /**
+   * Same as textLineAlignImpl(), for a line of a layout whose width may
+   * already be known.
+   */
+  protected void textLayoutLineImpl(TextLayout layout, int line,
+                                    float x, float y) {
+    if (textAlign == CENTER) {
+      x -= layout.lineWidth(this, line) / 2f;
+
+    } else if (textAlign == RIGHT) {
+      x -= layout.lineWidth(this, line);
+    }
+
+    textLineImpl(layout.chars, layout.lineStart[line], layout.lineStop[line], x, y);
+  }
+
+
   /**
    * Emit a sentence of text, defined as a chunk of text without any newlines.
    * @param stop non-inclusive, the end of the text in question
@@ -5108,10 +5357,19 @@ public class PGraphics extends PImage implements PConstants {
   protected void textLineImpl(char[] buffer, int start, int stop,
                               float x, float y) {
     for (int index = start; index < stop; index++) {
-      textCharImpl(buffer[index], x, y);
+      char ch = buffer[index];
+      if (Character.isHighSurrogate(ch) && index + 1 < stop &&
+          Character.isLowSurrogate(buffer[index + 1])) {
+        int codePoint = Character.toCodePoint(ch, buffer[++index]);
+        textCodePointImpl(codePoint, x, y);
+        x += textFont.width(codePoint) * textSize;
+
+      } else {
+        textCharImpl(ch, x, y);
 
-      // this doesn't account for kerning
-      x += textWidth(buffer[index]);
+        // this doesn't account for kerning
+        x += textWidth(ch);
+      }
     }
 //    textX = x;
 //    textY = y;
@@ -5123,20 +5381,7 @@ public class PGraphics extends PImage implements PConstants {
     PFont.Glyph glyph = textFont.getGlyph(ch);
     if (glyph != null) {
       if (textMode == MODEL) {
-        float floatSize = textFont.getSize();
-        float high = glyph.height / floatSize;
-        float wide = glyph.width / floatSize;
-        float leftExtent = glyph.leftExtent / floatSize;
-        float topExtent = glyph.topExtent  / floatSize;
-
-        float x1 = x + leftExtent * textSize;
-        float y1 = y - topExtent * textSize;
-        float x2 = x1 + wide * textSize;
-        float y2 = y1 + high * textSize;
-
-        textCharModelImpl(glyph.image,
-                          x1, y1, x2, y2,
-                          glyph.width, glyph.height);
+        textGlyphModelImpl(glyph, x, y);
       }
     } else if (ch != ' ' && ch != 127) {
       showWarning("No glyph found for the " + ch + " (\\u" + PApplet.hex(ch, 4) + ") character");
@@ -5144,6 +5389,42 @@ public class PGraphics extends PImage implements PConstants {
   }
 
 
+  /**
+   * Draws a character outside of the Basic Multilingual Plane, which comes
+   * as a pair of surrogate chars in the text. Only MODEL mode is supported.
+   */
+  protected void textCodePointImpl(int codePoint, float x, float y) {
+    PFont.Glyph glyph = textFont.getGlyphForCodePoint(codePoint);
+    if (glyph != null) {
+      if (textMode == MODEL) {
+        textGlyphModelImpl(glyph, x, y);
+      }
+    } else {
+      showWarning("No glyph found for the " +
+                  new String(Character.toChars(codePoint)) +
+                  " (U+" + PApplet.hex(codePoint, 5) + ") character");
+    }
+  }
+
+
+  protected void textGlyphModelImpl(PFont.Glyph glyph, float x, float y) {
+    float floatSize = textFont.getSize();
+    float high = glyph.height / floatSize;
+    float wide = glyph.width / floatSize;
+    float leftExtent = glyph.leftExtent / floatSize;
+    float topExtent = glyph.topExtent  / floatSize;
+
+    float x1 = x + leftExtent * textSize;
+    float y1 = y - topExtent * textSize;
+    float x2 = x1 + wide * textSize;
+    float y2 = y1 + high * textSize;
+
+    textCharModelImpl(glyph.image,
+                      x1, y1, x2, y2,
+                      glyph.width, glyph.height);
+  }
+
+
   protected void textCharModelImpl(PImage glyph,
                                    float x1, float y1, //float z1,
                                    float x2, float y2, //float z2,
@@ -5769,6 +6050,17 @@ public class PGraphics extends PImage implements PConstants {
   }
 
 
+  /**
+   * Stores the part of the drawing surface that is visible in the current
+   * coordinate system into bounds, as { minX, minY, maxX, maxY }, so that
+   * shapes outside of it can be skipped. Returns false when the renderer
+   * can't tell, in which case nothing is culled.
+   */
+  protected boolean getVisibleBounds(float[] bounds) {
+    return false;
+  }
+
+
   /**
    * Copy the current transformation matrix into the specified target.
    * Pass in null to create a new matrix.
@@ -8240,7 +8532,9 @@ public class PGraphics extends PImage implements PConstants {
   // WARNINGS and EXCEPTIONS
 
 
-  static protected Map<String, Object> warnings;
+  // Concurrent, since renderers on other threads can warn at the same time
+  static protected final Map<String, Object> warnings =
+    new ConcurrentHashMap<>();
 
 
   /**
@@ -8248,12 +8542,8 @@ public class PGraphics extends PImage implements PConstants {
    * @param msg the error message (which will be stored for later comparison)
    */
   static public void showWarning(String msg) {  // ignore
-    if (warnings == null) {
-      warnings = new HashMap<>();
-    }
-    if (!warnings.containsKey(msg)) {
+    if (warnings.putIfAbsent(msg, Boolean.TRUE) == null) {
       System.err.println(msg);
-      warnings.put(msg, new Object());
     }
   }
 
@@ -8411,18 +8701,16 @@ public class PGraphics extends PImage implements PConstants {
       return super.save(filename);
     }
 
-    if (asyncImageSaver == null) {
-      asyncImageSaver = new AsyncImageSaver();
-    }
+    AsyncImageSaver saver = getAsyncImageSaver();
 
     if (!loaded) loadPixels();
 
     PImage target =
-      asyncImageSaver.getAvailableTarget(pixelWidth, pixelHeight, format);
+      saver.getAvailableTarget(pixelWidth, pixelHeight, format);
     if (target != null) {
       int count = PApplet.min(pixels.length, target.pixels.length);
       System.arraycopy(pixels, 0, target.pixels, 0, count);
-      asyncImageSaver.saveTargetAsync(this, target, parent.sketchFile(filename));
+      saver.saveTargetAsync(this, target, parent.sketchFile(filename));
       return true;
     }
     return false;
@@ -8436,27 +8724,175 @@ public class PGraphics extends PImage implements PConstants {
    * Has to be called on main thread because OpenGL overrides this and calls GL.
    */
   protected void awaitAsyncSaveCompletion(String filename) {
-    if (asyncImageSaver != null) {
-      asyncImageSaver.awaitAsyncSaveCompletion(parent.sketchFile(filename));
+    AsyncImageSaver saver = findAsyncImageSaver();
+    if (saver != null) {
+      saver.awaitAsyncSaveCompletion(parent.sketchFile(filename));
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // VIDEO RECORDING
+
+
+  protected VideoRecorder videoRecorder;
+
+
+  /**
+   * Starts writing the frames drawn by this renderer to a QuickTime movie,
+   * played back at fps frames per second. Frames that can't be compressed
+   * as fast as they're drawn are dropped when dropFrames is true, otherwise
+   * drawing waits for the encoders. Not to be confused with beginRecord(),
+   * which copies the drawing to another renderer.
+   */
+  public void beginMovie(File file, float fps, boolean dropFrames) {  // ignore
+    endMovie();
+    try {
+      videoRecorder = new VideoRecorder(file, pixelWidth, pixelHeight, fps,
+                                        0.9f, dropFrames);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not record to " + file, e);
+    }
+  }
+
+
+  public void endMovie() {  // ignore
+    if (videoRecorder != null) {
+      VideoRecorder recorder = videoRecorder;
+      videoRecorder = null;
+      try {
+        recorder.finish();
+      } catch (IOException e) {
+        throw new RuntimeException("Could not finish recording", e);
+      }
+      if (recorder.getDroppedFrames() != 0 || recorder.getLateFrames() != 0) {
+        System.err.println("Recorded " + recorder.getFrameCount() +
+                           " frames, dropped " + recorder.getDroppedFrames() +
+                           ", " + recorder.getLateFrames() +
+                           " were late");
+      }
+    }
+  }
+
+
+  public boolean isRecordingMovie() {  // ignore
+    return videoRecorder != null;
+  }
+
+
+  /**
+   * Adds the current frame to the movie being recorded, if any.
+   * Called by PApplet at the end of each draw().
+   */
+  protected void recordFrame() {
+    if (videoRecorder != null) {
+      loadPixels();
+      VideoRecorder recorder = videoRecorder;
+      boolean recorded = false;
+      try {
+        recorder.addFrame(pixels);
+        recorded = true;
+      } catch (IOException e) {
+        throw new RuntimeException("Could not record frame", e);
+      } finally {
+        if (!recorded) {
+          // Stops the threads and closes the file before dropping it
+          videoRecorder = null;
+          recorder.close();
+        }
+      }
     }
   }
 
 
-  protected static AsyncImageSaver asyncImageSaver;
+  // Only set on the renderer that owns it, see asyncImageSaverOwner()
+  protected AsyncImageSaver asyncImageSaver;
 
-  protected static class AsyncImageSaver {
+
+  /**
+   * Returns the pipeline that writes the images of save() and saveFrame()
+   * on other threads, to change how many threads and how much memory it
+   * uses, what happens when it falls behind, or how images are encoded.
+   * Only used when ENABLE_ASYNC_SAVEFRAME is set, and by P2D and P3D.
+   * <p>
+   * Each sketch has its own, shared by all of its renderers.
+   */
+  public AsyncImageSaver getAsyncImageSaver() {  // ignore
+    PGraphics owner = asyncImageSaverOwner();
+    if (owner.asyncImageSaver == null) {
+      owner.asyncImageSaver = new AsyncImageSaver();
+    }
+    return owner.asyncImageSaver;
+  }
+
+
+  // The main renderer of the sketch, or this one when it has no sketch
+  protected PGraphics asyncImageSaverOwner() {
+    return (parent != null && parent.g != null) ? parent.g : this;
+  }
+
+
+  // The saver of the sketch if it was already created, or null
+  protected AsyncImageSaver findAsyncImageSaver() {
+    return asyncImageSaverOwner().asyncImageSaver;
+  }
+
+
+  /**
+   * Writes images on a pool of threads. Images wait to be saved in a pool of
+   * targets, limited in number by the thread count and in size by a memory
+   * budget. When no target is free, the sketch either waits for one, or the
+   * image is dropped.
+   * <p>
+   * Images are copied into a target, converted by the renderer, encoded in
+   * memory, and written to the file. The time spent in each of these stages
+   * is added up, and can be read with getStageNanos().
+   */
+  public static class AsyncImageSaver {
 
     static final int TARGET_COUNT =
         Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
 
-    BlockingQueue<PImage> targetPool = new ArrayBlockingQueue<>(TARGET_COUNT);
-    ExecutorService saveExecutor = Executors.newFixedThreadPool(TARGET_COUNT);
+    /** Copy of the pixels into a target, in the drawing thread */
+    static public final int STAGE_COPY = 0;
+    /** Conversion from the native format of the renderer */
+    static public final int STAGE_CONVERT = 1;
+    /** Encoding to PNG, TGA, JPEG, etc. */
+    static public final int STAGE_ENCODE = 2;
+    /** Writing the encoded image to the file */
+    static public final int STAGE_WRITE = 3;
+    static final int STAGE_COUNT = 4;
+
+    /**
+     * Encodes an image in some file format. Used for the extensions it's
+     * registered for with setCodec().
+     */
+    public interface Codec {
+      void write(PImage image, OutputStream output) throws IOException;
+    }
+
+    int threadCount = TARGET_COUNT;
+    long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+    boolean dropFrames;
+    boolean throttle = true;
+    final Map<String, Codec> codecs = new HashMap<>();
+
+    BlockingQueue<PImage> targetPool = new LinkedBlockingQueue<>();
+    ExecutorService saveExecutor = createExecutor(threadCount);
 
     int targetsCreated = 0;
+    // Size of the last target asked for, which sets how many can be made
+    int targetWidth, targetHeight;
+    long copyStart;
 
     Map<File, Future<?>> runningTasks = new HashMap<>();
     final Object runningTasksLock = new Object();
 
+    // Encoded images are kept in memory before being written
+    ThreadLocal<ByteArrayOutputStream> encodeBuffer =
+      ThreadLocal.withInitial(() -> new ByteArrayOutputStream(1 << 20));
+
 
     static final int TIME_AVG_FACTOR = 32;
 
@@ -8464,8 +8900,31 @@ public class PGraphics extends PImage implements PConstants {
     long lastTime = 0;
     int lastFrameCount = 0;
 
+    // Statistics, guarded by this
+    long[] stageNanos = new long[STAGE_COUNT];
+    long throttleNanos;
+    int savedCount;
+    int droppedCount;
+    int failedCount;
+
+
+    public AsyncImageSaver() {  // ignore
+      codecs.put("png", (image, output) -> new PNGEncoder().write(image, output));
+      codecs.put("tga", (image, output) -> {
+        if (!image.saveTGA(output)) {
+          throw new IOException("Could not write TGA image");
+        }
+      });
+    }
+
 
-    public AsyncImageSaver() { } // ignore
+    static ExecutorService createExecutor(int threadCount) {
+      return Executors.newFixedThreadPool(threadCount, r -> {
+        Thread thread = new Thread(r, "AsyncImageSaver");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
 
 
     public void dispose() { // ignore
@@ -8477,31 +8936,136 @@ public class PGraphics extends PImage implements PConstants {
     }
 
 
+    /**
+     * Sets the number of threads saving images, which is also the most
+     * images waiting to be saved. By default, one less than the number
+     * of processors.
+     */
+    public void setThreadCount(int count) {  // ignore
+      if (count < 1) {
+        throw new IllegalArgumentException("At least one thread is needed");
+      }
+      if (count != threadCount) {
+        // the old threads finish what they were saving, then go away
+        saveExecutor.shutdown();
+        saveExecutor = createExecutor(count);
+        threadCount = count;
+      }
+    }
+
+
+    public int getThreadCount() {  // ignore
+      return threadCount;
+    }
+
+
+    /**
+     * Limits the memory used by the images waiting to be saved. By default,
+     * a quarter of the maximum heap size. At least one image is always kept.
+     */
+    public void setMemoryBudget(long bytes) {  // ignore
+      memoryBudget = bytes;
+    }
+
+
+    public long getMemoryBudget() {  // ignore
+      return memoryBudget;
+    }
+
+
+    /**
+     * When true, images are dropped when all the targets are busy, instead
+     * of waiting for one to be saved. Dropped images are counted by
+     * getDroppedCount().
+     */
+    public void setDropFrames(boolean drop) {  // ignore
+      dropFrames = drop;
+    }
+
+
+    /**
+     * When true, which is the default, a sketch saving every frame is slowed
+     * down evenly to the speed of the encoders, instead of running ahead and
+     * then stalling until a target is free. Turn it off for offline renders,
+     * which should go as fast as the encoders and the disk allow.
+     */
+    public void setThrottle(boolean throttle) {  // ignore
+      this.throttle = throttle;
+    }
+
+
+    /**
+     * Uses this codec to encode the files with this extension, for instance
+     * "png" or "jpg". A null codec restores the default, which is the
+     * built-in encoder for PNG and TGA, and PImage.save() for the others.
+     */
+    public void setCodec(String extension, Codec codec) {  // ignore
+      synchronized (codecs) {
+        if (codec == null) {
+          codecs.remove(extension.toLowerCase());
+        } else {
+          codecs.put(extension.toLowerCase(), codec);
+        }
+      }
+    }
+
+
+    Codec getCodec(File file) {
+      String name = file.getName();
+      String extension = name.substring(name.lastIndexOf('.') + 1);
+      synchronized (codecs) {
+        return codecs.get(extension.toLowerCase());
+      }
+    }
+
+
+    // Most targets of this size that can wait to be saved
+    int getTargetLimit(int width, int height) {
+      long bytes = 4L * width * height;
+      long limit = Math.min(threadCount, memoryBudget / Math.max(1, bytes));
+      return (int) Math.max(1, limit);
+    }
+
+
     public boolean hasAvailableTarget() { // ignore
-      return targetsCreated < TARGET_COUNT || targetPool.isEmpty();
+      return !targetPool.isEmpty() ||
+        targetsCreated < getTargetLimit(targetWidth, targetHeight);
     }
 
 
     /**
      * After taking a target, you must call saveTargetAsync() or
-     * returnUnusedTarget(), otherwise one thread won't be able to run
+     * returnUnusedTarget(), otherwise one thread won't be able to run.
+     * Returns null when the image should be dropped.
      */
     public PImage getAvailableTarget(int requestedWidth, int requestedHeight, // ignore
                                      int format) {
+      targetWidth = requestedWidth;
+      targetHeight = requestedHeight;
       try {
-        PImage target;
-        if (targetsCreated < TARGET_COUNT && targetPool.isEmpty()) {
-          target = new PImage(requestedWidth, requestedHeight);
-          targetsCreated++;
-        } else {
-          target = targetPool.take();
-          if (target.pixelWidth != requestedWidth ||
-              target.pixelHeight != requestedHeight) {
-            // TODO: this kills performance when saving different sizes
+        PImage target = targetPool.poll();
+        if (target == null) {
+          if (targetsCreated < getTargetLimit(requestedWidth, requestedHeight)) {
             target = new PImage(requestedWidth, requestedHeight);
+            targetsCreated++;
+
+          } else if (dropFrames) {
+            synchronized (this) {
+              droppedCount++;
+            }
+            return null;
+
+          } else {
+            target = targetPool.take();
           }
         }
+        if (target.pixelWidth != requestedWidth ||
+            target.pixelHeight != requestedHeight) {
+          // TODO: this kills performance when saving different sizes
+          target = new PImage(requestedWidth, requestedHeight);
+        }
         target.format = format;
+        copyStart = System.nanoTime();
         return target;
       } catch (InterruptedException e) {
         return null;
@@ -8516,20 +9080,27 @@ public class PGraphics extends PImage implements PConstants {
 
     public void saveTargetAsync(final PGraphics renderer, final PImage target, // ignore
                                 final File file) {
+      long copyNanos = System.nanoTime() - copyStart;
       target.parent = renderer.parent;
 
       // if running every frame, smooth the frame rate
-      if (target.parent.frameCount - 1 == lastFrameCount && TARGET_COUNT > 1) {
+      if (throttle &&
+          target.parent.frameCount - 1 == lastFrameCount && threadCount > 1) {
 
         // count with one less thread to reduce jitter
         // 2 cores - 1 save thread - no wait
         // 4 cores - 3 save threads - wait 1/2 of save time
         // 8 cores - 7 save threads - wait 1/6 of save time
-        long avgTimePerFrame = avgNanos / (Math.max(1, TARGET_COUNT - 1));
+        long avgTimePerFrame = avgNanos / (Math.max(1, threadCount - 1));
         long now = System.nanoTime();
         long delay = PApplet.round((lastTime + avgTimePerFrame - now) / 1e6f);
         try {
-          if (delay > 0) Thread.sleep(delay);
+          if (delay > 0) {
+            Thread.sleep(delay);
+            synchronized (this) {
+              throttleNanos += System.nanoTime() - now;
+            }
+          }
         } catch (InterruptedException ignored) { }
       }
 
@@ -8546,9 +9117,33 @@ public class PGraphics extends PImage implements PConstants {
             try {
               long startTime = System.nanoTime();
               renderer.processImageBeforeAsyncSave(target);
-              target.save(file.getAbsolutePath());
-              long saveNanos = System.nanoTime() - startTime;
+              long convertTime = System.nanoTime();
+
+              long encodeTime;
+              Codec codec = getCodec(file);
+              if (codec != null) {
+                ByteArrayOutputStream bytes = encodeBuffer.get();
+                bytes.reset();
+                codec.write(target, bytes);
+                encodeTime = System.nanoTime();
+                PApplet.createPath(file);
+                try (OutputStream output = new FileOutputStream(file)) {
+                  bytes.writeTo(output);
+                }
+              } else {
+                target.save(file.getAbsolutePath());
+                encodeTime = System.nanoTime();
+              }
+              long endTime = System.nanoTime();
+
+              long saveNanos = endTime - startTime;
               synchronized (AsyncImageSaver.this) {
+                stageNanos[STAGE_COPY] += copyNanos;
+                stageNanos[STAGE_CONVERT] += convertTime - startTime;
+                stageNanos[STAGE_ENCODE] += encodeTime - convertTime;
+                stageNanos[STAGE_WRITE] += endTime - encodeTime;
+                savedCount++;
+
                 if (avgNanos == 0) {
                   avgNanos = saveNanos;
                 } else if (saveNanos < avgNanos) {
@@ -8558,6 +9153,14 @@ public class PGraphics extends PImage implements PConstants {
                   avgNanos = saveNanos;
                 }
               }
+            } catch (Exception e) {
+              // a broken codec is reported like a failed write, so that
+              // the failure is counted and the target is given back
+              synchronized (AsyncImageSaver.this) {
+                failedCount++;
+              }
+              System.err.println("Error while saving " + file);
+              e.printStackTrace();
             } finally {
               targetPool.offer(target);
               synchronized (runningTasksLock) {
@@ -8586,6 +9189,55 @@ public class PGraphics extends PImage implements PConstants {
       }
     }
 
+
+    /** Number of images being saved or waiting to be. */
+    public int getQueueDepth() {  // ignore
+      synchronized (runningTasksLock) {
+        return runningTasks.size();
+      }
+    }
+
+
+    public synchronized int getSavedCount() {  // ignore
+      return savedCount;
+    }
+
+
+    /** Number of images dropped because all the targets were busy. */
+    public synchronized int getDroppedCount() {  // ignore
+      return droppedCount;
+    }
+
+
+    /** Number of images that could not be written. */
+    public synchronized int getFailedCount() {  // ignore
+      return failedCount;
+    }
+
+
+    /**
+     * Total time spent in one stage by all the saved images, where stage
+     * is STAGE_COPY, STAGE_CONVERT, STAGE_ENCODE or STAGE_WRITE.
+     */
+    public synchronized long getStageNanos(int stage) {  // ignore
+      return stageNanos[stage];
+    }
+
+
+    /** Total time the sketch was slowed down to let the encoders catch up. */
+    public synchronized long getThrottleNanos() {  // ignore
+      return throttleNanos;
+    }
+
+
+    public synchronized void resetStatistics() {  // ignore
+      Arrays.fill(stageNanos, 0);
+      throttleNanos = 0;
+      savedCount = 0;
+      droppedCount = 0;
+      failedCount = 0;
+    }
+
   }
 
 }
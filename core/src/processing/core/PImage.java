@@ -2813,185 +2813,283 @@ int testFunction(int dst, int src) {
    * A version of this function is in MovieMaker.java. Any fixes here
    * should be applied over in MovieMaker as well.
    * <p>
-   * Known issue with RLE encoding and odd behavior in some apps:
+   * The whole file is read into memory first, and decoded from there.
+   * RLE images used to be loaded upside down, which may have been
    * https://github.com/processing/processing/issues/2096
-   * Please help!
    */
   static public PImage loadTGA(InputStream input) throws IOException {  // ignore
-    byte[] header = new byte[18];
-    int offset = 0;
-    do {
-      int count = input.read(header, offset, header.length - offset);
-      if (count == -1) return null;
-      offset += count;
-    } while (offset < 18);
+    byte[] data = PApplet.loadBytes(input);
+    input.close();
+    if (data == null) {
+      throw new IOException("Could not read .tga file");
+    }
+    return loadTGA(data);
+  }
+
+
+  /**
+   * Reads a TGA file that's already in memory, straight into the pixels[]
+   * of a new image. Returns null if the file is too short or in a format
+   * that's not supported.
+   */
+  static public PImage loadTGA(byte[] data) {  // ignore
+    if (data.length < 18) return null;
 
     /*
-      header[2] image type code
+      data[0] length of the image ID field that follows the header
+
+      data[2] image type code
       2  (0x02) - Uncompressed, RGB images.
       3  (0x03) - Uncompressed, black and white images.
       10 (0x0A) - Run-length encoded RGB images.
       11 (0x0B) - Compressed, black and white images. (grayscale?)
 
-      header[16] is the bit depth (8, 24, 32)
+      data[16] is the bit depth (8, 24, 32)
 
-      header[17] image descriptor (packed bits)
+      data[17] image descriptor (packed bits)
       0x20 is 32 = origin upper-left
-      0x28 is 32 + 8 = origin upper-left + 32 bits
+      0x08 is 8 = bits of alpha
 
         7  6  5  4  3  2  1  0
       128 64 32 16  8  4  2  1
     */
 
+    int type = data[2];
+    int depth = data[16];
     int format = 0;
 
-    if (((header[2] == 3) || (header[2] == 11)) &&  // B&W, plus RLE or not
-        (header[16] == 8) &&  // 8 bits
-        ((header[17] == 0x8) || (header[17] == 0x28))) {  // origin, 32 bit
+    if (((type == 3) || (type == 11)) && (depth == 8)) {  // B&W, RLE or not
       format = ALPHA;
 
-    } else if (((header[2] == 2) || (header[2] == 10)) &&  // RGB, RLE or not
-               (header[16] == 24) &&  // 24 bits
-               ((header[17] == 0x20) || (header[17] == 0))) {  // origin
+    } else if (((type == 2) || (type == 10)) && (depth == 24)) {
       format = RGB;
 
-    } else if (((header[2] == 2) || (header[2] == 10)) &&
-               (header[16] == 32) &&
-               ((header[17] == 0x8) || (header[17] == 0x28))) {  // origin, 32
+    } else if (((type == 2) || (type == 10)) && (depth == 32)) {
       format = ARGB;
     }
 
-    if (format == 0) {
+    if (format == 0 || data[1] != 0) {  // no color maps either
       System.err.println("Unknown .tga file format");
       return null;
     }
 
-    int w = ((header[13] & 0xff) << 8) + (header[12] & 0xff);
-    int h = ((header[15] & 0xff) << 8) + (header[14] & 0xff);
+    int w = ((data[13] & 0xff) << 8) + (data[12] & 0xff);
+    int h = ((data[15] & 0xff) << 8) + (data[14] & 0xff);
     PImage outgoing = new PImage(w, h, format);
+    int[] px = outgoing.pixels;
+    int bytesPerPixel = depth / 8;
 
-    // where "reversed" means upper-left corner (normal for most of
-    // the modernized world, but "reversed" for the tga spec)
-    //boolean reversed = (header[17] & 0x20) != 0;
-    // https://github.com/processing/processing/issues/1682
-    boolean reversed = (header[17] & 0x20) == 0;
-
-    if ((header[2] == 2) || (header[2] == 3)) {  // not RLE encoded
-      if (reversed) {
-        int index = (h-1) * w;
-        switch (format) {
-        case ALPHA:
-          for (int y = h-1; y >= 0; y--) {
-            for (int x = 0; x < w; x++) {
-              outgoing.pixels[index + x] = input.read();
-            }
-            index -= w;
-          }
-          break;
-        case RGB:
-          for (int y = h-1; y >= 0; y--) {
-            for (int x = 0; x < w; x++) {
-              outgoing.pixels[index + x] =
-                input.read() | (input.read() << 8) | (input.read() << 16) |
-                0xff000000;
-            }
-            index -= w;
-          }
-          break;
-        case ARGB:
-          for (int y = h-1; y >= 0; y--) {
-            for (int x = 0; x < w; x++) {
-              outgoing.pixels[index + x] =
-                input.read() | (input.read() << 8) | (input.read() << 16) |
-                (input.read() << 24);
-            }
-            index -= w;
-          }
+    int index = 0;
+    int offset = 18 + (data[0] & 0xff);
+    boolean rle = (type == 10) || (type == 11);
+    try {
+      while (index < px.length) {
+        // a packet of pixels that repeat, or that are stored one by one
+        int count = 1;
+        boolean repeat = false;
+        if (rle) {
+          int num = data[offset++] & 0xff;
+          repeat = (num & 0x80) != 0;
+          count = Math.min((num & 0x7f) + 1, px.length - index);
+        } else {
+          count = px.length;
         }
-      } else {  // not reversed
-        int count = w * h;
-        switch (format) {
-        case ALPHA:
-          for (int i = 0; i < count; i++) {
-            outgoing.pixels[i] = input.read();
+        int stop = index + count;
+        if (repeat) {
+          int pixel = readTGAPixel(data, offset, format);
+          offset += bytesPerPixel;
+          while (index < stop) {
+            px[index++] = pixel;
           }
-          break;
-        case RGB:
-          for (int i = 0; i < count; i++) {
-            outgoing.pixels[i] =
-              input.read() | (input.read() << 8) | (input.read() << 16) |
-              0xff000000;
+        } else {
+          while (index < stop) {
+            px[index++] = readTGAPixel(data, offset, format);
+            offset += bytesPerPixel;
           }
-          break;
-        case ARGB:
-          for (int i = 0; i < count; i++) {
-            outgoing.pixels[i] =
-              input.read() | (input.read() << 8) | (input.read() << 16) |
-              (input.read() << 24);
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      System.err.println("The .tga file is truncated");
+      return null;
+    }
+
+    // rows are stored bottom to top, unless the origin is upper-left
+    // https://github.com/processing/processing/issues/1682
+    boolean reversed = (data[17] & 0x20) == 0;
+    if (reversed) {
+      int[] temp = new int[w];
+      for (int y = 0; y < h/2; y++) {
+        int z = (h-1) - y;
+        System.arraycopy(px, y*w, temp, 0, w);
+        System.arraycopy(px, z*w, px, y*w, w);
+        System.arraycopy(temp, 0, px, z*w, w);
+      }
+    }
+    return outgoing;
+  }
+
+
+  static private int readTGAPixel(byte[] data, int offset, int format) {
+    switch (format) {
+    case ALPHA:
+      return data[offset] & 0xff;
+    case RGB:
+      return 0xff000000 | (data[offset] & 0xff) |
+        ((data[offset + 1] & 0xff) << 8) | ((data[offset + 2] & 0xff) << 16);
+    default:  // ARGB
+      return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8) |
+        ((data[offset + 2] & 0xff) << 16) | ((data[offset + 3] & 0xff) << 24);
+    }
+  }
+
+
+  /**
+   * Reads an uncompressed TIFF file with 8-bit gray, gray and alpha, RGB
+   * or RGBA pixels stored in strips, like the ones written by ImageIO and
+   * most image editors when compression is turned off. Returns null for
+   * anything else, which can be read with ImageIO instead.
+   */
+  static public PImage loadTIFF(byte[] tiff) {  // ignore
+    try {
+      if (tiff.length < 8) return null;
+      boolean little;
+      if (tiff[0] == 'I' && tiff[1] == 'I') {
+        little = true;
+      } else if (tiff[0] == 'M' && tiff[1] == 'M') {
+        little = false;
+      } else {
+        return null;
+      }
+      if (readTIFF(tiff, 2, 2, little) != 42) return null;
+
+      int width = 0, height = 0;
+      int samples = 1;
+      int compression = 1, photometric = -1, planar = 1, predictor = 1;
+      int rowsPerStrip = Integer.MAX_VALUE;
+      int extraSamples = 0;
+      int[] stripOffsets = null, stripCounts = null;
+
+      int ifd = readTIFF(tiff, 4, 4, little);
+      int entries = readTIFF(tiff, ifd, 2, little);
+      for (int i = 0; i < entries; i++) {
+        int entry = ifd + 2 + i * 12;
+        int tag = readTIFF(tiff, entry, 2, little);
+        int[] values = readTIFFValues(tiff, entry, little);
+        if (values == null || values.length == 0) continue;
+
+        switch (tag) {
+        case 256: width = values[0]; break;
+        case 257: height = values[0]; break;
+        case 258:
+          for (int bits : values) {
+            if (bits != 8) return null;
           }
           break;
+        case 259: compression = values[0]; break;
+        case 262: photometric = values[0]; break;
+        case 273: stripOffsets = values; break;
+        case 277: samples = values[0]; break;
+        case 278: rowsPerStrip = values[0]; break;
+        case 279: stripCounts = values; break;
+        case 284: planar = values[0]; break;
+        case 317: predictor = values[0]; break;
+        case 338: extraSamples = values[0]; break;
         }
       }
 
-    } else {  // header[2] is 10 or 11
-      int index = 0;
-      int[] px = outgoing.pixels;
+      boolean gray = (photometric == 0 || photometric == 1) &&
+        (samples == 1 || samples == 2);
+      boolean color = (photometric == 2) && (samples == 3 || samples == 4);
+      if (compression != 1 || planar != 1 || predictor != 1 ||
+          !(gray || color) || stripOffsets == null ||
+          width <= 0 || height <= 0) {
+        return null;
+      }
+      boolean alpha = (samples == 2 || samples == 4);
+      boolean premultiplied = alpha && extraSamples == 1;
 
-      while (index < px.length) {
-        int num = input.read();
-        boolean isRLE = (num & 0x80) != 0;
-        if (isRLE) {
-          num -= 127;  // (num & 0x7F) + 1
-          int pixel = switch (format) {
-            case ALPHA -> input.read();
-            case RGB -> 0xFF000000 |
-              input.read() | (input.read() << 8) | (input.read() << 16);
-            case ARGB -> input.read() |
-              (input.read() << 8) | (input.read() << 16) | (input.read() << 24);
-            default -> 0;
-          };
-          for (int i = 0; i < num; i++) {
-            px[index++] = pixel;
-            if (index == px.length) break;
+      PImage outgoing = new PImage(width, height, alpha ? ARGB : RGB);
+      int[] px = outgoing.pixels;
+      int rowBytes = width * samples;
+      int index = 0;
+      int y = 0;
+      for (int strip = 0; strip < stripOffsets.length && y < height; strip++) {
+        int offset = stripOffsets[strip];
+        int rows = Math.min(rowsPerStrip, height - y);
+        if (stripCounts != null && strip < stripCounts.length) {
+          rows = Math.min(rows, stripCounts[strip] / rowBytes);
+        }
+        int stop = index + rows * width;
+        while (index < stop) {
+          int r, g, b, a = 0xff;
+          if (gray) {
+            r = g = b = (photometric == 0) ?
+              255 - (tiff[offset] & 0xff) : tiff[offset] & 0xff;
+          } else {
+            r = tiff[offset] & 0xff;
+            g = tiff[offset + 1] & 0xff;
+            b = tiff[offset + 2] & 0xff;
           }
-        } else {  // write up to 127 bytes as uncompressed
-          num += 1;
-          switch (format) {
-          case ALPHA:
-            for (int i = 0; i < num; i++) {
-              px[index++] = input.read();
-            }
-            break;
-          case RGB:
-            for (int i = 0; i < num; i++) {
-              px[index++] = 0xFF000000 |
-                input.read() | (input.read() << 8) | (input.read() << 16);
-              //(is.read() << 16) | (is.read() << 8) | is.read();
+          if (alpha) {
+            a = tiff[offset + samples - 1] & 0xff;
+            if (premultiplied && a != 0 && a != 0xff) {
+              r = Math.min(255, r * 255 / a);
+              g = Math.min(255, g * 255 / a);
+              b = Math.min(255, b * 255 / a);
             }
-            break;
-          case ARGB:
-            for (int i = 0; i < num; i++) {
-              px[index++] = input.read() | //(is.read() << 24) |
-                (input.read() << 8) | (input.read() << 16) | (input.read() << 24);
-              //(is.read() << 16) | (is.read() << 8) | is.read();
-            }
-            break;
           }
+          px[index++] = (a << 24) | (r << 16) | (g << 8) | b;
+          offset += samples;
         }
+        y += rows;
       }
+      if (y < height) return null;
+      return outgoing;
 
-      if (!reversed) {
-        int[] temp = new int[w];
-        for (int y = 0; y < h/2; y++) {
-          int z = (h-1) - y;
-          System.arraycopy(px, y*w, temp, 0, w);
-          System.arraycopy(px, z*w, px, y*w, w);
-          System.arraycopy(temp, 0, px, z*w, w);
-        }
-      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      System.err.println("The .tif file is truncated");
+      return null;
     }
-    input.close();
-    return outgoing;
+  }
+
+
+  static private int readTIFF(byte[] tiff, int offset, int size,
+                              boolean little) {
+    int value = 0;
+    for (int i = 0; i < size; i++) {
+      int b = tiff[offset + (little ? size - 1 - i : i)] & 0xff;
+      value = (value << 8) | b;
+    }
+    return value;
+  }
+
+
+  // Returns the BYTE, SHORT or LONG values of an IFD entry
+  static private int[] readTIFFValues(byte[] tiff, int entry, boolean little) {
+    int type = readTIFF(tiff, entry + 2, 2, little);
+    int count = readTIFF(tiff, entry + 4, 4, little);
+    int size = (type == 1) ? 1 : (type == 3) ? 2 : (type == 4) ? 4 : 0;
+    if (size == 0 || count < 0 || count > tiff.length / size) return null;
+
+    // values that fit in four bytes are stored in the entry itself
+    int offset = (count * size <= 4) ?
+      entry + 8 : readTIFF(tiff, entry + 8, 4, little);
+    int[] values = new int[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = readTIFF(tiff, offset + i * size, size, little);
+    }
+    return values;
+  }
+
+
+  /**
+   * Writes the image as a PNG, without going through ImageIO. The rows are
+   * filtered and compressed in parallel for large images. To choose the
+   * compression level or the filters, use a PNGEncoder directly.
+   */
+  protected boolean savePNG(OutputStream output) throws IOException {
+    new PNGEncoder().write(this, output);
+    return true;
   }
 
 
@@ -3237,6 +3335,11 @@ int testFunction(int dst, int src) {
         success = saveTGA(os); //, pixels, width, height, format);
         os.close();
 
+      } else if (lower.endsWith(".png")) {
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(path), 32768);
+        success = savePNG(os);
+        os.close();
+
       } else {
         // TODO Imperfect, possibly temporary solution for 4.x releases
         //      https://github.com/processing/processing4/wiki/Exorcising-AWT
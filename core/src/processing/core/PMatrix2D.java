@@ -420,6 +420,72 @@ public class PMatrix2D implements PMatrix {
   }
 
 
+  /**
+   * Multiplies count points stored in src, every stride floats starting at
+   * srcOff, by this matrix, and stores the results in dst at the same
+   * stride starting at dstOff. Only x and y are read and written. This is
+   * the same as calling mult() on every point, without the overhead. src
+   * and dst can be the same array, as long as the offsets are the same too.
+   * Very large batches are split across several threads.
+   */
+  public void multAll(float[] src, int srcOff, float[] dst, int dstOff,
+                      int count, int stride) {
+    if (MatrixBatch.isParallel(2, src, srcOff, dst, dstOff, count, stride)) {
+      MatrixBatch.run(this::multPoints, src, srcOff, dst, dstOff,
+                      count, stride);
+    } else {
+      multPoints(src, srcOff, dst, dstOff, count, stride);
+    }
+  }
+
+
+  /**
+   * Same as multAll(), for directions such as normals, which are rotated
+   * and scaled but not translated.
+   */
+  public void multAllDirections(float[] src, int srcOff, float[] dst, int dstOff,
+                                int count, int stride) {
+    if (MatrixBatch.isParallel(2, src, srcOff, dst, dstOff, count, stride)) {
+      MatrixBatch.run(this::multDirections, src, srcOff, dst, dstOff,
+                      count, stride);
+    } else {
+      multDirections(src, srcOff, dst, dstOff, count, stride);
+    }
+  }
+
+
+  // The loops copy the matrix to locals, so that it stays in registers
+
+  protected void multPoints(float[] src, int srcOff, float[] dst, int dstOff,
+                            int count, int stride) {
+    float n00 = m00, n01 = m01, n02 = m02;
+    float n10 = m10, n11 = m11, n12 = m12;
+    for (int i = 0; i < count; i++) {
+      float x = src[srcOff];
+      float y = src[srcOff + 1];
+      dst[dstOff]     = n00*x + n01*y + n02;
+      dst[dstOff + 1] = n10*x + n11*y + n12;
+      srcOff += stride;
+      dstOff += stride;
+    }
+  }
+
+
+  protected void multDirections(float[] src, int srcOff, float[] dst, int dstOff,
+                                int count, int stride) {
+    float n00 = m00, n01 = m01;
+    float n10 = m10, n11 = m11;
+    for (int i = 0; i < count; i++) {
+      float x = src[srcOff];
+      float y = src[srcOff + 1];
+      dst[dstOff]     = n00*x + n01*y;
+      dst[dstOff + 1] = n10*x + n11*y;
+      srcOff += stride;
+      dstOff += stride;
+    }
+  }
+
+
 
   /**
    * Unavailable in 2D. Does nothing.
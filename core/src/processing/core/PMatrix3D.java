@@ -616,6 +616,115 @@ public final class PMatrix3D implements PMatrix /*, PConstants*/ {
   }
 
 
+  /**
+   * Multiplies count points stored in src, every stride floats starting at
+   * srcOff, by this matrix, and stores the results in dst at the same
+   * stride starting at dstOff. Each point is x, y, z with an implied w of 1,
+   * and only x, y and z are written. This is the same as calling mult() on
+   * every point, without the overhead. src and dst can be the same array,
+   * as long as the offsets are the same too. Very large batches are split
+   * across several threads.
+   */
+  public void multAll(float[] src, int srcOff, float[] dst, int dstOff,
+                      int count, int stride) {
+    if (MatrixBatch.isParallel(3, src, srcOff, dst, dstOff, count, stride)) {
+      MatrixBatch.run(this::multPoints, src, srcOff, dst, dstOff,
+                      count, stride);
+    } else {
+      multPoints(src, srcOff, dst, dstOff, count, stride);
+    }
+  }
+
+
+  /**
+   * Same as multAll(), for vectors with four components x, y, z, w, that
+   * are all written.
+   */
+  public void multAllHomogeneous(float[] src, int srcOff, float[] dst, int dstOff,
+                                 int count, int stride) {
+    if (MatrixBatch.isParallel(4, src, srcOff, dst, dstOff, count, stride)) {
+      MatrixBatch.run(this::multHomogeneous, src, srcOff, dst, dstOff,
+                      count, stride);
+    } else {
+      multHomogeneous(src, srcOff, dst, dstOff, count, stride);
+    }
+  }
+
+
+  /**
+   * Same as multAll(), for directions such as normals, which are rotated
+   * and scaled but not translated.
+   */
+  public void multAllDirections(float[] src, int srcOff, float[] dst, int dstOff,
+                                int count, int stride) {
+    if (MatrixBatch.isParallel(3, src, srcOff, dst, dstOff, count, stride)) {
+      MatrixBatch.run(this::multDirections, src, srcOff, dst, dstOff,
+                      count, stride);
+    } else {
+      multDirections(src, srcOff, dst, dstOff, count, stride);
+    }
+  }
+
+
+  // The loops copy the matrix to locals, so that it stays in registers
+
+  protected void multPoints(float[] src, int srcOff, float[] dst, int dstOff,
+                            int count, int stride) {
+    float n00 = m00, n01 = m01, n02 = m02, n03 = m03;
+    float n10 = m10, n11 = m11, n12 = m12, n13 = m13;
+    float n20 = m20, n21 = m21, n22 = m22, n23 = m23;
+    for (int i = 0; i < count; i++) {
+      float x = src[srcOff];
+      float y = src[srcOff + 1];
+      float z = src[srcOff + 2];
+      dst[dstOff]     = n00*x + n01*y + n02*z + n03;
+      dst[dstOff + 1] = n10*x + n11*y + n12*z + n13;
+      dst[dstOff + 2] = n20*x + n21*y + n22*z + n23;
+      srcOff += stride;
+      dstOff += stride;
+    }
+  }
+
+
+  protected void multHomogeneous(float[] src, int srcOff, float[] dst, int dstOff,
+                                 int count, int stride) {
+    float n00 = m00, n01 = m01, n02 = m02, n03 = m03;
+    float n10 = m10, n11 = m11, n12 = m12, n13 = m13;
+    float n20 = m20, n21 = m21, n22 = m22, n23 = m23;
+    float n30 = m30, n31 = m31, n32 = m32, n33 = m33;
+    for (int i = 0; i < count; i++) {
+      float x = src[srcOff];
+      float y = src[srcOff + 1];
+      float z = src[srcOff + 2];
+      float w = src[srcOff + 3];
+      dst[dstOff]     = n00*x + n01*y + n02*z + n03*w;
+      dst[dstOff + 1] = n10*x + n11*y + n12*z + n13*w;
+      dst[dstOff + 2] = n20*x + n21*y + n22*z + n23*w;
+      dst[dstOff + 3] = n30*x + n31*y + n32*z + n33*w;
+      srcOff += stride;
+      dstOff += stride;
+    }
+  }
+
+
+  protected void multDirections(float[] src, int srcOff, float[] dst, int dstOff,
+                                int count, int stride) {
+    float n00 = m00, n01 = m01, n02 = m02;
+    float n10 = m10, n11 = m11, n12 = m12;
+    float n20 = m20, n21 = m21, n22 = m22;
+    for (int i = 0; i < count; i++) {
+      float x = src[srcOff];
+      float y = src[srcOff + 1];
+      float z = src[srcOff + 2];
+      dst[dstOff]     = n00*x + n01*y + n02*z;
+      dst[dstOff + 1] = n10*x + n11*y + n12*z;
+      dst[dstOff + 2] = n20*x + n21*y + n22*z;
+      srcOff += stride;
+      dstOff += stride;
+    }
+  }
+
+
   /**
    * Transpose this matrix; rows become columns and columns rows.
    */
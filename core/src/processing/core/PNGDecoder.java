@@ -0,0 +1,360 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+/**
+ * Reads PNG files straight into the pixels[] of a PImage, without going
+ * through AWT or ImageIO. The compressed data is inflated into a single
+ * buffer of the exact size of the filtered rows, which are then unfiltered
+ * and converted to ARGB in place.
+ * <p>
+ * All the color types and bit depths are supported, with transparency
+ * from tRNS chunks. 16-bit samples are reduced to 8 bits. Interlaced
+ * images are not supported, and gamma and color profiles are ignored.
+ */
+public class PNGDecoder {
+
+  static protected final int GRAY = 0;
+  static protected final int TRUECOLOR = 2;
+  static protected final int INDEXED = 3;
+  static protected final int GRAY_ALPHA = 4;
+  static protected final int TRUECOLOR_ALPHA = 6;
+
+
+  /**
+   * Returns true if the data starts with the PNG signature.
+   */
+  static public boolean isPNG(byte[] data) {
+    if (data == null || data.length < 8) return false;
+    for (int i = 0; i < 8; i++) {
+      if (data[i] != PNGEncoder.SIGNATURE[i]) return false;
+    }
+    return true;
+  }
+
+
+  /**
+   * Decodes a PNG file. Returns null if the image is interlaced, which is
+   * left to ImageIO, and throws an IOException if the data is not valid.
+   * The image is RGB unless some pixels are not opaque.
+   */
+  static public PImage decode(byte[] data) throws IOException {
+    if (!isPNG(data)) {
+      throw new IOException("Not a PNG file");
+    }
+
+    int width = 0, height = 0;
+    int depth = 0, colorType = -1;
+    int[] palette = null;
+    byte[] transparency = null;
+
+    Inflater inflater = new Inflater();
+    byte[] filtered = null;
+    int inflated = 0;
+
+    try {
+      int offset = 8;
+      while (offset + 8 <= data.length) {
+        int length = readInt(data, offset);
+        int type = readInt(data, offset + 4);
+        int start = offset + 8;
+        if (length < 0 || start + length > data.length) {
+          throw new IOException("Truncated PNG file");
+        }
+
+        if (type == IHDR) {
+          width = readInt(data, start);
+          height = readInt(data, start + 4);
+          depth = data[start + 8];
+          colorType = data[start + 9];
+          if (data[start + 12] != 0) {
+            return null;  // interlaced
+          }
+          if (width <= 0 || height <= 0 ||
+              (long) width * height > Integer.MAX_VALUE - 8) {
+            throw new IOException("Bad PNG size " + width + " x " + height);
+          }
+          // Room for the filter byte and the samples of each row
+          long size = (long) height * (1 + rowBytes(width, depth, colorType));
+          if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("PNG image too large");
+          }
+          filtered = new byte[(int) size];
+
+        } else if (type == PLTE) {
+          palette = new int[256];
+          for (int i = 0; i < length / 3; i++) {
+            int p = start + i * 3;
+            palette[i] = 0xff000000 | ((data[p] & 0xff) << 16) |
+              ((data[p + 1] & 0xff) << 8) | (data[p + 2] & 0xff);
+          }
+
+        } else if (type == tRNS) {
+          transparency = new byte[length];
+          System.arraycopy(data, start, transparency, 0, length);
+
+        } else if (type == IDAT) {
+          if (filtered == null) {
+            throw new IOException("IDAT before IHDR in PNG file");
+          }
+          inflater.setInput(data, start, length);
+          while (!inflater.needsInput() && !inflater.finished() &&
+                 inflated < filtered.length) {
+            if (inflater.needsDictionary()) {
+              throw new IOException("Bad compressed data in PNG file");
+            }
+            inflated += inflater.inflate(filtered, inflated,
+                                         filtered.length - inflated);
+          }
+
+        } else if (type == IEND) {
+          break;
+        }
+        offset = start + length + 4;  // skip the CRC
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Bad compressed data in PNG file", e);
+    } finally {
+      inflater.end();
+    }
+
+    if (filtered == null || inflated < filtered.length) {
+      throw new IOException("Missing image data in PNG file");
+    }
+    if (colorType == INDEXED && palette == null) {
+      throw new IOException("Missing palette in PNG file");
+    }
+
+    PImage image = new PImage(width, height, PConstants.RGB);
+    unfilter(filtered, width, height, depth, colorType);
+    convert(filtered, image.pixels, width, height, depth, colorType,
+            palette, transparency);
+    image.checkAlpha();
+    return image;
+  }
+
+
+  static protected final int IHDR = 0x49484452;
+  static protected final int PLTE = 0x504c5445;
+  static protected final int tRNS = 0x74524e53;
+  static protected final int IDAT = 0x49444154;
+  static protected final int IEND = 0x49454e44;
+
+
+  static protected int readInt(byte[] data, int offset) {
+    return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) |
+      ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+  }
+
+
+  static protected int readShort(byte[] data, int offset) {
+    return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+  }
+
+
+  static protected int samplesPerPixel(int colorType) throws IOException {
+    switch (colorType) {
+    case GRAY: return 1;
+    case TRUECOLOR: return 3;
+    case INDEXED: return 1;
+    case GRAY_ALPHA: return 2;
+    case TRUECOLOR_ALPHA: return 4;
+    }
+    throw new IOException("Unknown PNG color type " + colorType);
+  }
+
+
+  static protected int rowBytes(int width, int depth,
+                                int colorType) throws IOException {
+    boolean valid = (depth == 8) ||
+      (depth == 16 && colorType != INDEXED) ||
+      ((depth == 1 || depth == 2 || depth == 4) &&
+       (colorType == GRAY || colorType == INDEXED));
+    if (!valid) {
+      throw new IOException("Bad PNG bit depth " + depth +
+                            " for color type " + colorType);
+    }
+    long bits = (long) width * samplesPerPixel(colorType) * depth;
+    return (int) ((bits + 7) / 8);
+  }
+
+
+  // Undoes the filter of each row, leaving the samples without the filter
+  // bytes, packed at the start of the buffer
+  static protected void unfilter(byte[] data, int width, int height,
+                                 int depth, int colorType) throws IOException {
+    int rowBytes = rowBytes(width, depth, colorType);
+    // distance to the corresponding byte of the pixel on the left
+    int bpp = Math.max(1, samplesPerPixel(colorType) * depth / 8);
+
+    int prior = -1;  // start of the previous row, already unfiltered
+    int dest = 0;
+    for (int y = 0; y < height; y++) {
+      int src = y * (rowBytes + 1);
+      int filter = data[src++];
+      // shift the row over the filter bytes, so that rows end up packed
+      System.arraycopy(data, src, data, dest, rowBytes);
+
+      switch (filter) {
+      case PNGEncoder.FILTER_NONE:
+        break;
+      case PNGEncoder.FILTER_SUB:
+        for (int i = bpp; i < rowBytes; i++) {
+          data[dest + i] += data[dest + i - bpp];
+        }
+        break;
+      case PNGEncoder.FILTER_UP:
+        if (prior != -1) {
+          for (int i = 0; i < rowBytes; i++) {
+            data[dest + i] += data[prior + i];
+          }
+        }
+        break;
+      case PNGEncoder.FILTER_AVERAGE:
+        for (int i = 0; i < rowBytes; i++) {
+          int left = (i >= bpp) ? data[dest + i - bpp] & 0xff : 0;
+          int up = (prior != -1) ? data[prior + i] & 0xff : 0;
+          data[dest + i] += (byte) ((left + up) >> 1);
+        }
+        break;
+      case PNGEncoder.FILTER_PAETH:
+        for (int i = 0; i < rowBytes; i++) {
+          int a = (i >= bpp) ? data[dest + i - bpp] & 0xff : 0;
+          int b = (prior != -1) ? data[prior + i] & 0xff : 0;
+          int c = (i >= bpp && prior != -1) ? data[prior + i - bpp] & 0xff : 0;
+          int p = a + b - c;
+          int pa = Math.abs(p - a);
+          int pb = Math.abs(p - b);
+          int pc = Math.abs(p - c);
+          int predictor = (pa <= pb && pa <= pc) ? a : (pb <= pc) ? b : c;
+          data[dest + i] += (byte) predictor;
+        }
+        break;
+      default:
+        throw new IOException("Unknown PNG filter " + filter);
+      }
+      prior = dest;
+      dest += rowBytes;
+    }
+  }
+
+
+  // Converts the unfiltered samples to ARGB pixels
+  static protected void convert(byte[] data, int[] pixels,
+                                int width, int height, int depth, int colorType,
+                                int[] palette, byte[] transparency) throws IOException {
+    int rowBytes = rowBytes(width, depth, colorType);
+
+    // 16-bit samples are read from their high byte
+    int step = (depth == 16) ? 2 : 1;
+
+    // Single transparent color of gray and truecolor images, as 8 bits.
+    // 16-bit colors that differ only in their low byte are not told apart.
+    int transparent = -1;
+    if (transparency != null) {
+      int shift = (depth == 16) ? 8 : 0;
+      if (colorType == GRAY && transparency.length >= 2) {
+        int gray = readShort(transparency, 0) >> shift;
+        if (depth < 8) {
+          gray *= 255 / ((1 << depth) - 1);
+        }
+        transparent = 0xff000000 | (gray * 0x010101);
+
+      } else if (colorType == TRUECOLOR && transparency.length >= 6) {
+        int r = readShort(transparency, 0) >> shift;
+        int g = readShort(transparency, 2) >> shift;
+        int b = readShort(transparency, 4) >> shift;
+        transparent = 0xff000000 | (r << 16) | (g << 8) | b;
+      }
+    }
+    if (colorType == INDEXED && transparency != null) {
+      for (int i = 0; i < transparency.length && i < 256; i++) {
+        palette[i] = (palette[i] & 0xffffff) | ((transparency[i] & 0xff) << 24);
+      }
+    }
+
+    int index = 0;
+    for (int y = 0; y < height; y++) {
+      int p = y * rowBytes;
+      switch (colorType) {
+      case GRAY:
+      case INDEXED:
+        if (depth < 8) {
+          int max = (1 << depth) - 1;
+          int scale = 255 / max;
+          int perByte = 8 / depth;
+          for (int x = 0; x < width; x++) {
+            int b = data[p + x / perByte] & 0xff;
+            int shift = 8 - depth * (x % perByte + 1);
+            int value = (b >> shift) & max;
+            pixels[index++] = (colorType == INDEXED) ?
+              palette[value] : 0xff000000 | (value * scale * 0x010101);
+          }
+        } else {
+          for (int x = 0; x < width; x++) {
+            int value = data[p] & 0xff;
+            p += step;
+            pixels[index++] = (colorType == INDEXED) ?
+              palette[value] : 0xff000000 | (value * 0x010101);
+          }
+        }
+        break;
+      case TRUECOLOR:
+        for (int x = 0; x < width; x++) {
+          pixels[index++] = 0xff000000 | ((data[p] & 0xff) << 16) |
+            ((data[p + step] & 0xff) << 8) | (data[p + 2*step] & 0xff);
+          p += 3 * step;
+        }
+        break;
+      case GRAY_ALPHA:
+        for (int x = 0; x < width; x++) {
+          pixels[index++] = ((data[p + step] & 0xff) << 24) |
+            ((data[p] & 0xff) * 0x010101);
+          p += 2 * step;
+        }
+        break;
+      case TRUECOLOR_ALPHA:
+        for (int x = 0; x < width; x++) {
+          pixels[index++] = ((data[p + 3*step] & 0xff) << 24) |
+            ((data[p] & 0xff) << 16) | ((data[p + step] & 0xff) << 8) |
+            (data[p + 2*step] & 0xff);
+          p += 4 * step;
+        }
+        break;
+      }
+    }
+
+    if (transparent != -1) {
+      for (int i = 0; i < pixels.length; i++) {
+        if (pixels[i] == transparent) {
+          pixels[i] &= 0xffffff;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,406 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+/**
+ * Writes PNG files straight from the pixels[] of a PImage. Large images are
+ * split into blocks of rows that are filtered and compressed in parallel,
+ * then joined into a single zlib stream: each block but the last ends with
+ * a sync flush, so the compressed blocks can simply be concatenated, and
+ * their checksums are combined at the end.
+ * <p>
+ * RGB images are written with 8-bit RGB samples, ARGB images with RGBA,
+ * and ALPHA images as 8-bit grayscale, like saveTGA() does.
+ */
+public class PNGEncoder {
+  /** Each row is stored as it is. */
+  static public final int FILTER_NONE = 0;
+  /** Each byte is stored as its difference to the byte on its left. */
+  static public final int FILTER_SUB = 1;
+  /** Each byte is stored as its difference to the byte above it. */
+  static public final int FILTER_UP = 2;
+  static public final int FILTER_AVERAGE = 3;
+  static public final int FILTER_PAETH = 4;
+  /**
+   * Picks the filter that gives the smallest differences for each row,
+   * which usually compresses best.
+   */
+  static public final int FILTER_ADAPTIVE = 5;
+
+  // Rows are compressed in blocks of at least this many bytes,
+  // in parallel when there is more than one block
+  static protected final int BLOCK_SIZE = 1 << 18;
+
+  static protected final byte[] SIGNATURE = {
+    (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'
+  };
+
+  protected int level;
+  protected int filter;
+  protected float dpi = 100;
+
+
+  /**
+   * Uses the default compression level and adaptive filtering.
+   */
+  public PNGEncoder() {
+    this(Deflater.DEFAULT_COMPRESSION, FILTER_ADAPTIVE);
+  }
+
+
+  /**
+   * @param level compression level, from 0 (none, fastest) to 9 (smallest),
+   *              or -1 for the default of zlib
+   * @param filter one of FILTER_NONE, FILTER_SUB, FILTER_UP, FILTER_AVERAGE,
+   *               FILTER_PAETH or FILTER_ADAPTIVE
+   */
+  public PNGEncoder(int level, int filter) {
+    if (level < -1 || level > 9) {
+      throw new IllegalArgumentException("Compression levels go from 0 to 9");
+    }
+    if (filter < FILTER_NONE || filter > FILTER_ADAPTIVE) {
+      throw new IllegalArgumentException("Unknown PNG filter " + filter);
+    }
+    this.level = level;
+    this.filter = filter;
+  }
+
+
+  /**
+   * Sets the resolution stored in the file, 100 dots per inch by default,
+   * like images saved with ImageIO.
+   */
+  public void setDPI(float dpi) {
+    this.dpi = dpi;
+  }
+
+
+  public boolean save(PImage image, String path) throws IOException {
+    File file = new File(path);
+    PApplet.createPath(file);
+    try (OutputStream output =
+           new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+      write(image, output);
+    }
+    return true;
+  }
+
+
+  /**
+   * Writes the image as a PNG. The pixels must be loaded, and the stream
+   * is not closed.
+   */
+  public void write(PImage image, OutputStream output) throws IOException {
+    int width = image.pixelWidth;
+    int height = image.pixelHeight;
+    int bytesPerPixel = bytesPerPixel(image.format);
+    int rowSize = 1 + width * bytesPerPixel;
+
+    DataOutputStream out = new DataOutputStream(output);
+    out.write(SIGNATURE);
+
+    ByteArrayOutputStream ihdr = new ByteArrayOutputStream(13);
+    DataOutputStream header = new DataOutputStream(ihdr);
+    header.writeInt(width);
+    header.writeInt(height);
+    header.writeByte(8);  // bit depth
+    int colorType = (image.format == PConstants.ARGB) ? 6 :
+      (image.format == PConstants.ALPHA) ? 0 : 2;
+    header.writeByte(colorType);
+    header.writeByte(0);  // deflate
+    header.writeByte(0);  // adaptive filtering
+    header.writeByte(0);  // no interlace
+    writeChunk(out, "IHDR", ihdr.toByteArray(), 0, ihdr.size());
+
+    if (dpi > 0) {
+      ByteArrayOutputStream phys = new ByteArrayOutputStream(9);
+      DataOutputStream units = new DataOutputStream(phys);
+      int perMeter = Math.round(dpi / 0.0254f);
+      units.writeInt(perMeter);
+      units.writeInt(perMeter);
+      units.writeByte(1);  // meters
+      writeChunk(out, "pHYs", phys.toByteArray(), 0, phys.size());
+    }
+
+    int rowsPerBlock = Math.max(1, BLOCK_SIZE / rowSize);
+    int blockCount = (height + rowsPerBlock - 1) / rowsPerBlock;
+    Block[] blocks = new Block[blockCount];
+    for (int i = 0; i < blockCount; i++) {
+      int first = i * rowsPerBlock;
+      int last = Math.min(height, first + rowsPerBlock);
+      blocks[i] = new Block(image, first, last, i == blockCount - 1);
+    }
+    if (blockCount == 1) {
+      blocks[0].invoke();
+    } else {
+      for (Block block : blocks) {
+        ForkJoinPool.commonPool().execute(block);
+      }
+    }
+
+    // zlib header for a 32K window, with the level set for information
+    int flevel = (level == -1 || level == 6) ? 2 : (level < 2) ? 0 :
+      (level < 6) ? 1 : 3;
+    int cmf = 0x78;
+    int flg = flevel << 6;
+    flg += 31 - ((cmf << 8) + flg) % 31;
+
+    long adler = 1;
+    for (int i = 0; i < blockCount; i++) {
+      byte[] data = blocks[i].join();
+      int length = blocks[i].compressedLength;
+      adler = adler32Combine(adler, blocks[i].adler,
+                             (long) (blocks[i].last - blocks[i].first) * rowSize);
+      blocks[i] = null;  // let the compressed data go
+
+      ByteArrayOutputStream chunk = new ByteArrayOutputStream(length + 6);
+      if (i == 0) {
+        chunk.write(cmf);
+        chunk.write(flg);
+      }
+      chunk.write(data, 0, length);
+      if (i == blockCount - 1) {
+        chunk.write((int) (adler >>> 24));
+        chunk.write((int) (adler >>> 16));
+        chunk.write((int) (adler >>> 8));
+        chunk.write((int) adler);
+      }
+      writeChunk(out, "IDAT", chunk.toByteArray(), 0, chunk.size());
+    }
+
+    writeChunk(out, "IEND", new byte[0], 0, 0);
+    out.flush();
+  }
+
+
+  static protected int bytesPerPixel(int format) {
+    return (format == PConstants.ARGB) ? 4 : (format == PConstants.ALPHA) ? 1 : 3;
+  }
+
+
+  static protected void writeChunk(DataOutputStream out, String type,
+                                   byte[] data, int offset, int length) throws IOException {
+    byte[] name = type.getBytes("US-ASCII");
+    CRC32 crc = new CRC32();
+    crc.update(name);
+    crc.update(data, offset, length);
+    out.writeInt(length);
+    out.write(name);
+    out.write(data, offset, length);
+    out.writeInt((int) crc.getValue());
+  }
+
+
+  /**
+   * Returns the Adler-32 checksum of two sequences of bytes joined together,
+   * from the checksums of each, as adler32_combine() in zlib.
+   */
+  static protected long adler32Combine(long adler1, long adler2, long length2) {
+    final long BASE = 65521;
+    long rem = length2 % BASE;
+    long sum1 = adler1 & 0xffff;
+    long sum2 = (rem * sum1) % BASE;
+    sum1 += (adler2 & 0xffff) + BASE - 1;
+    sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + BASE - rem;
+    if (sum1 >= BASE) sum1 -= BASE;
+    if (sum1 >= BASE) sum1 -= BASE;
+    if (sum2 >= (BASE << 1)) sum2 -= (BASE << 1);
+    if (sum2 >= BASE) sum2 -= BASE;
+    return sum1 | (sum2 << 16);
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // BLOCKS OF ROWS
+
+
+  // Filters and compresses the rows from first to last, and returns the
+  // compressed bytes, of which compressedLength are used
+  protected class Block extends RecursiveTask<byte[]> {
+    static private final long serialVersionUID = 1L;
+
+    PImage image;
+    int first, last;
+    boolean finish;
+    long adler;
+    int compressedLength;
+
+    Block(PImage image, int first, int last, boolean finish) {
+      this.image = image;
+      this.first = first;
+      this.last = last;
+      this.finish = finish;
+    }
+
+    @Override
+    protected byte[] compute() {
+      int width = image.pixelWidth;
+      int bpp = bytesPerPixel(image.format);
+      int rowBytes = width * bpp;
+      byte[] filtered = new byte[(last - first) * (rowBytes + 1)];
+
+      byte[] prior = new byte[rowBytes];
+      byte[] current = new byte[rowBytes];
+      byte[][] candidates = (filter == FILTER_ADAPTIVE) ?
+        new byte[5][rowBytes] : null;
+      if (first > 0) {
+        readRow(first - 1, prior);
+      }
+
+      int offset = 0;
+      for (int y = first; y < last; y++) {
+        readRow(y, current);
+        int type = filter;
+        if (filter == FILTER_ADAPTIVE) {
+          long best = Long.MAX_VALUE;
+          for (int f = FILTER_NONE; f <= FILTER_PAETH; f++) {
+            filterRow(f, current, prior, bpp, candidates[f], 0);
+            long sum = 0;
+            for (byte b : candidates[f]) {
+              sum += Math.abs(b);
+            }
+            if (sum < best) {
+              best = sum;
+              type = f;
+            }
+          }
+          filtered[offset] = (byte) type;
+          System.arraycopy(candidates[type], 0, filtered, offset + 1, rowBytes);
+        } else {
+          filtered[offset] = (byte) type;
+          filterRow(type, current, prior, bpp, filtered, offset + 1);
+        }
+        offset += rowBytes + 1;
+
+        byte[] temp = prior;
+        prior = current;
+        current = temp;
+      }
+
+      Adler32 checksum = new Adler32();
+      checksum.update(filtered, 0, filtered.length);
+      adler = checksum.getValue();
+
+      Deflater deflater = new Deflater(level, true);
+      byte[] out = new byte[filtered.length / 2 + 64];
+      int length = 0;
+      deflater.setInput(filtered);
+      if (finish) {
+        deflater.finish();
+      }
+      while (true) {
+        if (length == out.length) {
+          out = PApplet.expand(out);
+        }
+        int count = finish ?
+          deflater.deflate(out, length, out.length - length) :
+          deflater.deflate(out, length, out.length - length, Deflater.SYNC_FLUSH);
+        length += count;
+        if (finish ? deflater.finished() : length < out.length) {
+          break;
+        }
+      }
+      deflater.end();
+      compressedLength = length;
+      return out;
+    }
+
+    void readRow(int y, byte[] row) {
+      int[] pixels = image.pixels;
+      int index = y * image.pixelWidth;
+      int width = image.pixelWidth;
+      int format = image.format;
+      int i = 0;
+      for (int x = 0; x < width; x++) {
+        int argb = pixels[index + x];
+        if (format == PConstants.ALPHA) {
+          row[i++] = (byte) argb;
+        } else {
+          row[i++] = (byte) (argb >> 16);
+          row[i++] = (byte) (argb >> 8);
+          row[i++] = (byte) argb;
+          if (format == PConstants.ARGB) {
+            row[i++] = (byte) (argb >>> 24);
+          }
+        }
+      }
+    }
+  }
+
+
+  static protected void filterRow(int type, byte[] row, byte[] prior, int bpp,
+                                  byte[] out, int offset) {
+    int length = row.length;
+    switch (type) {
+    case FILTER_NONE:
+      System.arraycopy(row, 0, out, offset, length);
+      break;
+    case FILTER_SUB:
+      for (int i = 0; i < length; i++) {
+        int left = (i >= bpp) ? row[i - bpp] : 0;
+        out[offset + i] = (byte) (row[i] - left);
+      }
+      break;
+    case FILTER_UP:
+      for (int i = 0; i < length; i++) {
+        out[offset + i] = (byte) (row[i] - prior[i]);
+      }
+      break;
+    case FILTER_AVERAGE:
+      for (int i = 0; i < length; i++) {
+        int left = (i >= bpp) ? row[i - bpp] & 0xff : 0;
+        int up = prior[i] & 0xff;
+        out[offset + i] = (byte) (row[i] - ((left + up) >> 1));
+      }
+      break;
+    case FILTER_PAETH:
+      for (int i = 0; i < length; i++) {
+        int a = (i >= bpp) ? row[i - bpp] & 0xff : 0;
+        int b = prior[i] & 0xff;
+        int c = (i >= bpp) ? prior[i - bpp] & 0xff : 0;
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        int predictor = (pa <= pb && pa <= pc) ? a : (pb <= pc) ? b : c;
+        out[offset + i] = (byte) (row[i] - predictor);
+      }
+      break;
+    }
+  }
+}
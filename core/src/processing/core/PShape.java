@@ -25,6 +25,7 @@ package processing.core;
 import java.awt.Image;
 import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -206,16 +207,45 @@ public class PShape implements PConstants {
 
   protected int vertexCount;
   /**
-   * When drawing POLYGON shapes, the second param is an array of length
-   * VERTEX_FIELD_COUNT. When drawing PATH shapes, the second param has only
-   * two variables.
+   * Vertex data, stored one vertex after the other in a single array. Each
+   * vertex takes vertexStride floats, with the fields in the same order as
+   * the vertices of PGraphics. PATH shapes usually only store the x and y
+   * coordinates, so their stride is 2.
    */
+  protected float[] vertexData;
+  protected int vertexStride;
+
+  /**
+   * @deprecated The vertices are stored in vertexData. Subclasses that
+   * still fill this array, one float[] per vertex, get it copied into
+   * vertexData when the shape is drawn or its vertices are used. Shapes
+   * loaded from SVG and OBJ files fill it with a copy of their vertices.
+   * Changes made to the arrays in place are only seen if the field is set
+   * again, use setVertex() to edit the vertices instead. The edits made
+   * with setVertex() and setVertices() are also copied here.
+   */
+  @Deprecated
   protected float[][] vertices;
+  // The vertices array last copied into vertexData
+  private float[][] adoptedVertices;
 
   protected PShape parent;
   protected int childCount;
   protected PShape[] children;
 
+  /**
+   * Bounding box of this shape and its children as minX, minY, maxX, maxY,
+   * in the coordinates of its parent. Computed when needed, and set back to
+   * null by invalidateBounds() when the shape changes.
+   */
+  protected float[] bounds;
+  /** Inverse of the matrix, used to bring points into this shape. */
+  protected PMatrix inverseMatrix;
+  /** Bounding volume hierarchy over the children of a large group. */
+  protected ShapeIndex childIndex;
+  /** Groups with fewer children are searched without an index. */
+  static protected final int MIN_INDEXED_CHILDREN = 8;
+
 
   /** Array of VERTEX, BEZIER_VERTEX, and CURVE_VERTEX calls. */
   protected int vertexCodeCount;
@@ -455,6 +485,7 @@ public class PShape implements PConstants {
    */
   public void disableStyle() {
     style = false;
+    invalidateBounds();
 
     for (int i = 0; i < childCount; i++) {
       children[i].disableStyle();
@@ -476,6 +507,7 @@ public class PShape implements PConstants {
    */
   public void enableStyle() {
     style = true;
+    invalidateBounds();
 
     for (int i = 0; i < childCount; i++) {
       children[i].enableStyle();
@@ -713,12 +745,7 @@ public class PShape implements PConstants {
 
 
   public void vertex(float x, float y) {
-    if (vertices == null) {
-      vertices = new float[10][2];
-    } else if (vertices.length == vertexCount) {
-      vertices = (float[][]) PApplet.expand(vertices);
-    }
-    vertices[vertexCount++] = new float[] { x, y };
+    appendVertex(x, y);
 
     if (vertexCodes == null) {
       vertexCodes = new int[10];
@@ -823,6 +850,7 @@ public class PShape implements PConstants {
 
     // this is the state of the shape
     openShape = false;
+    invalidateBounds();
   }
 
 
@@ -1295,14 +1323,9 @@ public class PShape implements PConstants {
   public void bezierVertex(float x2, float y2,
                            float x3, float y3,
                            float x4, float y4) {
-    if (vertices == null) {
-      vertices = new float[10][];
-    } else if (vertexCount + 2 >= vertices.length) {
-      vertices = (float[][]) PApplet.expand(vertices);
-    }
-    vertices[vertexCount++] = new float[] { x2, y2 };
-    vertices[vertexCount++] = new float[] { x3, y3 };
-    vertices[vertexCount++] = new float[] { x4, y4 };
+    appendVertex(x2, y2);
+    appendVertex(x3, y3);
+    appendVertex(x4, y4);
 
     // vertexCodes must be allocated because a vertex() call is required
     if (vertexCodes.length == vertexCodeCount) {
@@ -1327,13 +1350,8 @@ public class PShape implements PConstants {
 
   public void quadraticVertex(float cx, float cy,
                               float x3, float y3) {
-    if (vertices == null) {
-      vertices = new float[10][];
-    } else if (vertexCount + 1 >= vertices.length) {
-      vertices = (float[][]) PApplet.expand(vertices);
-    }
-    vertices[vertexCount++] = new float[] { cx, cy };
-    vertices[vertexCount++] = new float[] { x3, y3 };
+    appendVertex(cx, cy);
+    appendVertex(x3, y3);
 
     // vertexCodes must be allocated because a vertex() call is required
     if (vertexCodes.length == vertexCodeCount) {
@@ -1370,12 +1388,7 @@ public class PShape implements PConstants {
 
 
   public void curveVertex(float x, float y) {
-    if (vertices == null) {
-      vertices = new float[10][];
-    } else if (vertexCount >= vertices.length) {
-      vertices = (float[][]) PApplet.expand(vertices);
-    }
-    vertices[vertexCount++] = new float[] { x, y };
+    appendVertex(x, y);
 
     if (vertexCodes == null) {
       vertexCodes = new int[10];
@@ -1542,15 +1555,18 @@ public class PShape implements PConstants {
 
   // TODO unapproved
   static protected void copyGeometry(PShape src, PShape dest) {
+    src.adoptVertices();
     dest.beginShape(src.getKind());
 
     copyMatrix(src, dest);
     copyStyles(src, dest);
     copyImage(src, dest);
 
+    float[] vert = new float[PGraphics.VERTEX_FIELD_COUNT];
+    int count = PApplet.min(src.vertexStride, vert.length);
     if (src.style) {
       for (int i = 0; i < src.vertexCount; i++) {
-        float[] vert = src.vertices[i];
+        System.arraycopy(src.vertexData, i * src.vertexStride, vert, 0, count);
 
         dest.fill((int)(vert[PGraphics.A] * 255) << 24 |
                   (int)(vert[PGraphics.R] * 255) << 16 |
@@ -1576,7 +1592,7 @@ public class PShape implements PConstants {
       }
     } else {
       for (int i = 0; i < src.vertexCount; i++) {
-        float[] vert = src.vertices[i];
+        System.arraycopy(src.vertexData, i * src.vertexStride, vert, 0, count);
         if (vert[Z] == 0) {
           dest.vertex(vert[X], vert[Y]);
         } else {
@@ -1591,11 +1607,13 @@ public class PShape implements PConstants {
 
   // TODO unapproved
   static protected void copyPath(PShape src, PShape dest) {
+    src.adoptVertices();
     copyMatrix(src, dest);
     copyStyles(src, dest);
     copyImage(src, dest);
     dest.close = src.close;
-    dest.setPath(src.vertexCount, src.vertices, src.vertexCodeCount, src.vertexCodes);
+    dest.setPath(src.vertexCount, src.vertexStride, src.vertexData,
+                 src.vertexCodeCount, src.vertexCodes);
   }
 
 
@@ -1650,6 +1668,7 @@ public class PShape implements PConstants {
    */
   public void draw(PGraphics g) {
     if (visible) {
+      adoptVertices();
       pre(g);
       drawImpl(g);
       post(g);
@@ -1676,6 +1695,30 @@ public class PShape implements PConstants {
 
 
   protected void drawGroup(PGraphics g) {
+    if (MIN_INDEXED_CHILDREN <= childCount) {
+      ShapeIndex.Scratch scratch = ShapeIndex.scratch();
+      float[] view = scratch.view;
+      if (g.getVisibleBounds(view)) {
+        // Children without their own style are drawn with the current stroke
+        float margin = g.stroke ? strokeMargin(g.strokeWeight, g.strokeJoin) : 0;
+        int start = scratch.top;
+        int count = childIndex().query(view[0] - margin, view[1] - margin,
+                                       view[2] + margin, view[3] + margin,
+                                       scratch);
+        // Keep the drawing order of the children that are visible
+        Arrays.sort(scratch.found, start, start + count);
+        scratch.top = start + count;
+        try {
+          for (int i = start; i < start + count; i++) {
+            // groups drawn by the children may grow the array
+            children[scratch.found[i]].draw(g);
+          }
+        } finally {
+          scratch.top = start;
+        }
+        return;
+      }
+    }
     for (int i = 0; i < childCount; i++) {
       children[i].draw(g);
     }
@@ -1777,6 +1820,9 @@ public class PShape implements PConstants {
     int codeIndex = 0;
 
     if (style) {
+      // PGraphics expects all the fields of the vertex
+      float[] vert = new float[PGraphics.VERTEX_FIELD_COUNT];
+      int count = PApplet.min(vertexStride, vert.length);
       for (int i = 0; i < vertexCount; i++) {
         if (vertexCodes[codeIndex++] == BREAK) {
           if (insideContour) {
@@ -1786,7 +1832,8 @@ public class PShape implements PConstants {
           insideContour = true;
         }
 
-        g.vertex(vertices[i]);
+        System.arraycopy(vertexData, i * vertexStride, vert, 0, count);
+        g.vertex(vert);
       }
     } else {
       for (int i = 0; i < vertexCount; i++) {
@@ -1798,11 +1845,12 @@ public class PShape implements PConstants {
           insideContour = true;
         }
 
-        float[] vert = vertices[i];
-        if (vert.length < 3 || vert[Z] == 0) {
-          g.vertex(vert[X], vert[Y]);
+        int index = i * vertexStride;
+        if (vertexStride < 3 || vertexData[index + Z] == 0) {
+          g.vertex(vertexData[index + X], vertexData[index + Y]);
         } else {
-          g.vertex(vert[X], vert[Y], vert[Z]);
+          g.vertex(vertexData[index + X], vertexData[index + Y],
+                   vertexData[index + Z]);
         }
       }
     }
@@ -1871,49 +1919,57 @@ public class PShape implements PConstants {
   protected void drawPath(PGraphics g) {
     // Paths might be empty (go figure)
     // https://download.processing.org/bugzilla/982.html
-    if (vertices == null) return;
+    if (vertexData == null) return;
 
+    // draw() adopted the vertices already, so they're read directly
+    float[] data = vertexData;
+    int stride = vertexStride;
     boolean insideContour = false;
     g.beginShape();
 
     if (vertexCodeCount == 0) {  // each point is a simple vertex
-      if (vertices[0].length == 2) {  // drawing 2D vertices
+      if (stride == 2) {  // drawing 2D vertices
         for (int i = 0; i < vertexCount; i++) {
-          g.vertex(vertices[i][X], vertices[i][Y]);
+          int p = i * stride;
+          g.vertex(data[p + X], data[p + Y]);
         }
       } else {  // drawing 3D vertices
         for (int i = 0; i < vertexCount; i++) {
-          g.vertex(vertices[i][X], vertices[i][Y], vertices[i][Z]);
+          int p = i * stride;
+          g.vertex(data[p + X], data[p + Y], data[p + Z]);
         }
       }
 
     } else {  // coded set of vertices
       int index = 0;
 
-      if (vertices[0].length == 2) {  // drawing a 2D path
+      if (stride == 2) {  // drawing a 2D path
         for (int j = 0; j < vertexCodeCount; j++) {
+          int p = index * stride;
+          int q = p + stride;
+          int r = q + stride;
           switch (vertexCodes[j]) {
 
           case VERTEX:
-            g.vertex(vertices[index][X], vertices[index][Y]);
+            g.vertex(data[p + X], data[p + Y]);
             index++;
             break;
 
           case QUADRATIC_VERTEX:
-            g.quadraticVertex(vertices[index][X], vertices[index][Y],
-                              vertices[index+1][X], vertices[index+1][Y]);
+            g.quadraticVertex(data[p + X], data[p + Y],
+                              data[q + X], data[q + Y]);
             index += 2;
             break;
 
           case BEZIER_VERTEX:
-            g.bezierVertex(vertices[index][X], vertices[index][Y],
-                           vertices[index+1][X], vertices[index+1][Y],
-                           vertices[index+2][X], vertices[index+2][Y]);
+            g.bezierVertex(data[p + X], data[p + Y],
+                           data[q + X], data[q + Y],
+                           data[r + X], data[r + Y]);
             index += 3;
             break;
 
           case CURVE_VERTEX:
-            g.curveVertex(vertices[index][X], vertices[index][Y]);
+            g.curveVertex(data[p + X], data[p + Y]);
             index++;
             break;
 
@@ -1927,29 +1983,32 @@ public class PShape implements PConstants {
         }
       } else {  // drawing a 3D path
         for (int j = 0; j < vertexCodeCount; j++) {
+          int p = index * stride;
+          int q = p + stride;
+          int r = q + stride;
           switch (vertexCodes[j]) {
 
           case VERTEX:
-            g.vertex(vertices[index][X], vertices[index][Y], vertices[index][Z]);
+            g.vertex(data[p + X], data[p + Y], data[p + Z]);
             index++;
             break;
 
           case QUADRATIC_VERTEX:
-            g.quadraticVertex(vertices[index][X], vertices[index][Y], vertices[index][Z],
-                              vertices[index+1][X], vertices[index+1][Y], vertices[index+1][Z]);
+            g.quadraticVertex(data[p + X], data[p + Y], data[p + Z],
+                              data[q + X], data[q + Y], data[q + Z]);
             index += 2;
             break;
 
 
           case BEZIER_VERTEX:
-            g.bezierVertex(vertices[index][X], vertices[index][Y], vertices[index][Z],
-                           vertices[index+1][X], vertices[index+1][Y], vertices[index+1][Z],
-                           vertices[index+2][X], vertices[index+2][Y], vertices[index+2][Z]);
+            g.bezierVertex(data[p + X], data[p + Y], data[p + Z],
+                           data[q + X], data[q + Y], data[q + Z],
+                           data[r + X], data[r + Y], data[r + Z]);
             index += 3;
             break;
 
           case CURVE_VERTEX:
-            g.curveVertex(vertices[index][X], vertices[index][Y], vertices[index][Z]);
+            g.curveVertex(data[p + X], data[p + Y], data[p + Z]);
             index++;
             break;
 
@@ -2160,6 +2219,7 @@ public class PShape implements PConstants {
     }
     children[childCount++] = who;
     who.parent = this;
+    invalidateBounds();
 
     if (who.getName() != null) {
       addName(who.getName(), who);
@@ -2186,6 +2246,7 @@ public class PShape implements PConstants {
       children[idx] = who;
 
       who.parent = this;
+      invalidateBounds();
 
       if (who.getName() != null) {
         addName(who.getName(), who);
@@ -2206,6 +2267,7 @@ public class PShape implements PConstants {
         children[i] = children[i + 1];
       }
       childCount--;
+      invalidateBounds();
 
       if (child.getName() != null && nameTable != null) {
         nameTable.remove(child.getName());
@@ -2306,6 +2368,7 @@ public class PShape implements PConstants {
       return;
     }
     PApplet.arrayCopy(source, params);
+    invalidateBounds();
   }
 
 
@@ -2319,17 +2382,195 @@ public class PShape implements PConstants {
     if (0 < ccount && (codes == null || codes.length < ccount)) return;
 
     int ndim = verts[0].length;
-    vertexCount = vcount;
-    vertices = new float[vertexCount][ndim];
-    for (int i = 0; i < vertexCount; i++) {
-      PApplet.arrayCopy(verts[i], vertices[i]);
+    float[] data = new float[vcount * ndim];
+    for (int i = 0; i < vcount; i++) {
+      int count = PApplet.min(ndim, verts[i].length);
+      System.arraycopy(verts[i], 0, data, i * ndim, count);
     }
+    setPath(vcount, ndim, data, ccount, codes);
+  }
+
+
+  protected void setPath(int vcount, int stride, float[] data,
+                         int ccount, int[] codes) {
+    if (data == null || data.length < vcount * stride) return;
+    if (0 < ccount && (codes == null || codes.length < ccount)) return;
+
+    vertexCount = vcount;
+    vertexStride = stride;
+    vertexData = new float[vertexCount * vertexStride];
+    System.arraycopy(data, 0, vertexData, 0, vertexData.length);
 
     vertexCodeCount = ccount;
     if (0 < vertexCodeCount) {
       vertexCodes = new int[vertexCodeCount];
       PApplet.arrayCopy(codes, vertexCodes, vertexCodeCount);
     }
+    invalidateBounds();
+  }
+
+
+  /**
+   * Returns the number of floats used by each vertex in the arrays of
+   * getVertices() and setVertices().
+   */
+  public int getVertexStride() {
+    adoptVertices();
+    return vertexStride;
+  }
+
+
+  /**
+   * Copies the data of all the vertices into dst, getVertexStride() floats
+   * per vertex. A new array is returned if dst is null or too small.
+   */
+  public float[] getVertices(float[] dst) {
+    adoptVertices();
+    int length = vertexCount * vertexStride;
+    if (dst == null || dst.length < length) {
+      dst = new float[length];
+    }
+    if (0 < length) {
+      System.arraycopy(vertexData, 0, dst, 0, length);
+    }
+    return dst;
+  }
+
+
+  /**
+   * Replaces the data of the vertices with the contents of src, which
+   * holds getVertexStride() floats per vertex. The number of vertices
+   * can't change, use beginShape() and endShape() to create new ones.
+   */
+  public void setVertices(float[] src) {
+    if (openShape) {
+      PGraphics.showWarning(INSIDE_BEGIN_END_ERROR, "setVertices()");
+      return;
+    }
+    adoptVertices();
+
+    int length = vertexCount * vertexStride;
+    if (src.length < length) {
+      throw new IllegalArgumentException("setVertices() needs " + length +
+                                         " values, but only " + src.length +
+                                         " were given");
+    }
+    if (0 < length) {
+      System.arraycopy(src, 0, vertexData, 0, length);
+    }
+    updateDeprecatedVertices();
+    invalidateBounds();
+  }
+
+
+  // Fills the deprecated vertices array with a copy of vertexData, for the
+  // code that still reads it.
+  @SuppressWarnings("deprecation")
+  protected void fillDeprecatedVertices() {
+    float[][] verts = new float[vertexCount][vertexStride];
+    for (int i = 0; i < vertexCount; i++) {
+      System.arraycopy(vertexData, i * vertexStride, verts[i], 0, vertexStride);
+    }
+    vertices = verts;
+    adoptedVertices = verts;
+  }
+
+
+  // Copies vertexData into the arrays of the deprecated vertices, after
+  // it was replaced as a whole.
+  @SuppressWarnings("deprecation")
+  private void updateDeprecatedVertices() {
+    float[][] verts = vertices;
+    if (verts != null && verts == adoptedVertices) {
+      for (int i = 0; i < vertexCount; i++) {
+        int count = PApplet.min(vertexStride, verts[i].length);
+        System.arraycopy(vertexData, i * vertexStride, verts[i], 0, count);
+      }
+    }
+  }
+
+
+  // Copies the vertices that a subclass set the old way into vertexData.
+  @SuppressWarnings("deprecation")
+  protected void adoptVertices() {
+    float[][] verts = vertices;
+    if (verts != adoptedVertices) {
+      adoptedVertices = verts;
+      if (verts != null && 0 < vertexCount && verts.length >= vertexCount) {
+        int stride = verts[0].length;
+        float[] data = new float[vertexCount * stride];
+        for (int i = 0; i < vertexCount; i++) {
+          int count = PApplet.min(stride, verts[i].length);
+          System.arraycopy(verts[i], 0, data, i * stride, count);
+        }
+        vertexStride = stride;
+        vertexData = data;
+        invalidateBounds();
+      }
+    }
+  }
+
+
+  protected void checkVertexIndex(int index) {
+    adoptVertices();
+    if (index < 0 || vertexCount <= index) {
+      throw new ArrayIndexOutOfBoundsException("Vertex index " + index +
+                                               " is out of bounds for " +
+                                               vertexCount + " vertices");
+    }
+  }
+
+
+  /**
+   * Returns a field of a vertex (X, Y, Z, PGraphics.U, etc), or 0 if the
+   * vertices of this shape don't store that field.
+   */
+  protected float vertexField(int index, int field) {
+    checkVertexIndex(index);
+    if (field < vertexStride) {
+      return vertexData[vertexStride * index + field];
+    }
+    return 0;
+  }
+
+
+  /**
+   * Sets a field of a vertex. Setting a field that the vertices of this
+   * shape don't store, like z on a 2D path, is only allowed for 0.
+   */
+  @SuppressWarnings("deprecation")
+  protected void setVertexField(int index, int field, float value) {
+    checkVertexIndex(index);
+    if (field < vertexStride) {
+      vertexData[vertexStride * index + field] = value;
+      // keep the copy in the deprecated array up to date
+      float[][] verts = vertices;
+      if (verts != null && verts == adoptedVertices &&
+          field < verts[index].length) {
+        verts[index][field] = value;
+      }
+    } else if (value != 0 && value == value) {
+      if (field == Z) {
+        throw new IllegalArgumentException("Cannot set a z-coordinate on a 2D shape");
+      }
+      throw new IllegalArgumentException("The vertices of this shape " +
+                                         "only have " + vertexStride +
+                                         " fields, cannot set field " + field);
+    }
+  }
+
+
+  // Adds a vertex at the end of a path, growing the array when needed.
+  protected void appendVertex(float x, float y) {
+    if (vertexData == null) {
+      vertexStride = 2;
+      vertexData = new float[10 * vertexStride];
+    } else if (vertexData.length < (vertexCount + 1) * vertexStride) {
+      vertexData = PApplet.expand(vertexData, vertexData.length << 1);
+    }
+    int index = vertexStride * vertexCount++;
+    vertexData[index + X] = x;
+    vertexData[index + Y] = y;
   }
 
   /**
@@ -2374,30 +2615,25 @@ public class PShape implements PConstants {
    */
   public PVector getVertex(int index, PVector vec) {
     if (vec == null) vec = new PVector();
-    float[] vert = vertices[index];
-    vec.x = vert[X];
-    vec.y = vert[Y];
-    if (vert.length > 2) {
-      vec.z = vert[Z];
-    } else {
-      vec.z = 0;  // in case this isn't a new vector
-    }
+    vec.x = vertexField(index, X);
+    vec.y = vertexField(index, Y);
+    vec.z = vertexField(index, Z);  // 0 for 2D vertices
     return vec;
   }
 
 
   public float getVertexX(int index) {
-    return vertices[index][X];
+    return vertexField(index, X);
   }
 
 
   public float getVertexY(int index) {
-    return vertices[index][Y];
+    return vertexField(index, Y);
   }
 
 
   public float getVertexZ(int index) {
-    return vertices[index][Z];
+    return vertexField(index, Z);
   }
 
 
@@ -2421,8 +2657,9 @@ public class PShape implements PConstants {
       return;
     }
 
-    vertices[index][X] = x;
-    vertices[index][Y] = y;
+    setVertexField(index, X, x);
+    setVertexField(index, Y, y);
+    invalidateBounds();
   }
 
 
@@ -2435,9 +2672,10 @@ public class PShape implements PConstants {
       return;
     }
 
-    vertices[index][X] = x;
-    vertices[index][Y] = y;
-    vertices[index][Z] = z;
+    setVertexField(index, X, x);
+    setVertexField(index, Y, y);
+    setVertexField(index, Z, z);
+    invalidateBounds();
   }
 
 
@@ -2450,14 +2688,10 @@ public class PShape implements PConstants {
       return;
     }
 
-    vertices[index][X] = vec.x;
-    vertices[index][Y] = vec.y;
-
-    if (vertices[index].length > 2) {
-      vertices[index][Z] = vec.z;
-    } else if (vec.z != 0 && vec.z == vec.z) {
-      throw new IllegalArgumentException("Cannot set a z-coordinate on a 2D shape");
-    }
+    setVertexField(index, X, vec.x);
+    setVertexField(index, Y, vec.y);
+    setVertexField(index, Z, vec.z);
+    invalidateBounds();
   }
 
 
@@ -2468,25 +2702,25 @@ public class PShape implements PConstants {
 
   public PVector getNormal(int index, PVector vec) {
     if (vec == null) vec = new PVector();
-    vec.x = vertices[index][PGraphics.NX];
-    vec.y = vertices[index][PGraphics.NY];
-    vec.z = vertices[index][PGraphics.NZ];
+    vec.x = vertexField(index, PGraphics.NX);
+    vec.y = vertexField(index, PGraphics.NY);
+    vec.z = vertexField(index, PGraphics.NZ);
     return vec;
   }
 
 
   public float getNormalX(int index) {
-    return vertices[index][PGraphics.NX];
+    return vertexField(index, PGraphics.NX);
   }
 
 
   public float getNormalY(int index) {
-    return vertices[index][PGraphics.NY];
+    return vertexField(index, PGraphics.NY);
   }
 
 
   public float getNormalZ(int index) {
-    return vertices[index][PGraphics.NZ];
+    return vertexField(index, PGraphics.NZ);
   }
 
 
@@ -2496,19 +2730,19 @@ public class PShape implements PConstants {
       return;
     }
 
-    vertices[index][PGraphics.NX] = nx;
-    vertices[index][PGraphics.NY] = ny;
-    vertices[index][PGraphics.NZ] = nz;
+    setVertexField(index, PGraphics.NX, nx);
+    setVertexField(index, PGraphics.NY, ny);
+    setVertexField(index, PGraphics.NZ, nz);
   }
 
 
   public float getTextureU(int index) {
-    return vertices[index][PGraphics.U];
+    return vertexField(index, PGraphics.U);
   }
 
 
   public float getTextureV(int index) {
-    return vertices[index][PGraphics.V];
+    return vertexField(index, PGraphics.V);
   }
 
 
@@ -2519,15 +2753,14 @@ public class PShape implements PConstants {
     }
 
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null ||
-        index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "setTextureUV()");
       return;
     }
 
 
-    vertices[index][PGraphics.U] = u;
-    vertices[index][PGraphics.V] = v;
+    setVertexField(index, PGraphics.U, u);
+    setVertexField(index, PGraphics.V, v);
   }
 
 
@@ -2553,17 +2786,16 @@ public class PShape implements PConstants {
 
   public int getFill(int index) {
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null ||
-        index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "getFill()");
       return fillColor;
     }
 
     if (image == null) {
-      int a = (int) (vertices[index][PGraphics.A] * 255);
-      int r = (int) (vertices[index][PGraphics.R] * 255);
-      int g = (int) (vertices[index][PGraphics.G] * 255);
-      int b = (int) (vertices[index][PGraphics.B] * 255);
+      int a = (int) (vertexField(index, PGraphics.A) * 255);
+      int r = (int) (vertexField(index, PGraphics.R) * 255);
+      int g = (int) (vertexField(index, PGraphics.G) * 255);
+      int b = (int) (vertexField(index, PGraphics.B) * 255);
       return (a << 24) | (r << 16) | (g << 8) | b;
     } else {
       return 0;
@@ -2605,7 +2837,7 @@ public class PShape implements PConstants {
 
     this.fillColor = fill;
 
-    if (vertices != null && perVertexStyles) {
+    if (vertexData != null && perVertexStyles) {
       for (int i = 0; i < vertexCount; i++) {
         setFill(i, fill);
       }
@@ -2627,32 +2859,32 @@ public class PShape implements PConstants {
     }
 
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null || index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "getFill()");
       return;
     }
 
     if (image == null) {
-      vertices[index][PGraphics.A] = ((fill >> 24) & 0xFF) / 255.0f;
-      vertices[index][PGraphics.R] = ((fill >> 16) & 0xFF) / 255.0f;
-      vertices[index][PGraphics.G] = ((fill >>  8) & 0xFF) / 255.0f;
-      vertices[index][PGraphics.B] = (fill & 0xFF) / 255.0f;
+      setVertexField(index, PGraphics.A, ((fill >> 24) & 0xFF) / 255.0f);
+      setVertexField(index, PGraphics.R, ((fill >> 16) & 0xFF) / 255.0f);
+      setVertexField(index, PGraphics.G, ((fill >>  8) & 0xFF) / 255.0f);
+      setVertexField(index, PGraphics.B, (fill & 0xFF) / 255.0f);
     }
   }
 
 
   public int getTint(int index) {
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null || index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "getTint()");
       return this.tintColor;
     }
 
     if (image != null) {
-      int a = (int) (vertices[index][PGraphics.A] * 255);
-      int r = (int) (vertices[index][PGraphics.R] * 255);
-      int g = (int) (vertices[index][PGraphics.G] * 255);
-      int b = (int) (vertices[index][PGraphics.B] * 255);
+      int a = (int) (vertexField(index, PGraphics.A) * 255);
+      int r = (int) (vertexField(index, PGraphics.R) * 255);
+      int g = (int) (vertexField(index, PGraphics.G) * 255);
+      int b = (int) (vertexField(index, PGraphics.B) * 255);
       return (a << 24) | (r << 16) | (g << 8) | b;
     } else {
       return 0;
@@ -2678,8 +2910,8 @@ public class PShape implements PConstants {
 
     tintColor = fill;
 
-    if (vertices != null) {
-      for  (int i = 0; i < vertices.length; i++) {
+    if (vertexData != null) {
+      for (int i = 0; i < vertexCount; i++) {
         setFill(i, fill);
       }
     }
@@ -2693,33 +2925,31 @@ public class PShape implements PConstants {
     }
 
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null ||
-        index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "setTint()");
       return;
     }
 
     if (image != null) {
-      vertices[index][PGraphics.A] = ((tint >> 24) & 0xFF) / 255.0f;
-      vertices[index][PGraphics.R] = ((tint >> 16) & 0xFF) / 255.0f;
-      vertices[index][PGraphics.G] = ((tint >>  8) & 0xFF) / 255.0f;
-      vertices[index][PGraphics.B] = (tint & 0xFF) / 255.0f;
+      setVertexField(index, PGraphics.A, ((tint >> 24) & 0xFF) / 255.0f);
+      setVertexField(index, PGraphics.R, ((tint >> 16) & 0xFF) / 255.0f);
+      setVertexField(index, PGraphics.G, ((tint >>  8) & 0xFF) / 255.0f);
+      setVertexField(index, PGraphics.B, (tint & 0xFF) / 255.0f);
     }
   }
 
 
   public int getStroke(int index) {
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null ||
-        index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "getStroke()");
       return strokeColor;
     }
 
-    int a = (int) (vertices[index][PGraphics.SA] * 255);
-    int r = (int) (vertices[index][PGraphics.SR] * 255);
-    int g = (int) (vertices[index][PGraphics.SG] * 255);
-    int b = (int) (vertices[index][PGraphics.SB] * 255);
+    int a = (int) (vertexField(index, PGraphics.SA) * 255);
+    int r = (int) (vertexField(index, PGraphics.SR) * 255);
+    int g = (int) (vertexField(index, PGraphics.SG) * 255);
+    int b = (int) (vertexField(index, PGraphics.SB) * 255);
     return (a << 24) | (r << 16) | (g << 8) | b;
   }
 
@@ -2733,6 +2963,7 @@ public class PShape implements PConstants {
     }
 
     this.stroke = stroke;
+    invalidateBounds();
   }
 
   /**
@@ -2758,8 +2989,8 @@ public class PShape implements PConstants {
 
     strokeColor = stroke;
 
-    if (vertices != null && perVertexStyles) {
-      for (int i = 0; i < vertices.length; i++) {
+    if (vertexData != null && perVertexStyles) {
+      for (int i = 0; i < vertexCount; i++) {
         setStroke(i, stroke);
       }
     }
@@ -2780,26 +3011,26 @@ public class PShape implements PConstants {
     }
 
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null || index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "setStroke()");
       return;
     }
 
-    vertices[index][PGraphics.SA] = ((stroke >> 24) & 0xFF) / 255.0f;
-    vertices[index][PGraphics.SR] = ((stroke >> 16) & 0xFF) / 255.0f;
-    vertices[index][PGraphics.SG] = ((stroke >>  8) & 0xFF) / 255.0f;
-    vertices[index][PGraphics.SB] = (stroke & 0xFF) / 255.0f;
+    setVertexField(index, PGraphics.SA, ((stroke >> 24) & 0xFF) / 255.0f);
+    setVertexField(index, PGraphics.SR, ((stroke >> 16) & 0xFF) / 255.0f);
+    setVertexField(index, PGraphics.SG, ((stroke >>  8) & 0xFF) / 255.0f);
+    setVertexField(index, PGraphics.SB, (stroke & 0xFF) / 255.0f);
   }
 
 
   public float getStrokeWeight(int index) {
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null || index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "getStrokeWeight()");
       return strokeWeight;
     }
 
-    return vertices[index][PGraphics.SW];
+    return vertexField(index, PGraphics.SW);
   }
 
 
@@ -2810,8 +3041,9 @@ public class PShape implements PConstants {
     }
 
     strokeWeight = weight;
+    invalidateBounds();
 
-    if (vertices != null && perVertexStyles) {
+    if (vertexData != null && perVertexStyles) {
       for (int i = 0; i < vertexCount; i++) {
         setStrokeWeight(i, weight);
       }
@@ -2831,12 +3063,12 @@ public class PShape implements PConstants {
     }
 
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null || index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "setStrokeWeight()");
       return;
     }
 
-    vertices[index][PGraphics.SW] = weight;
+    setVertexField(index, PGraphics.SW, weight);
   }
 
 
@@ -2847,6 +3079,7 @@ public class PShape implements PConstants {
     }
 
     strokeJoin = join;
+    invalidateBounds();
   }
 
 
@@ -2862,14 +3095,14 @@ public class PShape implements PConstants {
 
   public int getAmbient(int index) {
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null || index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "getAmbient()");
       return ambientColor;
     }
 
-    int r = (int) (vertices[index][PGraphics.AR] * 255);
-    int g = (int) (vertices[index][PGraphics.AG] * 255);
-    int b = (int) (vertices[index][PGraphics.AB] * 255);
+    int r = (int) (vertexField(index, PGraphics.AR) * 255);
+    int g = (int) (vertexField(index, PGraphics.AG) * 255);
+    int b = (int) (vertexField(index, PGraphics.AB) * 255);
     return 0xff000000 | (r << 16) | (g << 8) | b;
   }
 
@@ -2882,8 +3115,8 @@ public class PShape implements PConstants {
 
     ambientColor = ambient;
 
-    if (vertices != null) {
-      for  (int i = 0; i < vertices.length; i++) {
+    if (vertexData != null) {
+      for (int i = 0; i < vertexCount; i++) {
         setAmbient(i, ambient);
       }
     }
@@ -2897,27 +3130,27 @@ public class PShape implements PConstants {
     }
 
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null || index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "setAmbient()");
       return;
     }
 
-    vertices[index][PGraphics.AR] = ((ambient >> 16) & 0xFF) / 255.0f;
-    vertices[index][PGraphics.AG] = ((ambient >>  8) & 0xFF) / 255.0f;
-    vertices[index][PGraphics.AB] = (ambient & 0xFF) / 255.0f;
+    setVertexField(index, PGraphics.AR, ((ambient >> 16) & 0xFF) / 255.0f);
+    setVertexField(index, PGraphics.AG, ((ambient >>  8) & 0xFF) / 255.0f);
+    setVertexField(index, PGraphics.AB, (ambient & 0xFF) / 255.0f);
   }
 
 
   public int getSpecular(int index) {
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null || index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "getSpecular()");
       return specularColor;
     }
 
-    int r = (int) (vertices[index][PGraphics.SPR] * 255);
-    int g = (int) (vertices[index][PGraphics.SPG] * 255);
-    int b = (int) (vertices[index][PGraphics.SPB] * 255);
+    int r = (int) (vertexField(index, PGraphics.SPR) * 255);
+    int g = (int) (vertexField(index, PGraphics.SPG) * 255);
+    int b = (int) (vertexField(index, PGraphics.SPB) * 255);
     return 0xff000000 | (r << 16) | (g << 8) | b;
   }
 
@@ -2930,8 +3163,8 @@ public class PShape implements PConstants {
 
     specularColor = specular;
 
-    if (vertices != null) {
-      for  (int i = 0; i < vertices.length; i++) {
+    if (vertexData != null) {
+      for (int i = 0; i < vertexCount; i++) {
         setSpecular(i, specular);
       }
     }
@@ -2945,27 +3178,27 @@ public class PShape implements PConstants {
     }
 
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null || index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "setSpecular()");
       return;
     }
 
-    vertices[index][PGraphics.SPR] = ((specular >> 16) & 0xFF) / 255.0f;
-    vertices[index][PGraphics.SPG] = ((specular >>  8) & 0xFF) / 255.0f;
-    vertices[index][PGraphics.SPB] = (specular & 0xFF) / 255.0f;
+    setVertexField(index, PGraphics.SPR, ((specular >> 16) & 0xFF) / 255.0f);
+    setVertexField(index, PGraphics.SPG, ((specular >>  8) & 0xFF) / 255.0f);
+    setVertexField(index, PGraphics.SPB, (specular & 0xFF) / 255.0f);
   }
 
 
   public int getEmissive(int index) {
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null || index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "getEmissive()");
       return emissiveColor;
     }
 
-    int r = (int) (vertices[index][PGraphics.ER] * 255);
-    int g = (int) (vertices[index][PGraphics.EG] * 255);
-    int b = (int) (vertices[index][PGraphics.EB] * 255);
+    int r = (int) (vertexField(index, PGraphics.ER) * 255);
+    int g = (int) (vertexField(index, PGraphics.EG) * 255);
+    int b = (int) (vertexField(index, PGraphics.EB) * 255);
     return 0xff000000 | (r << 16) | (g << 8) | b;
   }
 
@@ -2978,8 +3211,8 @@ public class PShape implements PConstants {
 
     emissiveColor = emissive;
 
-    if (vertices != null) {
-      for  (int i = 0; i < vertices.length; i++) {
+    if (vertexData != null) {
+      for (int i = 0; i < vertexCount; i++) {
         setEmissive(i, emissive);
       }
     }
@@ -2993,27 +3226,25 @@ public class PShape implements PConstants {
     }
 
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null ||
-        index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "setEmissive()");
       return;
     }
 
-    vertices[index][PGraphics.ER] = ((emissive >> 16) & 0xFF) / 255.0f;
-    vertices[index][PGraphics.EG] = ((emissive >>  8) & 0xFF) / 255.0f;
-    vertices[index][PGraphics.EB] = (emissive & 0xFF) / 255.0f;
+    setVertexField(index, PGraphics.ER, ((emissive >> 16) & 0xFF) / 255.0f);
+    setVertexField(index, PGraphics.EG, ((emissive >>  8) & 0xFF) / 255.0f);
+    setVertexField(index, PGraphics.EB, (emissive & 0xFF) / 255.0f);
   }
 
 
   public float getShininess(int index) {
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null ||
-        index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "getShininess()");
       return shininess;
     }
 
-    return vertices[index][PGraphics.SHINE];
+    return vertexField(index, PGraphics.SHINE);
   }
 
 
@@ -3025,8 +3256,8 @@ public class PShape implements PConstants {
 
     shininess = shine;
 
-    if (vertices != null) {
-      for  (int i = 0; i < vertices.length; i++) {
+    if (vertexData != null) {
+      for (int i = 0; i < vertexCount; i++) {
         setShininess(i, shine);
       }
     }
@@ -3040,14 +3271,13 @@ public class PShape implements PConstants {
     }
 
     // make sure we allocated the vertices array and that vertex exists
-    if (vertices == null ||
-        index >= vertices.length) {
+    if (vertexData == null || index >= vertexCount) {
       PGraphics.showWarning(NO_SUCH_VERTEX_ERROR + " (" + index + ")", "setShininess()");
       return;
     }
 
 
-    vertices[index][PGraphics.SHINE] = shine;
+    setVertexField(index, PGraphics.SHINE, shine);
   }
 
 
@@ -3088,42 +3318,40 @@ public class PShape implements PConstants {
    * with PATH shapes or GROUP shapes that contain other GROUPs or PATHs.
    * This method is not imperfect and doesn't account for all cases
    * (not all complex shapes: concave shapes or holes may have issues).
+   * The coordinates are the ones the shape is drawn in, and shapes whose
+   * bounding box doesn't contain them are skipped without further tests.
    */
   public boolean contains(float x, float y) {
     if (family == PATH || family == GEOMETRY) {
+      if (!boundsContain(x, y)) return false;
+
       PVector p = new PVector(x, y);
       if (matrix != null) {
         // apply the inverse transformation matrix to the point coordinates
-        PMatrix inverseCoords = matrix.get();
-        // TODO why is this called twice? [fry 190724]
-        // commit was https://github.com/processing/processing/commit/027fc7a4f8e8d0a435366eae754304eea282512a
-        inverseCoords.invert();  // maybe cache this?
-        inverseCoords.invert();  // maybe cache this?
+        PMatrix inverseCoords = inverseMatrix();
+        if (inverseCoords == null) return false;
         inverseCoords.mult(new PVector(x, y), p);
       }
 
       // http://www.ecse.rpi.edu/Homepages/wrf/Research/Short_Notes/pnpoly.html
+      // (the vertices were adopted when the bounds were checked)
+      float[] data = vertexData;
+      int stride = vertexStride;
       boolean c = false;
       for (int i = 0, j = vertexCount-1; i < vertexCount; j = i++) {
-        if (((vertices[i][Y] > p.y) != (vertices[j][Y] > p.y)) &&
-            (p.x <
-                (vertices[j][X]-vertices[i][X]) *
-                (y-vertices[i][Y]) /
-                (vertices[j][1]-vertices[i][Y]) +
-                vertices[i][X])) {
+        float xi = data[i * stride + X], yi = data[i * stride + Y];
+        float xj = data[j * stride + X], yj = data[j * stride + Y];
+        if (((yi > p.y) != (yj > p.y)) &&
+            (p.x < (xj-xi) * (p.y-yi) / (yj-yi) + xi)) {
           c = !c;
         }
       }
       return c;
 
     } else if (family == GROUP) {
-      // If this is a group, loop through children until we find one that
-      // contains the supplied coordinates. If a child does not support
-      // contains() throw a warning and continue.
-      for (int i = 0; i < childCount; i++) {
-        if (children[i].contains(x, y)) return true;
-      }
-      return false;
+      // If this is a group, look through the children until we find one
+      // that contains the supplied coordinates.
+      return getChildAt(x, y) != null;
 
     } else {
       // https://github.com/processing/processing/issues/1280
@@ -3132,6 +3360,279 @@ public class PShape implements PConstants {
   }
 
 
+  /**
+   * Returns the child of this group that contains the x, y coordinate, or
+   * null if there is none. When several children contain it, the one drawn
+   * last (on top) is returned. Large groups keep an index of the bounding
+   * boxes of their children, so that only the children around the point
+   * are tested, which makes this fast enough to pick shapes under the mouse.
+   */
+  public PShape getChildAt(float x, float y) {
+    if (family != GROUP || !boundsContain(x, y)) return null;
+
+    if (matrix != null) {
+      PMatrix inverseCoords = inverseMatrix();
+      if (inverseCoords == null) return null;
+      PVector p = inverseCoords.mult(new PVector(x, y), null);
+      x = p.x;
+      y = p.y;
+    }
+
+    if (childCount < MIN_INDEXED_CHILDREN) {
+      for (int i = childCount - 1; i >= 0; i--) {
+        if (children[i].contains(x, y)) return children[i];
+      }
+      return null;
+    }
+
+    ShapeIndex.Scratch scratch = ShapeIndex.scratch();
+    int start = scratch.top;
+    int count = childIndex().query(x, y, x, y, scratch);
+    Arrays.sort(scratch.found, start, start + count);
+    scratch.top = start + count;
+    try {
+      for (int i = start + count - 1; i >= start; i--) {
+        PShape child = children[scratch.found[i]];
+        if (child.contains(x, y)) return child;
+      }
+    } finally {
+      scratch.top = start;
+    }
+    return null;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Returns the bounding box of this shape and its children in the
+   * coordinates the shape is drawn in, as { minX, minY, maxX, maxY }. The
+   * box includes the stroke when the shape has its own style. It's infinite
+   * when the extent of the shape isn't known, as with 3D primitives or
+   * rotations out of the plane, and empty (min &gt; max) when there is
+   * nothing to draw. The box is cached until the shape or its children
+   * are modified.
+   */
+  public float[] getBounds(float[] target) {
+    if (target == null || target.length < 4) {
+      target = new float[4];
+    }
+    System.arraycopy(bounds(), 0, target, 0, 4);
+    return target;
+  }
+
+
+  protected float[] bounds() {
+    adoptVertices();
+    if (bounds == null) {
+      float[] b = {
+        Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+        Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY
+      };
+      calcBounds(b);
+      if (style && stroke && b[0] <= b[2]) {
+        float margin = strokeMargin(strokeWeight, strokeJoin);
+        b[0] -= margin;
+        b[1] -= margin;
+        b[2] += margin;
+        b[3] += margin;
+      }
+      for (int i = 0; i < childCount; i++) {
+        float[] cb = children[i].bounds();
+        b[0] = Math.min(b[0], cb[0]);
+        b[1] = Math.min(b[1], cb[1]);
+        b[2] = Math.max(b[2], cb[2]);
+        b[3] = Math.max(b[3], cb[3]);
+      }
+      transformBounds(b);
+      bounds = b;
+    }
+    return bounds;
+  }
+
+
+  /**
+   * Adds the extent of the geometry of this shape, without its children,
+   * stroke or matrix, to the bounding box b. Subclasses that draw something
+   * else should override this, making the box infinite if need be.
+   */
+  protected void calcBounds(float[] b) {
+    if (family == PATH || family == GEOMETRY) {
+      for (int i = 0; i < vertexCount; i++) {
+        int v = i * vertexStride;
+        expandBounds(b, vertexData[v + X], vertexData[v + Y]);
+      }
+      if (hasCurveVertices()) {
+        // Catmull-Rom curves leave the hull of their vertices by up to a
+        // sixth of the tangent at each vertex with the default tightness,
+        // allow for half of it to cover negative tightness values.
+        for (int i = 1; i < vertexCount - 1; i++) {
+          int v = i * vertexStride;
+          float x = vertexData[v + X];
+          float y = vertexData[v + Y];
+          float tx = 0.5f * (vertexData[v + vertexStride + X] -
+                             vertexData[v - vertexStride + X]);
+          float ty = 0.5f * (vertexData[v + vertexStride + Y] -
+                             vertexData[v - vertexStride + Y]);
+          expandBounds(b, x - tx, y - ty);
+          expandBounds(b, x + tx, y + ty);
+        }
+      }
+
+    } else if (family == PRIMITIVE && params != null) {
+      if (kind == POINT && params.length >= 2) {
+        expandBounds(b, params[0], params[1]);
+
+      } else if (kind == LINE && params.length == 4) {
+        expandBounds(b, params[0], params[1]);
+        expandBounds(b, params[2], params[3]);
+
+      } else if ((kind == TRIANGLE && params.length >= 6) ||
+                 (kind == QUAD && params.length >= 8)) {
+        int count = (kind == TRIANGLE) ? 3 : 4;
+        for (int i = 0; i < count; i++) {
+          expandBounds(b, params[2*i], params[2*i + 1]);
+        }
+
+      } else if ((kind == RECT || kind == ELLIPSE || kind == ARC) &&
+                 params.length >= 4) {
+        // The meaning of the parameters depends on the rectMode() or
+        // ellipseMode() used when drawing, so cover all of them
+        float w = Math.abs(params[2]);
+        float h = Math.abs(params[3]);
+        expandBounds(b, params[0] - w, params[1] - h);
+        expandBounds(b, params[0] + w, params[1] + h);
+        expandBounds(b, params[2], params[3]);
+
+      } else {
+        setUnbounded(b);
+      }
+
+    } else if (family != GROUP) {
+      setUnbounded(b);
+    }
+  }
+
+
+  protected boolean hasCurveVertices() {
+    for (int i = 0; i < vertexCodeCount; i++) {
+      if (vertexCodes[i] == CURVE_VERTEX) return true;
+    }
+    return false;
+  }
+
+
+  static protected void expandBounds(float[] b, float x, float y) {
+    if (x < b[0]) b[0] = x;
+    if (y < b[1]) b[1] = y;
+    if (x > b[2]) b[2] = x;
+    if (y > b[3]) b[3] = y;
+  }
+
+
+  static protected void setUnbounded(float[] b) {
+    b[0] = Float.NEGATIVE_INFINITY;
+    b[1] = Float.NEGATIVE_INFINITY;
+    b[2] = Float.POSITIVE_INFINITY;
+    b[3] = Float.POSITIVE_INFINITY;
+  }
+
+
+  /**
+   * How far a stroke can reach past the geometry. Miter joins stick out
+   * the most, up to the default miter limit of 10 stroke widths.
+   */
+  static protected float strokeMargin(float weight, int join) {
+    return (join == MITER) ? 5 * weight : weight;
+  }
+
+
+  // Replaces b with the box around it once transformed by the matrix
+  protected void transformBounds(float[] b) {
+    if (matrix == null || b[0] > b[2] || b[1] > b[3]) return;
+
+    float n00, n01, n02, n10, n11, n12;
+    if (matrix instanceof PMatrix2D) {
+      PMatrix2D m = (PMatrix2D) matrix;
+      n00 = m.m00; n01 = m.m01; n02 = m.m02;
+      n10 = m.m10; n11 = m.m11; n12 = m.m12;
+    } else {
+      PMatrix3D m = (PMatrix3D) matrix;
+      if (m.m02 != 0 || m.m12 != 0 || m.m20 != 0 || m.m21 != 0 ||
+          m.m30 != 0 || m.m31 != 0 || m.m32 != 0 || m.m33 != 1) {
+        // rotated out of the plane, or a projection
+        setUnbounded(b);
+        return;
+      }
+      n00 = m.m00; n01 = m.m01; n02 = m.m03;
+      n10 = m.m10; n11 = m.m11; n12 = m.m13;
+    }
+    if (Float.isInfinite(b[0]) || Float.isInfinite(b[1]) ||
+        Float.isInfinite(b[2]) || Float.isInfinite(b[3])) {
+      setUnbounded(b);
+      return;
+    }
+
+    float cx = 0.5f * (b[0] + b[2]);
+    float cy = 0.5f * (b[1] + b[3]);
+    float hw = 0.5f * (b[2] - b[0]);
+    float hh = 0.5f * (b[3] - b[1]);
+    float x = n00*cx + n01*cy + n02;
+    float y = n10*cx + n11*cy + n12;
+    float ex = Math.abs(n00)*hw + Math.abs(n01)*hh;
+    float ey = Math.abs(n10)*hw + Math.abs(n11)*hh;
+    b[0] = x - ex;
+    b[1] = y - ey;
+    b[2] = x + ex;
+    b[3] = y + ey;
+  }
+
+
+  protected boolean boundsContain(float x, float y) {
+    float[] b = bounds();
+    return b[0] <= x && x <= b[2] && b[1] <= y && y <= b[3];
+  }
+
+
+  protected PMatrix inverseMatrix() {
+    if (inverseMatrix == null) {
+      PMatrix inverse = matrix.get();
+      if (!inverse.invert()) return null;
+      inverseMatrix = inverse;
+    }
+    return inverseMatrix;
+  }
+
+
+  protected ShapeIndex childIndex() {
+    if (childIndex == null) {
+      float[] childBounds = new float[4 * childCount];
+      for (int i = 0; i < childCount; i++) {
+        System.arraycopy(children[i].bounds(), 0, childBounds, 4 * i, 4);
+      }
+      childIndex = new ShapeIndex(childBounds, childCount);
+    }
+    return childIndex;
+  }
+
+
+  /**
+   * Throws away the cached bounds of this shape and of the groups that
+   * contain it. Called after any change to the geometry, stroke, matrix
+   * or children of the shape.
+   */
+  protected void invalidateBounds() {
+    inverseMatrix = null;
+    // a group can only have cached bounds if its children have them too
+    for (PShape shape = this; shape != null; shape = shape.parent) {
+      if (shape.bounds == null && shape.childIndex == null) break;
+      shape.bounds = null;
+      shape.childIndex = null;
+    }
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
@@ -3438,6 +3939,9 @@ public class PShape implements PConstants {
    * that can handle <em>at least</em> the specified number of dimensions.
    */
   protected void checkMatrix(int dimensions) {
+    // called before every change to the matrix
+    invalidateBounds();
+
     if (matrix == null) {
       if (dimensions == 2) {
         matrix = new PMatrix2D();
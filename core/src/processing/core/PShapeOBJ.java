@@ -1,8 +1,14 @@
 package processing.core;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -20,11 +26,19 @@ import java.util.Map;
  */
 public class PShapeOBJ extends PShape {
 
+  // Files smaller than twice this are parsed in the calling thread, larger
+  // files are split into chunks of at least this size, parsed in parallel.
+  static protected final int PARALLEL_MIN_SIZE = 1 << 20;
+
+  // Marks the second index of a "v/x" face vertex, which is a texture
+  // coordinate if the file has any, and a normal otherwise.
+  static protected final int SECOND_INDEX = Integer.MIN_VALUE;
+
   /**
    * Initializes a new OBJ Object with the given filename.
    */
   public PShapeOBJ(PApplet parent, String filename) {
-    this(parent, parent.createReader(filename), getBasePath(parent, filename));
+    this(parent, parent.loadBytes(filename), getBasePath(parent, filename));
   }
 
   public PShapeOBJ(PApplet parent, BufferedReader reader) {
@@ -32,29 +46,32 @@ public class PShapeOBJ extends PShape {
   }
 
   public PShapeOBJ(PApplet parent, BufferedReader reader, String basePath) {
-    ArrayList<OBJFace> faces = new ArrayList<OBJFace>();
+    this(parent, readBytes(reader), basePath);
+  }
+
+  /**
+   * Initializes a new OBJ Object from the contents of an OBJ file.
+   */
+  public PShapeOBJ(PApplet parent, byte[] data, String basePath) {
+    OBJGeometry geometry = new OBJGeometry();
     ArrayList<OBJMaterial> materials = new ArrayList<OBJMaterial>();
-    ArrayList<PVector> coords = new ArrayList<PVector>();
-    ArrayList<PVector> normals = new ArrayList<PVector>();
-    ArrayList<PVector> texcoords = new ArrayList<PVector>();
-    parseOBJ(parent, basePath, reader,
-             faces, materials, coords, normals, texcoords);
+    parseOBJ(parent, basePath, data, geometry, materials);
 
     // The OBJ geometry is stored with each face in a separate child shape.
     parent = null;
     family = GROUP;
-    addChildren(faces, materials, coords, normals, texcoords);
+    addChildren(geometry, materials);
   }
 
 
-  protected PShapeOBJ(OBJFace face, OBJMaterial mtl,
-                      ArrayList<PVector> coords,
-                      ArrayList<PVector> normals,
-                      ArrayList<PVector> texcoords) {
+  protected PShapeOBJ(OBJGeometry geometry, int face, OBJMaterial mtl) {
+    int first = geometry.faceOffsets[face];
+    int count = geometry.faceOffsets[face + 1] - first;
+
     family = GEOMETRY;
-    if (face.vertIdx.size() == 3) {
+    if (count == 3) {
       kind = TRIANGLES;
-    } else if (face.vertIdx.size() == 4) {
+    } else if (count == 4) {
       kind = QUADS;
     } else {
       kind = POLYGON;
@@ -74,246 +91,257 @@ public class PShapeOBJ extends PShape {
       tintColor = rgbaValue(mtl.kd, mtl.d);
     }
 
-    vertexCount = face.vertIdx.size();
-    vertices = new float[vertexCount][12];
-    for (int j = 0; j < face.vertIdx.size(); j++){
-      int vertIdx, normIdx, texIdx;
-      PVector vert, norms, tex;
-
-      vert = norms = tex = null;
-
-      vertIdx = face.vertIdx.get(j).intValue() - 1;
-      vert = coords.get(vertIdx);
-
-      if (j < face.normIdx.size()) {
-        normIdx = face.normIdx.get(j).intValue() - 1;
-        if (-1 < normIdx) {
-          norms = normals.get(normIdx);
-        }
-      }
-
-      if (j < face.texIdx.size()) {
-        texIdx = face.texIdx.get(j).intValue() - 1;
-        if (-1 < texIdx) {
-          tex = texcoords.get(texIdx);
-        }
-      }
-
-      vertices[j][X] = vert.x;
-      vertices[j][Y] = vert.y;
-      vertices[j][Z] = vert.z;
-
-      vertices[j][PGraphics.R] = mtl.kd.x;
-      vertices[j][PGraphics.G] = mtl.kd.y;
-      vertices[j][PGraphics.B] = mtl.kd.z;
-      vertices[j][PGraphics.A] = 1;
-
-      if (norms != null) {
-        vertices[j][PGraphics.NX] = norms.x;
-        vertices[j][PGraphics.NY] = norms.y;
-        vertices[j][PGraphics.NZ] = norms.z;
+    float[] coords = geometry.coords;
+    float[] normals = geometry.normals;
+    float[] texcoords = geometry.texcoords;
+    int[] corners = geometry.corners;
+
+    vertexCount = count;
+    vertexStride = 12;
+    vertexData = new float[vertexCount * vertexStride];
+    for (int j = 0; j < count; j++) {
+      int v = j * vertexStride;
+      int corner = 3 * (first + j);
+      int vertIdx = corners[corner] - 1;
+      int texIdx = corners[corner + 1] - 1;
+      int normIdx = corners[corner + 2] - 1;
+
+      vertexData[v + X] = coords[3 * vertIdx];
+      vertexData[v + Y] = coords[3 * vertIdx + 1];
+      vertexData[v + Z] = coords[3 * vertIdx + 2];
+
+      vertexData[v + PGraphics.R] = mtl.kd.x;
+      vertexData[v + PGraphics.G] = mtl.kd.y;
+      vertexData[v + PGraphics.B] = mtl.kd.z;
+      vertexData[v + PGraphics.A] = 1;
+
+      if (-1 < normIdx) {
+        vertexData[v + PGraphics.NX] = normals[3 * normIdx];
+        vertexData[v + PGraphics.NY] = normals[3 * normIdx + 1];
+        vertexData[v + PGraphics.NZ] = normals[3 * normIdx + 2];
       }
 
-      if (tex != null) {
-        vertices[j][PGraphics.U] = tex.x;
-        vertices[j][PGraphics.V] = tex.y;
+      if (-1 < texIdx) {
+        vertexData[v + PGraphics.U] = texcoords[2 * texIdx];
+        vertexData[v + PGraphics.V] = texcoords[2 * texIdx + 1];
       }
+    }
+    fillDeprecatedVertices();
 
-      if (mtl != null && mtl.kdMap != null) {
-        image = mtl.kdMap;
-      }
+    if (mtl.kdMap != null) {
+      image = mtl.kdMap;
     }
   }
 
 
-  protected void addChildren(ArrayList<OBJFace> faces,
-                             ArrayList<OBJMaterial> materials,
-                             ArrayList<PVector> coords,
-                             ArrayList<PVector> normals,
-                             ArrayList<PVector> texcoords) {
+  protected void addChildren(OBJGeometry geometry,
+                             ArrayList<OBJMaterial> materials) {
+    if (0 < geometry.faceCount) {
+      children = new PShape[geometry.faceCount];
+    }
     int mtlIdxCur = -1;
     OBJMaterial mtl = null;
-    for (int i = 0; i < faces.size(); i++) {
-      OBJFace face = faces.get(i);
+    for (int i = 0; i < geometry.faceCount; i++) {
+      int matIdx = geometry.faceMaterials[i];
 
       // Getting current material.
-      if (mtlIdxCur != face.matIdx || face.matIdx == -1) {
+      if (mtlIdxCur != matIdx || matIdx == -1) {
         // To make sure that at least we get the default material
-        mtlIdxCur = PApplet.max(0, face.matIdx);
+        mtlIdxCur = PApplet.max(0, matIdx);
         mtl = materials.get(mtlIdxCur);
       }
 
       // Creating child shape for current face.
-      PShape child = new PShapeOBJ(face, mtl, coords, normals, texcoords);
+      PShape child = new PShapeOBJ(geometry, i, mtl);
       addChild(child);
     }
   }
 
 
-  static protected void parseOBJ(PApplet parent, String path,
-                                 BufferedReader reader,
-                                 ArrayList<OBJFace> faces,
-                                 ArrayList<OBJMaterial> materials,
-                                 ArrayList<PVector> coords,
-                                 ArrayList<PVector> normals,
-                                 ArrayList<PVector> texcoords) {
-    Map<String, Integer> mtlTable  = new HashMap<String, Integer>();
-    int mtlIdxCur = -1;
-    boolean readv, readvn, readvt;
+  static protected byte[] readBytes(BufferedReader reader) {
+    if (reader == null) return null;
     try {
+      // Encoding while reading, so the whole file isn't held as chars too
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+      char[] buffer = new char[8192];
+      int count;
+      while ((count = reader.read(buffer)) != -1) {
+        writer.write(buffer, 0, count);
+      }
+      writer.close();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
 
-      readv = readvn = readvt = false;
-      String line;
-      String gname = "object";
-      while ((line = reader.readLine()) != null) {
-       // Parse the line.
-        line = line.trim();
-        if (line.equals("") || line.indexOf('#') == 0) {
-          // Empty line of comment, ignore line
-          continue;
-        }
 
-        // The below patch/hack comes from Carlos Tomas Marti and is a
-        // fix for single backslashes in Rhino obj files
-
-        // BEGINNING OF RHINO OBJ FILES HACK
-        // Statements can be broken in multiple lines using '\' at the
-        // end of a line.
-        // In regular expressions, the backslash is also an escape
-        // character.
-        // The regular expression \\ matches a single backslash. This
-        // regular expression as a Java string, becomes "\\\\".
-        // That's right: 4 backslashes to match a single one.
-        while (line.contains("\\")) {
-          line = line.split("\\\\")[0];
-          final String s = reader.readLine();
-          if (s != null)
-            line += s;
-        }
-        // END OF RHINO OBJ FILES HACK
+  static protected void parseOBJ(PApplet parent, String path, byte[] data,
+                                 OBJGeometry geometry,
+                                 ArrayList<OBJMaterial> materials) {
+    if (data != null) {
+      try {
+        OBJChunk[] chunks = splitChunks(data);
+        ParallelRange.run(chunks.length, 1, (first, last) -> {
+          for (int i = first; i < last; i++) {
+            chunks[i].parse();
+          }
+        });
+        mergeChunks(parent, path, chunks, geometry, materials);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
 
-        String[] parts = line.split("\\s+");
-        // if not a blank line, process the line.
-        if (parts.length > 0) {
-          if (parts[0].equals("v")) {
-            // vertex
-            PVector tempv = new PVector(Float.valueOf(parts[1]).floatValue(),
-                                        Float.valueOf(parts[2]).floatValue(),
-                                        Float.valueOf(parts[3]).floatValue());
-            coords.add(tempv);
-            readv = true;
-          } else if (parts[0].equals("vn")) {
-            // normal
-            PVector tempn = new PVector(Float.valueOf(parts[1]).floatValue(),
-                                        Float.valueOf(parts[2]).floatValue(),
-                                        Float.valueOf(parts[3]).floatValue());
-            normals.add(tempn);
-            readvn = true;
-          } else if (parts[0].equals("vt")) {
-            // uv, inverting v to take into account Processing's inverted Y axis
-            // with respect to OpenGL.
-            PVector tempv = new PVector(Float.valueOf(parts[1]).floatValue(),
-                                        1 - Float.valueOf(parts[2]).
-                                        floatValue());
-            texcoords.add(tempv);
-            readvt = true;
-          } else if (parts[0].equals("o")) {
-            // Object name is ignored, for now.
-          } else if (parts[0].equals("mtllib")) {
-            if (parts[1] != null) {
-              String fn = parts[1];
-              if (fn.indexOf(File.separator) == -1 && !path.equals("")) {
-                // Relative file name, adding the base path.
-                fn = path + File.separator + fn;
-              }
-              BufferedReader mreader = parent.createReader(fn);
-              if (mreader != null) {
-                parseMTL(parent, fn, path, mreader, materials, mtlTable);
-                mreader.close();
-              }
-            }
-          } else if (parts[0].equals("g")) {
-            gname = 1 < parts.length ? parts[1] : "";
-          } else if (parts[0].equals("usemtl")) {
-            // Getting index of current active material (will be applied on
-            // all subsequent faces).
-            if (parts[1] != null) {
-              String mtlname = parts[1];
-              if (mtlTable.containsKey(mtlname)) {
-                Integer tempInt = mtlTable.get(mtlname);
-                mtlIdxCur = tempInt.intValue();
-              } else {
-                mtlIdxCur = -1;
-              }
-            }
-          } else if (parts[0].equals("f")) {
-            // Face setting
-            OBJFace face = new OBJFace();
-            face.matIdx = mtlIdxCur;
-            face.name = gname;
-
-            for (int i = 1; i < parts.length; i++) {
-              String seg = parts[i];
-
-              if (seg.indexOf("/") > 0) {
-                String[] forder = seg.split("/");
-
-                if (forder.length > 2) {
-                  // Getting vertex and texture and normal indexes.
-                  if (forder[0].length() > 0 && readv) {
-                    face.vertIdx.add(Integer.valueOf(forder[0]));
-                  }
-
-                  if (forder[1].length() > 0 && readvt) {
-                    face.texIdx.add(Integer.valueOf(forder[1]));
-                  }
-
-                  if (forder[2].length() > 0 && readvn) {
-                    face.normIdx.add(Integer.valueOf(forder[2]));
-                  }
-                } else if (forder.length > 1) {
-                  // Getting vertex and texture/normal indexes.
-                  if (forder[0].length() > 0 && readv) {
-                    face.vertIdx.add(Integer.valueOf(forder[0]));
-                  }
-
-                  if (forder[1].length() > 0) {
-                    if (readvt) {
-                      face.texIdx.add(Integer.valueOf(forder[1]));
-                    } else  if (readvn) {
-                      face.normIdx.add(Integer.valueOf(forder[1]));
-                    }
-
-                  }
-
-                } else if (forder.length > 0) {
-                  // Getting vertex index only.
-                  if (forder[0].length() > 0 && readv) {
-                    face.vertIdx.add(Integer.valueOf(forder[0]));
-                  }
-                }
-              } else {
-                // Getting vertex index only.
-                if (seg.length() > 0 && readv) {
-                  face.vertIdx.add(Integer.valueOf(seg));
-                }
-              }
-            }
+    if (materials.size() == 0) {
+      // No materials definition so far. Adding one default material.
+      OBJMaterial defMtl = new OBJMaterial();
+      materials.add(defMtl);
+    }
+  }
+
+
+  static protected OBJChunk[] splitChunks(byte[] data) {
+    int count = ParallelRange.chunks(data.length, PARALLEL_MIN_SIZE);
+    OBJChunk[] chunks = new OBJChunk[count];
+    int start = 0;
+    for (int i = 0; i < count; i++) {
+      int end = data.length;
+      if (i < count - 1) {
+        long split = (long) data.length * (i + 1) / count;
+        end = lineBoundary(data, Math.max(start, (int) split));
+      }
+      chunks[i] = new OBJChunk(data, start, end);
+      start = end;
+    }
+    return chunks;
+  }
+
+
+  // Returns the position right after the first line break at or after pos
+  // that ends a statement, so it doesn't split lines continued with '\'.
+  static protected int lineBoundary(byte[] data, int pos) {
+    int lineStart = pos;
+    while (0 < lineStart && data[lineStart - 1] != '\n') {
+      lineStart--;
+    }
+    boolean continued = false;
+    for (int i = lineStart; i < data.length; i++) {
+      byte b = data[i];
+      if (b == '\\') {
+        continued = true;
+      } else if (b == '\n') {
+        if (!continued && pos <= i) return i + 1;
+        continued = false;
+      }
+    }
+    return data.length;
+  }
+
+
+  // Puts together the geometry of the chunks. Materials are loaded and
+  // assigned to the faces here, in the same order as they appear in the file.
+  static protected void mergeChunks(PApplet parent, String path,
+                                    OBJChunk[] chunks,
+                                    OBJGeometry geometry,
+                                    ArrayList<OBJMaterial> materials) {
+    int coordCount = 0;
+    int normalCount = 0;
+    int texcoordCount = 0;
+    int faceCount = 0;
+    int cornerCount = 0;
+    for (OBJChunk chunk : chunks) {
+      coordCount += chunk.geometry.coordCount;
+      normalCount += chunk.geometry.normalCount;
+      texcoordCount += chunk.geometry.texcoordCount;
+      faceCount += chunk.geometry.faceCount;
+      cornerCount += chunk.geometry.cornerCount;
+    }
+
+    geometry.coords = new float[3 * coordCount];
+    geometry.normals = new float[3 * normalCount];
+    geometry.texcoords = new float[2 * texcoordCount];
+    geometry.faceOffsets = new int[faceCount + 1];
+    geometry.faceMaterials = new int[faceCount];
+    geometry.corners = new int[3 * cornerCount];
 
-            faces.add(face);
+    Map<String, Integer> mtlTable  = new HashMap<String, Integer>();
+    int mtlIdxCur = -1;
+    for (OBJChunk chunk : chunks) {
+      OBJGeometry part = chunk.geometry;
+      int texcoordOffset = geometry.texcoordCount;
+      int normalOffset = geometry.normalCount;
+      System.arraycopy(part.coords, 0, geometry.coords,
+                       3 * geometry.coordCount, 3 * part.coordCount);
+      System.arraycopy(part.normals, 0, geometry.normals,
+                       3 * geometry.normalCount, 3 * part.normalCount);
+      System.arraycopy(part.texcoords, 0, geometry.texcoords,
+                       2 * geometry.texcoordCount, 2 * part.texcoordCount);
+      geometry.coordCount += part.coordCount;
+      geometry.normalCount += part.normalCount;
+      geometry.texcoordCount += part.texcoordCount;
+
+      int inheritedMtl = mtlIdxCur;
+      int[] statementMtl = new int[chunk.statements.size()];
+      for (int i = 0; i < statementMtl.length; i++) {
+        String[] statement = chunk.statements.get(i);
+        if (statement[0].equals("mtllib")) {
+          String fn = statement[1];
+          if (fn.indexOf(File.separator) == -1 && !path.equals("")) {
+            // Relative file name, adding the base path.
+            fn = path + File.separator + fn;
           }
+          BufferedReader mreader = parent.createReader(fn);
+          if (mreader != null) {
+            parseMTL(parent, fn, path, mreader, materials, mtlTable);
+            try {
+              mreader.close();
+            } catch (IOException e) {
+              e.printStackTrace();
+            }
+          }
+        } else {
+          // Getting index of current active material (will be applied on
+          // all subsequent faces).
+          Integer mtlIdx = mtlTable.get(statement[1]);
+          mtlIdxCur = mtlIdx != null ? mtlIdx.intValue() : -1;
         }
+        statementMtl[i] = mtlIdxCur;
       }
 
-      if (materials.size() == 0) {
-        // No materials definition so far. Adding one default material.
-        OBJMaterial defMtl = new OBJMaterial();
-        materials.add(defMtl);
+      int cornerOffset = geometry.cornerCount;
+      int[] corners = geometry.corners;
+      for (int i = 0; i < part.faceCount; i++) {
+        int statement = part.faceMaterials[i];
+        int face = geometry.faceCount + i;
+        geometry.faceMaterials[face] =
+          statement == -1 ? inheritedMtl : statementMtl[statement];
+        geometry.faceOffsets[face] = cornerOffset + part.faceOffsets[i];
+
+        // Indices are only kept if their kind was read before the face,
+        // and the second index of v/x is a normal if no vt was read yet.
+        boolean readvt = 0 < texcoordOffset + part.faceTexcoords[i];
+        boolean readvn = 0 < normalOffset + part.faceNormals[i];
+        int last = i + 1 < part.faceCount ?
+          part.faceOffsets[i + 1] : part.cornerCount;
+        for (int j = 3 * part.faceOffsets[i]; j < 3 * last; j += 3) {
+          int texIdx = part.corners[j + 1];
+          int normIdx = part.corners[j + 2];
+          if (normIdx == SECOND_INDEX) {
+            normIdx = readvt ? 0 : texIdx;
+          }
+          int corner = 3 * cornerOffset + j;
+          corners[corner] = part.corners[j];
+          corners[corner + 1] = readvt ? texIdx : 0;
+          corners[corner + 2] = readvn ? normIdx : 0;
+        }
       }
-
-    } catch (Exception e) {
-      e.printStackTrace();
+      geometry.faceCount += part.faceCount;
+      geometry.cornerCount += part.cornerCount;
     }
+    geometry.faceOffsets[faceCount] = cornerCount;
   }
 
 
@@ -412,20 +440,253 @@ public class PShapeOBJ extends PShape {
   }
 
 
-  // Stores a face from an OBJ file
-  static protected class OBJFace {
-    ArrayList<Integer> vertIdx;
-    ArrayList<Integer> texIdx;
-    ArrayList<Integer> normIdx;
-    int matIdx;
-    String name;
+  // Stores the geometry of an OBJ file in flat arrays. The faces are lists
+  // of corners, with the (1-based) vertex, texture coordinate and normal
+  // indices of each corner. A zero index means that it is missing.
+  static protected class OBJGeometry {
+    float[] coords = new float[3 * 64];
+    float[] normals = new float[3 * 64];
+    float[] texcoords = new float[2 * 64];
+    int coordCount;
+    int normalCount;
+    int texcoordCount;
+
+    int[] faceOffsets = new int[64];
+    int[] faceMaterials = new int[64];
+    // Texture coordinates and normals read before each face
+    int[] faceTexcoords = new int[64];
+    int[] faceNormals = new int[64];
+    int faceCount;
+
+    int[] corners = new int[3 * 256];
+    int cornerCount;
+
+    void addCoord(float x, float y, float z) {
+      if (coords.length < 3 * (coordCount + 1)) {
+        coords = Arrays.copyOf(coords, coords.length << 1);
+      }
+      int index = 3 * coordCount++;
+      coords[index] = x;
+      coords[index + 1] = y;
+      coords[index + 2] = z;
+    }
+
+    void addNormal(float x, float y, float z) {
+      if (normals.length < 3 * (normalCount + 1)) {
+        normals = Arrays.copyOf(normals, normals.length << 1);
+      }
+      int index = 3 * normalCount++;
+      normals[index] = x;
+      normals[index + 1] = y;
+      normals[index + 2] = z;
+    }
+
+    void addTexcoord(float u, float v) {
+      if (texcoords.length < 2 * (texcoordCount + 1)) {
+        texcoords = Arrays.copyOf(texcoords, texcoords.length << 1);
+      }
+      int index = 2 * texcoordCount++;
+      texcoords[index] = u;
+      texcoords[index + 1] = v;
+    }
+
+    void addCorner(int vertIdx, int texIdx, int normIdx) {
+      if (corners.length < 3 * (cornerCount + 1)) {
+        corners = Arrays.copyOf(corners, corners.length << 1);
+      }
+      int index = 3 * cornerCount++;
+      corners[index] = vertIdx;
+      corners[index + 1] = texIdx;
+      corners[index + 2] = normIdx;
+    }
+
+    void addFace(int firstCorner, int matIdx) {
+      if (faceOffsets.length == faceCount) {
+        faceOffsets = PApplet.expand(faceOffsets);
+        faceMaterials = PApplet.expand(faceMaterials);
+        faceTexcoords = PApplet.expand(faceTexcoords);
+        faceNormals = PApplet.expand(faceNormals);
+      }
+      faceOffsets[faceCount] = firstCorner;
+      faceMaterials[faceCount] = matIdx;
+      faceTexcoords[faceCount] = texcoordCount;
+      faceNormals[faceCount] = normalCount;
+      faceCount++;
+    }
+  }
+
+
+  // Parses a range of lines of an OBJ file. The materials can't be looked
+  // up until the chunks before are parsed, so the mtllib and usemtl
+  // statements are kept in order, and each face stores the index of the
+  // last usemtl statement in the chunk, or -1 if there is none.
+  static protected class OBJChunk {
+    final byte[] data;
+    final int end;
+    int pos;
+
+    OBJGeometry geometry = new OBJGeometry();
+    ArrayList<String[]> statements = new ArrayList<String[]>();
+    int mtlStatement = -1;
+
+    OBJChunk(byte[] data, int start, int end) {
+      this.data = data;
+      this.pos = start;
+      this.end = end;
+    }
+
+    void parse() {
+      while (pos < end) {
+        skipSpaces();
+        if (end <= pos) break;
+        byte b = data[pos];
+        if (isLineEnd(b)) {
+          pos++;
+          continue;
+        }
+        if (b == '#') {
+          // Comment, ignore line
+          while (pos < end && !isLineEnd(data[pos])) pos++;
+          continue;
+        }
+
+        int start = pos;
+        skipToken();
+        if (matches(start, "v")) {
+          float x = nextFloat();
+          float y = nextFloat();
+          float z = nextFloat();
+          geometry.addCoord(x, y, z);
+        } else if (matches(start, "vn")) {
+          float x = nextFloat();
+          float y = nextFloat();
+          float z = nextFloat();
+          geometry.addNormal(x, y, z);
+        } else if (matches(start, "vt")) {
+          // uv, inverting v to take into account Processing's inverted Y axis
+          // with respect to OpenGL.
+          float u = nextFloat();
+          float v = nextFloat();
+          geometry.addTexcoord(u, 1 - v);
+        } else if (matches(start, "f")) {
+          parseFace();
+        } else if (matches(start, "usemtl") || matches(start, "mtllib")) {
+          String keyword = new String(data, start, pos - start,
+                                      StandardCharsets.UTF_8);
+          String name = nextToken();
+          if (name != null) {
+            if (keyword.equals("usemtl")) {
+              mtlStatement = statements.size();
+            }
+            statements.add(new String[] { keyword, name });
+          }
+        }
+        skipStatement();
+      }
+    }
+
+    void parseFace() {
+      int first = geometry.cornerCount;
+      while (true) {
+        skipSpaces();
+        if (end <= pos || isLineEnd(data[pos])) break;
+
+        int vertIdx = nextInt();
+        int texIdx = 0;
+        int normIdx = 0;
+        if (pos < end && data[pos] == '/') {
+          pos++;
+          texIdx = nextInt();
+          if (pos < end && data[pos] == '/') {
+            pos++;
+            normIdx = nextInt();
+          } else if (texIdx != 0) {
+            normIdx = SECOND_INDEX;
+          }
+        }
+        skipToken();
+        geometry.addCorner(vertIdx, texIdx, normIdx);
+      }
+      geometry.addFace(first, mtlStatement);
+    }
+
+    boolean matches(int start, String keyword) {
+      if (pos - start != keyword.length()) return false;
+      for (int i = 0; i < keyword.length(); i++) {
+        if (data[start + i] != keyword.charAt(i)) return false;
+      }
+      return true;
+    }
+
+    // Skips spaces and tabs. A backslash continues the statement on the
+    // next line, the rest of the line is ignored (from the Rhino OBJ hack
+    // by Carlos Tomas Marti).
+    void skipSpaces() {
+      while (pos < end) {
+        byte b = data[pos];
+        if (b == '\\') {
+          while (pos < end && !isLineEnd(data[pos])) pos++;
+          if (pos < end && data[pos] == '\r') pos++;
+          if (pos < end && data[pos] == '\n') pos++;
+        } else if (isSpace(b)) {
+          pos++;
+        } else {
+          break;
+        }
+      }
+    }
+
+    void skipToken() {
+      while (pos < end) {
+        byte b = data[pos];
+        if (isSpace(b) || isLineEnd(b) || b == '\\') break;
+        pos++;
+      }
+    }
+
+    // Moves to the end of the current statement, including the lines it
+    // continues on.
+    void skipStatement() {
+      while (pos < end) {
+        skipSpaces();
+        if (end <= pos || isLineEnd(data[pos])) break;
+        skipToken();
+      }
+    }
+
+    String nextToken() {
+      skipSpaces();
+      int start = pos;
+      skipToken();
+      if (start == pos) return null;
+      return new String(data, start, pos - start, StandardCharsets.UTF_8);
+    }
+
+    int nextInt() {
+      boolean negative = pos < end && data[pos] == '-';
+      if (negative) pos++;
+      int value = 0;
+      while (pos < end && '0' <= data[pos] && data[pos] <= '9') {
+        value = 10 * value + (data[pos++] - '0');
+      }
+      return negative ? -value : value;
+    }
+
+    // Returns 0 if the line has no more numbers, so "v 1 2" gets z = 0.
+    float nextFloat() {
+      skipSpaces();
+      int start = pos;
+      skipToken();
+      if (start == pos) return 0;
+      return FloatParser.parse(data, start, pos);
+    }
+
+    static boolean isSpace(byte b) {
+      return b == ' ' || b == '\t' || b == '\f' || b == 0x0B;
+    }
 
-    OBJFace() {
-      vertIdx = new ArrayList<Integer>();
-      texIdx = new ArrayList<Integer>();
-      normIdx = new ArrayList<Integer>();
-      matIdx = -1;
-      name = "";
+    static boolean isLineEnd(byte b) {
+      return b == '\n' || b == '\r';
     }
   }
 
@@ -33,6 +33,7 @@ import processing.data.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.regex.Matcher;
@@ -485,12 +486,14 @@ public class PShapeSVG extends PShape {
         vertexCount++;
       }
       matcher.reset();
-      vertices = new float[vertexCount][2];
+      vertexStride = 2;
+      vertexData = new float[2 * vertexCount];
       for (int i = 0; i < vertexCount; i++) {
         matcher.find();
-        vertices[i][X] = Float.parseFloat(matcher.group(1));
-        vertices[i][Y] = Float.parseFloat(matcher.group(5));
+        vertexData[2 * i + X] = Float.parseFloat(matcher.group(1));
+        vertexData[2 * i + Y] = Float.parseFloat(matcher.group(5));
       }
+      fillDeprecatedVertices();
 //      String[] pointsBuffer = PApplet.splitTokens(pointsAttr);
 //      vertexCount = pointsBuffer.length;
 //      vertices = new float[vertexCount][2];
@@ -511,67 +514,21 @@ public class PShapeSVG extends PShape {
     if (pathData == null || PApplet.trim(pathData).length() == 0) {
       return;
     }
-    char[] pathDataChars = pathData.toCharArray();
-
-    StringBuilder pathBuffer = new StringBuilder();
-    boolean lastSeparate = false;
-    boolean isOnDecimal = false;
-
-    for (int i = 0; i < pathDataChars.length; i++) {
-      char c = pathDataChars[i];
-      boolean separate = false;
-
-      if (c == 'M' || c == 'm' ||
-          c == 'L' || c == 'l' ||
-          c == 'H' || c == 'h' ||
-          c == 'V' || c == 'v' ||
-          c == 'C' || c == 'c' ||  // beziers
-          c == 'S' || c == 's' ||
-          c == 'Q' || c == 'q' ||  // quadratic beziers
-          c == 'T' || c == 't' ||
-          c == 'A' || c == 'a' ||  // elliptical arc
-          c == 'Z' || c == 'z' ||  // closepath
-          c == ',') {
-        separate = true;
-        if (i != 0) {
-          pathBuffer.append("|");
-        }
-      }
-      if (c == 'Z' || c == 'z') {
-        separate = false;
-      }
-      if (c == '.' && !isOnDecimal) {
-        isOnDecimal = true;
-      }
-      else if (isOnDecimal && (c < '0' || c > '9')) {
-        pathBuffer.append("|");
-        isOnDecimal = c == '.';
-      }
-      if (c == '-' && !lastSeparate) {
-        // allow for 'e' notation in numbers, e.g. 2.10e-9
-        // https://download.processing.org/bugzilla/1408.html
-        if (i == 0 || pathDataChars[i-1] != 'e') {
-          pathBuffer.append("|");
-        }
-      }
-      if (c != ',') {
-        pathBuffer.append(c); //"" + pathDataBuffer.charAt(i));
-      }
-      if (separate && c != ',' && c != '-') {
-        pathBuffer.append("|");
-      }
-      lastSeparate = separate;
-    }
-
-    // use whitespace constant to get rid of extra spaces and CR or LF
-    String[] pathTokens =
-      PApplet.splitTokens(pathBuffer.toString(), "|" + WHITESPACE);
-    vertices = new float[pathTokens.length][2];
-    vertexCodes = new int[pathTokens.length];
+    // Path data is ASCII, the only other character it can have is the
+    // no-break space of WHITESPACE, which ISO-8859-1 keeps as it is.
+    byte[] pathDataBytes = pathData.getBytes(StandardCharsets.ISO_8859_1);
+
+    // The numbers are read directly from the characters, instead of
+    // splitting the path into tokens first. The arrays start out with
+    // room for a vertex every eight characters and grow when needed.
+    PathScanner path = new PathScanner(pathDataBytes);
+    int estimate = pathDataBytes.length / 8 + 1;
+    vertexStride = 2;
+    vertexData = new float[2 * estimate];
+    vertexCodes = new int[estimate];
 
     float cx = 0;
     float cy = 0;
-    int i = 0;
 
     char implicitCommand = '\0';
     boolean prevCurve = false;
@@ -580,104 +537,94 @@ public class PShapeSVG extends PShape {
     float movetoX = 0;
     float movetoY = 0;
 
-    while (i < pathTokens.length) {
-      char c = pathTokens[i].charAt(0);
-      if (((c >= '0' && c <= '9') || (c == '-') || (c == '.')) && implicitCommand != '\0') {
+    while (path.skipSeparators()) {
+      char c = path.peek();
+      if (path.atNumber() && implicitCommand != '\0') {
         c = implicitCommand;
-        i--;
       } else {
         implicitCommand = c;
+        path.index++;
       }
       switch (c) {
 
       case 'M':  // M - move to (absolute)
-        cx = PApplet.parseFloat(pathTokens[i + 1]);
-        cy = PApplet.parseFloat(pathTokens[i + 2]);
+        cx = path.nextFloat();
+        cy = path.nextFloat();
         movetoX = cx;
         movetoY = cy;
         parsePathMoveto(cx, cy);
         implicitCommand = 'L';
-        i += 3;
         break;
 
       case 'm':  // m - move to (relative)
-        cx = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        cy = cy + PApplet.parseFloat(pathTokens[i + 2]);
+        cx = cx + path.nextFloat();
+        cy = cy + path.nextFloat();
         movetoX = cx;
         movetoY = cy;
         parsePathMoveto(cx, cy);
         implicitCommand = 'l';
-        i += 3;
         break;
 
       case 'L':
-        cx = PApplet.parseFloat(pathTokens[i + 1]);
-        cy = PApplet.parseFloat(pathTokens[i + 2]);
+        cx = path.nextFloat();
+        cy = path.nextFloat();
         parsePathLineto(cx, cy);
-        i += 3;
         break;
 
       case 'l':
-        cx = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        cy = cy + PApplet.parseFloat(pathTokens[i + 2]);
+        cx = cx + path.nextFloat();
+        cy = cy + path.nextFloat();
         parsePathLineto(cx, cy);
-        i += 3;
         break;
 
         // horizontal lineto absolute
       case 'H':
-        cx = PApplet.parseFloat(pathTokens[i + 1]);
+        cx = path.nextFloat();
         parsePathLineto(cx, cy);
-        i += 2;
         break;
 
         // horizontal lineto relative
       case 'h':
-        cx = cx + PApplet.parseFloat(pathTokens[i + 1]);
+        cx = cx + path.nextFloat();
         parsePathLineto(cx, cy);
-        i += 2;
         break;
 
       case 'V':
-        cy = PApplet.parseFloat(pathTokens[i + 1]);
+        cy = path.nextFloat();
         parsePathLineto(cx, cy);
-        i += 2;
         break;
 
       case 'v':
-        cy = cy + PApplet.parseFloat(pathTokens[i + 1]);
+        cy = cy + path.nextFloat();
         parsePathLineto(cx, cy);
-        i += 2;
         break;
 
         // C - curve to (absolute)
       case 'C': {
-        float ctrlX1 = PApplet.parseFloat(pathTokens[i + 1]);
-        float ctrlY1 = PApplet.parseFloat(pathTokens[i + 2]);
-        float ctrlX2 = PApplet.parseFloat(pathTokens[i + 3]);
-        float ctrlY2 = PApplet.parseFloat(pathTokens[i + 4]);
-        float endX = PApplet.parseFloat(pathTokens[i + 5]);
-        float endY = PApplet.parseFloat(pathTokens[i + 6]);
+        float ctrlX1 = path.nextFloat();
+        float ctrlY1 = path.nextFloat();
+        float ctrlX2 = path.nextFloat();
+        float ctrlY2 = path.nextFloat();
+        float endX = path.nextFloat();
+        float endY = path.nextFloat();
         parsePathCurveto(ctrlX1, ctrlY1, ctrlX2, ctrlY2, endX, endY);
         cx = endX;
         cy = endY;
-        i += 7;
         prevCurve = true;
       }
       break;
 
         // c - curve to (relative)
       case 'c': {
-        float ctrlX1 = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        float ctrlY1 = cy + PApplet.parseFloat(pathTokens[i + 2]);
-        float ctrlX2 = cx + PApplet.parseFloat(pathTokens[i + 3]);
-        float ctrlY2 = cy + PApplet.parseFloat(pathTokens[i + 4]);
-        float endX = cx + PApplet.parseFloat(pathTokens[i + 5]);
-        float endY = cy + PApplet.parseFloat(pathTokens[i + 6]);
+        float ctrlX1 = cx + path.nextFloat();
+        float ctrlY1 = cy + path.nextFloat();
+        float ctrlX2 = cx + path.nextFloat();
+        float ctrlY2 = cy + path.nextFloat();
+        float endX = cx + path.nextFloat();
+        float endY = cy + path.nextFloat();
         parsePathCurveto(ctrlX1, ctrlY1, ctrlX2, ctrlY2, endX, endY);
         cx = endX;
         cy = endY;
-        i += 7;
         prevCurve = true;
       }
       break;
@@ -700,21 +647,20 @@ public class PShapeSVG extends PShape {
           ctrlX = cx;
           ctrlY = cy;
         } else {
-          float ppx = vertices[vertexCount-2][X];
-          float ppy = vertices[vertexCount-2][Y];
-          float px = vertices[vertexCount-1][X];
-          float py = vertices[vertexCount-1][Y];
+          float ppx = vertexField(vertexCount-2, X);
+          float ppy = vertexField(vertexCount-2, Y);
+          float px = vertexField(vertexCount-1, X);
+          float py = vertexField(vertexCount-1, Y);
           ctrlX = px + (px - ppx);
           ctrlY = py + (py - ppy);
         }
-        float ctrlX2 = PApplet.parseFloat(pathTokens[i + 1]);
-        float ctrlY2 = PApplet.parseFloat(pathTokens[i + 2]);
-        float endX = PApplet.parseFloat(pathTokens[i + 3]);
-        float endY = PApplet.parseFloat(pathTokens[i + 4]);
+        float ctrlX2 = path.nextFloat();
+        float ctrlY2 = path.nextFloat();
+        float endX = path.nextFloat();
+        float endY = path.nextFloat();
         parsePathCurveto(ctrlX, ctrlY, ctrlX2, ctrlY2, endX, endY);
         cx = endX;
         cy = endY;
-        i += 5;
         prevCurve = true;
       }
       break;
@@ -725,21 +671,20 @@ public class PShapeSVG extends PShape {
           ctrlX = cx;
           ctrlY = cy;
         } else {
-          float ppx = vertices[vertexCount-2][X];
-          float ppy = vertices[vertexCount-2][Y];
-          float px = vertices[vertexCount-1][X];
-          float py = vertices[vertexCount-1][Y];
+          float ppx = vertexField(vertexCount-2, X);
+          float ppy = vertexField(vertexCount-2, Y);
+          float px = vertexField(vertexCount-1, X);
+          float py = vertexField(vertexCount-1, Y);
           ctrlX = px + (px - ppx);
           ctrlY = py + (py - ppy);
         }
-        float ctrlX2 = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        float ctrlY2 = cy + PApplet.parseFloat(pathTokens[i + 2]);
-        float endX = cx + PApplet.parseFloat(pathTokens[i + 3]);
-        float endY = cy + PApplet.parseFloat(pathTokens[i + 4]);
+        float ctrlX2 = cx + path.nextFloat();
+        float ctrlY2 = cy + path.nextFloat();
+        float endX = cx + path.nextFloat();
+        float endY = cy + path.nextFloat();
         parsePathCurveto(ctrlX, ctrlY, ctrlX2, ctrlY2, endX, endY);
         cx = endX;
         cy = endY;
-        i += 5;
         prevCurve = true;
       }
       break;
@@ -752,30 +697,28 @@ public class PShapeSVG extends PShape {
       // to draw a polybézier. At the end of the command, the new current point
       // becomes the final (x,y) coordinate pair used in the polybézier.
       case 'Q': {
-        ctrlX = PApplet.parseFloat(pathTokens[i + 1]);
-        ctrlY = PApplet.parseFloat(pathTokens[i + 2]);
-        float endX = PApplet.parseFloat(pathTokens[i + 3]);
-        float endY = PApplet.parseFloat(pathTokens[i + 4]);
+        ctrlX = path.nextFloat();
+        ctrlY = path.nextFloat();
+        float endX = path.nextFloat();
+        float endY = path.nextFloat();
         //parsePathQuadto(cx, cy, ctrlX, ctrlY, endX, endY);
         parsePathQuadto(ctrlX, ctrlY, endX, endY);
         cx = endX;
         cy = endY;
-        i += 5;
         prevCurve = true;
       }
       break;
 
       // q - quadratic curve to (relative)
       case 'q': {
-        ctrlX = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        ctrlY = cy + PApplet.parseFloat(pathTokens[i + 2]);
-        float endX = cx + PApplet.parseFloat(pathTokens[i + 3]);
-        float endY = cy + PApplet.parseFloat(pathTokens[i + 4]);
+        ctrlX = cx + path.nextFloat();
+        ctrlY = cy + path.nextFloat();
+        float endX = cx + path.nextFloat();
+        float endY = cy + path.nextFloat();
         //parsePathQuadto(cx, cy, ctrlX, ctrlY, endX, endY);
         parsePathQuadto(ctrlX, ctrlY, endX, endY);
         cx = endX;
         cy = endY;
-        i += 5;
         prevCurve = true;
       }
       break;
@@ -791,20 +734,19 @@ public class PShapeSVG extends PShape {
           ctrlX = cx;
           ctrlY = cy;
         } else {
-          float ppx = vertices[vertexCount-2][X];
-          float ppy = vertices[vertexCount-2][Y];
-          float px = vertices[vertexCount-1][X];
-          float py = vertices[vertexCount-1][Y];
+          float ppx = vertexField(vertexCount-2, X);
+          float ppy = vertexField(vertexCount-2, Y);
+          float px = vertexField(vertexCount-1, X);
+          float py = vertexField(vertexCount-1, Y);
           ctrlX = px + (px - ppx);
           ctrlY = py + (py - ppy);
         }
-        float endX = PApplet.parseFloat(pathTokens[i + 1]);
-        float endY = PApplet.parseFloat(pathTokens[i + 2]);
+        float endX = path.nextFloat();
+        float endY = path.nextFloat();
         //parsePathQuadto(cx, cy, ctrlX, ctrlY, endX, endY);
         parsePathQuadto(ctrlX, ctrlY, endX, endY);
         cx = endX;
         cy = endY;
-        i += 3;
         prevCurve = true;
       }
         break;
@@ -815,54 +757,51 @@ public class PShapeSVG extends PShape {
           ctrlX = cx;
           ctrlY = cy;
         } else {
-          float ppx = vertices[vertexCount-2][X];
-          float ppy = vertices[vertexCount-2][Y];
-          float px = vertices[vertexCount-1][X];
-          float py = vertices[vertexCount-1][Y];
+          float ppx = vertexField(vertexCount-2, X);
+          float ppy = vertexField(vertexCount-2, Y);
+          float px = vertexField(vertexCount-1, X);
+          float py = vertexField(vertexCount-1, Y);
           ctrlX = px + (px - ppx);
           ctrlY = py + (py - ppy);
         }
-        float endX = cx + PApplet.parseFloat(pathTokens[i + 1]);
-        float endY = cy + PApplet.parseFloat(pathTokens[i + 2]);
+        float endX = cx + path.nextFloat();
+        float endY = cy + path.nextFloat();
         //parsePathQuadto(cx, cy, ctrlX, ctrlY, endX, endY);
         parsePathQuadto(ctrlX, ctrlY, endX, endY);
         cx = endX;
         cy = endY;
-        i += 3;
         prevCurve = true;
       }
         break;
 
       // A - elliptical arc to (absolute)
       case 'A': {
-        float rx = PApplet.parseFloat(pathTokens[i + 1]);
-        float ry = PApplet.parseFloat(pathTokens[i + 2]);
-        float angle = PApplet.parseFloat(pathTokens[i + 3]);
-        boolean fa = PApplet.parseFloat(pathTokens[i + 4]) != 0;
-        boolean fs = PApplet.parseFloat(pathTokens[i + 5]) != 0;
-        float endX = PApplet.parseFloat(pathTokens[i + 6]);
-        float endY = PApplet.parseFloat(pathTokens[i + 7]);
+        float rx = path.nextFloat();
+        float ry = path.nextFloat();
+        float angle = path.nextFloat();
+        boolean fa = path.nextFlag();
+        boolean fs = path.nextFlag();
+        float endX = path.nextFloat();
+        float endY = path.nextFloat();
         parsePathArcto(cx, cy, rx, ry, angle, fa, fs, endX, endY);
         cx = endX;
         cy = endY;
-        i += 8;
         prevCurve = true;
       }
       break;
 
       // a - elliptical arc to (relative)
       case 'a': {
-        float rx = PApplet.parseFloat(pathTokens[i + 1]);
-        float ry = PApplet.parseFloat(pathTokens[i + 2]);
-        float angle = PApplet.parseFloat(pathTokens[i + 3]);
-        boolean fa = PApplet.parseFloat(pathTokens[i + 4]) != 0;
-        boolean fs = PApplet.parseFloat(pathTokens[i + 5]) != 0;
-        float endX = cx + PApplet.parseFloat(pathTokens[i + 6]);
-        float endY = cy + PApplet.parseFloat(pathTokens[i + 7]);
+        float rx = path.nextFloat();
+        float ry = path.nextFloat();
+        float angle = path.nextFloat();
+        boolean fa = path.nextFlag();
+        boolean fs = path.nextFlag();
+        float endX = cx + path.nextFloat();
+        float endY = cy + path.nextFloat();
         parsePathArcto(cx, cy, rx, ry, angle, fa, fs, endX, endY);
         cx = endX;
         cy = endY;
-        i += 8;
         prevCurve = true;
       }
       break;
@@ -875,20 +814,90 @@ public class PShapeSVG extends PShape {
         cx = movetoX;
         cy = movetoY;
         close = true;
-        i++;
+        // a number can't follow a closepath
+        implicitCommand = '\0';
         break;
 
       default:
-        String parsed =
-          PApplet.join(PApplet.subset(pathTokens, 0, i), ",");
-        String unparsed =
-          PApplet.join(PApplet.subset(pathTokens, i), ",");
-        System.err.println("parsed: " + parsed);
-        System.err.println("unparsed: " + unparsed);
-        throw new RuntimeException("shape command not handled: " + pathTokens[i]);
+        throw new RuntimeException("shape command not handled: " + c);
       }
 //      prevCommand = c;
     }
+    fillDeprecatedVertices();
+  }
+
+
+  /**
+   * Reads the commands and numbers of path data in place, so that no
+   * strings are created for the individual coordinates.
+   */
+  static protected class PathScanner {
+    final byte[] data;
+    int index;
+
+
+    PathScanner(byte[] data) {
+      this.data = data;
+    }
+
+
+    /**
+     * Skips whitespace and commas, returns false if the end of the data
+     * has been reached.
+     */
+    boolean skipSeparators() {
+      while (index < data.length) {
+        char c = peek();
+        if (c != ',' && WHITESPACE.indexOf(c) == -1) return true;
+        index++;
+      }
+      return false;
+    }
+
+
+    char peek() {
+      return (char) (data[index] & 0xff);
+    }
+
+
+    boolean atNumber() {
+      char c = peek();
+      return ('0' <= c && c <= '9') || c == '.' || c == '-' || c == '+';
+    }
+
+
+    /**
+     * Parses the next number. A number ends wherever the next one can
+     * start, so "1.5.5" is read as 1.5 and .5, and "1-2" as 1 and -2.
+     */
+    float nextFloat() {
+      skipSeparators();
+      int start = index;
+      int stop = FloatParser.scan(data, start, data.length);
+      if (stop == start) {
+        throw new RuntimeException("number expected in path data at position " +
+                                   start);
+      }
+      index = stop;
+      return FloatParser.parse(data, start, stop);
+    }
+
+
+    /**
+     * Parses an arc flag, which doesn't need a separator after it, as
+     * in "a10 10 0 115 5".
+     */
+    boolean nextFlag() {
+      if (skipSeparators()) {
+        char c = peek();
+        if ((c == '0' || c == '1') &&
+            (index + 1 == data.length || data[index + 1] != '.')) {
+          index++;
+          return c == '1';
+        }
+      }
+      return nextFloat() != 0;
+    }
   }
 
 
@@ -901,19 +910,6 @@ public class PShapeSVG extends PShape {
 //        }
 //      }
 
-  private void parsePathVertex(float x, float y) {
-    if (vertexCount == vertices.length) {
-      //vertices = (float[][]) PApplet.expand(vertices);
-      float[][] temp = new float[vertexCount << 1][2];
-      System.arraycopy(vertices, 0, temp, 0, vertexCount);
-      vertices = temp;
-    }
-    vertices[vertexCount][X] = x;
-    vertices[vertexCount][Y] = y;
-    vertexCount++;
-  }
-
-
   private void parsePathCode(int what) {
     if (vertexCodeCount == vertexCodes.length) {
       vertexCodes = PApplet.expand(vertexCodes);
@@ -927,13 +923,13 @@ public class PShapeSVG extends PShape {
       parsePathCode(BREAK);
     }
     parsePathCode(VERTEX);
-    parsePathVertex(px, py);
+    appendVertex(px, py);
   }
 
 
   private void parsePathLineto(float px, float py) {
     parsePathCode(VERTEX);
-    parsePathVertex(px, py);
+    appendVertex(px, py);
   }
 
 
@@ -941,9 +937,9 @@ public class PShapeSVG extends PShape {
                                 float x2, float y2,
                                 float x3, float y3) {
     parsePathCode(BEZIER_VERTEX);
-    parsePathVertex(x1, y1);
-    parsePathVertex(x2, y2);
-    parsePathVertex(x3, y3);
+    appendVertex(x1, y1);
+    appendVertex(x2, y2);
+    appendVertex(x3, y3);
   }
 
 //  private void parsePathQuadto(float x1, float y1,
@@ -954,9 +950,9 @@ public class PShapeSVG extends PShape {
 //    parsePathCode(QUAD_BEZIER_VERTEX);
 //    // x1/y1 already covered by last moveto, lineto, or curveto
 //
-//    parsePathVertex(x1 + ((cx-x1)*2/3.0f), y1 + ((cy-y1)*2/3.0f));
-//    parsePathVertex(x2 + ((cx-x2)*2/3.0f), y2 + ((cy-y2)*2/3.0f));
-//    parsePathVertex(x2, y2);
+//    appendVertex(x1 + ((cx-x1)*2/3.0f), y1 + ((cy-y1)*2/3.0f));
+//    appendVertex(x2 + ((cx-x2)*2/3.0f), y2 + ((cy-y2)*2/3.0f));
+//    appendVertex(x2, y2);
 //  }
 
   private void parsePathQuadto(float cx, float cy,
@@ -965,8 +961,8 @@ public class PShapeSVG extends PShape {
 //    parsePathCode(BEZIER_VERTEX);
     parsePathCode(QUADRATIC_VERTEX);
     // x1/y1 already covered by last moveto, lineto, or curveto
-    parsePathVertex(cx, cy);
-    parsePathVertex(x2, y2);
+    appendVertex(cx, cy);
+    appendVertex(x2, y2);
   }
 
 
@@ -1047,9 +1043,9 @@ public class PShapeSVG extends PShape {
       if (i == segmentCount - 1) { p2x = x2;  p2y = y2; }
 
       parsePathCode(BEZIER_VERTEX);
-      parsePathVertex(p1x + relq1x, p1y + relq1y);
-      parsePathVertex(p2x - relq2x, p2y - relq2y);
-      parsePathVertex(p2x, p2y);
+      appendVertex(p1x + relq1x, p1y + relq1y);
+      appendVertex(p2x - relq2x, p2y - relq2y);
+      appendVertex(p2x, p2y);
 
       p1x = p2x;  relq1x = relq2x;
       p1y = p2y;  relq1y = relq2y;
@@ -1762,6 +1758,12 @@ public class PShapeSVG extends PShape {
       textToDisplay = text;
     }
 
+    @Override
+    protected void calcBounds(float[] b) {
+      // the extent of the text is only known once it's drawn
+      setUnbounded(b);
+    }
+
     @Override
     public void drawImpl(PGraphics g) {
       if (font == null) {
@@ -35,6 +35,18 @@ public interface PSurface {
   static public final int MIN_WINDOW_WIDTH = 128;
   static public final int MIN_WINDOW_HEIGHT = 128;
 
+  /**
+   * Sleeps for the rest of the frame, adjusting for how much the previous
+   * sleep overshot, as the animation thread always did. The default.
+   */
+  static public final int PACING_SLEEP = 0;
+
+  /**
+   * Sleeps coarsely, then parks and spins until the frame is due, on an
+   * absolute schedule that doesn't drift, at the cost of some CPU time.
+   */
+  static public final int PACING_PRECISE = 1;
+
   //public int displayDensity();
 
   //public int displayDensity(int display);
@@ -129,6 +141,17 @@ public interface PSurface {
 
   public void setFrameRate(float fps);
 
+  /**
+   * Sets how the animation thread waits between frames, either
+   * PACING_SLEEP or PACING_PRECISE. Surfaces that pace their frames
+   * another way, like the OpenGL one, ignore it.
+   */
+  default public void setFramePacing(int pacing) { }
+
+  default public int getFramePacing() {
+    return PACING_SLEEP;
+  }
+
 //  // called on the first frame so that the now-visible drawing surface can
 //  // receive key and mouse events
 //  public void requestFocus();
@@ -0,0 +1,172 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+/**
+ * Surface for sketches that run without a display, like batch rendering
+ * on a server. Frames are drawn back to back, without waiting for a
+ * display or sleeping between them.
+ * <p>
+ * By default, the sketch runs on a fixed clock. Each frame advances
+ * millis() by exactly one frame period (set with frameRate()), however long
+ * it took to draw, so that the same sketch always draws the same frames.
+ * With setFixedStep(false), millis() follows the system clock instead.
+ * <p>
+ * The sketch stops after the frame limit, when it calls exit(), or when it
+ * stops looping, since there are no events to call redraw().
+ *
+ * @see PApplet#runHeadless(PApplet, int)
+ */
+public class PSurfaceHeadless extends PSurfaceNone {
+  protected boolean fixedStep = true;
+  protected int frameLimit;
+  protected String exportPattern;
+
+  /** Time of the next frame on the fixed clock. */
+  protected long clockNanos;
+
+
+  public PSurfaceHeadless(PGraphics graphics) {
+    super(graphics);
+    graphics.surface = this;
+  }
+
+
+  /**
+   * Sets whether millis() advances by one frame period per frame (the
+   * default), or follows the system clock.
+   */
+  public void setFixedStep(boolean fixedStep) {
+    this.fixedStep = fixedStep;
+  }
+
+
+  public boolean isFixedStep() {
+    return fixedStep;
+  }
+
+
+  /**
+   * Stops the sketch after this many calls to draw(), or never with 0.
+   */
+  public void setFrameLimit(int frames) {
+    frameLimit = frames;
+  }
+
+
+  public int getFrameLimit() {
+    return frameLimit;
+  }
+
+
+  /**
+   * Saves every frame drawn, to files named as with saveFrame(), or stops
+   * saving them with null.
+   */
+  public void setFrameExport(String pattern) {
+    exportPattern = pattern;
+  }
+
+
+  //
+
+
+  @Override
+  public Thread createThread() {
+    return new Thread(this::run, "Animation Thread");
+  }
+
+
+  /**
+   * Whether step() has frames left to draw.
+   */
+  public boolean isRunning() {
+    if (sketch.finished) return false;
+    if (frameLimit > 0 && sketch.frameCount > frameLimit) return false;
+    return sketch.looping || sketch.redraw;
+  }
+
+
+  /**
+   * Draws the next frame on the calling thread, setup() on the first call.
+   * Returns false, without drawing, once the sketch is done.
+   */
+  public boolean step() {
+    if (!isRunning()) return false;
+
+    sketch.frameClockNanos = fixedStep ? clockNanos : -1;
+    int frame = sketch.frameCount;
+    sketch.handleDraw();
+    clockNanos += frameRatePeriod;
+
+    if (exportPattern != null && frame > 0) {
+      exportFrame(frame);
+    }
+    return true;
+  }
+
+
+  protected void exportFrame(int frame) {
+    graphics.save(sketch.savePath(PApplet.insertFrame(exportPattern, frame)));
+  }
+
+
+  /**
+   * Runs the sketch until it's done, then disposes of it. Called by the
+   * animation thread, or directly to run the sketch on the calling thread.
+   */
+  public void run() {
+    begin();
+    while (Thread.currentThread() == thread && step()) {
+      checkPause();
+    }
+    end();
+  }
+
+
+  /**
+   * Starts the sketch, for frames to be drawn with step(), possibly from
+   * other threads than the calling one.
+   */
+  public void begin() {
+    if (thread == null) {
+      // running on the caller's thread
+      thread = Thread.currentThread();
+    }
+    sketch.start();
+  }
+
+
+  /**
+   * Disposes of the sketch once it's done.
+   */
+  public void end() {
+    sketch.dispose();
+
+    // Only an explicit exit() ends the process, so that sketches can
+    // be run one after another in the same one
+    if (sketch.exitCalled) {
+      sketch.exitActual();
+    }
+  }
+}
@@ -41,6 +41,8 @@ public class PSurfaceNone implements PSurface {
   protected float frameRateTarget = 60;
   protected long frameRatePeriod = 1000000000L / 60L;
 
+  protected int framePacing = PACING_SLEEP;
+
 
   public PSurfaceNone(PGraphics graphics) {
     this.graphics = graphics;
@@ -289,6 +291,21 @@ public class PSurfaceNone implements PSurface {
   }
 
 
+  @Override
+  public void setFramePacing(int pacing) {
+    if (pacing != PACING_SLEEP && pacing != PACING_PRECISE) {
+      throw new IllegalArgumentException("Unknown frame pacing " + pacing);
+    }
+    framePacing = pacing;
+  }
+
+
+  @Override
+  public int getFramePacing() {
+    return framePacing;
+  }
+
+
   public class AnimationThread extends Thread {
 
     public AnimationThread() {
@@ -337,8 +354,14 @@ public class PSurfaceNone implements PSurface {
       // un-pause the sketch and get rolling
       sketch.start();
 
+      FramePacer pacer = new FramePacer();
+      pacer.start();
+
       while ((Thread.currentThread() == thread) && !sketch.finished) {
-        checkPause();
+        if (paused) {
+          checkPause();
+          pacer.start();  // don't try to make up for the pause
+        }
 
         // Don't resize the renderer from the EDT (i.e. from a ComponentEvent),
         // otherwise it may attempt a resize mid-render.
@@ -371,6 +394,19 @@ public class PSurfaceNone implements PSurface {
 //          ite.getTargetException().printStackTrace();
 //        }
 
+        if (framePacing == PACING_PRECISE) {
+          if (pacer.waitForNextFrame(frameRatePeriod)) {
+            noDelays = 0;
+          } else if (++noDelays > NO_DELAYS_PER_YIELD) {
+            Thread.yield();   // same as below when frames run late
+            noDelays = 0;
+          }
+          // so that switching back to PACING_SLEEP starts from this frame
+          beforeTime = System.nanoTime();
+          overSleepTime = 0L;
+          continue;
+        }
+
         // wait for update & paint to happen before drawing next frame
         // this is necessary since the drawing is sometimes in a
         // separate thread, meaning that the next frame will start
@@ -0,0 +1,455 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+
+/**
+ * An image too large for a single pixels[] array, like scans of tens of
+ * thousands of pixels on each side. The image is split into square tiles,
+ * stored in a memory-mapped scratch file, and only the most recently used
+ * tiles are kept in memory.
+ * <p>
+ * get(), set(), copy() and blend() work as with any PImage, on single
+ * pixels or on regions small enough to fit in memory. There is no pixels[]
+ * array, so loadPixels() and the functions that need it, like filter() or
+ * resize(), are not supported. To process the whole image, use
+ * processTiles(), which goes through the tiles in parallel.
+ * <p>
+ * Call dispose() once done with the image to delete the scratch file.
+ */
+public class PTiledImage extends PImage {
+  static public final int DEFAULT_TILE_SIZE = 512;
+  static public final int DEFAULT_CACHE_SIZE = 64;
+
+  // Tiles are mapped in segments of at most this many bytes
+  static protected final long SEGMENT_SIZE = 1L << 30;
+
+  protected int tileSize;
+  protected int tileCols;
+  protected int tileRows;
+
+  protected File file;
+  protected RandomAccessFile raf;
+  protected FileChannel channel;
+  protected IntBuffer[] segments;
+  protected int tilesPerSegment;
+
+  protected TileCache cache;
+
+
+  /**
+   * A part of the image, with its own pixels[] array, of width * height
+   * pixels. Changes to the pixels are saved when the tile leaves the cache,
+   * or right away during processTiles().
+   */
+  static public class Tile {
+    public final int col, row;
+    public final int x, y;
+    public final int width, height;
+    public final int[] pixels;
+    protected boolean modified;
+
+    Tile(int col, int row, int x, int y, int width, int height) {
+      this.col = col;
+      this.row = row;
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+      pixels = new int[width * height];
+    }
+  }
+
+
+  /**
+   * Creates an ARGB image with the default tile and cache sizes, in a
+   * temporary file.
+   */
+  public PTiledImage(int width, int height) throws IOException {
+    this(width, height, ARGB, DEFAULT_TILE_SIZE, DEFAULT_CACHE_SIZE, null);
+  }
+
+
+  /**
+   * @param tileSize width and height of the tiles
+   * @param cacheSize how many tiles to keep in memory
+   * @param scratch file for the tiles, or null for a temporary file
+   */
+  public PTiledImage(int width, int height, int format,
+                     int tileSize, int cacheSize, File scratch) throws IOException {
+    if (width <= 0 || height <= 0 || tileSize <= 0 || cacheSize <= 0) {
+      throw new IllegalArgumentException("Sizes must be positive");
+    }
+    if ((long) tileSize * tileSize * 4 > SEGMENT_SIZE) {
+      throw new IllegalArgumentException("Tiles of " + tileSize +
+                                         " pixels are too large");
+    }
+    this.width = pixelWidth = width;
+    this.height = pixelHeight = height;
+    this.format = format;
+    pixelDensity = 1;
+
+    this.tileSize = tileSize;
+    tileCols = (width + tileSize - 1) / tileSize;
+    tileRows = (height + tileSize - 1) / tileSize;
+
+    if (scratch == null) {
+      scratch = File.createTempFile("tiles", ".raw");
+      scratch.deleteOnExit();
+    }
+    file = scratch;
+    raf = new RandomAccessFile(file, "rw");
+    raf.setLength(0);
+    channel = raf.getChannel();
+
+    long tileBytes = 4L * tileSize * tileSize;
+    tilesPerSegment = (int) Math.min(Integer.MAX_VALUE, SEGMENT_SIZE / tileBytes);
+    int tileCount = tileCols * tileRows;
+    segments = new IntBuffer[(tileCount + tilesPerSegment - 1) / tilesPerSegment];
+
+    cache = new TileCache(cacheSize);
+  }
+
+
+  public int getTileSize() {
+    return tileSize;
+  }
+
+
+  public int getTileCols() {
+    return tileCols;
+  }
+
+
+  public int getTileRows() {
+    return tileRows;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // PIXELS
+
+
+  /**
+   * Not supported, the whole image doesn't fit in a pixels[] array.
+   * Use get() on a region, or processTiles() instead.
+   */
+  @Override
+  public void loadPixels() {  // ignore
+    throw new UnsupportedOperationException("A PTiledImage has no pixels[], " +
+                                            "use get() or processTiles()");
+  }
+
+
+  @Override
+  public void updatePixels(int x, int y, int w, int h) {  // ignore
+    // nothing to update, changes go straight to the tiles
+  }
+
+
+  @Override
+  public synchronized int get(int x, int y) {
+    if ((x < 0) || (y < 0) || (x >= pixelWidth) || (y >= pixelHeight)) return 0;
+
+    Tile tile = getTile(x / tileSize, y / tileSize);
+    int pixel = tile.pixels[(y - tile.y) * tile.width + (x - tile.x)];
+    return switch (format) {
+      case RGB -> pixel | 0xff000000;
+      case ARGB -> pixel;
+      case ALPHA -> (pixel << 24) | 0xffffff;
+      default -> 0;
+    };
+  }
+
+
+  @Override
+  public synchronized void set(int x, int y, int c) {
+    if ((x < 0) || (y < 0) || (x >= pixelWidth) || (y >= pixelHeight)) return;
+
+    Tile tile = getTile(x / tileSize, y / tileSize);
+    int index = (y - tile.y) * tile.width + (x - tile.x);
+    switch (format) {
+      case RGB -> tile.pixels[index] = 0xff000000 | c;
+      case ARGB -> tile.pixels[index] = c;
+      case ALPHA -> tile.pixels[index] = ((c & 0xff) << 24) | 0xffffff;
+    }
+    tile.modified = true;
+  }
+
+
+  @Override
+  protected synchronized void getImpl(int sourceX, int sourceY,
+                                      int sourceWidth, int sourceHeight,
+                                      PImage target, int targetX, int targetY) {
+    int right = sourceX + sourceWidth;
+    int bottom = sourceY + sourceHeight;
+    for (int row = sourceY / tileSize; row <= (bottom - 1) / tileSize; row++) {
+      for (int col = sourceX / tileSize; col <= (right - 1) / tileSize; col++) {
+        Tile tile = getTile(col, row);
+        int x1 = Math.max(sourceX, tile.x);
+        int y1 = Math.max(sourceY, tile.y);
+        int x2 = Math.min(right, tile.x + tile.width);
+        int y2 = Math.min(bottom, tile.y + tile.height);
+        for (int y = y1; y < y2; y++) {
+          System.arraycopy(tile.pixels, (y - tile.y) * tile.width + (x1 - tile.x),
+                           target.pixels,
+                           (targetY + y - sourceY) * target.pixelWidth +
+                           targetX + x1 - sourceX,
+                           x2 - x1);
+        }
+      }
+    }
+  }
+
+
+  @Override
+  protected synchronized void setImpl(PImage sourceImage,
+                                      int sourceX, int sourceY,
+                                      int sourceWidth, int sourceHeight,
+                                      int targetX, int targetY) {
+    if (sourceImage instanceof PTiledImage) {
+      // only regions of other images are in memory
+      sourceImage = sourceImage.get(sourceX, sourceY, sourceWidth, sourceHeight);
+      sourceX = 0;
+      sourceY = 0;
+    } else {
+      sourceImage.loadPixels();
+    }
+    int right = targetX + sourceWidth;
+    int bottom = targetY + sourceHeight;
+    for (int row = targetY / tileSize; row <= (bottom - 1) / tileSize; row++) {
+      for (int col = targetX / tileSize; col <= (right - 1) / tileSize; col++) {
+        Tile tile = getTile(col, row);
+        int x1 = Math.max(targetX, tile.x);
+        int y1 = Math.max(targetY, tile.y);
+        int x2 = Math.min(right, tile.x + tile.width);
+        int y2 = Math.min(bottom, tile.y + tile.height);
+        for (int y = y1; y < y2; y++) {
+          System.arraycopy(sourceImage.pixels,
+                           (sourceY + y - targetY) * sourceImage.pixelWidth +
+                           sourceX + x1 - targetX,
+                           tile.pixels, (y - tile.y) * tile.width + (x1 - tile.x),
+                           x2 - x1);
+        }
+        tile.modified = true;
+      }
+    }
+  }
+
+
+  /**
+   * Blends a region of src into a region of this image, which is brought
+   * into memory for the purpose, so both regions must fit in memory.
+   */
+  @Override
+  public void blend(PImage src,
+                    int sx, int sy, int sw, int sh,
+                    int dx, int dy, int dw, int dh, int mode) {
+    if (dw <= 0 || dh <= 0) return;
+
+    if (src instanceof PTiledImage) {
+      src = src.get(sx, sy, sw, sh);
+      sx = 0;
+      sy = 0;
+    }
+    PImage region = get(dx, dy, dw, dh);
+    region.blend(src, sx, sy, sw, sh, 0, 0, dw, dh, mode);
+    set(dx, dy, region);
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // TILES
+
+
+  /**
+   * Returns the tile at this column and row, loading it if it's not in
+   * the cache. Changes to its pixels[] must be followed by setModified(),
+   * and are only safe until other tiles are loaded.
+   */
+  public synchronized Tile getTile(int col, int row) {
+    int index = row * tileCols + col;
+    Tile tile = cache.get(index);
+    if (tile == null) {
+      tile = readTile(col, row);
+      cache.put(index, tile);
+    }
+    return tile;
+  }
+
+
+  /**
+   * Marks a tile returned by getTile() as changed, so that it's saved.
+   */
+  public void setModified(Tile tile) {
+    tile.modified = true;
+  }
+
+
+  /**
+   * Runs the action on every tile, on several threads, and saves the tiles
+   * after the action. The action gets a separate copy of each tile, so it
+   * can change its pixels freely, but it should not call get() or set()
+   * on the image.
+   */
+  public void processTiles(Consumer<Tile> action) {
+    flush();
+    synchronized (this) {
+      cache.clear();
+    }
+    ParallelRange.run(tileCols * tileRows, 1, (first, last) ->
+      processTiles(action, first, last));
+  }
+
+
+  protected void processTiles(Consumer<Tile> action, int first, int last) {
+    for (int index = first; index < last; index++) {
+      Tile tile = readTile(index % tileCols, index / tileCols);
+      action.accept(tile);
+      writeTile(tile);
+    }
+  }
+
+
+  /**
+   * Saves the modified tiles that are in memory to the scratch file.
+   */
+  public synchronized void flush() {
+    for (Tile tile : cache.values()) {
+      if (tile.modified) {
+        writeTile(tile);
+        tile.modified = false;
+      }
+    }
+  }
+
+
+  /**
+   * Closes and deletes the scratch file. The image can't be used after.
+   */
+  public synchronized void dispose() {
+    cache.clear();
+    segments = null;
+    try {
+      channel.close();
+      raf.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    if (!file.delete()) {
+      file.deleteOnExit();
+    }
+  }
+
+
+  protected Tile createTile(int col, int row) {
+    int x = col * tileSize;
+    int y = row * tileSize;
+    return new Tile(col, row, x, y,
+                    Math.min(tileSize, pixelWidth - x),
+                    Math.min(tileSize, pixelHeight - y));
+  }
+
+
+  protected Tile readTile(int col, int row) {
+    Tile tile = createTile(col, row);
+    int index = row * tileCols + col;
+    segment(index).get(offset(index), tile.pixels);
+    return tile;
+  }
+
+
+  protected void writeTile(Tile tile) {
+    int index = tile.row * tileCols + tile.col;
+    segment(index).put(offset(index), tile.pixels);
+  }
+
+
+  // Offset of a tile within its segment, in pixels
+  protected int offset(int index) {
+    return (index % tilesPerSegment) * tileSize * tileSize;
+  }
+
+
+  // The mapped part of the file that holds this tile. Absolute reads and
+  // writes of different tiles don't interfere, so each caller gets its own
+  // view of the shared buffer.
+  protected IntBuffer segment(int index) {
+    int number = index / tilesPerSegment;
+    IntBuffer segment;
+    synchronized (segments) {
+      segment = segments[number];
+      if (segment == null) {
+        int tileCount = tileCols * tileRows;
+        int tiles = Math.min(tilesPerSegment, tileCount - number * tilesPerSegment);
+        long start = 4L * tileSize * tileSize * number * tilesPerSegment;
+        long size = 4L * tileSize * tileSize * tiles;
+        try {
+          segment = channel.map(FileChannel.MapMode.READ_WRITE, start, size)
+            .order(ByteOrder.nativeOrder()).asIntBuffer();
+        } catch (IOException e) {
+          throw new RuntimeException("Could not map " + file, e);
+        }
+        segments[number] = segment;
+      }
+    }
+    return segment.duplicate();
+  }
+
+
+  // Most recently used tiles, saving the modified ones when they go
+  protected class TileCache extends LinkedHashMap<Integer, Tile> {
+    static private final long serialVersionUID = 1L;
+
+    int capacity;
+
+    TileCache(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, Tile> eldest) {
+      if (size() > capacity) {
+        Tile tile = eldest.getValue();
+        if (tile.modified) {
+          writeTile(tile);
+        }
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -941,6 +941,21 @@ public class PVector implements Serializable {
   }
 
 
+  /**
+   * Linear interpolate between two vectors
+   * @param target the vector to store the result in, or null to create one
+   * @return a new vector (if target was null), or target
+   */
+  public static PVector lerp(PVector v1, PVector v2, float amt, PVector target) {
+    if (target == null) {
+      target = new PVector();
+    }
+    return target.set(PApplet.lerp(v1.x, v2.x, amt),
+                      PApplet.lerp(v1.y, v2.y, amt),
+                      PApplet.lerp(v1.z, v2.z, amt));
+  }
+
+
   /**
    * Linear interpolate the vector to x,y,z values
    * @param x the x component to lerp to
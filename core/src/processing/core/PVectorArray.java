@@ -0,0 +1,359 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License version 2.1 as published by the Free Software Foundation.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+ */
+
+package processing.core;
+
+import java.util.Arrays;
+
+
+/**
+ * A list of vectors stored as three arrays of x, y and z components,
+ * instead of one PVector object per vector. Particle systems with many
+ * thousands of positions and velocities use much less memory this way,
+ * and can update all the vectors at once with methods like <b>add()</b>,
+ * <b>normalize()</b> and <b>limit()</b>, which are split across several
+ * threads for very large lists.
+ * <p>
+ * The x, y and z arrays can be read and written directly, for instance
+ * <b>v.x[i] += 1</b>, but they may be longer than <b>size()</b>, and are
+ * replaced by new arrays when the list grows.
+ *
+ * @see PVector
+ */
+public class PVectorArray {
+  // Lists shorter than this are updated in the calling thread, longer ones
+  // are split into chunks of at least this size, updated in parallel.
+  static protected final int PARALLEL_MIN_COUNT = 1 << 15;
+
+  public float[] x;
+  public float[] y;
+  public float[] z;
+
+  protected int count;
+
+
+  public PVectorArray() {
+    this(10);
+  }
+
+
+  public PVectorArray(int capacity) {
+    x = new float[capacity];
+    y = new float[capacity];
+    z = new float[capacity];
+  }
+
+
+  /**
+   * Returns the number of vectors in the list.
+   */
+  public int size() {
+    return count;
+  }
+
+
+  /**
+   * Removes all the vectors, but keeps the arrays for new ones.
+   */
+  public void clear() {
+    count = 0;
+  }
+
+
+  /**
+   * Makes room for at least this many vectors.
+   */
+  public void ensureCapacity(int capacity) {
+    if (x.length < capacity) {
+      int length = Math.max(capacity, x.length << 1);
+      x = Arrays.copyOf(x, length);
+      y = Arrays.copyOf(y, length);
+      z = Arrays.copyOf(z, length);
+    }
+  }
+
+
+  /**
+   * Adds a vector to the end of the list, and returns its index.
+   */
+  public int append(float x, float y, float z) {
+    ensureCapacity(count + 1);
+    this.x[count] = x;
+    this.y[count] = y;
+    this.z[count] = z;
+    return count++;
+  }
+
+
+  public int append(float x, float y) {
+    return append(x, y, 0);
+  }
+
+
+  public int append(PVector v) {
+    return append(v.x, v.y, v.z);
+  }
+
+
+  /**
+   * Copies the vector at this index into target, or a new PVector if
+   * target is null.
+   */
+  public PVector get(int index, PVector target) {
+    checkIndex(index);
+    if (target == null) {
+      target = new PVector();
+    }
+    return target.set(x[index], y[index], z[index]);
+  }
+
+
+  public void set(int index, float x, float y, float z) {
+    checkIndex(index);
+    this.x[index] = x;
+    this.y[index] = y;
+    this.z[index] = z;
+  }
+
+
+  public void set(int index, PVector v) {
+    set(index, v.x, v.y, v.z);
+  }
+
+
+  /**
+   * Removes the vector at this index by moving the last vector into its
+   * place, which is much faster than shifting all the following ones when
+   * the order doesn't matter, as with particles.
+   */
+  public void removeFast(int index) {
+    checkIndex(index);
+    count--;
+    x[index] = x[count];
+    y[index] = y[count];
+    z[index] = z[count];
+  }
+
+
+  protected void checkIndex(int index) {
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // BULK OPERATIONS
+
+
+  /**
+   * Adds the same vector to all the vectors.
+   */
+  public PVectorArray add(float dx, float dy, float dz) {
+    run((first, last) -> {
+      float[] x = this.x, y = this.y, z = this.z;
+      for (int i = first; i < last; i++) {
+        x[i] += dx;
+        y[i] += dy;
+        z[i] += dz;
+      }
+    });
+    return this;
+  }
+
+
+  /**
+   * Adds each vector of v to the vector at the same index in this list.
+   */
+  public PVectorArray add(PVectorArray v) {
+    return add(v, 1);
+  }
+
+
+  /**
+   * Adds each vector of v, multiplied by n, to the vector at the same index
+   * in this list. With v the velocities of particles and n the time step,
+   * <b>positions.add(velocities, dt)</b> moves all the particles.
+   */
+  public PVectorArray add(PVectorArray v, float n) {
+    checkSize(v);
+    run((first, last) -> {
+      float[] x = this.x, y = this.y, z = this.z;
+      float[] vx = v.x, vy = v.y, vz = v.z;
+      for (int i = first; i < last; i++) {
+        x[i] += vx[i] * n;
+        y[i] += vy[i] * n;
+        z[i] += vz[i] * n;
+      }
+    });
+    return this;
+  }
+
+
+  /**
+   * Multiplies all the vectors by a scalar.
+   */
+  public PVectorArray mult(float n) {
+    run((first, last) -> {
+      float[] x = this.x, y = this.y, z = this.z;
+      for (int i = first; i < last; i++) {
+        x[i] *= n;
+        y[i] *= n;
+        z[i] *= n;
+      }
+    });
+    return this;
+  }
+
+
+  /**
+   * Sets the length of all the vectors to 1. Vectors of length 0 are left
+   * as they are, like in PVector.normalize().
+   */
+  public PVectorArray normalize() {
+    run((first, last) -> {
+      float[] x = this.x, y = this.y, z = this.z;
+      for (int i = first; i < last; i++) {
+        float m = (float) Math.sqrt(x[i]*x[i] + y[i]*y[i] + z[i]*z[i]);
+        if (m != 0 && m != 1) {
+          x[i] /= m;
+          y[i] /= m;
+          z[i] /= m;
+        }
+      }
+    });
+    return this;
+  }
+
+
+  /**
+   * Limits the length of all the vectors to max.
+   */
+  public PVectorArray limit(float max) {
+    float maxSq = max * max;
+    run((first, last) -> {
+      float[] x = this.x, y = this.y, z = this.z;
+      for (int i = first; i < last; i++) {
+        float magSq = x[i]*x[i] + y[i]*y[i] + z[i]*z[i];
+        if (magSq > maxSq) {
+          float n = max / (float) Math.sqrt(magSq);
+          x[i] *= n;
+          y[i] *= n;
+          z[i] *= n;
+        }
+      }
+    });
+    return this;
+  }
+
+
+  /**
+   * Returns the length of the vector at this index.
+   */
+  public float mag(int index) {
+    checkIndex(index);
+    return (float) Math.sqrt(x[index]*x[index] +
+                             y[index]*y[index] +
+                             z[index]*z[index]);
+  }
+
+
+  /**
+   * Stores the distance from every vector to the point in target, which is
+   * created if it's null or too short, and returns it.
+   */
+  public float[] dist(float px, float py, float pz, float[] target) {
+    if (target == null || target.length < count) {
+      target = new float[count];
+    }
+    float[] distances = target;
+    run((first, last) -> {
+      float[] x = this.x, y = this.y, z = this.z;
+      for (int i = first; i < last; i++) {
+        float dx = x[i] - px;
+        float dy = y[i] - py;
+        float dz = z[i] - pz;
+        distances[i] = (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
+      }
+    });
+    return target;
+  }
+
+
+  /**
+   * Returns the index of the vector closest to the point, or -1 if the
+   * list is empty.
+   */
+  public int nearest(float px, float py, float pz) {
+    int nearest = -1;
+    float nearestSq = Float.POSITIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      float dx = x[i] - px;
+      float dy = y[i] - py;
+      float dz = z[i] - pz;
+      float distSq = dx*dx + dy*dy + dz*dz;
+      if (distSq < nearestSq) {
+        nearestSq = distSq;
+        nearest = i;
+      }
+    }
+    return nearest;
+  }
+
+
+  /**
+   * Stores the indices of the vectors that are at most radius away from
+   * the point in result, in increasing order, and returns how many there
+   * are. Stops when result is full.
+   */
+  public int within(float px, float py, float pz, float radius, int[] result) {
+    float radiusSq = radius * radius;
+    int found = 0;
+    for (int i = 0; i < count && found < result.length; i++) {
+      float dx = x[i] - px;
+      float dy = y[i] - py;
+      float dz = z[i] - pz;
+      if (dx*dx + dy*dy + dz*dz <= radiusSq) {
+        result[found++] = i;
+      }
+    }
+    return found;
+  }
+
+
+  protected void checkSize(PVectorArray v) {
+    if (v.count != count) {
+      throw new IllegalArgumentException("The lists have " + count +
+                                         " and " + v.count + " vectors");
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+
+  // Runs the loop over [0, count), in parallel chunks for long lists
+  protected void run(ParallelRange.Body body) {
+    ParallelRange.run(count, PARALLEL_MIN_COUNT, body);
+  }
+}
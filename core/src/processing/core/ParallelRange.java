@@ -0,0 +1,96 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Runs a loop over the range [0, count) in the calling thread, or split
+ * into chunks run in parallel on the common ForkJoinPool when the range is
+ * large. Ranges shorter than twice minCount are always run in the calling
+ * thread without making any objects. Otherwise the chunks are never
+ * shorter than minCount, and there is at most one more of them than
+ * there are worker threads.
+ */
+public class ParallelRange {
+  static public final int PARALLELISM =
+    ForkJoinPool.getCommonPoolParallelism() + 1;
+
+
+  public interface Body {
+    /** Runs the loop from first, inclusive, to last, exclusive. */
+    void run(int first, int last);
+  }
+
+
+  /**
+   * Returns how many chunks a range of count elements is split into,
+   * which is 1 when it's run in the calling thread.
+   */
+  static public int chunks(int count, int minCount) {
+    return Math.max(1, Math.min(PARALLELISM, count / Math.max(1, minCount)));
+  }
+
+
+  static public void run(int count, int minCount, Body body) {
+    if (count <= 0) return;
+    int chunks = chunks(count, minCount);
+    if (chunks == 1) {
+      body.run(0, count);
+
+    } else {
+      Chunk[] tasks = new Chunk[chunks];
+      int first = 0;
+      for (int i = 0; i < chunks; i++) {
+        int last = (int) ((long) count * (i + 1) / chunks);
+        tasks[i] = new Chunk(body, first, last);
+        first = last;
+      }
+      ForkJoinTask.invokeAll(tasks);
+    }
+  }
+
+
+  static protected class Chunk extends RecursiveAction {
+    static private final long serialVersionUID = 1L;
+
+    final Body body;
+    final int first, last;
+
+
+    Chunk(Body body, int first, int last) {
+      this.body = body;
+      this.first = first;
+      this.last = last;
+    }
+
+
+    @Override
+    protected void compute() {
+      body.run(first, last);
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+/**
+ * Bounding volume hierarchy over the children of a GROUP shape, so that
+ * contains() and culling only look at the children whose bounding boxes
+ * overlap the region of interest. The tree is built once from the bounds
+ * of the children, splitting them at the median of the longest axis, and
+ * the shape throws it away whenever one of the children changes.
+ */
+class ShapeIndex {
+  static final int LEAF_SIZE = 4;
+
+  /**
+   * Scratch space of the queries, one per thread, so that the same shapes
+   * can be drawn from several threads. The results of the queries made
+   * while drawing the children found by another one are stored after its
+   * own, from top on.
+   */
+  static class Scratch {
+    // The tree is balanced, so it's never this deep
+    final int[] stack = new int[64];
+    final float[] view = new float[4];
+    int[] found = new int[256];
+    int top;
+  }
+
+  static private final ThreadLocal<Scratch> threadScratch =
+    ThreadLocal.withInitial(Scratch::new);
+
+  // Bounds of each child as minX, minY, maxX, maxY
+  protected final float[] childBounds;
+
+  // Child indices, grouped so that each leaf covers a contiguous range
+  protected final int[] order;
+
+  // Nodes, in depth-first order. A leaf has a count > 0 and covers order
+  // [first, first + count). An inner node has a count of 0, its left child
+  // is the next node and its right child is the node at first.
+  protected final float[] nodeBounds;
+  protected final int[] nodeFirst;
+  protected final int[] nodeCount;
+  protected int nodeTotal;
+
+  private float[] centers;
+
+
+  ShapeIndex(float[] childBounds, int count) {
+    this.childBounds = childBounds;
+    order = new int[count];
+    centers = new float[2 * count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+      centers[2*i + 0] = center(childBounds[4*i + 0], childBounds[4*i + 2]);
+      centers[2*i + 1] = center(childBounds[4*i + 1], childBounds[4*i + 3]);
+    }
+
+    // Leaves hold at least one child, and there are n - 1 inner nodes
+    int maxNodes = Math.max(1, 2 * count - 1);
+    nodeBounds = new float[4 * maxNodes];
+    nodeFirst = new int[maxNodes];
+    nodeCount = new int[maxNodes];
+    build(0, count);
+    centers = null;
+  }
+
+
+  int size() {
+    return order.length;
+  }
+
+
+  static Scratch scratch() {
+    return threadScratch.get();
+  }
+
+
+  /**
+   * Stores in scratch.found, from scratch.top on, the indices of the
+   * children whose bounds overlap the given box, in no particular order,
+   * and returns how many there are.
+   */
+  int query(float minX, float minY, float maxX, float maxY, Scratch scratch) {
+    int start = scratch.top;
+    if (scratch.found.length < start + order.length) {
+      scratch.found = PApplet.expand(scratch.found,
+                                     Math.max(2 * scratch.found.length,
+                                              start + order.length));
+    }
+    int[] result = scratch.found;
+    int[] stack = scratch.stack;
+    int found = start;
+    if (order.length == 0) return 0;
+
+    int top = 0;
+    stack[top++] = 0;
+    while (0 < top) {
+      int node = stack[--top];
+      if (!overlaps(nodeBounds, node, minX, minY, maxX, maxY)) continue;
+      int count = nodeCount[node];
+      if (0 < count) {
+        int first = nodeFirst[node];
+        for (int i = first; i < first + count; i++) {
+          int child = order[i];
+          if (overlaps(childBounds, child, minX, minY, maxX, maxY)) {
+            result[found++] = child;
+          }
+        }
+      } else {
+        stack[top++] = nodeFirst[node];
+        stack[top++] = node + 1;
+      }
+    }
+    return found - start;
+  }
+
+
+  // Builds the subtree over order[first, last) and returns its node
+  private int build(int first, int last) {
+    int node = nodeTotal++;
+    float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+    float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+    float cminX = Float.POSITIVE_INFINITY, cminY = Float.POSITIVE_INFINITY;
+    float cmaxX = Float.NEGATIVE_INFINITY, cmaxY = Float.NEGATIVE_INFINITY;
+    for (int i = first; i < last; i++) {
+      int child = order[i];
+      minX = Math.min(minX, childBounds[4*child + 0]);
+      minY = Math.min(minY, childBounds[4*child + 1]);
+      maxX = Math.max(maxX, childBounds[4*child + 2]);
+      maxY = Math.max(maxY, childBounds[4*child + 3]);
+      cminX = Math.min(cminX, centers[2*child + 0]);
+      cminY = Math.min(cminY, centers[2*child + 1]);
+      cmaxX = Math.max(cmaxX, centers[2*child + 0]);
+      cmaxY = Math.max(cmaxY, centers[2*child + 1]);
+    }
+    nodeBounds[4*node + 0] = minX;
+    nodeBounds[4*node + 1] = minY;
+    nodeBounds[4*node + 2] = maxX;
+    nodeBounds[4*node + 3] = maxY;
+
+    if (last - first <= LEAF_SIZE) {
+      nodeFirst[node] = first;
+      nodeCount[node] = last - first;
+    } else {
+      int axis = cmaxY - cminY > cmaxX - cminX ? 1 : 0;
+      int mid = (first + last) >>> 1;
+      select(first, last - 1, mid, axis);
+      build(first, mid);
+      nodeFirst[node] = build(mid, last);
+      nodeCount[node] = 0;
+    }
+    return node;
+  }
+
+
+  // Partially sorts order[left, right] so that the element at k is the one
+  // that would be there if the range was sorted by the center on axis
+  private void select(int left, int right, int k, int axis) {
+    while (left < right) {
+      float pivot = centers[2*order[(left + right) >>> 1] + axis];
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (centers[2*order[i] + axis] < pivot) i++;
+        while (pivot < centers[2*order[j] + axis]) j--;
+        if (i <= j) {
+          int temp = order[i];
+          order[i] = order[j];
+          order[j] = temp;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        right = j;
+      } else if (i <= k) {
+        left = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+
+  // Empty and unbounded boxes still need a finite center to be sorted
+  static private float center(float min, float max) {
+    float c = 0.5f * (min + max);
+    return Float.isNaN(c) || Float.isInfinite(c) ? 0 : c;
+  }
+
+
+  static private boolean overlaps(float[] bounds, int i,
+                                  float minX, float minY,
+                                  float maxX, float maxY) {
+    return bounds[4*i + 0] <= maxX && minX <= bounds[4*i + 2] &&
+           bounds[4*i + 1] <= maxY && minY <= bounds[4*i + 3];
+  }
+}
@@ -0,0 +1,256 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many sketches without a display in the same process, on a shared
+ * pool of threads, instead of starting a process for each of them.
+ * <p>
+ * Each sketch draws on its own PSurfaceHeadless, on a fixed clock, up to
+ * its own budget of frames. So that long jobs don't hold on to the threads
+ * while others wait, a sketch gives its thread back after a slice of
+ * frames, and goes back in line for the next one.
+ * <p>
+ * Sketches keep their own state, and their own pools of threads for saving
+ * and loading images. Calling exit() only stops the sketch that called it,
+ * and an exception thrown by a sketch is kept in its Job.
+ */
+public class SketchRunner {
+  static final int DEFAULT_SLICE_FRAMES = 8;
+
+  protected ExecutorService executor;
+  protected boolean ownExecutor;
+  protected int sliceFrames = DEFAULT_SLICE_FRAMES;
+
+  protected final List<Job> jobs = new ArrayList<>();
+
+
+  /** Runs the sketches on one thread per processor. */
+  public SketchRunner() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+
+  public SketchRunner(int threadCount) {
+    this(Executors.newFixedThreadPool(threadCount, r -> {
+      Thread thread = new Thread(r, "SketchRunner");
+      thread.setDaemon(true);
+      return thread;
+    }));
+    ownExecutor = true;
+  }
+
+
+  /**
+   * Runs the sketches on an executor shared with other work. It isn't
+   * shut down along with the runner.
+   */
+  public SketchRunner(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+
+  /**
+   * Sets how many frames a sketch draws before giving its thread to the
+   * next sketch in line, 8 by default.
+   */
+  public void setSliceFrames(int frames) {
+    if (frames < 1) {
+      throw new IllegalArgumentException("At least one frame is needed");
+    }
+    sliceFrames = frames;
+  }
+
+
+  /**
+   * Starts running a sketch, until it has drawn the given number of frames
+   * (or forever with 0), or it calls exit() or noLoop().
+   */
+  public Job run(PApplet sketch, int frames) {
+    return run(sketch, frames, null);
+  }
+
+
+  /**
+   * Starts running a sketch, and saves every frame it draws to files
+   * named after the pattern, as with saveFrame().
+   */
+  public Job run(PApplet sketch, int frames, String exportPattern) {
+    Job job = new Job(sketch, frames, exportPattern);
+    synchronized (jobs) {
+      jobs.add(job);
+    }
+    executor.execute(job);
+    return job;
+  }
+
+
+  /**
+   * Waits for all the sketches started so far to be done.
+   */
+  public void awaitAll() throws InterruptedException {
+    List<Job> pending;
+    synchronized (jobs) {
+      pending = new ArrayList<>(jobs);
+    }
+    for (Job job : pending) {
+      job.await();
+    }
+  }
+
+
+  /**
+   * Stops all the sketches after their current frame, waits for them to be
+   * disposed of, and shuts down the threads of the runner.
+   */
+  public void shutdown() throws InterruptedException {
+    synchronized (jobs) {
+      for (Job job : jobs) {
+        job.cancel();
+      }
+    }
+    awaitAll();
+    if (ownExecutor) {
+      executor.shutdown();
+    }
+  }
+
+
+  /**
+   * A sketch run by the runner.
+   */
+  public class Job implements Runnable {
+    protected final PApplet sketch;
+    protected final int frameBudget;
+    protected final String exportPattern;
+    protected PSurfaceHeadless surface;
+
+    protected volatile boolean cancelled;
+    protected volatile Throwable error;
+    protected volatile long drawNanos;
+    protected final CountDownLatch done = new CountDownLatch(1);
+
+
+    protected Job(PApplet sketch, int frameBudget, String exportPattern) {
+      this.sketch = sketch;
+      this.frameBudget = frameBudget;
+      this.exportPattern = exportPattern;
+    }
+
+
+    public PApplet getSketch() {
+      return sketch;
+    }
+
+
+    /** Number of frames drawn so far, not counting setup(). */
+    public int getFrameCount() {
+      return Math.max(0, sketch.frameCount - 1);
+    }
+
+
+    /** Time spent drawing the frames of this sketch, in nanoseconds. */
+    public long getDrawNanos() {
+      return drawNanos;
+    }
+
+
+    /** The exception that stopped the sketch, or null. */
+    public Throwable getError() {
+      return error;
+    }
+
+
+    public boolean isDone() {
+      return done.getCount() == 0;
+    }
+
+
+    /** Stops the sketch after its current frame. */
+    public void cancel() {
+      cancelled = true;
+    }
+
+
+    public void await() throws InterruptedException {
+      done.await();
+    }
+
+
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+      return done.await(timeout, unit);
+    }
+
+
+    @Override
+    public void run() {
+      try {
+        long start = System.nanoTime();
+        if (surface == null) {
+          sketch.exitProcess = false;
+          surface = PApplet.initHeadless(sketch);
+          surface.setFrameLimit(frameBudget);
+          surface.setFrameExport(exportPattern);
+          surface.begin();
+        }
+        boolean running = true;
+        for (int i = 0; i < sliceFrames && running && !cancelled; i++) {
+          running = surface.step();
+        }
+        drawNanos += System.nanoTime() - start;
+
+        if (running && !cancelled) {
+          // back in line, behind the other sketches
+          executor.execute(this);
+          return;
+        }
+      } catch (Throwable t) {
+        error = t;
+      }
+      finish();
+    }
+
+
+    protected void finish() {
+      try {
+        if (surface != null) {
+          surface.end();
+        }
+      } catch (Throwable t) {
+        if (error == null) error = t;
+      }
+      // the runner lets go of the sketch, only the Job keeps it
+      synchronized (jobs) {
+        jobs.remove(this);
+      }
+      done.countDown();
+    }
+  }
+}
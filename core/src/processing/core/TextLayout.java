@@ -0,0 +1,141 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Where a String breaks into lines when drawn with a given font and size,
+ * either at its newlines or to fit the width of a box, and how wide each
+ * line is. PGraphics keeps the most recently used layouts, so that labels
+ * drawn again on every frame are only scanned and measured once.
+ */
+class TextLayout {
+  static final int CACHE_SIZE = 512;
+
+  // What the layout depends on. The box width is NaN for text without a box.
+  protected String text;
+  protected PFont font;
+  protected float size;
+  protected float boxWidth;
+
+  // The text, followed by a newline when laid out in a box
+  protected char[] chars;
+
+  protected int lineCount;
+  protected int[] lineStart;
+  protected int[] lineStop;
+
+  // Measured the first time they are needed, NaN until then
+  protected float[] lineWidth;
+
+
+  TextLayout() { }
+
+
+  TextLayout(String text, PFont font, float size, float boxWidth) {
+    set(text, font, size, boxWidth);
+  }
+
+
+  void set(String text, PFont font, float size, float boxWidth) {
+    this.text = text;
+    this.font = font;
+    this.size = size;
+    this.boxWidth = boxWidth;
+  }
+
+
+  void setLines(int count, int[] start, int[] stop) {
+    lineCount = count;
+    lineStart = new int[count];
+    lineStop = new int[count];
+    lineWidth = new float[count];
+    System.arraycopy(start, 0, lineStart, 0, count);
+    System.arraycopy(stop, 0, lineStop, 0, count);
+    Arrays.fill(lineWidth, Float.NaN);
+  }
+
+
+  float lineWidth(PGraphics g, int line) {
+    float w = lineWidth[line];
+    if (Float.isNaN(w)) {
+      w = g.textWidthImpl(chars, lineStart[line], lineStop[line]);
+      lineWidth[line] = w;
+    }
+    return w;
+  }
+
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof TextLayout)) return false;
+    TextLayout other = (TextLayout) o;
+    return font == other.font &&
+      Float.floatToIntBits(size) == Float.floatToIntBits(other.size) &&
+      Float.floatToIntBits(boxWidth) == Float.floatToIntBits(other.boxWidth) &&
+      text.equals(other.text);
+  }
+
+
+  @Override
+  public int hashCode() {
+    int h = text.hashCode();
+    h = 31 * h + System.identityHashCode(font);
+    h = 31 * h + Float.floatToIntBits(size);
+    h = 31 * h + Float.floatToIntBits(boxWidth);
+    return h;
+  }
+
+
+  /**
+   * Keeps the layouts that were used last, up to CACHE_SIZE of them.
+   */
+  static class Cache extends LinkedHashMap<TextLayout, TextLayout> {
+    static private final long serialVersionUID = 1L;
+
+    private final TextLayout key = new TextLayout();
+
+    Cache() {
+      super(16, 0.75f, true);
+    }
+
+    TextLayout get(String text, PFont font, float size, float boxWidth) {
+      key.set(text, font, size, boxWidth);
+      TextLayout layout = get(key);
+      key.set(null, null, 0, 0);
+      return layout;
+    }
+
+    void add(TextLayout layout) {
+      put(layout, layout);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<TextLayout, TextLayout> eldest) {
+      return size() > CACHE_SIZE;
+    }
+  }
+}
@@ -0,0 +1,606 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+
+/**
+ * Writes frames straight into a QuickTime movie with Motion JPEG video,
+ * instead of one image file per frame. The frames are compressed by a pool
+ * of threads and written to the file in order by another one, so that the
+ * sketch only pays for copying its pixels.
+ * <p>
+ * Frames wait to be compressed in a fixed number of buffers. When they are
+ * all in use, because the encoders can't keep up, addFrame() either waits
+ * for one to free up, and the frame counts as late, or skips the frame and
+ * counts it as dropped, depending on how the recorder was created.
+ * <p>
+ * Chunk offsets are 64-bit, so the movie can be larger than 4 GB.
+ */
+public class VideoRecorder {
+  static final int THREAD_COUNT =
+    Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+  protected File file;
+  protected int width, height;
+  protected float fps;
+  protected float quality;
+  protected boolean dropFrames;
+
+  protected BlockingQueue<int[]> freeBuffers;
+  protected int buffersCreated;
+  protected int bufferCount;
+
+  protected ExecutorService encoders;
+  protected ExecutorService writer;
+  protected volatile IOException error;
+
+  protected RandomAccessFile output;
+  protected DataOutputStream stream;
+  protected long mdatStart;
+  protected long position;
+
+  // Size and offset of each frame in the file, only used by the writer
+  protected int[] sampleSizes = new int[256];
+  protected long[] sampleOffsets = new long[256];
+  protected int sampleCount;
+
+  protected int frameCount;
+  protected int droppedFrames;
+  protected int lateFrames;
+  protected boolean finished;
+
+  protected ThreadLocal<Encoder> encoder = ThreadLocal.withInitial(Encoder::new);
+  // Every encoder made, so that their JPEG writers can be disposed
+  protected final List<Encoder> allEncoders = new ArrayList<>();
+
+
+  /**
+   * Starts a movie of frames of this size, shown at fps frames per second.
+   * Frames are compressed with a JPEG quality of 0.9, and addFrame() waits
+   * when the encoders fall behind.
+   */
+  public VideoRecorder(File file, int width, int height,
+                       float fps) throws IOException {
+    this(file, width, height, fps, 0.9f, false);
+  }
+
+
+  /**
+   * @param quality JPEG quality, from 0 to 1
+   * @param dropFrames true to skip frames when the encoders fall behind,
+   *                   instead of waiting for them
+   */
+  public VideoRecorder(File file, int width, int height, float fps,
+                       float quality, boolean dropFrames) throws IOException {
+    if (width <= 0 || height <= 0 || width > 0xffff || height > 0xffff) {
+      throw new IllegalArgumentException("Cannot record frames of " +
+                                         width + " x " + height + " pixels");
+    }
+    if (!(fps > 0)) {
+      throw new IllegalArgumentException("The frame rate must be positive");
+    }
+    this.file = file;
+    this.width = width;
+    this.height = height;
+    this.fps = fps;
+    this.quality = quality;
+    this.dropFrames = dropFrames;
+
+    // The file is opened first, so that nothing is left running if it fails
+    output = new RandomAccessFile(file, "rw");
+    try {
+      output.setLength(0);
+      stream = new DataOutputStream(new BufferedOutputStream(
+        Channels.newOutputStream(output.getChannel()), 1 << 16));
+      writeHeader();
+    } catch (IOException e) {
+      output.close();
+      throw e;
+    }
+
+    bufferCount = 2 * THREAD_COUNT;
+    freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+    encoders = Executors.newFixedThreadPool(THREAD_COUNT, r -> {
+      Thread thread = new Thread(r, "VideoRecorder encoder");
+      thread.setDaemon(true);
+      return thread;
+    });
+    writer = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "VideoRecorder writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+
+  public int getWidth() {
+    return width;
+  }
+
+
+  public int getHeight() {
+    return height;
+  }
+
+
+  /** Number of frames added to the movie so far. */
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+
+  /** Number of frames that were skipped because the encoders fell behind. */
+  public int getDroppedFrames() {
+    return droppedFrames;
+  }
+
+
+  /** Number of frames that had to wait for the encoders to catch up. */
+  public int getLateFrames() {
+    return lateFrames;
+  }
+
+
+  /**
+   * Adds a frame to the movie, as ARGB pixels of the size of the recorder.
+   * The pixels are copied, so the array can be changed right away. Returns
+   * false if the frame was dropped.
+   */
+  public boolean addFrame(int[] pixels) throws IOException {
+    if (finished) {
+      throw new IllegalStateException("The recording is already finished");
+    }
+    if (error != null) {
+      throw error;
+    }
+    if (pixels.length < width * height) {
+      throw new IllegalArgumentException("Frames must be " + width + " x " +
+                                         height + " pixels");
+    }
+
+    int[] buffer = freeBuffers.poll();
+    if (buffer == null) {
+      if (buffersCreated < bufferCount) {
+        buffer = new int[width * height];
+        buffersCreated++;
+
+      } else if (dropFrames) {
+        droppedFrames++;
+        return false;
+
+      } else {
+        lateFrames++;
+        try {
+          buffer = freeBuffers.take();
+        } catch (InterruptedException e) {
+          droppedFrames++;
+          return false;
+        }
+      }
+    }
+    System.arraycopy(pixels, 0, buffer, 0, width * height);
+    frameCount++;
+
+    final int[] frame = buffer;
+    Future<byte[]> encoded = encoders.submit(() -> {
+      try {
+        return encoder.get().encode(frame);
+      } finally {
+        freeBuffers.offer(frame);
+      }
+    });
+    // The writer runs the tasks in the order they are submitted, so the
+    // frames end up in order even though they're compressed in parallel
+    writer.execute(() -> {
+      if (error != null) return;
+      try {
+        writeSample(encoded.get());
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        error = (cause instanceof IOException) ?
+          (IOException) cause : new IOException(cause);
+      } catch (InterruptedException e) {
+        error = new IOException(e);
+      } catch (IOException e) {
+        error = e;
+      }
+    });
+    return true;
+  }
+
+
+  /**
+   * Waits for all the frames to be written, then completes the movie and
+   * closes the file.
+   */
+  public void finish() throws IOException {
+    if (finished) return;
+    finished = true;
+
+    encoders.shutdown();
+    writer.shutdown();
+    try {
+      writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      encoders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      error = new IOException(e);
+    }
+
+    try {
+      writeIndex();
+    } catch (IOException e) {
+      if (error == null) error = e;
+    } finally {
+      output.close();
+      synchronized (allEncoders) {
+        for (Encoder e : allEncoders) {
+          e.writer.dispose();
+        }
+        allEncoders.clear();
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+
+  /**
+   * Same as finish(), but without throwing any error, for cleaning up
+   * after an error that was already reported. After an error, the movie
+   * still gets an index for the frames written before it, so that it can
+   * be played, unless the file itself can't be written anymore.
+   */
+  public void close() {
+    try {
+      finish();
+    } catch (IOException e) {
+      // already reported
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // ENCODING
+
+
+  // Scratch image and JPEG writer of each encoder thread
+  protected class Encoder {
+    BufferedImage image =
+      new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int[] imagePixels =
+      ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    Encoder() {
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(quality);
+      synchronized (allEncoders) {
+        allEncoders.add(this);
+      }
+    }
+
+    byte[] encode(int[] pixels) throws IOException {
+      // the alpha channel is ignored by TYPE_INT_RGB
+      System.arraycopy(pixels, 0, imagePixels, 0, imagePixels.length);
+      bytes.reset();
+      try (ImageOutputStream ios = ImageIO.createImageOutputStream(bytes)) {
+        writer.setOutput(ios);
+        writer.write(null, new IIOImage(image, null, null), param);
+      }
+      return bytes.toByteArray();
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // QUICKTIME FILE
+
+
+  // Movie and media time units per second, and duration of each frame
+  protected int timeScale() {
+    return Math.round(fps * 1000);
+  }
+
+
+  static protected final int FRAME_DURATION = 1000;
+
+
+  protected long duration() {
+    return (long) sampleCount * FRAME_DURATION;
+  }
+
+
+  protected void writeHeader() throws IOException {
+    stream.writeInt(20);
+    stream.writeBytes("ftyp");
+    stream.writeBytes("qt  ");
+    stream.writeInt(0x200);
+    stream.writeBytes("qt  ");
+    position = 20;
+
+    // Media data with a 64-bit size, set when the movie is finished
+    mdatStart = position;
+    stream.writeInt(1);
+    stream.writeBytes("mdat");
+    stream.writeLong(0);
+    position += 16;
+  }
+
+
+  protected void writeSample(byte[] data) throws IOException {
+    if (sampleCount == sampleSizes.length) {
+      sampleSizes = Arrays.copyOf(sampleSizes, sampleCount << 1);
+      sampleOffsets = Arrays.copyOf(sampleOffsets, sampleCount << 1);
+    }
+    // Only counted once it's written, so that the index never points
+    // to a frame that failed halfway
+    stream.write(data);
+    sampleSizes[sampleCount] = data.length;
+    sampleOffsets[sampleCount] = position;
+    sampleCount++;
+    position += data.length;
+  }
+
+
+  // Writes the index of the frames right after the last complete one,
+  // and sets the size of the media data to match
+  protected void writeIndex() throws IOException {
+    stream.flush();
+    if (error != null) {
+      // Write over whatever the failed frame left behind
+      output.seek(position);
+    }
+    writeMovie();
+    stream.flush();
+    output.setLength(output.getFilePointer());
+    output.seek(mdatStart + 8);
+    output.writeLong(position - mdatStart);
+  }
+
+
+  protected void writeMovie() throws IOException {
+    // Version 1 headers have 64-bit times, for movies of more than
+    // 2^32 time units, which is about 20 hours at 60 frames per second
+    long duration = duration();
+    boolean wide = duration > 0xffffffffL;
+    int[] matrix = { 0x10000, 0, 0, 0, 0x10000, 0, 0, 0, 0x40000000 };
+
+    Atom moov = new Atom("moov");
+
+    Atom mvhd = moov.child("mvhd");
+    writeVersion(mvhd.data, wide, 0);
+    mvhd.data.writeInt(timeScale());
+    writeDuration(mvhd.data, wide, duration);
+    mvhd.data.writeInt(0x10000);  // preferred rate
+    mvhd.data.writeShort(0x100);  // preferred volume
+    mvhd.data.write(new byte[10]);
+    for (int m : matrix) mvhd.data.writeInt(m);
+    mvhd.data.write(new byte[24]);  // preview, poster, selection, current
+    mvhd.data.writeInt(2);  // next track id
+
+    Atom trak = moov.child("trak");
+    Atom tkhd = trak.child("tkhd");
+    // enabled, in movie, preview and poster
+    writeVersion(tkhd.data, wide, 0xf);
+    tkhd.data.writeInt(1);  // track id
+    tkhd.data.writeInt(0);
+    writeDuration(tkhd.data, wide, duration);
+    tkhd.data.write(new byte[8]);
+    tkhd.data.writeShort(0);  // layer
+    tkhd.data.writeShort(0);  // alternate group
+    tkhd.data.writeShort(0);  // volume
+    tkhd.data.writeShort(0);
+    for (int m : matrix) tkhd.data.writeInt(m);
+    tkhd.data.writeInt(width << 16);
+    tkhd.data.writeInt(height << 16);
+
+    Atom mdia = trak.child("mdia");
+    Atom mdhd = mdia.child("mdhd");
+    writeVersion(mdhd.data, wide, 0);
+    mdhd.data.writeInt(timeScale());
+    writeDuration(mdhd.data, wide, duration);
+    mdhd.data.writeShort(0);  // language
+    mdhd.data.writeShort(0);  // quality
+
+    Atom hdlr = mdia.child("hdlr");
+    hdlr.data.writeInt(0);
+    hdlr.data.writeBytes("mhlr");
+    hdlr.data.writeBytes("vide");
+    hdlr.data.write(new byte[12]);
+    hdlr.data.writeByte(0);  // empty name
+
+    Atom minf = mdia.child("minf");
+    Atom vmhd = minf.child("vmhd");
+    vmhd.data.writeInt(1);
+    vmhd.data.writeShort(0x40);  // dither copy
+    vmhd.data.writeShort(0x8000);
+    vmhd.data.writeShort(0x8000);
+    vmhd.data.writeShort(0x8000);
+
+    Atom dhlr = minf.child("hdlr");
+    dhlr.data.writeInt(0);
+    dhlr.data.writeBytes("dhlr");
+    dhlr.data.writeBytes("alis");
+    dhlr.data.write(new byte[12]);
+    dhlr.data.writeByte(0);
+
+    Atom dref = minf.child("dinf").child("dref");
+    dref.data.writeInt(0);
+    dref.data.writeInt(1);
+    dref.data.writeInt(12);
+    dref.data.writeBytes("alis");
+    dref.data.writeInt(1);  // the data is in this file
+
+    Atom stbl = minf.child("stbl");
+    Atom stsd = stbl.child("stsd");
+    stsd.data.writeInt(0);
+    stsd.data.writeInt(1);
+    stsd.data.writeInt(86);
+    stsd.data.writeBytes("jpeg");
+    stsd.data.write(new byte[6]);
+    stsd.data.writeShort(1);  // data reference index
+    stsd.data.writeShort(0);  // version
+    stsd.data.writeShort(0);  // revision
+    stsd.data.writeInt(0);  // vendor
+    stsd.data.writeInt(0);  // temporal quality
+    stsd.data.writeInt(Math.round(quality * 1023));  // spatial quality
+    stsd.data.writeShort(width);
+    stsd.data.writeShort(height);
+    stsd.data.writeInt(72 << 16);
+    stsd.data.writeInt(72 << 16);
+    stsd.data.writeInt(0);
+    stsd.data.writeShort(1);  // frames per sample
+    byte[] name = new byte[32];
+    String compressor = "Photo - JPEG";
+    name[0] = (byte) compressor.length();
+    System.arraycopy(compressor.getBytes("US-ASCII"), 0,
+                     name, 1, compressor.length());
+    stsd.data.write(name);
+    stsd.data.writeShort(24);  // depth
+    stsd.data.writeShort(-1);  // no color table
+
+    Atom stts = stbl.child("stts");
+    stts.data.writeInt(0);
+    stts.data.writeInt(1);
+    stts.data.writeInt(sampleCount);
+    stts.data.writeInt(FRAME_DURATION);
+
+    Atom stsc = stbl.child("stsc");
+    stsc.data.writeInt(0);
+    stsc.data.writeInt(1);
+    stsc.data.writeInt(1);  // from the first chunk on,
+    stsc.data.writeInt(1);  // one sample per chunk,
+    stsc.data.writeInt(1);  // with the first description
+
+    Atom stsz = stbl.child("stsz");
+    stsz.data.writeInt(0);
+    stsz.data.writeInt(0);  // samples have different sizes
+    stsz.data.writeInt(sampleCount);
+    for (int i = 0; i < sampleCount; i++) {
+      stsz.data.writeInt(sampleSizes[i]);
+    }
+
+    Atom co64 = stbl.child("co64");
+    co64.data.writeInt(0);
+    co64.data.writeInt(sampleCount);
+    for (int i = 0; i < sampleCount; i++) {
+      co64.data.writeLong(sampleOffsets[i]);
+    }
+
+    moov.write(stream);
+  }
+
+
+  // Version and flags of a header atom, then its creation and modification
+  // times, which are 64-bit in version 1
+  static protected void writeVersion(DataOutputStream data, boolean wide,
+                                     int flags) throws IOException {
+    if (wide) {
+      data.writeInt((1 << 24) | flags);
+      data.writeLong(0);
+      data.writeLong(0);
+    } else {
+      data.writeInt(flags);
+      data.writeInt(0);
+      data.writeInt(0);
+    }
+  }
+
+
+  static protected void writeDuration(DataOutputStream data, boolean wide,
+                                      long duration) throws IOException {
+    if (wide) {
+      data.writeLong(duration);
+    } else {
+      data.writeInt((int) duration);
+    }
+  }
+
+
+  // An atom with either data or children, written once it's complete
+  static protected class Atom {
+    String type;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(bytes);
+    Atom[] children = new Atom[0];
+
+    Atom(String type) {
+      this.type = type;
+    }
+
+    Atom child(String type) {
+      Atom child = new Atom(type);
+      children = Arrays.copyOf(children, children.length + 1);
+      children[children.length - 1] = child;
+      return child;
+    }
+
+    int size() {
+      int size = 8 + bytes.size();
+      for (Atom child : children) {
+        size += child.size();
+      }
+      return size;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(size());
+      out.writeBytes(type);
+      bytes.writeTo(out);
+      for (Atom child : children) {
+        child.write(out);
+      }
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+/**
+ * Hands out the vertex and index ranges used by the immediate-mode
+ * buffers when they are streamed. Each flush writes its geometry after
+ * the ranges written by the previous flushes, so the buffers don't need
+ * to be respecified every time, and they are rewound to the beginning
+ * once they are full. The ranges that are still pending are guarded by
+ * fences, and the ring only waits on them when it is about to overwrite
+ * a range that the GPU may not have finished drawing from.
+ */
+class BufferRing {
+  /**
+   * Fence operations, implemented with the sync objects of the current
+   * context by the renderer.
+   */
+  interface Fences {
+    long fence();
+    void waitFence(long sync);
+    void deleteFence(long sync);
+  }
+
+  static protected final int MAX_PENDING = 64;
+
+  protected Fences fences;
+
+  protected int vertexCapacity;
+  protected int indexCapacity;
+
+  /** Start of the last allocated ranges. */
+  protected int vertexBase;
+  protected int indexBase;
+
+  protected int vertexHead;
+  protected int indexHead;
+
+  /** False until the storage of the buffers is allocated by the renderer. */
+  protected boolean storage;
+
+  /** Range allocated since the last fence, if any. */
+  protected boolean unfenced;
+
+  // Circular queue of fenced ranges, the oldest at the tail
+  protected int[] pendingVertexStart = new int[MAX_PENDING];
+  protected int[] pendingVertexEnd = new int[MAX_PENDING];
+  protected int[] pendingIndexStart = new int[MAX_PENDING];
+  protected int[] pendingIndexEnd = new int[MAX_PENDING];
+  protected long[] pendingSync = new long[MAX_PENDING];
+  protected int head;
+  protected int tail;
+  protected int size;
+
+  /** Number of times the ring had to wait for the GPU. */
+  protected int waitCount;
+
+
+  BufferRing(Fences fences, int vertexCapacity, int indexCapacity) {
+    this.fences = fences;
+    this.vertexCapacity = vertexCapacity;
+    this.indexCapacity = indexCapacity;
+  }
+
+
+  /**
+   * Reserves the ranges for the given number of vertices and indices,
+   * which start at vertexBase and indexBase. Returns false if the
+   * geometry doesn't fit in the buffers, in which case it should be
+   * copied in the regular way.
+   */
+  boolean allocate(int vcount, int icount) {
+    if (vcount > vertexCapacity || icount > indexCapacity) return false;
+
+    if (unfenced) fence();
+
+    int vstart = vertexHead + vcount <= vertexCapacity ? vertexHead : 0;
+    int istart = indexHead + icount <= indexCapacity ? indexHead : 0;
+
+    // The ranges are written in order, so the oldest ones are the first to
+    // be overwritten. Waiting on the newest of those is enough, since the
+    // fences are signaled in the same order.
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      int n = (tail + i) % MAX_PENDING;
+      if (overlaps(pendingVertexStart[n], pendingVertexEnd[n], vstart, vstart + vcount) ||
+          overlaps(pendingIndexStart[n], pendingIndexEnd[n], istart, istart + icount)) {
+        count = i + 1;
+      }
+    }
+    if (0 < count) {
+      fences.waitFence(pendingSync[(tail + count - 1) % MAX_PENDING]);
+      waitCount++;
+      release(count);
+    }
+
+    vertexBase = vstart;
+    indexBase = istart;
+    vertexHead = vstart + vcount;
+    indexHead = istart + icount;
+    unfenced = true;
+    return true;
+  }
+
+
+  /**
+   * Fences the last allocated ranges, should be called once the draw
+   * calls reading from them have been issued.
+   */
+  void fence() {
+    if (!unfenced) return;
+    if (size == MAX_PENDING) {
+      fences.waitFence(pendingSync[tail]);
+      waitCount++;
+      release(1);
+    }
+    pendingVertexStart[head] = vertexBase;
+    pendingVertexEnd[head] = vertexHead;
+    pendingIndexStart[head] = indexBase;
+    pendingIndexEnd[head] = indexHead;
+    pendingSync[head] = fences.fence();
+    head = (head + 1) % MAX_PENDING;
+    size++;
+    unfenced = false;
+  }
+
+
+  /**
+   * Drops all the pending ranges. The storage has to be allocated again
+   * before the next allocation, which also orphans any range still in use.
+   */
+  void reset() {
+    release(size);
+    vertexBase = indexBase = 0;
+    vertexHead = indexHead = 0;
+    unfenced = false;
+    storage = false;
+  }
+
+
+  protected void release(int count) {
+    for (int i = 0; i < count; i++) {
+      fences.deleteFence(pendingSync[tail]);
+      tail = (tail + 1) % MAX_PENDING;
+      size--;
+    }
+  }
+
+
+  static protected boolean overlaps(int start0, int end0, int start1, int end1) {
+    return start0 < end1 && start1 < end0;
+  }
+}
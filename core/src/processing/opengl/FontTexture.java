@@ -30,7 +30,11 @@ import processing.core.PFont;
 import processing.core.PGraphics;
 import processing.core.PImage;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * All the infrastructure needed for optimized font rendering
@@ -46,23 +50,34 @@ import java.util.HashMap;
  * OpenGL texture might not be enough to store all the glyphs,
  * so PFontTexture also takes care of spreading a single font
  * over several textures.
+ * The glyphs of small fonts are added as they are used to a texture
+ * shared by all of them. Once its pages are full, the least recently
+ * used page is emptied to make room for the new glyphs.
  * @author Andres Colubri
  */
 class FontTexture implements PConstants {
+  /** Maximum number of textures in the atlas shared by the fonts. */
+  static protected final int MAX_ATLAS_PAGES = 4;
+
   protected PGL pgl;
   protected boolean is3D;
 
   protected int minSize;
   protected int maxSize;
-  protected int offsetX;
-  protected int offsetY;
-  protected int lineHeight;
+  protected int maxPages;
   protected Texture[] textures = null;
   protected PImage[] images = null;
+  protected GlyphPacker[] packers = null;
+  protected int[] pageUse = null;
+  protected int useCount;
   protected int lastTex;
-  protected TextureInfo[] glyphTexinfos;
   protected HashMap<PFont.Glyph, TextureInfo> texinfoMap;
 
+  // Renderers that drew text with these textures, and may have some of it
+  // still waiting to be flushed
+  protected Set<PGraphicsOpenGL> users =
+    Collections.newSetFromMap(new WeakHashMap<>());
+
   public FontTexture(PGraphicsOpenGL pg, PFont font, boolean is3D) {
     pgl = pg.pgl;
     this.is3D = is3D;
@@ -71,6 +86,32 @@ class FontTexture implements PConstants {
   }
 
 
+  /**
+   * Creates a texture shared by several fonts, where the glyphs are added
+   * as they are needed.
+   */
+  public FontTexture(PGraphicsOpenGL pg, boolean is3D) {
+    pgl = pg.pgl;
+    this.is3D = is3D;
+
+    minSize = PApplet.min(PGraphicsOpenGL.maxTextureSize, PGL.MIN_FONT_TEX_SIZE);
+    maxSize = PApplet.min(PGraphicsOpenGL.maxTextureSize, PGL.MAX_FONT_TEX_SIZE);
+    maxPages = MAX_ATLAS_PAGES;
+    lastTex = -1;
+    addTexture(pg);
+    texinfoMap = new HashMap<>();
+  }
+
+
+  /**
+   * Returns true if the glyphs of the font are small enough to share a
+   * texture with other fonts.
+   */
+  static public boolean fitsAtlas(PFont font) {
+    return 8 * PGL.nextPowerOfTwo(font.getSize()) <= PGL.MAX_FONT_TEX_SIZE;
+  }
+
+
   protected void allocate() {
     // Nothing to do here: the font textures will allocate
     // themselves.
@@ -92,6 +133,7 @@ class FontTexture implements PConstants {
                           PApplet.max(PGL.MIN_FONT_TEX_SIZE, spow));
     maxSize = PApplet.min(PGraphicsOpenGL.maxTextureSize,
                           PApplet.max(PGL.MAX_FONT_TEX_SIZE, 2 * spow));
+    maxPages = 0;
 
     if (maxSize < spow) {
       PGraphics.showWarning("The font size is too large to be properly " +
@@ -100,12 +142,7 @@ class FontTexture implements PConstants {
 
     addTexture(pg);
 
-    offsetX = 0;
-    offsetY = 0;
-    lineHeight = 0;
-
     texinfoMap = new HashMap<>();
-    glyphTexinfos = new TextureInfo[font.getGlyphCount()];
     addAllGlyphsToTexture(pg, font);
   }
 
@@ -145,14 +182,22 @@ class FontTexture implements PConstants {
       textures[0] = tex;
       images = new PImage[1];
       images[0] = pg.wrapTexture(tex);
+      packers = new GlyphPacker[1];
+      packers[0] = new GlyphPacker(tex.glWidth, tex.glHeight);
+      pageUse = new int[1];
       lastTex = 0;
     } else if (resize) {
+      // The geometry drawn so far uses the texture coordinates of the
+      // smaller texture, so it has to be drawn before replacing it.
+      flushUsers(pg);
+
       // Replacing old smaller texture with larger one.
       // But first we must copy the contents of the older
       // texture into the new one.
       Texture tex0 = textures[lastTex];
       tex.put(tex0);
       textures[lastTex] = tex;
+      packers[lastTex].grow(tex.glHeight);
 
       pg.setCache(images[lastTex], tex);
       images[lastTex].width = tex.width;
@@ -169,6 +214,13 @@ class FontTexture implements PConstants {
       PApplet.arrayCopy(images, tempImg, images.length);
       tempImg[lastTex] = pg.wrapTexture(tex);
       images = tempImg;
+
+      GlyphPacker[] tempPackers = new GlyphPacker[textures.length];
+      PApplet.arrayCopy(packers, tempPackers, packers.length);
+      tempPackers[lastTex] = new GlyphPacker(tex.glWidth, tex.glHeight);
+      packers = tempPackers;
+
+      pageUse = PApplet.expand(pageUse, textures.length);
     }
 
     // Make sure that the current texture is bound.
@@ -178,7 +230,8 @@ class FontTexture implements PConstants {
   }
 
 
-  public void begin() {
+  public void begin(PGraphicsOpenGL pg) {
+    users.add(pg);
   }
 
 
@@ -198,16 +251,15 @@ class FontTexture implements PConstants {
   public void addAllGlyphsToTexture(PGraphicsOpenGL pg, PFont font) {
     // loop over current glyphs.
     for (int i = 0; i < font.getGlyphCount(); i++) {
-      addToTexture(pg, i, font.getGlyph(i));
+      addToTexture(pg, font.getGlyph(i));
     }
   }
 
 
   public void updateGlyphsTexCoords() {
     // loop over current glyphs.
-    for (int i = 0; i < glyphTexinfos.length; i++) {
-      TextureInfo tinfo = glyphTexinfos[i];
-      if (tinfo != null && tinfo.texIndex == lastTex) {
+    for (TextureInfo tinfo: texinfoMap.values()) {
+      if (tinfo.texIndex == lastTex) {
         tinfo.updateUV();
       }
     }
@@ -216,17 +268,10 @@ class FontTexture implements PConstants {
 
   public TextureInfo getTexInfo(PFont.Glyph glyph) {
     TextureInfo info = texinfoMap.get(glyph);
-    return info;
-  }
-
-
-  public TextureInfo addToTexture(PGraphicsOpenGL pg, PFont.Glyph glyph) {
-    int n = glyphTexinfos.length;
-    if (n == 0) {
-      glyphTexinfos = new TextureInfo[1];
+    if (info != null) {
+      pageUse[info.texIndex] = ++useCount;
     }
-    addToTexture(pg, n, glyph);
-    return glyphTexinfos[n];
+    return info;
   }
 
 
@@ -253,8 +298,11 @@ class FontTexture implements PConstants {
 //  }
 
 
-  // Adds this glyph to the opengl texture in PFont.
-  protected void addToTexture(PGraphicsOpenGL pg, int idx, PFont.Glyph glyph) {
+  // Adds this glyph to the opengl texture in PFont. Placeholders aren't
+  // added, since they're blank and about to be replaced.
+  public TextureInfo addToTexture(PGraphicsOpenGL pg, PFont.Glyph glyph) {
+    if (glyph.isPlaceholder()) return null;
+
     // We add one pixel to avoid issues when sampling the font texture at
     // fractional screen positions. I.e.: the pixel on the screen only contains
     // half of the font rectangle, so it would sample half of the color from the
@@ -295,42 +343,79 @@ class FontTexture implements PConstants {
       java.util.Arrays.fill(rgba, (h - 1) * w, h * w, 0x00FFFFFF); // Set the last row to blank pixels.
     }
 
-    // Is there room for this glyph in the current line?
-    if (offsetX + w > textures[lastTex].glWidth) {
-      // No room, go to the next line:
-      offsetX = 0;
-      offsetY += lineHeight;
+    int page = pack(pg, w, h);
+    if (page == -1) {
+      PGraphics.showWarning("The font size is too large to be properly " +
+                            "displayed with OpenGL");
+      return null;
+    }
+
+    GlyphPacker packer = packers[page];
+    TextureInfo tinfo = new TextureInfo(page, packer.packedX, packer.packedY,
+                                        w, h, rgba);
+    pageUse[page] = ++useCount;
+    texinfoMap.put(glyph, tinfo);
+    return tinfo;
+  }
+
+
+  // Finds a page with room for a glyph of the given size, and returns its
+  // index, or -1 if the glyph is larger than a whole texture.
+  protected int pack(PGraphicsOpenGL pg, int w, int h) {
+    if (maxSize < w || maxSize < h) return -1;
+
+    // Trying the newest pages first, since they are the emptiest.
+    for (int i = textures.length - 1; i >= 0; i--) {
+      if (packers[i].pack(w, h)) return i;
+    }
+
+    // Growing the last texture up to the maximum size.
+    while (textures[lastTex].glHeight < maxSize) {
+      addTexture(pg);
+      // Because the current texture has been resized, we need to
+      // update the UV coordinates of all the glyphs associated to it:
+      updateGlyphsTexCoords();
+      if (packers[lastTex].pack(w, h)) return lastTex;
     }
-    lineHeight = Math.max(lineHeight, h);
-
-    boolean resized = false;
-    if (offsetY + lineHeight > textures[lastTex].glHeight) {
-      // We run out of space in the current texture, so we add a new texture:
-      resized = addTexture(pg);
-      if (resized) {
-        // Because the current texture has been resized, we need to
-        // update the UV coordinates of all the glyphs associated to it:
-        updateGlyphsTexCoords();
-      } else {
-        // A new texture has been created. Reseting texture coordinates
-        // and line.
-        offsetX = 0;
-        offsetY = 0;
-        lineHeight = 0;
+
+    int page;
+    if (maxPages == 0 || textures.length < maxPages) {
+      addTexture(pg);
+      page = lastTex;
+    } else {
+      page = 0;
+      for (int i = 1; i < textures.length; i++) {
+        if (pageUse[i] < pageUse[page]) page = i;
       }
+      evictPage(pg, page);
     }
+    return packers[page].pack(w, h) ? page : -1;
+  }
 
-    TextureInfo tinfo = new TextureInfo(lastTex, offsetX, offsetY, w, h, rgba);
-    offsetX += w;
 
-    if (idx == glyphTexinfos.length) {
-      TextureInfo[] temp = new TextureInfo[glyphTexinfos.length + 1];
-      System.arraycopy(glyphTexinfos, 0, temp, 0, glyphTexinfos.length);
-      glyphTexinfos = temp;
+  // Removes all the glyphs in a page, so its space can be reused.
+  protected void evictPage(PGraphicsOpenGL pg, int page) {
+    // The glyphs of the text being drawn, and the geometry drawn so far,
+    // may still use the page.
+    flushUsers(pg);
+
+    Iterator<TextureInfo> it = texinfoMap.values().iterator();
+    while (it.hasNext()) {
+      if (it.next().texIndex == page) it.remove();
     }
+    packers[page].clear();
+  }
 
-    glyphTexinfos[idx] = tinfo;
-    texinfoMap.put(glyph, tinfo);
+
+  // Draws the geometry that every renderer using these textures has so
+  // far, before the textures change. Since the fonts are shared, that
+  // includes the primary surface while an offscreen one is drawing text.
+  protected void flushUsers(PGraphicsOpenGL pg) {
+    pg.drawTextQuads();
+    pg.flush();
+    for (PGraphicsOpenGL user : users.toArray(new PGraphicsOpenGL[0])) {
+      if (user != pg) user.flushWhileOtherDraws(pg);
+    }
   }
 
 
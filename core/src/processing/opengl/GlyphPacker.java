@@ -0,0 +1,179 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Arrays;
+
+/**
+ * Skyline packer for the glyphs of a font texture. The top edge of the
+ * packed rectangles is kept as a list of horizontal segments, and each new
+ * rectangle is placed where its top ends up lowest. This wastes much less
+ * space than filling the texture row by row when the glyphs have different
+ * heights, as is the case when several fonts share the same texture.
+ */
+class GlyphPacker {
+  protected int width;
+  protected int height;
+
+  // Segments of the skyline, sorted by x
+  protected int[] segmentX;
+  protected int[] segmentY;
+  protected int[] segmentW;
+  protected int segmentCount;
+
+  /** Position of the last packed rectangle. */
+  protected int packedX;
+  protected int packedY;
+
+
+  GlyphPacker(int width, int height) {
+    this.width = width;
+    this.height = height;
+    segmentX = new int[16];
+    segmentY = new int[16];
+    segmentW = new int[16];
+    clear();
+  }
+
+
+  void clear() {
+    segmentCount = 1;
+    segmentX[0] = 0;
+    segmentY[0] = 0;
+    segmentW[0] = width;
+  }
+
+
+  /**
+   * Makes more rows available at the bottom, when the texture is replaced
+   * by a taller one.
+   */
+  void grow(int height) {
+    this.height = height;
+  }
+
+
+  /**
+   * Finds room for a rectangle of the given size. If there is any, returns
+   * true and the position is stored in packedX and packedY.
+   */
+  boolean pack(int w, int h) {
+    int best = -1;
+    int bestTop = Integer.MAX_VALUE;
+    int bestY = 0;
+    for (int i = 0; i < segmentCount; i++) {
+      int y = fit(i, w, h);
+      if (-1 < y && y + h < bestTop) {
+        best = i;
+        bestTop = y + h;
+        bestY = y;
+      }
+    }
+    if (best == -1) return false;
+
+    packedX = segmentX[best];
+    packedY = bestY;
+    addSegment(best, packedX, packedY + h, w);
+    return true;
+  }
+
+
+  /**
+   * Returns the height of the used area, all the rows below are empty.
+   */
+  int usedHeight() {
+    int max = 0;
+    for (int i = 0; i < segmentCount; i++) {
+      max = Math.max(max, segmentY[i]);
+    }
+    return max;
+  }
+
+
+  // Returns the y coordinate of a rectangle whose left edge is at the
+  // beginning of segment i, or -1 if it doesn't fit there.
+  protected int fit(int i, int w, int h) {
+    int x = segmentX[i];
+    if (x + w > width) return -1;
+
+    int y = 0;
+    int remaining = w;
+    for (int j = i; 0 < remaining; j++) {
+      y = Math.max(y, segmentY[j]);
+      if (y + h > height) return -1;
+      remaining -= segmentW[j];
+    }
+    return y;
+  }
+
+
+  protected void addSegment(int index, int x, int y, int w) {
+    if (segmentCount == segmentX.length) {
+      int size = segmentCount << 1;
+      segmentX = Arrays.copyOf(segmentX, size);
+      segmentY = Arrays.copyOf(segmentY, size);
+      segmentW = Arrays.copyOf(segmentW, size);
+    }
+    int n = segmentCount - index;
+    System.arraycopy(segmentX, index, segmentX, index + 1, n);
+    System.arraycopy(segmentY, index, segmentY, index + 1, n);
+    System.arraycopy(segmentW, index, segmentW, index + 1, n);
+    segmentX[index] = x;
+    segmentY[index] = y;
+    segmentW[index] = w;
+    segmentCount++;
+
+    // Trimming the segments now covered by the new one
+    int right = x + w;
+    int i = index + 1;
+    while (i < segmentCount && segmentX[i] < right) {
+      int shrink = right - segmentX[i];
+      if (segmentW[i] <= shrink) {
+        removeSegment(i);
+      } else {
+        segmentX[i] += shrink;
+        segmentW[i] -= shrink;
+        break;
+      }
+    }
+
+    // Merging neighbors at the same height
+    for (i = 0; i < segmentCount - 1; ) {
+      if (segmentY[i] == segmentY[i + 1]) {
+        segmentW[i] += segmentW[i + 1];
+        removeSegment(i + 1);
+      } else {
+        i++;
+      }
+    }
+  }
+
+
+  protected void removeSegment(int index) {
+    int n = segmentCount - index - 1;
+    System.arraycopy(segmentX, index + 1, segmentX, index, n);
+    System.arraycopy(segmentY, index + 1, segmentY, index, n);
+    System.arraycopy(segmentW, index + 1, segmentW, index, n);
+    segmentCount--;
+  }
+}
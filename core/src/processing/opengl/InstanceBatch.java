@@ -0,0 +1,105 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Arrays;
+
+import processing.core.PImage;
+import processing.core.PMatrix3D;
+
+/**
+ * Collects consecutive draws of the same retained shape, so they can be
+ * rendered with a single instanced draw call. Each instance stores its
+ * modelview matrix in column-major order, followed by the RGBA color that
+ * multiplies the colors of the shape.
+ */
+class InstanceBatch {
+  static protected final int INSTANCE_SIZE = 20;
+  static protected final int INIT_INSTANCE_COUNT = 64;
+
+  protected PShapeOpenGL shape;
+  protected PImage texture;
+
+  protected float[] instances = new float[INSTANCE_SIZE * INIT_INSTANCE_COUNT];
+  protected int count;
+
+
+  boolean isEmpty() {
+    return count == 0;
+  }
+
+
+  /**
+   * Returns true if the shape, drawn with the given texture, can be added
+   * to the instances already in the batch.
+   */
+  boolean accepts(PShapeOpenGL shape, PImage texture) {
+    return count == 0 || (this.shape == shape && this.texture == texture);
+  }
+
+
+  void add(PShapeOpenGL shape, PImage texture, PMatrix3D modelview, int tint) {
+    this.shape = shape;
+    this.texture = texture;
+
+    if (instances.length < INSTANCE_SIZE * (count + 1)) {
+      instances = Arrays.copyOf(instances, instances.length << 1);
+    }
+
+    int index = INSTANCE_SIZE * count;
+    float[] data = instances;
+    data[index++] = modelview.m00;
+    data[index++] = modelview.m10;
+    data[index++] = modelview.m20;
+    data[index++] = modelview.m30;
+
+    data[index++] = modelview.m01;
+    data[index++] = modelview.m11;
+    data[index++] = modelview.m21;
+    data[index++] = modelview.m31;
+
+    data[index++] = modelview.m02;
+    data[index++] = modelview.m12;
+    data[index++] = modelview.m22;
+    data[index++] = modelview.m32;
+
+    data[index++] = modelview.m03;
+    data[index++] = modelview.m13;
+    data[index++] = modelview.m23;
+    data[index++] = modelview.m33;
+
+    data[index++] = ((tint >> 16) & 0xFF) / 255f;
+    data[index++] = ((tint >>  8) & 0xFF) / 255f;
+    data[index++] = ((tint      ) & 0xFF) / 255f;
+    data[index  ] = ((tint >> 24) & 0xFF) / 255f;
+
+    count++;
+  }
+
+
+  void clear() {
+    shape = null;
+    texture = null;
+    count = 0;
+  }
+}
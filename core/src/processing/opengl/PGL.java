@@ -2286,6 +2286,15 @@ public abstract class PGL {
   }
 
 
+  /**
+   * True if drawElementsInstanced() and vertexAttribDivisor() can be used.
+   * Subclasses that implement them override this to check the GL version.
+   */
+  protected boolean hasInstancing() {
+    return false;
+  }
+
+
   protected boolean hasPBOs() {
     int[] version = getGLVersion();
     if (isES()) {
@@ -3247,6 +3256,21 @@ public abstract class PGL {
 
   public abstract void drawElementsImpl(int mode, int count, int type, int offset);
 
+  public void drawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+    geomCount += count * instanceCount;
+    drawElementsInstancedImpl(mode, count, type, offset, instanceCount);
+  }
+
+  // Not abstract, so that the subclasses that don't support instancing
+  // don't have to implement them. Only called when hasInstancing() is true.
+  public void drawElementsInstancedImpl(int mode, int count, int type, int offset, int instanceCount) {
+    throw new RuntimeException(String.format(MISSING_GLFUNC_ERROR, "drawElementsInstanced()"));
+  }
+
+  public void vertexAttribDivisor(int index, int divisor) {
+    throw new RuntimeException(String.format(MISSING_GLFUNC_ERROR, "vertexAttribDivisor()"));
+  }
+
   //////////////////////////////////////////////////////////////////////////////
 
   // Rasterization
@@ -32,6 +32,9 @@ import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.nio.*;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
@@ -47,6 +50,10 @@ public class PGraphicsOpenGL extends PGraphics {
   /** Font cache for texture objects. */
   protected WeakHashMap<PFont, FontTexture> fontMap;
 
+  /** Textures shared by the glyphs of small fonts. */
+  protected FontTexture fontAtlas2D;
+  protected FontTexture fontAtlas3D;
+
   // ........................................................
 
   // Disposal of native resources
@@ -142,6 +149,22 @@ public class PGraphicsOpenGL extends PGraphics {
   static protected final int INIT_VERTEX_BUFFER_SIZE  = 256;
   static protected final int INIT_INDEX_BUFFER_SIZE   = 512;
 
+  // Streaming of the immediate-mode geometry, enabled with
+  // hint(ENABLE_STREAMING_BUFFERS). The geometry of each flush is written
+  // into a new range of the buffers, starting at these offsets.
+  protected boolean streamingBuffers = false;
+  protected BufferRing polyRing;
+  protected BufferRing lineRing;
+  protected BufferRing pointRing;
+  protected int polyVertexBase, polyIndexBase;
+  protected int lineVertexBase, lineIndexBase;
+  protected int pointVertexBase, pointIndexBase;
+
+  static protected final int STREAM_VERTEX_BUFFER_SIZE = 4 * PGL.FLUSH_VERTEX_COUNT;
+  static protected final int STREAM_INDEX_BUFFER_SIZE  = 12 * PGL.FLUSH_VERTEX_COUNT;
+  static protected final long STREAM_WAIT_TIMEOUT      = 1000000000L; // 1s
+  protected StreamFences streamFences = new StreamFences();
+
   // ........................................................
 
   // GL parameters
@@ -204,6 +227,11 @@ public class PGraphicsOpenGL extends PGraphics {
   static protected URL maskShaderFragURL =
     PGraphicsOpenGL.class.getResource("/processing/opengl/shaders/MaskFrag.glsl");
 
+  static protected URL instColorShaderVertURL =
+    PGraphicsOpenGL.class.getResource("/processing/opengl/shaders/InstColorVert.glsl");
+  static protected URL instTextureShaderVertURL =
+    PGraphicsOpenGL.class.getResource("/processing/opengl/shaders/InstTexVert.glsl");
+
   protected PShader defColorShader;
   protected PShader defTextureShader;
   protected PShader defLightShader;
@@ -211,6 +239,8 @@ public class PGraphicsOpenGL extends PGraphics {
   protected PShader defLineShader;
   protected PShader defPointShader;
   protected PShader maskShader;
+  protected PShader instColorShader;
+  protected PShader instTextureShader;
 
   protected PShader polyShader;
   protected PShader lineShader;
@@ -234,10 +264,25 @@ public class PGraphicsOpenGL extends PGraphics {
 
   // ........................................................
 
+  // Instancing of retained shapes, enabled with hint(ENABLE_SHAPE_INSTANCING)
+
+  protected boolean shapeInstancing;
+  protected InstanceBatch instanceBatch;
+  protected VertexBuffer bufInstance;
+  protected FloatBuffer instanceBuffer;
+
+  // True while shape() flushes the geometry drawn before the shape, which
+  // shouldn't break the batch of instances.
+  protected boolean drawingShape;
+
+  // ........................................................
+
   // Async pixel reader
 
   protected AsyncPixelReader asyncPixelReader;
   protected boolean asyncPixelReaderInitialized;
+  protected int asyncReadDepth = ReadbackRing.DEFAULT_DEPTH;
+  protected int asyncReadThreads = 1;
 
   // Keeps track of ongoing transfers so that they can be finished.
   // Set is copied to the List when we need to iterate it
@@ -390,6 +435,12 @@ public class PGraphicsOpenGL extends PGraphics {
   /** Font texture of currently selected font. */
   FontTexture textTex;
 
+  // Glyph quads of the current line of text, which are drawn together
+  // once the whole line has been laid out.
+  protected FontTexture.TextureInfo[] textQuadInfos = new FontTexture.TextureInfo[64];
+  protected float[] textQuadCoords = new float[4 * 64];
+  protected int textQuadCount;
+
   // .......................................................
 
   // Framebuffer stack:
@@ -673,6 +724,8 @@ public class PGraphicsOpenGL extends PGraphics {
       asyncPixelReader = null;
     }
 
+    deleteStreamBuffers();
+
     if (!primaryGraphics) {
       deleteSurfaceTextures();
       FrameBuffer ofb = offscreenFramebuffer;
@@ -787,17 +840,9 @@ public class PGraphicsOpenGL extends PGraphics {
       return super.saveImpl(filename);
     }
 
-    if (asyncImageSaver == null) {
-      asyncImageSaver = new AsyncImageSaver();
-    }
+    AsyncImageSaver saver = getAsyncImageSaver();
 
-    if (!asyncPixelReaderInitialized) {
-      // First call! Get this guy initialized
-      if (pgl.hasPBOs() && pgl.hasSynchronization()) {
-        asyncPixelReader = new AsyncPixelReader();
-      }
-      asyncPixelReaderInitialized = true;
-    }
+    initAsyncPixelReader();
 
     if (asyncPixelReader != null && !loaded) {
       boolean needEndDraw = false;
@@ -818,18 +863,97 @@ public class PGraphicsOpenGL extends PGraphics {
       // pixels are already in memory, just do async save
       if (!loaded) loadPixels();
       int format = primaryGraphics ? RGB : ARGB;
-      PImage target = asyncImageSaver.getAvailableTarget(pixelWidth, pixelHeight,
-                                                         format);
+      PImage target = saver.getAvailableTarget(pixelWidth, pixelHeight, format);
       if (target == null) return false;
       int count = PApplet.min(pixels.length, target.pixels.length);
       System.arraycopy(pixels, 0, target.pixels, 0, count);
-      asyncImageSaver.saveTargetAsync(this, target, parent.sketchFile(filename));
+      saver.saveTargetAsync(this, target, parent.sketchFile(filename));
     }
 
     return true;
   }
 
 
+
+  protected void initAsyncPixelReader() {
+    if (!asyncPixelReaderInitialized) {
+      // First call! Get this guy initialized
+      if (pgl.hasPBOs() && pgl.hasSynchronization()) {
+        asyncPixelReader = new AsyncPixelReader();
+      }
+      asyncPixelReaderInitialized = true;
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // ASYNC PIXEL READS
+
+
+  /**
+   * Reads the pixels of the current frame without waiting for the GPU.
+   * The callback gets them a few frames later, as an image that it owns,
+   * on a conversion thread rather than the animation thread. With more
+   * than one conversion thread, the images may arrive out of order.
+   * <p>
+   * When the renderer can't read asynchronously, the pixels are read
+   * right away and the callback is called before this returns.
+   */
+  public void readPixelsAsync(Consumer<PImage> callback) {
+    initAsyncPixelReader();
+
+    if (asyncPixelReader != null && !loaded) {
+      boolean needEndDraw = false;
+      if (!drawing) {
+        beginDraw();
+        needEndDraw = true;
+      }
+      flush();
+      updatePixelSize();
+
+      asyncPixelReader.readAsync(callback);
+
+      if (needEndDraw) endDraw();
+
+    } else {
+      if (!loaded) loadPixels();
+      callback.accept(get());
+    }
+  }
+
+
+  /**
+   * Sets how many frames can be in flight between the GPU and the async
+   * reads, 3 by default. A deeper pipeline stalls less when the GPU lags
+   * behind, at the cost of latency and one pixel buffer per frame.
+   */
+  public void setAsyncReadDepth(int depth) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("At least one buffer is needed");
+    }
+    asyncReadDepth = depth;
+    if (asyncPixelReader != null) {
+      asyncPixelReader.setDepth(depth);
+    }
+  }
+
+
+  /**
+   * Sets how many threads convert the pixels for readPixelsAsync(), 1 by
+   * default so that the callbacks are called in order.
+   */
+  public void setAsyncReadThreads(int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("At least one thread is needed");
+    }
+    asyncReadThreads = count;
+    if (asyncPixelReader != null) {
+      asyncPixelReader.setConverterThreads(count);
+    }
+  }
+
+
   //////////////////////////////////////////////////////////////
 
   // IMAGE METADATA FOR THIS RENDERER
@@ -878,6 +1002,25 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  protected FontTexture createFontTexture(PFont font) {
+    if (!FontTexture.fitsAtlas(font)) {
+      return new FontTexture(this, font, is3D());
+    }
+
+    PGraphicsOpenGL ppg = getPrimaryPG();
+    FontTexture atlas = is3D() ? ppg.fontAtlas3D : ppg.fontAtlas2D;
+    if (atlas == null || atlas.contextIsOutdated()) {
+      atlas = new FontTexture(this, is3D());
+      if (is3D()) {
+        ppg.fontAtlas3D = atlas;
+      } else {
+        ppg.fontAtlas2D = atlas;
+      }
+    }
+    return atlas;
+  }
+
+
   protected void removeFontTexture(PFont font) {
     getPrimaryPG().fontMap.remove(font);
   }
@@ -1209,6 +1352,7 @@ public class PGraphicsOpenGL extends PGraphics {
   protected void createPolyBuffers(int usage) {
     if (!polyBuffersCreated || polyBuffersContextIsOutdated()) {
       polyBuffersContext = pgl.getCurrentContext();
+      polyRing = null;
 
       bufPolyVertex = new VertexBuffer(this, PGL.ARRAY_BUFFER, 4, PGL.SIZEOF_FLOAT, usage);
       bufPolyColor = new VertexBuffer(this, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT, usage);
@@ -1241,6 +1385,18 @@ public class PGraphicsOpenGL extends PGraphics {
                                    boolean needNormals, boolean needTexCoords) {
     createPolyBuffers(PGL.bufferUsageImmediate);
 
+    polyVertexBase = polyIndexBase = 0;
+    if (streamingBuffers && polyAttribs.isEmpty() && !tessGeo.bufObjStreaming) {
+      if (polyRing == null) polyRing = new BufferRing(streamFences,
+          STREAM_VERTEX_BUFFER_SIZE, STREAM_INDEX_BUFFER_SIZE);
+      if (polyRing.allocate(tessGeo.polyVertexCount, tessGeo.polyIndexCount)) {
+        streamPolyBuffers(lit, tex, needNormals, needTexCoords);
+        return;
+      }
+    }
+    // Copying the geometry respecifies the storage of the buffers
+    if (polyRing != null) polyRing.reset();
+
     pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPolyVertex.glId);
     tessGeo.copyPolyVertices(PGL.bufferUsageImmediate);
 
@@ -1282,9 +1438,65 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  protected void streamPolyBuffers(boolean lit, boolean tex,
+                                   boolean needNormals, boolean needTexCoords) {
+    if (!polyRing.storage) {
+      createStreamBuffer(bufPolyVertex, 4 * PGL.SIZEOF_FLOAT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufPolyColor, PGL.SIZEOF_INT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufPolyNormal, 3 * PGL.SIZEOF_FLOAT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufPolyTexcoord, 2 * PGL.SIZEOF_FLOAT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufPolyAmbient, PGL.SIZEOF_INT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufPolySpecular, PGL.SIZEOF_INT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufPolyEmissive, PGL.SIZEOF_INT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufPolyShininess, PGL.SIZEOF_FLOAT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufPolyIndex, PGL.SIZEOF_INDEX, STREAM_INDEX_BUFFER_SIZE);
+      polyRing.storage = true;
+    }
+
+    polyVertexBase = polyRing.vertexBase;
+    polyIndexBase = polyRing.indexBase;
+    int vcount = tessGeo.polyVertexCount;
+
+    tessGeo.updatePolyVerticesBuffer();
+    streamBuffer(bufPolyVertex, 4 * PGL.SIZEOF_FLOAT, polyVertexBase, vcount, tessGeo.polyVerticesBuffer);
+
+    tessGeo.updatePolyColorsBuffer();
+    streamBuffer(bufPolyColor, PGL.SIZEOF_INT, polyVertexBase, vcount, tessGeo.polyColorsBuffer);
+
+    if (lit) {
+      tessGeo.updatePolyAmbientBuffer();
+      streamBuffer(bufPolyAmbient, PGL.SIZEOF_INT, polyVertexBase, vcount, tessGeo.polyAmbientBuffer);
+
+      tessGeo.updatePolySpecularBuffer();
+      streamBuffer(bufPolySpecular, PGL.SIZEOF_INT, polyVertexBase, vcount, tessGeo.polySpecularBuffer);
+
+      tessGeo.updatePolyEmissiveBuffer();
+      streamBuffer(bufPolyEmissive, PGL.SIZEOF_INT, polyVertexBase, vcount, tessGeo.polyEmissiveBuffer);
+
+      tessGeo.updatePolyShininessBuffer();
+      streamBuffer(bufPolyShininess, PGL.SIZEOF_FLOAT, polyVertexBase, vcount, tessGeo.polyShininessBuffer);
+    }
+
+    if (lit || needNormals) {
+      tessGeo.updatePolyNormalsBuffer();
+      streamBuffer(bufPolyNormal, 3 * PGL.SIZEOF_FLOAT, polyVertexBase, vcount, tessGeo.polyNormalsBuffer);
+    }
+
+    if (tex || needTexCoords) {
+      tessGeo.updatePolyTexCoordsBuffer();
+      streamBuffer(bufPolyTexcoord, 2 * PGL.SIZEOF_FLOAT, polyVertexBase, vcount, tessGeo.polyTexCoordsBuffer);
+    }
+
+    tessGeo.updatePolyIndicesBuffer();
+    streamBuffer(bufPolyIndex, PGL.SIZEOF_INDEX, polyIndexBase, tessGeo.polyIndexCount,
+                 tessGeo.polyIndicesBuffer);
+  }
+
+
   protected void unbindPolyBuffers() {
     pgl.bindBuffer(PGL.ARRAY_BUFFER, 0);
     pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, 0);
+    if (polyRing != null) polyRing.fence();
   }
 
 
@@ -1296,6 +1508,7 @@ public class PGraphicsOpenGL extends PGraphics {
   protected void createLineBuffers(int usage) {
     if (!lineBuffersCreated || lineBufferContextIsOutdated()) {
       lineBuffersContext = pgl.getCurrentContext();
+      lineRing = null;
 
       bufLineVertex = new VertexBuffer(this, PGL.ARRAY_BUFFER, 3, PGL.SIZEOF_FLOAT, usage);
       bufLineColor = new VertexBuffer(this, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT, usage);
@@ -1312,6 +1525,17 @@ public class PGraphicsOpenGL extends PGraphics {
   protected void updateLineBuffers() {
     createLineBuffers(PGL.bufferUsageImmediate);
 
+    lineVertexBase = lineIndexBase = 0;
+    if (streamingBuffers && !tessGeo.bufObjStreaming) {
+      if (lineRing == null) lineRing = new BufferRing(streamFences,
+          STREAM_VERTEX_BUFFER_SIZE, STREAM_INDEX_BUFFER_SIZE);
+      if (lineRing.allocate(tessGeo.lineVertexCount, tessGeo.lineIndexCount)) {
+        streamLineBuffers();
+        return;
+      }
+    }
+    if (lineRing != null) lineRing.reset();
+
     pgl.bindBuffer(PGL.ARRAY_BUFFER, bufLineVertex.glId);
     tessGeo.copyLineVertices(PGL.bufferUsageImmediate);
 
@@ -1326,9 +1550,38 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  protected void streamLineBuffers() {
+    if (!lineRing.storage) {
+      createStreamBuffer(bufLineVertex, 4 * PGL.SIZEOF_FLOAT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufLineColor, PGL.SIZEOF_INT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufLineAttrib, 4 * PGL.SIZEOF_FLOAT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufLineIndex, PGL.SIZEOF_INDEX, STREAM_INDEX_BUFFER_SIZE);
+      lineRing.storage = true;
+    }
+
+    lineVertexBase = lineRing.vertexBase;
+    lineIndexBase = lineRing.indexBase;
+    int vcount = tessGeo.lineVertexCount;
+
+    tessGeo.updateLineVerticesBuffer();
+    streamBuffer(bufLineVertex, 4 * PGL.SIZEOF_FLOAT, lineVertexBase, vcount, tessGeo.lineVerticesBuffer);
+
+    tessGeo.updateLineColorsBuffer();
+    streamBuffer(bufLineColor, PGL.SIZEOF_INT, lineVertexBase, vcount, tessGeo.lineColorsBuffer);
+
+    tessGeo.updateLineDirectionsBuffer();
+    streamBuffer(bufLineAttrib, 4 * PGL.SIZEOF_FLOAT, lineVertexBase, vcount, tessGeo.lineDirectionsBuffer);
+
+    tessGeo.updateLineIndicesBuffer();
+    streamBuffer(bufLineIndex, PGL.SIZEOF_INDEX, lineIndexBase, tessGeo.lineIndexCount,
+                 tessGeo.lineIndicesBuffer);
+  }
+
+
   protected void unbindLineBuffers() {
     pgl.bindBuffer(PGL.ARRAY_BUFFER, 0);
     pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, 0);
+    if (lineRing != null) lineRing.fence();
   }
 
 
@@ -1340,6 +1593,7 @@ public class PGraphicsOpenGL extends PGraphics {
   protected void createPointBuffers(int usage) {
     if (!pointBuffersCreated || pointBuffersContextIsOutdated()) {
       pointBuffersContext = pgl.getCurrentContext();
+      pointRing = null;
 
       bufPointVertex = new VertexBuffer(this, PGL.ARRAY_BUFFER, 3, PGL.SIZEOF_FLOAT, usage);
       bufPointColor = new VertexBuffer(this, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT, usage);
@@ -1356,6 +1610,17 @@ public class PGraphicsOpenGL extends PGraphics {
   protected void updatePointBuffers() {
     createPointBuffers(PGL.bufferUsageImmediate);
 
+    pointVertexBase = pointIndexBase = 0;
+    if (streamingBuffers && !tessGeo.bufObjStreaming) {
+      if (pointRing == null) pointRing = new BufferRing(streamFences,
+          STREAM_VERTEX_BUFFER_SIZE, STREAM_INDEX_BUFFER_SIZE);
+      if (pointRing.allocate(tessGeo.pointVertexCount, tessGeo.pointIndexCount)) {
+        streamPointBuffers();
+        return;
+      }
+    }
+    if (pointRing != null) pointRing.reset();
+
     pgl.bindBuffer(PGL.ARRAY_BUFFER, bufPointVertex.glId);
     tessGeo.copyPointVertices(PGL.bufferUsageImmediate);
 
@@ -1370,9 +1635,82 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  protected void streamPointBuffers() {
+    if (!pointRing.storage) {
+      createStreamBuffer(bufPointVertex, 4 * PGL.SIZEOF_FLOAT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufPointColor, PGL.SIZEOF_INT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufPointAttrib, 2 * PGL.SIZEOF_FLOAT, STREAM_VERTEX_BUFFER_SIZE);
+      createStreamBuffer(bufPointIndex, PGL.SIZEOF_INDEX, STREAM_INDEX_BUFFER_SIZE);
+      pointRing.storage = true;
+    }
+
+    pointVertexBase = pointRing.vertexBase;
+    pointIndexBase = pointRing.indexBase;
+    int vcount = tessGeo.pointVertexCount;
+
+    tessGeo.updatePointVerticesBuffer();
+    streamBuffer(bufPointVertex, 4 * PGL.SIZEOF_FLOAT, pointVertexBase, vcount, tessGeo.pointVerticesBuffer);
+
+    tessGeo.updatePointColorsBuffer();
+    streamBuffer(bufPointColor, PGL.SIZEOF_INT, pointVertexBase, vcount, tessGeo.pointColorsBuffer);
+
+    tessGeo.updatePointOffsetsBuffer();
+    streamBuffer(bufPointAttrib, 2 * PGL.SIZEOF_FLOAT, pointVertexBase, vcount, tessGeo.pointOffsetsBuffer);
+
+    tessGeo.updatePointIndicesBuffer();
+    streamBuffer(bufPointIndex, PGL.SIZEOF_INDEX, pointIndexBase, tessGeo.pointIndexCount,
+                 tessGeo.pointIndicesBuffer);
+  }
+
+
   protected void unbindPointBuffers() {
     pgl.bindBuffer(PGL.ARRAY_BUFFER, 0);
     pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, 0);
+    if (pointRing != null) pointRing.fence();
+  }
+
+
+  protected void createStreamBuffer(VertexBuffer buf, int stride, int count) {
+    pgl.bindBuffer(buf.target, buf.glId);
+    pgl.bufferData(buf.target, count * stride, null, PGL.STREAM_DRAW);
+  }
+
+
+  protected void streamBuffer(VertexBuffer buf, int stride, int base,
+                              int count, Buffer data) {
+    pgl.bindBuffer(buf.target, buf.glId);
+    pgl.bufferSubData(buf.target, base * stride, count * stride, data);
+  }
+
+
+  protected void deleteStreamBuffers() {
+    if (polyRing != null) polyRing.reset();
+    if (lineRing != null) lineRing.reset();
+    if (pointRing != null) pointRing.reset();
+    polyRing = lineRing = pointRing = null;
+  }
+
+
+  protected class StreamFences implements BufferRing.Fences {
+    @Override
+    public long fence() {
+      return pgl.fenceSync(PGL.SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+    @Override
+    public void waitFence(long sync) {
+      // Flushing first so the fence is guaranteed to be signaled eventually
+      pgl.flush();
+      int status = pgl.clientWaitSync(sync, 0, STREAM_WAIT_TIMEOUT);
+      if (status != PGL.ALREADY_SIGNALED && status != PGL.CONDITION_SATISFIED) {
+        pgl.finish();
+      }
+    }
+
+    @Override
+    public void deleteFence(long sync) {
+      pgl.deleteSync(sync);
+    }
   }
 
 
@@ -1810,6 +2148,12 @@ public class PGraphicsOpenGL extends PGraphics {
   @Override
   public void hint(int which) {
     boolean oldValue = hints[PApplet.abs(which)];
+    if (which == ENABLE_DEPTH_SORT && hints[ENABLE_FAST_DEPTH_SORT]) {
+      // Going back from the fast sorting to the regular one, which doesn't
+      // change hints[ENABLE_DEPTH_SORT] if it was enabled before
+      hints[ENABLE_FAST_DEPTH_SORT] = false;
+      oldValue = false;
+    }
     super.hint(which);
     boolean newValue = hints[PApplet.abs(which)];
 
@@ -1853,15 +2197,63 @@ public class PGraphicsOpenGL extends PGraphics {
       if (is3D()) {
         flush();
         if (sorter == null) sorter = new DepthSorter(this);
+        sorter.fast = false;
+        sorter.refine = !hints[DISABLE_DEPTH_SORT_REFINE];
         isDepthSortingEnabled = true;
       } else {
         PGraphics.showWarning("Depth sorting can only be enabled in 3D");
       }
     } else if (which == DISABLE_DEPTH_SORT) {
+      // turns off the fast sorting too
+      hints[ENABLE_FAST_DEPTH_SORT] = false;
       if (is3D()) {
         flush();
+        if (sorter != null) sorter.fast = false;
         isDepthSortingEnabled = false;
       }
+    } else if (which == ENABLE_FAST_DEPTH_SORT) {
+      if (is3D()) {
+        flush();
+        if (sorter == null) sorter = new DepthSorter(this);
+        sorter.fast = true;
+        sorter.refine = !hints[DISABLE_DEPTH_SORT_REFINE];
+        hints[ENABLE_DEPTH_SORT] = true;
+        isDepthSortingEnabled = true;
+      } else {
+        PGraphics.showWarning("Depth sorting can only be enabled in 3D");
+      }
+    } else if (which == DISABLE_FAST_DEPTH_SORT) {
+      if (is3D() && sorter != null) {
+        flush();
+        sorter.fast = false;
+      }
+    } else if (which == DISABLE_DEPTH_SORT_REFINE ||
+               which == ENABLE_DEPTH_SORT_REFINE) {
+      if (sorter != null) {
+        flush();
+        sorter.refine = !hints[DISABLE_DEPTH_SORT_REFINE];
+      }
+    } else if (which == ENABLE_STREAMING_BUFFERS) {
+      if (pgl.hasSynchronization()) {
+        flush();
+        streamingBuffers = true;
+      } else {
+        PGraphics.showWarning("Streaming buffers require OpenGL 3.2 or ES 3.0");
+      }
+    } else if (which == DISABLE_STREAMING_BUFFERS) {
+      flush();
+      streamingBuffers = false;
+      deleteStreamBuffers();
+    } else if (which == ENABLE_SHAPE_INSTANCING) {
+      if (pgl.hasInstancing()) {
+        if (instanceBatch == null) instanceBatch = new InstanceBatch();
+        shapeInstancing = true;
+      } else {
+        PGraphics.showWarning("Shape instancing requires OpenGL 3.3 or ES 3.0");
+      }
+    } else if (which == DISABLE_SHAPE_INSTANCING) {
+      flush();
+      shapeInstancing = false;
     } else if (which == ENABLE_BUFFER_READING) {
       restartPGL();
     } else if (which == DISABLE_BUFFER_READING) {
@@ -2254,6 +2646,10 @@ public class PGraphicsOpenGL extends PGraphics {
 
     boolean hasPixels = modified && pixels != null;
 
+    if (!drawingShape || hasPolys || hasLines || hasPoints || hasPixels) {
+      flushInstances();
+    }
+
     if (hasPixels) {
       // If the user has been manipulating individual pixels,
       // the changes need to be copied to the screen before
@@ -2323,6 +2719,101 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  /**
+   * Draws the geometry of this renderer so far while another one is
+   * drawing, for instance before a texture they share is changed. The
+   * framebuffer and GL settings of the other renderer are restored after.
+   */
+  protected void flushWhileOtherDraws(PGraphicsOpenGL current) {
+    if (!drawing || tessGeo == null) return;
+    if (tessGeo.polyVertexCount == 0 && tessGeo.lineVertexCount == 0 &&
+        tessGeo.pointVertexCount == 0 &&
+        (instanceBatch == null || instanceBatch.isEmpty())) return;
+
+    pushFramebuffer();
+    if (primaryGraphics) {
+      setFramebuffer(drawFramebuffer);
+    } else if (offscreenMultisample && multisampleFramebuffer != null) {
+      setFramebuffer(multisampleFramebuffer);
+    } else {
+      setFramebuffer(offscreenFramebuffer);
+    }
+    restoreGL();
+    flush();
+    popFramebuffer();
+    current.restoreGL();
+  }
+
+
+  protected void flushInstances() {
+    if (instanceBatch == null || instanceBatch.isEmpty()) return;
+
+    if (bufInstance == null || bufInstance.contextIsOutdated()) {
+      bufInstance = new VertexBuffer(this, PGL.ARRAY_BUFFER,
+                                     InstanceBatch.INSTANCE_SIZE,
+                                     PGL.SIZEOF_FLOAT, PGL.STREAM_DRAW);
+    }
+
+    float[] instances = instanceBatch.instances;
+    if (instanceBuffer == null || instanceBuffer.capacity() < instances.length) {
+      instanceBuffer = PGL.allocateFloatBuffer(instances);
+    }
+    int size = InstanceBatch.INSTANCE_SIZE * instanceBatch.count;
+    PGL.updateFloatBuffer(instanceBuffer, instances, 0, size);
+    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufInstance.glId);
+    pgl.bufferData(PGL.ARRAY_BUFFER, size * PGL.SIZEOF_FLOAT,
+                   instanceBuffer, PGL.STREAM_DRAW);
+    pgl.bindBuffer(PGL.ARRAY_BUFFER, 0);
+
+    // The batch is cleared first, so that rendering doesn't flush it again
+    PShapeOpenGL shape = instanceBatch.shape;
+    PImage texture = instanceBatch.texture;
+    int count = instanceBatch.count;
+    instanceBatch.clear();
+    shape.renderInstances(this, texture, count);
+  }
+
+
+  protected void bindInstanceAttributes(PShader shader) {
+    int matrixLoc = shader.getAttributeLoc("instanceMatrix");
+    int tintLoc = shader.getAttributeLoc("instanceTint");
+    int stride = InstanceBatch.INSTANCE_SIZE * PGL.SIZEOF_FLOAT;
+
+    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufInstance.glId);
+    if (-1 < matrixLoc) {
+      // A mat4 attribute takes four consecutive locations, one per column
+      for (int i = 0; i < 4; i++) {
+        pgl.enableVertexAttribArray(matrixLoc + i);
+        pgl.vertexAttribPointer(matrixLoc + i, 4, PGL.FLOAT, false, stride,
+                                4 * i * PGL.SIZEOF_FLOAT);
+        pgl.vertexAttribDivisor(matrixLoc + i, 1);
+      }
+    }
+    if (-1 < tintLoc) {
+      pgl.enableVertexAttribArray(tintLoc);
+      pgl.vertexAttribPointer(tintLoc, 4, PGL.FLOAT, false, stride,
+                              16 * PGL.SIZEOF_FLOAT);
+      pgl.vertexAttribDivisor(tintLoc, 1);
+    }
+  }
+
+
+  protected void unbindInstanceAttributes(PShader shader) {
+    int matrixLoc = shader.getAttributeLoc("instanceMatrix");
+    int tintLoc = shader.getAttributeLoc("instanceTint");
+    if (-1 < matrixLoc) {
+      for (int i = 0; i < 4; i++) {
+        pgl.vertexAttribDivisor(matrixLoc + i, 0);
+        pgl.disableVertexAttribArray(matrixLoc + i);
+      }
+    }
+    if (-1 < tintLoc) {
+      pgl.vertexAttribDivisor(tintLoc, 0);
+      pgl.disableVertexAttribArray(tintLoc);
+    }
+  }
+
+
   protected void flushPixels() {
     drawPixels(mx1, my1, mx2 - mx1, my2 - my1);
     modified = false;
@@ -2352,7 +2843,7 @@ public class PGraphicsOpenGL extends PGraphics {
         int ioffset = n == first ? texCache.firstIndex[i] : cache.indexOffset[n];
         int icount = n == last ? texCache.lastIndex[i] - ioffset + 1 :
                                  cache.indexOffset[n] + cache.indexCount[n] - ioffset;
-        int voffset = cache.vertexOffset[n];
+        int voffset = polyVertexBase + cache.vertexOffset[n];
 
         shader.setVertexAttribute(bufPolyVertex.glId, 4, PGL.FLOAT, 0,
                                   4 * voffset * PGL.SIZEOF_FLOAT);
@@ -2391,7 +2882,7 @@ public class PGraphicsOpenGL extends PGraphics {
                                  attrib.isColor(), 0, attrib.sizeInBytes(voffset));
         }
 
-        shader.draw(bufPolyIndex.glId, icount, ioffset);
+        shader.draw(bufPolyIndex.glId, icount, polyIndexBase + ioffset);
       }
 
       for (VertexAttribute attrib: polyAttribs.values()) {
@@ -2435,7 +2926,7 @@ public class PGraphicsOpenGL extends PGraphics {
 
       Texture tex = texCache.getTexture(texId);
 
-      int voffset = vertexOffset[voffsetId];
+      int voffset = polyVertexBase + vertexOffset[voffsetId];
 
       int ioffset = 3 * startTi;
       int icount = 3 * (endTi - startTi);
@@ -2482,7 +2973,7 @@ public class PGraphicsOpenGL extends PGraphics {
                                attrib.isColor(), 0, attrib.sizeInBytes(voffset));
       }
 
-      shader.draw(bufPolyIndex.glId, icount, ioffset);
+      shader.draw(bufPolyIndex.glId, icount, polyIndexBase + ioffset);
 
       for (VertexAttribute attrib: polyAttribs.values()) {
         if (attrib.active(shader)) attrib.unbind(pgl);
@@ -2711,7 +3202,7 @@ public class PGraphicsOpenGL extends PGraphics {
     for (int n = 0; n < cache.size; n++) {
       int ioffset = cache.indexOffset[n];
       int icount = cache.indexCount[n];
-      int voffset = cache.vertexOffset[n];
+      int voffset = lineVertexBase + cache.vertexOffset[n];
 
       shader.setVertexAttribute(bufLineVertex.glId, 4, PGL.FLOAT, 0,
                                 4 * voffset * PGL.SIZEOF_FLOAT);
@@ -2720,7 +3211,7 @@ public class PGraphicsOpenGL extends PGraphics {
       shader.setLineAttribute(bufLineAttrib.glId, 4, PGL.FLOAT, 0,
                               4 * voffset * PGL.SIZEOF_FLOAT);
 
-      shader.draw(bufLineIndex.glId, icount, ioffset);
+      shader.draw(bufLineIndex.glId, icount, lineIndexBase + ioffset);
     }
 
     shader.unbind();
@@ -2811,7 +3302,7 @@ public class PGraphicsOpenGL extends PGraphics {
     for (int n = 0; n < cache.size; n++) {
       int ioffset = cache.indexOffset[n];
       int icount = cache.indexCount[n];
-      int voffset = cache.vertexOffset[n];
+      int voffset = pointVertexBase + cache.vertexOffset[n];
 
       shader.setVertexAttribute(bufPointVertex.glId, 4, PGL.FLOAT, 0,
                                 4 * voffset * PGL.SIZEOF_FLOAT);
@@ -2820,7 +3311,7 @@ public class PGraphicsOpenGL extends PGraphics {
       shader.setPointAttribute(bufPointAttrib.glId, 2, PGL.FLOAT, 0,
                                2 * voffset * PGL.SIZEOF_FLOAT);
 
-      shader.draw(bufPointIndex.glId, icount, ioffset);
+      shader.draw(bufPointIndex.glId, icount, pointIndexBase + ioffset);
     }
 
     shader.unbind();
@@ -3307,10 +3798,35 @@ public class PGraphicsOpenGL extends PGraphics {
   // public void shapeMode(int mode)
 
 
+  @Override
+  public void shape(PShape shape) {
+    drawingShape = true;
+    super.shape(shape);
+    drawingShape = false;
+  }
+
+
+  @Override
+  public void shape(PShape shape, float x, float y) {
+    drawingShape = true;
+    super.shape(shape, x, y);
+    drawingShape = false;
+  }
+
+
+  @Override
+  public void shape(PShape shape, float a, float b, float c, float d) {
+    drawingShape = true;
+    super.shape(shape, a, b, c, d);
+    drawingShape = false;
+  }
+
+
   // TODO unapproved
   @Override
   protected void shape(PShape shape, float x, float y, float z) {
     if (shape.isVisible()) { // don't do expensive matrix ops if invisible
+      drawingShape = true;
       flush();
 
       pushMatrix();
@@ -3325,6 +3841,7 @@ public class PGraphicsOpenGL extends PGraphics {
       shape.draw(this);
 
       popMatrix();
+      drawingShape = false;
     }
   }
 
@@ -3334,6 +3851,7 @@ public class PGraphicsOpenGL extends PGraphics {
   protected void shape(PShape shape, float x, float y, float z,
                        float c, float d, float e) {
     if (shape.isVisible()) { // don't do expensive matrix ops if invisible
+      drawingShape = true;
       flush();
 
       pushMatrix();
@@ -3365,6 +3883,7 @@ public class PGraphicsOpenGL extends PGraphics {
       shape.draw(this);
 
       popMatrix();
+      drawingShape = false;
     }
   }
 
@@ -3489,11 +4008,11 @@ public class PGraphicsOpenGL extends PGraphics {
       textTex = getFontTexture(textFont);
 
       if (textTex == null || textTex.contextIsOutdated()) {
-        textTex = new FontTexture(this, textFont, is3D());
+        textTex = createFontTexture(textFont);
         setFontTexture(textFont, textTex);
       }
 
-      textTex.begin();
+      textTex.begin(this);
 
       // Saving style parameters modified by text rendering.
       int savedTextureMode = textureMode;
@@ -3517,6 +4036,7 @@ public class PGraphicsOpenGL extends PGraphics {
       blendMode(BLEND);
 
       super.textLineImpl(buffer, start, stop, x, y);
+      drawTextQuads();
 
       // Restoring original style.
       textureMode  = savedTextureMode;
@@ -3545,24 +4065,7 @@ public class PGraphicsOpenGL extends PGraphics {
     PFont.Glyph glyph = textFont.getGlyph(ch);
     if (glyph != null) {
       if (textMode == MODEL) {
-        FontTexture.TextureInfo tinfo = textTex.getTexInfo(glyph);
-
-        if (tinfo == null) {
-          // Adding new glyph to the font texture.
-          tinfo = textTex.addToTexture(this, glyph);
-        }
-
-        float high    = glyph.height     / (float) textFont.getSize();
-        float bwidth  = glyph.width      / (float) textFont.getSize();
-        float lextent = glyph.leftExtent / (float) textFont.getSize();
-        float textent = glyph.topExtent  / (float) textFont.getSize();
-
-        float x1 = x + lextent * textSize;
-        float y1 = y - textent * textSize;
-        float x2 = x1 + bwidth * textSize;
-        float y2 = y1 + high * textSize;
-
-        textCharModelImpl(tinfo, x1, y1, x2, y2);
+        textGlyphModelImpl(glyph, x, y);
       } else if (textMode == SHAPE) {
         textCharShapeImpl(ch, x, y);
       }
@@ -3570,16 +4073,82 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  @Override
+  protected void textGlyphModelImpl(PFont.Glyph glyph, float x, float y) {
+    FontTexture.TextureInfo tinfo = textTex.getTexInfo(glyph);
+
+    if (tinfo == null) {
+      // Adding new glyph to the font texture.
+      tinfo = textTex.addToTexture(this, glyph);
+      if (tinfo == null) return;
+    }
+
+    float high    = glyph.height     / (float) textFont.getSize();
+    float bwidth  = glyph.width      / (float) textFont.getSize();
+    float lextent = glyph.leftExtent / (float) textFont.getSize();
+    float textent = glyph.topExtent  / (float) textFont.getSize();
+
+    float x1 = x + lextent * textSize;
+    float y1 = y - textent * textSize;
+    float x2 = x1 + bwidth * textSize;
+    float y2 = y1 + high * textSize;
+
+    textCharModelImpl(tinfo, x1, y1, x2, y2);
+  }
+
+
   protected void textCharModelImpl(FontTexture.TextureInfo info,
                                    float x0, float y0,
                                    float x1, float y1) {
-    beginShape(QUADS);
-    texture(textTex.getTexture(info));
-    vertex(x0, y0, info.u0, info.v0);
-    vertex(x1, y0, info.u1, info.v0);
-    vertex(x1, y1, info.u1, info.v1);
-    vertex(x0, y1, info.u0, info.v1);
-    endShape();
+    if (textQuadCount == textQuadInfos.length) {
+      int newSize = textQuadCount << 1;
+      textQuadInfos = Arrays.copyOf(textQuadInfos, newSize);
+      textQuadCoords = Arrays.copyOf(textQuadCoords, 4 * newSize);
+    }
+    int index = 4 * textQuadCount;
+    textQuadInfos[textQuadCount] = info;
+    textQuadCoords[index++] = x0;
+    textQuadCoords[index++] = y0;
+    textQuadCoords[index++] = x1;
+    textQuadCoords[index  ] = y1;
+    textQuadCount++;
+  }
+
+
+  /**
+   * Draws the glyphs of the current line of text, with one shape for each
+   * texture they use. The texture coordinates are read at this point since
+   * they change when a texture of the font is resized.
+   */
+  protected void drawTextQuads() {
+    if (textQuadCount == 0) return;
+
+    for (int page = 0; page < textTex.textures.length; page++) {
+      boolean drawing = false;
+      for (int i = 0; i < textQuadCount; i++) {
+        FontTexture.TextureInfo info = textQuadInfos[i];
+        if (info.texIndex != page) continue;
+
+        if (!drawing) {
+          beginShape(QUADS);
+          texture(textTex.getTexture(info));
+          drawing = true;
+        }
+        int index = 4 * i;
+        float x0 = textQuadCoords[index++];
+        float y0 = textQuadCoords[index++];
+        float x1 = textQuadCoords[index++];
+        float y1 = textQuadCoords[index  ];
+        vertex(x0, y0, info.u0, info.v0);
+        vertex(x1, y0, info.u1, info.v0);
+        vertex(x1, y1, info.u1, info.v1);
+        vertex(x0, y1, info.u0, info.v1);
+      }
+      if (drawing) endShape();
+    }
+
+    Arrays.fill(textQuadInfos, 0, textQuadCount, null);
+    textQuadCount = 0;
   }
 
 
@@ -3638,22 +4207,28 @@ public class PGraphicsOpenGL extends PGraphics {
         lastX = textPoints[0];
         lastY = textPoints[1];
       } else if (type == PGL.SEG_QUADTO) {   // 2 points
-        for (int i = 1; i < bezierDetail; i++) {
-          float t = (float)i / (float)bezierDetail;
-          vertex(x + bezierPoint(lastX,
-                            lastX + (float) ((textPoints[0] - lastX) * 2/3.0),
-                            textPoints[2] + (float) ((textPoints[0] - textPoints[2]) * 2/3.0),
-                            textPoints[2], t),
-                 y + bezierPoint(lastY,
-                            lastY + (float) ((textPoints[1] - lastY) * 2/3.0),
-                            textPoints[3] + (float) ((textPoints[1] - textPoints[3]) * 2/3.0),
-                            textPoints[3], t));
+        float cx1 = lastX + (float) ((textPoints[0] - lastX) * 2/3.0);
+        float cy1 = lastY + (float) ((textPoints[1] - lastY) * 2/3.0);
+        float cx2 = textPoints[2] + (float) ((textPoints[0] - textPoints[2]) * 2/3.0);
+        float cy2 = textPoints[3] + (float) ((textPoints[1] - textPoints[3]) * 2/3.0);
+        int segments = bezierSegments(curveTolerance / curveScale(),
+                                      lastX, lastY, 0, cx1, cy1, 0,
+                                      cx2, cy2, 0, textPoints[2], textPoints[3], 0);
+        for (int i = 1; i < segments; i++) {
+          float t = (float)i / (float)segments;
+          vertex(x + bezierPoint(lastX, cx1, cx2, textPoints[2], t),
+                 y + bezierPoint(lastY, cy1, cy2, textPoints[3], t));
         }
         lastX = textPoints[2];
         lastY = textPoints[3];
       } else if (type == PGL.SEG_CUBICTO) {  // 3 points
-        for (int i = 1; i < bezierDetail; i++) {
-          float t = (float)i / (float)bezierDetail;
+        int segments = bezierSegments(curveTolerance / curveScale(),
+                                      lastX, lastY, 0,
+                                      textPoints[0], textPoints[1], 0,
+                                      textPoints[2], textPoints[3], 0,
+                                      textPoints[4], textPoints[5], 0);
+        for (int i = 1; i < segments; i++) {
+          float t = (float)i / (float)segments;
           vertex(x + bezierPoint(lastX, textPoints[0],
                                  textPoints[2], textPoints[4], t),
                  y + bezierPoint(lastY, textPoints[1],
@@ -3746,6 +4321,12 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  @Override
+  protected float curveScale() {
+    return matrixScale(modelview);
+  }
+
+
   static protected float matrixScale(PMatrix matrix) {
     // Volumetric scaling factor that is associated to the given
     // transformation matrix, which is given by the absolute value of its
@@ -5592,26 +6173,18 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
-  protected class AsyncPixelReader {
+  protected class AsyncPixelReader implements ReadbackRing.Transfers {
 
     // PImage formats used internally to offload
     // color format conversion to save threads
     static final int OPENGL_NATIVE = -1;
     static final int OPENGL_NATIVE_OPAQUE = -2;
 
-    static final int BUFFER_COUNT = 3;
-
-    int[] pbos;
-    long[] fences;
-    File[] files;
-    int[] widths;
-    int[] heights;
-
-    int head;
-    int tail;
-    int size;
+    ReadbackRing ring;
 
-    boolean supportsAsyncTransfers;
+    // Converts the pixels handed to readPixelsAsync() callbacks
+    ExecutorService converter;
+    int converterThreads;
 
     boolean calledThisFrame;
 
@@ -5619,66 +6192,56 @@ public class PGraphicsOpenGL extends PGraphics {
     /// PGRAPHICS API //////////////////////////////////////////////////////////
 
     public AsyncPixelReader() {
-      supportsAsyncTransfers = pgl.hasPBOs() && pgl.hasSynchronization();
-      if (supportsAsyncTransfers) {
-        pbos = new int[BUFFER_COUNT];
-        fences = new long[BUFFER_COUNT];
-        files = new File[BUFFER_COUNT];
-        widths = new int[BUFFER_COUNT];
-        heights = new int[BUFFER_COUNT];
-
-        IntBuffer intBuffer = PGL.allocateIntBuffer(BUFFER_COUNT);
-        intBuffer.rewind();
-        pgl.genBuffers(BUFFER_COUNT, intBuffer);
-        for (int i = 0; i < BUFFER_COUNT; i++) {
-          pbos[i] = intBuffer.get(i);
-        }
-      }
+      ring = new ReadbackRing(this, asyncReadDepth);
+      converterThreads = asyncReadThreads;
     }
 
 
     public void dispose() {
-      if (fences != null) {
-        while (size > 0) {
-          pgl.deleteSync(fences[tail]);
-          size--;
-          tail = (tail + 1) % BUFFER_COUNT;
-        }
-        fences = null;
-      }
-      if (pbos != null) {
-        for (int i = 0; i < BUFFER_COUNT; i++) {
-          IntBuffer intBuffer = PGL.allocateIntBuffer(pbos);
-          pgl.deleteBuffers(BUFFER_COUNT, intBuffer);
-        }
-        pbos = null;
+      ring.dispose();
+      if (converter != null) {
+        // conversions in progress still reach their callbacks
+        converter.shutdown();
+        converter = null;
       }
-      files = null;
-      widths = null;
-      heights = null;
-      size = 0;
-      head = 0;
-      tail = 0;
       calledThisFrame = false;
       ongoingPixelTransfers.remove(this);
     }
 
 
+    public void setDepth(int depth) {
+      if (depth != ring.getDepth()) {
+        completeAllTransfers();
+        ring.setDepth(depth);
+      }
+    }
+
+
+    public void setConverterThreads(int count) {
+      if (count != converterThreads && converter != null) {
+        converter.shutdown();
+        converter = null;
+      }
+      converterThreads = count;
+    }
+
+
     public void readAndSaveAsync(final File file) {
-      if (size > 0) {
-        boolean shouldRead = (size == BUFFER_COUNT);
-        if (!shouldRead) shouldRead = isLastTransferComplete();
-        if (shouldRead) endTransfer();
-      } else {
+      readAsync(file);
+    }
+
+
+    public void readAsync(Object request) {
+      if (ring.size() == 0) {
         ongoingPixelTransfers.add(this);
       }
-      beginTransfer(file);
+      ring.read(request, pixelWidth, pixelHeight);
       calledThisFrame = true;
     }
 
 
     public void completeFinishedTransfers() {
-      if (size <= 0 || !asyncImageSaver.hasAvailableTarget()) return;
+      if (!canCompleteOldest()) return;
 
       boolean needEndDraw = false;
       if (!drawing) {
@@ -5686,27 +6249,23 @@ public class PGraphicsOpenGL extends PGraphics {
         needEndDraw = true;
       }
 
-      while (asyncImageSaver.hasAvailableTarget() &&
-          isLastTransferComplete()) {
-        endTransfer();
-      }
+      while (canCompleteOldest() && ring.completeFinished(1) == 1) { }
 
       // make sure to always unregister if there are no ongoing transfers
       // so that PGraphics can be GC'd if needed
-      if (size <= 0) ongoingPixelTransfers.remove(this);
+      if (ring.size() <= 0) ongoingPixelTransfers.remove(this);
 
       if (needEndDraw) endDraw();
     }
 
 
     protected void completeAllTransfers() {
-      if (size <= 0) return;
-      completeTransfers(size);
+      completeTransfers(ring.size());
     }
 
 
     protected void completeTransfers(int count) {
-      if (size <= 0) return;
+      if (ring.size() <= 0) return;
       if (count <= 0) return;
 
       boolean needEndDraw = false;
@@ -5715,14 +6274,11 @@ public class PGraphicsOpenGL extends PGraphics {
         needEndDraw = true;
       }
 
-      while (size > 0 && count > 0) {
-        endTransfer();
-        count--;
-      }
+      ring.complete(count);
 
       // make sure to always unregister if there are no ongoing transfers
       // so that PGraphics can be GC'd if needed
-      if (size <= 0) {
+      if (ring.size() <= 0) {
         ongoingPixelTransfers.remove(this);
       }
 
@@ -5731,84 +6287,142 @@ public class PGraphicsOpenGL extends PGraphics {
 
 
     protected void awaitTransferCompletion(File file) {
-      if (size <= 0) return;
+      if (ring.size() <= 0) return;
 
-      int i = tail; // tail -> head, wraps around (we have circular queue)
-      int j = 0; // 0 -> size, simple counter
-      int lastIndex = 0;
-      do {
-        if (file.equals(files[i])) {
-          lastIndex = j; // no 'break' here, we need last index for this filename
-        }
-        i = (i + 1) % BUFFER_COUNT;
-        j++;
-      } while (i != head);
-
-      if (lastIndex <= 0) return;
+      boolean needEndDraw = false;
+      if (!drawing) {
+        beginDraw();
+        needEndDraw = true;
+      }
 
       // Saving this file is in progress, block until transfers complete
-      completeTransfers(lastIndex + 1);
+      ring.await(file);
+      if (ring.size() <= 0) {
+        ongoingPixelTransfers.remove(this);
+      }
+
+      if (needEndDraw) endDraw();
+    }
+
+
+    // Saving is throttled by the available targets, callbacks are not
+    protected boolean canCompleteOldest() {
+      if (ring.size() <= 0) return false;
+      return !(ring.oldestRequest() instanceof File) || hasAvailableTarget();
+    }
+
+
+    protected boolean hasAvailableTarget() {
+      AsyncImageSaver saver = findAsyncImageSaver();
+      return saver == null || saver.hasAvailableTarget();
     }
 
 
     /// TRANSFERS //////////////////////////////////////////////////////////////
 
-    public boolean isLastTransferComplete() {
-      if (size <= 0) return false;
-      int status = pgl.clientWaitSync(fences[tail], 0, 0);
-      return (status == PGL.ALREADY_SIGNALED) ||
-          (status == PGL.CONDITION_SATISFIED);
+    @Override
+    public int[] createBuffers(int count) {
+      IntBuffer intBuffer = PGL.allocateIntBuffer(count);
+      intBuffer.rewind();
+      pgl.genBuffers(count, intBuffer);
+      int[] pbos = new int[count];
+      intBuffer.get(pbos);
+      return pbos;
     }
 
 
-    public void beginTransfer(File file) {
-      // check the size of the buffer
-      if (widths[head] != pixelWidth || heights[head] != pixelHeight) {
-        if (widths[head] * heights[head] != pixelWidth * pixelHeight) {
-          pgl.bindBuffer(PGL.PIXEL_PACK_BUFFER, pbos[head]);
-          pgl.bufferData(PGL.PIXEL_PACK_BUFFER,
-                         Integer.SIZE/8 * pixelWidth * pixelHeight,
-                         null, PGL.STREAM_READ);
-        }
-        widths[head] = pixelWidth;
-        heights[head] = pixelHeight;
-        pgl.bindBuffer(PGL.PIXEL_PACK_BUFFER, 0);
-      }
+    @Override
+    public void deleteBuffers(int[] pbos) {
+      IntBuffer intBuffer = PGL.allocateIntBuffer(pbos);
+      pgl.deleteBuffers(pbos.length, intBuffer);
+    }
+
 
-      pgl.bindBuffer(PGL.PIXEL_PACK_BUFFER, pbos[head]);
-      pgl.readPixels(0, 0, pixelWidth, pixelHeight, PGL.RGBA, PGL.UNSIGNED_BYTE, 0);
+    @Override
+    public void read(int pbo, int width, int height, boolean resize) {
+      pgl.bindBuffer(PGL.PIXEL_PACK_BUFFER, pbo);
+      if (resize) {
+        pgl.bufferData(PGL.PIXEL_PACK_BUFFER, Integer.SIZE/8 * width * height,
+                       null, PGL.STREAM_READ);
+      }
+      pgl.readPixels(0, 0, width, height, PGL.RGBA, PGL.UNSIGNED_BYTE, 0);
       pgl.bindBuffer(PGL.PIXEL_PACK_BUFFER, 0);
+    }
 
-      fences[head] = pgl.fenceSync(PGL.SYNC_GPU_COMMANDS_COMPLETE, 0);
-      files[head] = file;
 
-      head = (head + 1) % BUFFER_COUNT;
-      size++;
+    @Override
+    public long fence() {
+      return pgl.fenceSync(PGL.SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+
+    @Override
+    public boolean isSignaled(long sync) {
+      int status = pgl.clientWaitSync(sync, 0, 0);
+      return (status == PGL.ALREADY_SIGNALED) ||
+          (status == PGL.CONDITION_SATISFIED);
     }
 
 
-    public void endTransfer() {
-      pgl.deleteSync(fences[tail]);
-      pgl.bindBuffer(PGL.PIXEL_PACK_BUFFER, pbos[tail]);
+    @Override
+    public void deleteFence(long sync) {
+      pgl.deleteSync(sync);
+    }
+
+
+    @Override
+    public void complete(int pbo, int width, int height, Object request) {
+      pgl.bindBuffer(PGL.PIXEL_PACK_BUFFER, pbo);
       ByteBuffer readBuffer = pgl.mapBuffer(PGL.PIXEL_PACK_BUFFER,
                                             PGL.READ_ONLY);
       if (readBuffer != null) {
         int format = primaryGraphics ? OPENGL_NATIVE_OPAQUE : OPENGL_NATIVE;
-        PImage target = asyncImageSaver.getAvailableTarget(widths[tail],
-                                                           heights[tail],
-                                                           format);
-        if (target == null) return;
-        readBuffer.rewind();
-        readBuffer.asIntBuffer().get(target.pixels);
+        AsyncImageSaver saver = findAsyncImageSaver();
+        PImage target = null;
+        if (request instanceof File) {
+          if (saver != null) {
+            target = saver.getAvailableTarget(width, height, format);
+          }
+        } else {
+          target = new PImage(width, height, format);
+        }
+        if (target != null) {
+          readBuffer.rewind();
+          readBuffer.asIntBuffer().get(target.pixels);
+        }
         pgl.unmapBuffer(PGL.PIXEL_PACK_BUFFER);
-        asyncImageSaver.saveTargetAsync(PGraphicsOpenGL.this, target,
-                                        files[tail]);
+        if (target != null) {
+          if (request instanceof File) {
+            saver.saveTargetAsync(PGraphicsOpenGL.this, target, (File) request);
+          } else {
+            @SuppressWarnings("unchecked")
+            Consumer<PImage> callback = (Consumer<PImage>) request;
+            convertAsync(target, callback);
+          }
+        }
       }
 
       pgl.bindBuffer(PGL.PIXEL_PACK_BUFFER, 0);
+    }
 
-      size--;
-      tail = (tail + 1) % BUFFER_COUNT;
+
+    protected void convertAsync(final PImage image,
+                                final Consumer<PImage> callback) {
+      if (converter == null) {
+        converter = Executors.newFixedThreadPool(converterThreads, r -> {
+          Thread thread = new Thread(r, "AsyncPixelReader");
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+      converter.execute(() -> {
+        try {
+          processImageBeforeAsyncSave(image);
+          callback.accept(image);
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      });
     }
 
   }
@@ -7073,6 +7687,31 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  protected PShader getInstancedPolyShader(boolean tex) {
+    PShader shader;
+    PGraphicsOpenGL ppg = getPrimaryPG();
+    if (tex) {
+      if (ppg.instTextureShader == null) {
+        String[] vertSource = pgl.loadVertexShader(instTextureShaderVertURL);
+        String[] fragSource = pgl.loadFragmentShader(defTextureShaderFragURL);
+        ppg.instTextureShader = new PShader(parent, vertSource, fragSource);
+      }
+      shader = ppg.instTextureShader;
+    } else {
+      if (ppg.instColorShader == null) {
+        String[] vertSource = pgl.loadVertexShader(instColorShaderVertURL);
+        String[] fragSource = pgl.loadFragmentShader(defColorShaderFragURL);
+        ppg.instColorShader = new PShader(parent, vertSource, fragSource);
+      }
+      shader = ppg.instColorShader;
+    }
+    shader.setRenderer(this);
+    shader.loadAttributes();
+    shader.loadUniforms();
+    return shader;
+  }
+
+
   protected PShader getLineShader() {
     PShader shader;
     PGraphicsOpenGL ppg = getPrimaryPG();
@@ -8292,33 +8931,35 @@ public class PGraphicsOpenGL extends PGraphics {
     }
 
     // Returns the vertex data in the PGraphics double array format.
-    float[][] getVertexData() {
-      float[][] data = new float[vertexCount][VERTEX_FIELD_COUNT];
+    // Returns the vertices in the layout of PShape.vertexData, with
+    // VERTEX_FIELD_COUNT floats per vertex.
+    float[] getVertexData() {
+      float[] data = new float[vertexCount * VERTEX_FIELD_COUNT];
       for (int i = 0; i < vertexCount; i++) {
-        float[] vert = data[i];
+        int v = VERTEX_FIELD_COUNT * i;
 
-        vert[X] = vertices[3 * i + 0];
-        vert[Y] = vertices[3 * i + 1];
-        vert[Z] = vertices[3 * i + 2];
+        data[v + X] = vertices[3 * i + 0];
+        data[v + Y] = vertices[3 * i + 1];
+        data[v + Z] = vertices[3 * i + 2];
 
-        vert[R] = ((colors[i] >> 16) & 0xFF) / 255.0f;
-        vert[G] = ((colors[i] >>  8) & 0xFF) / 255.0f;
-        vert[B] = ((colors[i] >>  0) & 0xFF) / 255.0f;
-        vert[A] = ((colors[i] >> 24) & 0xFF) / 255.0f;
+        data[v + R] = ((colors[i] >> 16) & 0xFF) / 255.0f;
+        data[v + G] = ((colors[i] >>  8) & 0xFF) / 255.0f;
+        data[v + B] = ((colors[i] >>  0) & 0xFF) / 255.0f;
+        data[v + A] = ((colors[i] >> 24) & 0xFF) / 255.0f;
 
-        vert[U] = texcoords[2 * i + 0];
-        vert[V] = texcoords[2 * i + 1];
+        data[v + U] = texcoords[2 * i + 0];
+        data[v + V] = texcoords[2 * i + 1];
 
-        vert[NX] = normals[3 * i + 0];
-        vert[NY] = normals[3 * i + 1];
-        vert[NZ] = normals[3 * i + 2];
+        data[v + NX] = normals[3 * i + 0];
+        data[v + NY] = normals[3 * i + 1];
+        data[v + NZ] = normals[3 * i + 2];
 
-        vert[SR] = ((strokeColors[i] >> 16) & 0xFF) / 255.0f;
-        vert[SG] = ((strokeColors[i] >>  8) & 0xFF) / 255.0f;
-        vert[SB] = ((strokeColors[i] >>  0) & 0xFF) / 255.0f;
-        vert[SA] = ((strokeColors[i] >> 24) & 0xFF) / 255.0f;
+        data[v + SR] = ((strokeColors[i] >> 16) & 0xFF) / 255.0f;
+        data[v + SG] = ((strokeColors[i] >>  8) & 0xFF) / 255.0f;
+        data[v + SB] = ((strokeColors[i] >>  0) & 0xFF) / 255.0f;
+        data[v + SA] = ((strokeColors[i] >> 24) & 0xFF) / 255.0f;
 
-        vert[SW] = strokeWeights[i];
+        data[v + SW] = strokeWeights[i];
       }
 
       return data;
@@ -11632,44 +12273,19 @@ public class PGraphicsOpenGL extends PGraphics {
 
     void applyMatrixOnPolyGeometry(PMatrix2D tr, int first, int last) {
       if (first < last) {
-        int index;
+        int count = last - first + 1;
+        tr.multAll(polyVertices, 4 * first, polyVertices, 4 * first, count, 4);
+        tr.multAllDirections(polyNormals, 3 * first, polyNormals, 3 * first,
+                             count, 3);
 
-        for (int i = first; i <= last; i++) {
-          index = 4 * i;
-          float x = polyVertices[index++];
-          float y = polyVertices[index  ];
-
-          index = 3 * i;
-          float nx = polyNormals[index++];
-          float ny = polyNormals[index  ];
-
-          index = 4 * i;
-          polyVertices[index++] = x*tr.m00 + y*tr.m01 + tr.m02;
-          polyVertices[index  ] = x*tr.m10 + y*tr.m11 + tr.m12;
-
-          index = 3 * i;
-          polyNormals[index++] = nx*tr.m00 + ny*tr.m01;
-          polyNormals[index  ] = nx*tr.m10 + ny*tr.m11;
-
-          for (String name: polyAttribs.keySet()) {
-            VertexAttribute attrib = polyAttribs.get(name);
-            if (attrib.isColor() || attrib.isOther()) continue;
-            float[] values = fpolyAttribs.get(name);
-            if (attrib.isPosition()) {
-              index = 4 * i;
-              x = values[index++];
-              y = values[index  ];
-              index = 4 * i;
-              values[index++] = x*tr.m00 + y*tr.m01 + tr.m02;
-              values[index  ] = x*tr.m10 + y*tr.m11 + tr.m12;
-            } else {
-              index = 3 * i;
-              nx = values[index++];
-              ny = values[index  ];
-              index = 3 * i;
-              values[index++] = nx*tr.m00 + ny*tr.m01;
-              values[index  ] = nx*tr.m10 + ny*tr.m11;
-            }
+        for (String name: polyAttribs.keySet()) {
+          VertexAttribute attrib = polyAttribs.get(name);
+          if (attrib.isColor() || attrib.isOther()) continue;
+          float[] values = fpolyAttribs.get(name);
+          if (attrib.isPosition()) {
+            tr.multAll(values, 4 * first, values, 4 * first, count, 4);
+          } else {
+            tr.multAllDirections(values, 3 * first, values, 3 * first, count, 3);
           }
         }
       }
@@ -11677,103 +12293,46 @@ public class PGraphicsOpenGL extends PGraphics {
 
     void applyMatrixOnLineGeometry(PMatrix2D tr, int first, int last) {
       if (first < last) {
-        int index;
+        int count = last - first + 1;
+        tr.multAll(lineVertices, 4 * first, lineVertices, 4 * first, count, 4);
+        tr.multAllDirections(lineDirections, 4 * first,
+                             lineDirections, 4 * first, count, 4);
 
         float scaleFactor = matrixScale(tr);
         for (int i = first; i <= last; i++) {
-          index = 4 * i;
-          float x = lineVertices[index++];
-          float y = lineVertices[index  ];
-
-          index = 4 * i;
-          float dx = lineDirections[index++];
-          float dy = lineDirections[index  ];
-
-          index = 4 * i;
-          lineVertices[index++] = x*tr.m00 + y*tr.m01 + tr.m02;
-          lineVertices[index  ] = x*tr.m10 + y*tr.m11 + tr.m12;
-
-          index = 4 * i;
-          lineDirections[index++] = dx*tr.m00 + dy*tr.m01;
-          lineDirections[index  ] = dx*tr.m10 + dy*tr.m11;
-          lineDirections[index + 2] *= scaleFactor;
+          lineDirections[4 * i + 3] *= scaleFactor;
         }
       }
     }
 
     void applyMatrixOnPointGeometry(PMatrix2D tr, int first, int last) {
       if (first < last) {
-        int index;
+        int count = last - first + 1;
+        tr.multAll(pointVertices, 4 * first, pointVertices, 4 * first, count, 4);
 
         float matrixScale = matrixScale(tr);
-        for (int i = first; i <= last; i++) {
-          index = 4 * i;
-          float x = pointVertices[index++];
-          float y = pointVertices[index  ];
-
-          index = 4 * i;
-          pointVertices[index++] = x*tr.m00 + y*tr.m01 + tr.m02;
-          pointVertices[index  ] = x*tr.m10 + y*tr.m11 + tr.m12;
-
-          index = 2 * i;
-          pointOffsets[index++] *= matrixScale;
-          pointOffsets[index] *= matrixScale;
+        for (int i = 2 * first; i < 2 * (last + 1); i++) {
+          pointOffsets[i] *= matrixScale;
         }
       }
     }
 
     void applyMatrixOnPolyGeometry(PMatrix3D tr, int first, int last) {
       if (first < last) {
-        int index;
+        int count = last - first + 1;
+        tr.multAllHomogeneous(polyVertices, 4 * first,
+                              polyVertices, 4 * first, count, 4);
+        tr.multAllDirections(polyNormals, 3 * first, polyNormals, 3 * first,
+                             count, 3);
 
-        for (int i = first; i <= last; i++) {
-          index = 4 * i;
-          float x = polyVertices[index++];
-          float y = polyVertices[index++];
-          float z = polyVertices[index++];
-          float w = polyVertices[index  ];
-
-          index = 3 * i;
-          float nx = polyNormals[index++];
-          float ny = polyNormals[index++];
-          float nz = polyNormals[index  ];
-
-          index = 4 * i;
-          polyVertices[index++] = x*tr.m00 + y*tr.m01 + z*tr.m02 + w*tr.m03;
-          polyVertices[index++] = x*tr.m10 + y*tr.m11 + z*tr.m12 + w*tr.m13;
-          polyVertices[index++] = x*tr.m20 + y*tr.m21 + z*tr.m22 + w*tr.m23;
-          polyVertices[index  ] = x*tr.m30 + y*tr.m31 + z*tr.m32 + w*tr.m33;
-
-          index = 3 * i;
-          polyNormals[index++] = nx*tr.m00 + ny*tr.m01 + nz*tr.m02;
-          polyNormals[index++] = nx*tr.m10 + ny*tr.m11 + nz*tr.m12;
-          polyNormals[index  ] = nx*tr.m20 + ny*tr.m21 + nz*tr.m22;
-
-          for (String name: polyAttribs.keySet()) {
-            VertexAttribute attrib = polyAttribs.get(name);
-            if (attrib.isColor() || attrib.isOther()) continue;
-            float[] values = fpolyAttribs.get(name);
-            if (attrib.isPosition()) {
-              index = 4 * i;
-              x = values[index++];
-              y = values[index++];
-              z = values[index++];
-              w = values[index  ];
-              index = 4 * i;
-              values[index++] = x*tr.m00 + y*tr.m01 + z*tr.m02 + w*tr.m03;
-              values[index++] = x*tr.m10 + y*tr.m11 + z*tr.m12 + w*tr.m13;
-              values[index++] = x*tr.m20 + y*tr.m21 + z*tr.m22 + w*tr.m23;
-              values[index  ] = x*tr.m30 + y*tr.m31 + z*tr.m32 + w*tr.m33;
-            } else {
-              index = 3 * i;
-              nx = values[index++];
-              ny = values[index++];
-              nz = values[index  ];
-              index = 3 * i;
-              values[index++] = nx*tr.m00 + ny*tr.m01 + nz*tr.m02;
-              values[index++] = nx*tr.m10 + ny*tr.m11 + nz*tr.m12;
-              values[index  ] = nx*tr.m20 + ny*tr.m21 + nz*tr.m22;
-            }
+        for (String name: polyAttribs.keySet()) {
+          VertexAttribute attrib = polyAttribs.get(name);
+          if (attrib.isColor() || attrib.isOther()) continue;
+          float[] values = fpolyAttribs.get(name);
+          if (attrib.isPosition()) {
+            tr.multAllHomogeneous(values, 4 * first, values, 4 * first, count, 4);
+          } else {
+            tr.multAllDirections(values, 3 * first, values, 3 * first, count, 3);
           }
         }
       }
@@ -11781,57 +12340,28 @@ public class PGraphicsOpenGL extends PGraphics {
 
     void applyMatrixOnLineGeometry(PMatrix3D tr, int first, int last) {
       if (first < last) {
-        int index;
+        int count = last - first + 1;
+        tr.multAllHomogeneous(lineVertices, 4 * first,
+                              lineVertices, 4 * first, count, 4);
+        tr.multAllDirections(lineDirections, 4 * first,
+                             lineDirections, 4 * first, count, 4);
 
         float scaleFactor = matrixScale(tr);
         for (int i = first; i <= last; i++) {
-          index = 4 * i;
-          float x = lineVertices[index++];
-          float y = lineVertices[index++];
-          float z = lineVertices[index++];
-          float w = lineVertices[index  ];
-
-          index = 4 * i;
-          float dx = lineDirections[index++];
-          float dy = lineDirections[index++];
-          float dz = lineDirections[index  ];
-
-          index = 4 * i;
-          lineVertices[index++] = x*tr.m00 + y*tr.m01 + z*tr.m02 + w*tr.m03;
-          lineVertices[index++] = x*tr.m10 + y*tr.m11 + z*tr.m12 + w*tr.m13;
-          lineVertices[index++] = x*tr.m20 + y*tr.m21 + z*tr.m22 + w*tr.m23;
-          lineVertices[index  ] = x*tr.m30 + y*tr.m31 + z*tr.m32 + w*tr.m33;
-
-          index = 4 * i;
-          lineDirections[index++] = dx*tr.m00 + dy*tr.m01 + dz*tr.m02;
-          lineDirections[index++] = dx*tr.m10 + dy*tr.m11 + dz*tr.m12;
-          lineDirections[index++] = dx*tr.m20 + dy*tr.m21 + dz*tr.m22;
-          lineDirections[index] *= scaleFactor;
+          lineDirections[4 * i + 3] *= scaleFactor;
         }
       }
     }
 
     void applyMatrixOnPointGeometry(PMatrix3D tr, int first, int last) {
       if (first < last) {
-        int index;
+        int count = last - first + 1;
+        tr.multAllHomogeneous(pointVertices, 4 * first,
+                              pointVertices, 4 * first, count, 4);
 
         float matrixScale = matrixScale(tr);
-        for (int i = first; i <= last; i++) {
-          index = 4 * i;
-          float x = pointVertices[index++];
-          float y = pointVertices[index++];
-          float z = pointVertices[index++];
-          float w = pointVertices[index  ];
-
-          index = 4 * i;
-          pointVertices[index++] = x*tr.m00 + y*tr.m01 + z*tr.m02 + w*tr.m03;
-          pointVertices[index++] = x*tr.m10 + y*tr.m11 + z*tr.m12 + w*tr.m13;
-          pointVertices[index++] = x*tr.m20 + y*tr.m21 + z*tr.m22 + w*tr.m23;
-          pointVertices[index  ] = x*tr.m30 + y*tr.m31 + z*tr.m32 + w*tr.m33;
-
-          index = 2 * i;
-          pointOffsets[index++] *= matrixScale;
-          pointOffsets[index] *= matrixScale;
+        for (int i = 2 * first; i < 2 * (last + 1); i++) {
+          pointOffsets[i] *= matrixScale;
         }
       }
     }
@@ -13550,8 +14080,6 @@ public class PGraphicsOpenGL extends PGraphics {
       pg.bezierInitCheck();
       pg.bezierVertexCheck(POLYGON, i);
 
-      PMatrix3D draw = pg.bezierDrawMatrix;
-
       int i1 = i - 1;
       float x1 = in.vertices[3*i1 + 0];
       float y1 = in.vertices[3*i1 + 1];
@@ -13576,6 +14104,11 @@ public class PGraphicsOpenGL extends PGraphics {
       float y4 = in.vertices[3*(i+2) + 1];
       float z4 = in.vertices[3*(i+2) + 2];
 
+      int segments = pg.bezierSegments(pg.curveTolerance / transformScale(),
+                                       x1, y1, z1, x2, y2, z2,
+                                       x3, y3, z3, x4, y4, z4);
+      PMatrix3D draw = pg.bezierDrawMatrix(segments);
+
       float xplot1 = draw.m10*x1 + draw.m11*x2 + draw.m12*x3 + draw.m13*x4;
       float xplot2 = draw.m20*x1 + draw.m21*x2 + draw.m22*x3 + draw.m23*x4;
       float xplot3 = draw.m30*x1 + draw.m31*x2 + draw.m32*x3 + draw.m33*x4;
@@ -13588,7 +14121,7 @@ public class PGraphicsOpenGL extends PGraphics {
       float zplot2 = draw.m20*z1 + draw.m21*z2 + draw.m22*z3 + draw.m23*z4;
       float zplot3 = draw.m30*z1 + draw.m31*z2 + draw.m32*z3 + draw.m33*z4;
 
-      for (int j = 0; j < pg.bezierDetail; j++) {
+      for (int j = 0; j < segments; j++) {
         x1 += xplot1; xplot1 += xplot2; xplot2 += xplot3;
         y1 += yplot1; yplot1 += yplot2; yplot2 += yplot3;
         z1 += zplot1; zplot1 += zplot2; zplot2 += zplot3;
@@ -13608,8 +14141,6 @@ public class PGraphicsOpenGL extends PGraphics {
       pg.bezierInitCheck();
       pg.bezierVertexCheck(POLYGON, i);
 
-      PMatrix3D draw = pg.bezierDrawMatrix;
-
       int i1 = i - 1;
       float x1 = in.vertices[3*i1 + 0];
       float y1 = in.vertices[3*i1 + 1];
@@ -13641,6 +14172,11 @@ public class PGraphicsOpenGL extends PGraphics {
       float y4 = y;
       float z4 = z;
 
+      int segments = pg.bezierSegments(pg.curveTolerance / transformScale(),
+                                       x1, y1, z1, x2, y2, z2,
+                                       x3, y3, z3, x4, y4, z4);
+      PMatrix3D draw = pg.bezierDrawMatrix(segments);
+
       float xplot1 = draw.m10*x1 + draw.m11*x2 + draw.m12*x3 + draw.m13*x4;
       float xplot2 = draw.m20*x1 + draw.m21*x2 + draw.m22*x3 + draw.m23*x4;
       float xplot3 = draw.m30*x1 + draw.m31*x2 + draw.m32*x3 + draw.m33*x4;
@@ -13653,7 +14189,7 @@ public class PGraphicsOpenGL extends PGraphics {
       float zplot2 = draw.m20*z1 + draw.m21*z2 + draw.m22*z3 + draw.m23*z4;
       float zplot3 = draw.m30*z1 + draw.m31*z2 + draw.m32*z3 + draw.m33*z4;
 
-      for (int j = 0; j < pg.bezierDetail; j++) {
+      for (int j = 0; j < segments; j++) {
         x1 += xplot1; xplot1 += xplot2; xplot2 += xplot3;
         y1 += yplot1; yplot1 += yplot2; yplot2 += yplot3;
         z1 += zplot1; zplot1 += zplot2; zplot2 += zplot3;
@@ -13724,7 +14260,10 @@ public class PGraphicsOpenGL extends PGraphics {
       float y = y2;
       float z = z2;
 
-      PMatrix3D draw = pg.curveDrawMatrix;
+      int segments = pg.curveSegments(pg.curveTolerance / transformScale(),
+                                      x1, y1, z1, x2, y2, z2,
+                                      x3, y3, z3, x4, y4, z4);
+      PMatrix3D draw = pg.curveDrawMatrix(segments);
 
       float xplot1 = draw.m10*x1 + draw.m11*x2 + draw.m12*x3 + draw.m13*x4;
       float xplot2 = draw.m20*x1 + draw.m21*x2 + draw.m22*x3 + draw.m23*x4;
@@ -13738,7 +14277,7 @@ public class PGraphicsOpenGL extends PGraphics {
       float zplot2 = draw.m20*z1 + draw.m21*z2 + draw.m22*z3 + draw.m23*z4;
       float zplot3 = draw.m30*z1 + draw.m31*z2 + draw.m32*z3 + draw.m33*z4;
 
-      for (int j = 0; j < pg.curveDetail; j++) {
+      for (int j = 0; j < segments; j++) {
         x += xplot1; xplot1 += xplot2; xplot2 += xplot3;
         y += yplot1; yplot1 += yplot2; yplot2 += yplot3;
         z += zplot1; zplot1 += zplot2; zplot2 += zplot3;
@@ -14239,6 +14778,28 @@ public class PGraphicsOpenGL extends PGraphics {
     BitSet marked = new BitSet();
     BitSet swapped = new BitSet();
 
+    // Centroid sorting, used with hint(ENABLE_FAST_DEPTH_SORT), and its
+    // pass over neighbors, skipped with hint(DISABLE_DEPTH_SORT_REFINE)
+    boolean fast = false;
+    boolean refine = true;
+
+    int[] sortKeys = new int[0];
+    int[] sortKeysTemp = new int[0];
+    int[] sortIndicesTemp = new int[0];
+    int[] radixCounts = new int[256];
+
+    // Below twice this count, screen coordinates and sort keys are
+    // calculated in the calling thread.
+    static final int PARALLEL_MIN_COUNT = 8192;
+
+    // The loops are made once, and take an inclusive last index
+    final ParallelRange.Body projectVerticesRange =
+      (first, last) -> projectVertices(first, last - 1);
+    final ParallelRange.Body centroidKeysRange =
+      (first, last) -> calcCentroidKeys(first, last - 1);
+
+    TessGeometry tessGeo;
+
     PGraphicsOpenGL pg;
 
     DepthSorter (PGraphicsOpenGL pg) {
@@ -14268,6 +14829,15 @@ public class PGraphicsOpenGL extends PGraphics {
       }
     }
 
+    void checkKeyBuffers(int newTriangleCount) {
+      if (sortKeys.length < newTriangleCount) {
+        int newSize = (newTriangleCount / 4 + 1) * 5;
+        sortKeys        = new int[newSize];
+        sortKeysTemp    = new int[newSize];
+        sortIndicesTemp = new int[newSize];
+      }
+    }
+
     // Sorting --------------------------------------------
 
     void sort(TessGeometry tessGeo) {
@@ -14306,39 +14876,64 @@ public class PGraphicsOpenGL extends PGraphics {
         }
       }
 
+      this.tessGeo = tessGeo;
+
       { // Map vertices to screen
-        int polyVertexCount = tessGeo.polyVertexCount;
-        checkVertexBuffer(polyVertexCount);
-        float[] screenVertices = this.screenVertices;
-
-        float[] polyVertices = tessGeo.polyVertices;
-
-        PMatrix3D projection = pg.projection;
-
-        for (int i = 0; i < polyVertexCount; i++) {
-          float x = polyVertices[4*i+X];
-          float y = polyVertices[4*i+Y];
-          float z = polyVertices[4*i+Z];
-          float w = polyVertices[4*i+W];
-
-          float ox = projection.m00 * x + projection.m01 * y +
-              projection.m02 * z + projection.m03 * w;
-          float oy = projection.m10 * x + projection.m11 * y +
-              projection.m12 * z + projection.m13 * w;
-          float oz = projection.m20 * x + projection.m21 * y +
-              projection.m22 * z + projection.m23 * w;
-          float ow = projection.m30 * x + projection.m31 * y +
-              projection.m32 * z + projection.m33 * w;
-          if (nonZero(ow)) {
-            ox /= ow;
-            oy /= ow;
-            oz /= ow;
-          }
-          screenVertices[3*i+X] = ox;
-          screenVertices[3*i+Y] = oy;
-          screenVertices[3*i+Z] = -oz;
-        }
+        checkVertexBuffer(tessGeo.polyVertexCount);
+        ParallelRange.run(tessGeo.polyVertexCount, PARALLEL_MIN_COUNT,
+                          projectVerticesRange);
       }
+
+      if (fast) {
+        sortByCentroid(triangleCount);
+      } else {
+        sortByOverlap(triangleCount);
+      }
+
+      reorder(triangleCount, tessGeo.polyIndices);
+
+      this.tessGeo = null;
+    }
+
+    void projectVertices(int first, int last) {
+      float[] screenVertices = this.screenVertices;
+      float[] polyVertices = tessGeo.polyVertices;
+
+      PMatrix3D projection = pg.projection;
+
+      for (int i = first; i <= last; i++) {
+        float x = polyVertices[4*i+X];
+        float y = polyVertices[4*i+Y];
+        float z = polyVertices[4*i+Z];
+        float w = polyVertices[4*i+W];
+
+        float ox = projection.m00 * x + projection.m01 * y +
+            projection.m02 * z + projection.m03 * w;
+        float oy = projection.m10 * x + projection.m11 * y +
+            projection.m12 * z + projection.m13 * w;
+        float oz = projection.m20 * x + projection.m21 * y +
+            projection.m22 * z + projection.m23 * w;
+        float ow = projection.m30 * x + projection.m31 * y +
+            projection.m32 * z + projection.m33 * w;
+        if (nonZero(ow)) {
+          ox /= ow;
+          oy /= ow;
+          oz /= ow;
+        }
+        screenVertices[3*i+X] = ox;
+        screenVertices[3*i+Y] = oy;
+        screenVertices[3*i+Z] = -oz;
+      }
+    }
+
+    // Sorting by overlap ---------------------------------
+
+    // Painter's algorithm: sorts by minimum depth and then swaps the
+    // triangles that overlap in the wrong order. Handles intersecting
+    // geometry better than the centroid sort, but it's quadratic in the
+    // worst case.
+    void sortByOverlap(int triangleCount) {
+      int[] triangleIndices = this.triangleIndices;
       float[] screenVertices = this.screenVertices;
 
       int[] vertexOffset = tessGeo.polyIndexCache.vertexOffset;
@@ -14430,6 +15025,137 @@ public class PGraphicsOpenGL extends PGraphics {
         }
         activeTid++;
       }
+    }
+
+    // Sorting by centroid --------------------------------
+
+    // Radix sort on the depth of the triangle centroids, linear on the
+    // number of triangles. Neighboring triangles that overlap in the
+    // wrong order are swapped afterwards if refine is enabled.
+    void sortByCentroid(int triangleCount) {
+      if (triangleCount == 0) return;
+      checkKeyBuffers(triangleCount);
+      ParallelRange.run(triangleCount, PARALLEL_MIN_COUNT, centroidKeysRange);
+
+      int[] keys = sortKeys;
+      int[] indices = triangleIndices;
+      int[] keysTemp = sortKeysTemp;
+      int[] indicesTemp = sortIndicesTemp;
+      int[] counts = radixCounts;
+
+      for (int shift = 0; shift < 32; shift += 8) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < triangleCount; i++) {
+          counts[(keys[i] >>> shift) & 0xFF]++;
+        }
+        if (counts[(keys[0] >>> shift) & 0xFF] == triangleCount) {
+          continue; // all the keys share this digit
+        }
+        int sum = 0;
+        for (int d = 0; d < 256; d++) {
+          int count = counts[d];
+          counts[d] = sum;
+          sum += count;
+        }
+        for (int i = 0; i < triangleCount; i++) {
+          int key = keys[i];
+          int pos = counts[(key >>> shift) & 0xFF]++;
+          keysTemp[pos] = key;
+          indicesTemp[pos] = indices[i];
+        }
+        int[] temp = keys; keys = keysTemp; keysTemp = temp;
+        temp = indices; indices = indicesTemp; indicesTemp = temp;
+      }
+
+      if (indices != triangleIndices) {
+        System.arraycopy(indices, 0, triangleIndices, 0, triangleCount);
+      }
+
+      if (refine) refineOverlaps(triangleCount);
+    }
+
+    // Calculates the sort keys of the triangles in the range, and their
+    // bounding boxes if the refinement pass is enabled. The keys are the
+    // float bits of the centroid depth, flipped so that they sort in the
+    // same order as unsigned integers.
+    void calcCentroidKeys(int first, int last) {
+      float[] screenVertices = this.screenVertices;
+      int[] vertexOffset = tessGeo.polyIndexCache.vertexOffset;
+      short[] polyIndices = tessGeo.polyIndices;
+      int[] keys = sortKeys;
+
+      for (int ti = first; ti <= last; ti++) {
+        int voffset = vertexOffset[voffsetMap[ti]];
+        int i0 = 3 * (voffset + polyIndices[3*ti+0]);
+        int i1 = 3 * (voffset + polyIndices[3*ti+1]);
+        int i2 = 3 * (voffset + polyIndices[3*ti+2]);
+        float z0 = screenVertices[i0+Z];
+        float z1 = screenVertices[i1+Z];
+        float z2 = screenVertices[i2+Z];
+
+        int bits = Float.floatToIntBits(z0 + z1 + z2);
+        keys[ti] = bits ^ ((bits >> 31) | 0x80000000);
+
+        if (refine) {
+          float x0 = screenVertices[i0+X];
+          float x1 = screenVertices[i1+X];
+          float x2 = screenVertices[i2+X];
+          float y0 = screenVertices[i0+Y];
+          float y1 = screenVertices[i1+Y];
+          float y2 = screenVertices[i2+Y];
+          minXBuffer[ti] = PApplet.min(x0, x1, x2);
+          maxXBuffer[ti] = PApplet.max(x0, x1, x2);
+          minYBuffer[ti] = PApplet.min(y0, y1, y2);
+          maxYBuffer[ti] = PApplet.max(y0, y1, y2);
+          minZBuffer[ti] = PApplet.min(z0, z1, z2);
+          maxZBuffer[ti] = PApplet.max(z0, z1, z2);
+        }
+      }
+    }
+
+    // Single pass over consecutive triangles, using the same tests as
+    // sortByOverlap(). A pair is only swapped when the swapped order
+    // passes the tests, so the pass never makes the order worse.
+    void refineOverlaps(int triangleCount) {
+      int[] triangleIndices = this.triangleIndices;
+      float[] screenVertices = this.screenVertices;
+
+      int[] vertexOffset = tessGeo.polyIndexCache.vertexOffset;
+      short[] polyIndices = tessGeo.polyIndices;
+
+      float[] triA = this.triA;
+      float[] triB = this.triB;
+
+      for (int tid = 0; tid < triangleCount - 1; tid++) {
+        int ati = triangleIndices[tid];
+        int bti = triangleIndices[tid + 1];
+
+        if (maxZBuffer[ati] <= minZBuffer[bti] ||
+            maxXBuffer[ati] <= minXBuffer[bti] ||
+            maxYBuffer[ati] <= minYBuffer[bti] ||
+            minXBuffer[ati] >= maxXBuffer[bti] ||
+            minYBuffer[ati] >= maxYBuffer[bti]) {
+          continue; // not overlapping
+        }
+
+        fetchTriCoords(triA, ati, vertexOffset, voffsetMap,
+            screenVertices, polyIndices);
+        fetchTriCoords(triB, bti, vertexOffset, voffsetMap,
+            screenVertices, polyIndices);
+        if (side(triB, triA, -1) > 0 || side(triA, triB, 1) > 0) {
+          continue; // right order
+        }
+        if (side(triA, triB, -1) > 0 || side(triB, triA, 1) > 0) {
+          triangleIndices[tid] = bti;
+          triangleIndices[tid + 1] = ati;
+        }
+      }
+    }
+
+    void reorder(int triangleCount, short[] polyIndices) {
+      int[] triangleIndices = this.triangleIndices;
+      int[] texMap = this.texMap;
+      int[] voffsetMap = this.voffsetMap;
 
       { // Reorder the buffers
         for (int id = 0; id < triangleCount; id++) {
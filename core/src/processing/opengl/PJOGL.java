@@ -420,6 +420,17 @@ public class PJOGL extends PGL {
   }
 
 
+  @Override
+  protected boolean hasInstancing() {
+    if (gl3es3 == null) return false;
+    int[] version = getGLVersion();
+    if (isES()) {
+      return version[0] >= 3;
+    }
+    return (version[0] > 3) || (version[0] == 3 && version[1] >= 3);
+  }
+
+
   public void init(GLAutoDrawable glDrawable) {
     capabilities = glDrawable.getChosenGLCapabilities();
     if (!hasFBOs()) {
@@ -1330,6 +1341,24 @@ public class PJOGL extends PGL {
     gl.glDrawElements(mode, count, type, offset);
   }
 
+  @Override
+  public void drawElementsInstancedImpl(int mode, int count, int type, int offset, int instanceCount) {
+    if (gl3es3 != null) {
+      gl3es3.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+    } else {
+      throw new RuntimeException(String.format(MISSING_GLFUNC_ERROR, "drawElementsInstanced()"));
+    }
+  }
+
+  @Override
+  public void vertexAttribDivisor(int index, int divisor) {
+    if (gl3es3 != null) {
+      gl3es3.glVertexAttribDivisor(index, divisor);
+    } else {
+      throw new RuntimeException(String.format(MISSING_GLFUNC_ERROR, "vertexAttribDivisor()"));
+    }
+  }
+
   //////////////////////////////////////////////////////////////////////////////
 
   // Rasterization
@@ -594,6 +594,15 @@ public class PShader implements PConstants {
   }
 
 
+  protected void drawInstanced(int idxId, int count, int offset,
+                               int instanceCount) {
+    pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, idxId);
+    pgl.drawElementsInstanced(PGL.TRIANGLES, count, PGL.INDEX_TYPE,
+                              offset * PGL.SIZEOF_INDEX, instanceCount);
+    pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, 0);
+  }
+
+
   /**
    * Returns the ID location of the attribute parameter given its name.
    *
@@ -40,6 +40,7 @@ import processing.opengl.PGraphicsOpenGL.TessGeometry;
 import processing.opengl.PGraphicsOpenGL.Tessellator;
 import processing.opengl.PGraphicsOpenGL.VertexAttribute;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 
@@ -277,6 +278,23 @@ public class PShapeOpenGL extends PShape {
 
   // ........................................................
 
+  // Incremental update of edited vertices
+
+  // Range of input vertices (positions and normals) edited with setVertex()
+  // and setNormal() since the last draw, in shapes where the tessellated
+  // polygon vertices map one-to-one onto the input vertices. These are
+  // copied into the tessellated geometry in updateTessellation(), instead
+  // of re-tessellating the entire shape hierarchy.
+  protected int firstDirtyVertex = PConstants.MAX_INT;
+  protected int lastDirtyVertex = PConstants.MIN_INT;
+  protected int firstDirtyNormal = PConstants.MAX_INT;
+  protected int lastDirtyNormal = PConstants.MIN_INT;
+
+  // Child shapes with edited vertices (used only by the root shape)
+  protected ArrayList<PShapeOpenGL> dirtyShapes;
+
+  // ........................................................
+
   // Saved style variables to style can be re-enabled after disableStyle,
   // although it won't work if properties are defined on a per-vertex basis.
 
@@ -1735,16 +1753,20 @@ public class PShapeOpenGL extends PShape {
           PGraphics.showWarning(NOT_A_SIMPLE_VERTEX, "setVertex()");
           return;
         }
-        vertices[index][X] = x;
-        vertices[index][Y] = y;
-        if (is3D && vertices[index].length > 2) {
+        setVertexField(index, X, x);
+        setVertexField(index, Y, y);
+        if (is3D) {
           // P3D allows to modify 2D shapes, ignoring the Z coordinate.
-          vertices[index][Z] = z;
+          setVertexField(index, Z, z);
         }
       } else {
         inGeo.vertices[3 * index + 0] = x;
         inGeo.vertices[3 * index + 1] = y;
         inGeo.vertices[3 * index + 2] = z;
+        if (hasInputTessMap()) {
+          setDirtyVertices(index, index);
+          return;
+        }
       }
       markForTessellation();
     }
@@ -1770,15 +1792,19 @@ public class PShapeOpenGL extends PShape {
           PGraphics.showWarning(NOT_A_SIMPLE_VERTEX, "setVertex()");
           return;
         }
-        vertices[index][X] = vec.x;
-        vertices[index][Y] = vec.y;
-        if (is3D && vertices[index].length > 2) {
-          vertices[index][Z] = vec.z;
+        setVertexField(index, X, vec.x);
+        setVertexField(index, Y, vec.y);
+        if (is3D) {
+          setVertexField(index, Z, vec.z);
         }
       } else {
         inGeo.vertices[3 * index + 0] = vec.x;
         inGeo.vertices[3 * index + 1] = vec.y;
         inGeo.vertices[3 * index + 2] = vec.z;
+        if (hasInputTessMap()) {
+          setDirtyVertices(index, index);
+          return;
+        }
       }
       markForTessellation();
     }
@@ -1865,6 +1891,10 @@ public class PShapeOpenGL extends PShape {
       inGeo.normals[3 * index + 0] = nx;
       inGeo.normals[3 * index + 1] = ny;
       inGeo.normals[3 * index + 2] = nz;
+      if (hasInputTessMap()) {
+        setDirtyNormals(index, index);
+        return;
+      }
     }
     markForTessellation();
   }
@@ -1907,7 +1937,14 @@ public class PShapeOpenGL extends PShape {
     } else {
       inGeo.texcoords[2 * index + 0] = u;
       inGeo.texcoords[2 * index + 1] = v;
-      markForTessellation();
+      if (hasInputTessMap()) {
+        int tessIdx = firstPolyVertex + index;
+        tessGeo.polyTexCoords[2 * tessIdx + 0] = u;
+        tessGeo.polyTexCoords[2 * tessIdx + 1] = v;
+        root.setModifiedPolyTexCoords(tessIdx, tessIdx);
+      } else {
+        markForTessellation();
+      }
     }
   }
 
@@ -2011,7 +2048,13 @@ public class PShapeOpenGL extends PShape {
         root.setModifiedPolyColors(tessIdx, tessIdx);
       } else {
         inGeo.colors[index] = PGL.javaToNativeARGB(fill);
-        markForTessellation();
+        if (hasInputTessMap()) {
+          int tessIdx = firstPolyVertex + index;
+          tessGeo.polyColors[tessIdx] = inGeo.colors[index];
+          root.setModifiedPolyColors(tessIdx, tessIdx);
+        } else {
+          markForTessellation();
+        }
       }
     }
   }
@@ -2107,7 +2150,13 @@ public class PShapeOpenGL extends PShape {
         root.setModifiedPolyColors(tessIdx, tessIdx);
       } else {
         inGeo.colors[index] = PGL.javaToNativeARGB(tint);
-        markForTessellation();
+        if (hasInputTessMap()) {
+          int tessIdx = firstPolyVertex + index;
+          tessGeo.polyColors[tessIdx] = inGeo.colors[index];
+          root.setModifiedPolyColors(tessIdx, tessIdx);
+        } else {
+          markForTessellation();
+        }
       }
     }
   }
@@ -2447,7 +2496,13 @@ public class PShapeOpenGL extends PShape {
       root.setModifiedPolyAmbient(tessIdx, tessIdx);
     } else {
       inGeo.ambient[index] = PGL.javaToNativeARGB(ambient);
-      markForTessellation();
+      if (hasInputTessMap()) {
+        int tessIdx = firstPolyVertex + index;
+        tessGeo.polyAmbient[tessIdx] = inGeo.ambient[index];
+        root.setModifiedPolyAmbient(tessIdx, tessIdx);
+      } else {
+        markForTessellation();
+      }
     }
     setAmbient = true;
   }
@@ -2521,7 +2576,13 @@ public class PShapeOpenGL extends PShape {
       root.setModifiedPolySpecular(tessIdx, tessIdx);
     } else {
       inGeo.specular[index] = PGL.javaToNativeARGB(specular);
-      markForTessellation();
+      if (hasInputTessMap()) {
+        int tessIdx = firstPolyVertex + index;
+        tessGeo.polySpecular[tessIdx] = inGeo.specular[index];
+        root.setModifiedPolySpecular(tessIdx, tessIdx);
+      } else {
+        markForTessellation();
+      }
     }
   }
 
@@ -2595,7 +2656,13 @@ public class PShapeOpenGL extends PShape {
       root.setModifiedPolyEmissive(tessIdx, tessIdx);
     } else {
       inGeo.emissive[index] = PGL.javaToNativeARGB(emissive);
-      markForTessellation();
+      if (hasInputTessMap()) {
+        int tessIdx = firstPolyVertex + index;
+        tessGeo.polyEmissive[tessIdx] = inGeo.emissive[index];
+        root.setModifiedPolyEmissive(tessIdx, tessIdx);
+      } else {
+        markForTessellation();
+      }
     }
   }
 
@@ -2666,7 +2733,13 @@ public class PShapeOpenGL extends PShape {
       root.setModifiedPolyShininess(tessIdx, tessIdx);
     } else {
       inGeo.shininess[index] = shine;
-      markForTessellation();
+      if (hasInputTessMap()) {
+        int tessIdx = firstPolyVertex + index;
+        tessGeo.polyShininess[tessIdx] = inGeo.shininess[index];
+        root.setModifiedPolyShininess(tessIdx, tessIdx);
+      } else {
+        markForTessellation();
+      }
     }
   }
 
@@ -3507,6 +3580,14 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  @Override
+  protected void calcBounds(float[] b) {
+    // The vertices live in inGeo and are transformed in place, without
+    // invalidating the cached bounds, so never skip these shapes
+    setUnbounded(b);
+  }
+
+
   ///////////////////////////////////////////////////////////
 
   //
@@ -3515,10 +3596,16 @@ public class PShapeOpenGL extends PShape {
 
 
   protected void updateTessellation() {
+    if (root.tessellated && root.dirtyShapes != null) {
+      // Copying the edited vertices might still mark the hierarchy for
+      // tessellation if a shape doesn't allow incremental updates anymore.
+      root.updateDirtyShapes();
+    }
     if (!root.tessellated) {
       root.tessellate();
       root.aggregate();
       root.initModified();
+      root.clearDirtyShapes();
       root.needBufferInit = true;
     }
   }
@@ -3530,6 +3617,207 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  // Returns true if the tessellated polygon vertices of this shape are a
+  // one-to-one copy of its input vertices: same order, no duplicated vertices
+  // and no stroke geometry. In that case, the input vertex i is stored in the
+  // tessellated vertex firstPolyVertex + i (transformed by the matrices of the
+  // shape and its ancestors), so per-vertex edits don't need a tessellation.
+  protected boolean hasInputTessMap() {
+    if (family != GEOMETRY || !shapeCreated ||
+        !tessellated || !root.tessellated || root.tessUpdate) {
+      return false;
+    }
+    if (kind != TRIANGLE && kind != TRIANGLES &&
+        kind != TRIANGLE_FAN && kind != TRIANGLE_STRIP &&
+        kind != QUAD && kind != QUADS && kind != QUAD_STRIP) {
+      return false;
+    }
+    // Custom position and normal attributes would need to be transformed
+    // as well, so these shapes are always re-tessellated.
+    return hasPolys && !hasLines && !hasPoints && polyAttribs.isEmpty() &&
+           lastPolyVertex - firstPolyVertex + 1 == inGeo.vertexCount;
+  }
+
+
+  protected void setDirtyVertices(int first, int last) {
+    if (!hasDirtyVertices()) root.addDirtyShape(this);
+    if (first < firstDirtyVertex) firstDirtyVertex = first;
+    if (last > lastDirtyVertex) lastDirtyVertex = last;
+  }
+
+
+  protected void setDirtyNormals(int first, int last) {
+    if (!hasDirtyVertices()) root.addDirtyShape(this);
+    if (first < firstDirtyNormal) firstDirtyNormal = first;
+    if (last > lastDirtyNormal) lastDirtyNormal = last;
+  }
+
+
+  protected boolean hasDirtyVertices() {
+    return firstDirtyVertex <= lastDirtyVertex ||
+           firstDirtyNormal <= lastDirtyNormal;
+  }
+
+
+  protected void clearDirtyVertices() {
+    firstDirtyVertex = PConstants.MAX_INT;
+    lastDirtyVertex = PConstants.MIN_INT;
+    firstDirtyNormal = PConstants.MAX_INT;
+    lastDirtyNormal = PConstants.MIN_INT;
+  }
+
+
+  protected void addDirtyShape(PShapeOpenGL shape) {
+    if (dirtyShapes == null) dirtyShapes = new ArrayList<>();
+    dirtyShapes.add(shape);
+  }
+
+
+  protected void updateDirtyShapes() {
+    for (PShapeOpenGL shape: dirtyShapes) {
+      shape.updateDirtyVertices();
+    }
+    dirtyShapes.clear();
+  }
+
+
+  protected void clearDirtyShapes() {
+    if (dirtyShapes != null) {
+      for (PShapeOpenGL shape: dirtyShapes) {
+        shape.clearDirtyVertices();
+      }
+      dirtyShapes.clear();
+    }
+  }
+
+
+  // Copies the edited input vertices and normals into the tessellated
+  // geometry, and marks the corresponding tessellated range as modified in
+  // the root shape, so that updateGeometry() only uploads that range.
+  protected void updateDirtyVertices() {
+    if (!hasDirtyVertices()) return;
+
+    if (!hasInputTessMap()) {
+      // Something else changed since the edits, e.g. the stroke was enabled,
+      // so the entire hierarchy needs to be re-tessellated.
+      markForTessellation();
+      clearDirtyVertices();
+      return;
+    }
+
+    if (normalMode == NORMAL_MODE_AUTO) {
+      updateDirtyNormals();
+    }
+
+    PMatrix3D tr = getTessMatrix();
+    if (firstDirtyVertex <= lastDirtyVertex) {
+      for (int i = firstDirtyVertex; i <= lastDirtyVertex; i++) {
+        int index = 3 * i;
+        float x = inGeo.vertices[index++];
+        float y = inGeo.vertices[index++];
+        float z = inGeo.vertices[index  ];
+
+        index = 4 * (firstPolyVertex + i);
+        if (tr == null) {
+          tessGeo.polyVertices[index++] = x;
+          tessGeo.polyVertices[index++] = y;
+          tessGeo.polyVertices[index++] = z;
+          tessGeo.polyVertices[index  ] = 1;
+        } else {
+          tessGeo.polyVertices[index++] = x*tr.m00 + y*tr.m01 + z*tr.m02 + tr.m03;
+          tessGeo.polyVertices[index++] = x*tr.m10 + y*tr.m11 + z*tr.m12 + tr.m13;
+          tessGeo.polyVertices[index++] = x*tr.m20 + y*tr.m21 + z*tr.m22 + tr.m23;
+          tessGeo.polyVertices[index  ] = x*tr.m30 + y*tr.m31 + z*tr.m32 + tr.m33;
+        }
+      }
+      root.setModifiedPolyVertices(firstPolyVertex + firstDirtyVertex,
+                                   firstPolyVertex + lastDirtyVertex);
+    }
+
+    if (firstDirtyNormal <= lastDirtyNormal) {
+      for (int i = firstDirtyNormal; i <= lastDirtyNormal; i++) {
+        int index = 3 * i;
+        float nx = inGeo.normals[index++];
+        float ny = inGeo.normals[index++];
+        float nz = inGeo.normals[index  ];
+
+        index = 3 * (firstPolyVertex + i);
+        if (tr == null) {
+          tessGeo.polyNormals[index++] = nx;
+          tessGeo.polyNormals[index++] = ny;
+          tessGeo.polyNormals[index  ] = nz;
+        } else {
+          tessGeo.polyNormals[index++] = nx*tr.m00 + ny*tr.m01 + nz*tr.m02;
+          tessGeo.polyNormals[index++] = nx*tr.m10 + ny*tr.m11 + nz*tr.m12;
+          tessGeo.polyNormals[index  ] = nx*tr.m20 + ny*tr.m21 + nz*tr.m22;
+        }
+      }
+      root.setModifiedPolyNormals(firstPolyVertex + firstDirtyNormal,
+                                  firstPolyVertex + lastDirtyNormal);
+    }
+
+    clearDirtyVertices();
+  }
+
+
+  // Recalculates the automatic normals of the faces that contain the edited
+  // vertices, the same way tessellateImpl() does, and extends the range of
+  // dirty normals to all the vertices in those faces.
+  protected void updateDirtyNormals() {
+    int first = PApplet.min(firstDirtyVertex, firstDirtyNormal);
+    int last = PApplet.max(lastDirtyVertex, lastDirtyNormal);
+    int count = inGeo.vertexCount;
+    if (kind == TRIANGLE || kind == TRIANGLES) {
+      int last1 = PApplet.min(last / 3, count / 3 - 1);
+      for (int i = first / 3; i <= last1; i++) {
+        inGeo.calcTriangleNormal(3 * i, 3 * i + 1, 3 * i + 2);
+      }
+      first = 3 * (first / 3);
+      last = PApplet.min(3 * (last / 3) + 2, count - 1);
+    } else if (kind == QUAD || kind == QUADS) {
+      int last1 = PApplet.min(last / 4, count / 4 - 1);
+      for (int i = first / 4; i <= last1; i++) {
+        inGeo.calcTriangleNormal(4 * i + 0, 4 * i + 1, 4 * i + 2);
+        inGeo.calcTriangleNormal(4 * i + 2, 4 * i + 3, 4 * i + 0);
+      }
+      first = 4 * (first / 4);
+      last = PApplet.min(4 * (last / 4) + 3, count - 1);
+    } else {
+      // In fans and strips the normal of a vertex is determined by the last
+      // face that contains it, so all of them are recalculated. This is
+      // still much cheaper than a new tessellation.
+      if (kind == TRIANGLE_FAN) {
+        inGeo.calcTriangleFanNormals();
+      } else if (kind == TRIANGLE_STRIP) {
+        inGeo.calcTriangleStripNormals();
+      } else if (kind == QUAD_STRIP) {
+        inGeo.calcQuadStripNormals();
+      }
+      first = 0;
+      last = count - 1;
+    }
+    if (first < firstDirtyNormal) firstDirtyNormal = first;
+    if (last > lastDirtyNormal) lastDirtyNormal = last;
+  }
+
+
+  // Returns the combined matrices of this shape and its ancestors, which
+  // were applied to its tessellated geometry in aggregateImpl() and
+  // applyMatrixImpl(), or null if none of these shapes is transformed.
+  protected PMatrix3D getTessMatrix() {
+    PMatrix3D tr = null;
+    PShapeOpenGL shape = this;
+    while (shape != null) {
+      if (shape.matrix != null) {
+        if (tr == null) tr = new PMatrix3D();
+        tr.preApply(shape.matrix);
+      }
+      shape = (PShapeOpenGL) shape.parent;
+    }
+    return tr;
+  }
+
+
   protected void initModified() {
     modified = false;
 
@@ -4123,51 +4411,51 @@ public class PShapeOpenGL extends PShape {
 
 
   protected void tessellatePath() {
-    if (vertices == null) return;
+    if (vertexData == null) return;
 
     inGeo.setMaterial(fillColor, strokeColor, strokeWeight,
                       ambientColor, specularColor, emissiveColor, shininess);
 
     if (vertexCodeCount == 0) {  // each point is a simple vertex
-      if (vertices[0].length == 2) {  // tessellating 2D vertices
+      if (vertexStride == 2) {  // tessellating 2D vertices
         for (int i = 0; i < vertexCount; i++) {
-          inGeo.addVertex(vertices[i][X], vertices[i][Y], VERTEX, false);
+          inGeo.addVertex(vertexField(i, X), vertexField(i, Y), VERTEX, false);
         }
       }
     } else {  // coded set of vertices
       int idx = 0;
       boolean brk = true;
 
-      if (vertices[0].length == 2) {  // tessellating a 2D path
+      if (vertexStride == 2) {  // tessellating a 2D path
 
         for (int j = 0; j < vertexCodeCount; j++) {
           switch (vertexCodes[j]) {
 
           case VERTEX:
-            inGeo.addVertex(vertices[idx][X], vertices[idx][Y], VERTEX, brk);
+            inGeo.addVertex(vertexField(idx, X), vertexField(idx, Y), VERTEX, brk);
             brk = false;
             idx++;
             break;
 
           case QUADRATIC_VERTEX:
-            inGeo.addQuadraticVertex(vertices[idx+0][X], vertices[idx+0][Y], 0,
-                                     vertices[idx+1][X], vertices[idx+1][Y], 0,
+            inGeo.addQuadraticVertex(vertexField(idx+0, X), vertexField(idx+0, Y), 0,
+                                     vertexField(idx+1, X), vertexField(idx+1, Y), 0,
                                      brk);
             brk = false;
             idx += 2;
             break;
 
           case BEZIER_VERTEX:
-            inGeo.addBezierVertex(vertices[idx+0][X], vertices[idx+0][Y], 0,
-                                  vertices[idx+1][X], vertices[idx+1][Y], 0,
-                                  vertices[idx+2][X], vertices[idx+2][Y], 0,
+            inGeo.addBezierVertex(vertexField(idx+0, X), vertexField(idx+0, Y), 0,
+                                  vertexField(idx+1, X), vertexField(idx+1, Y), 0,
+                                  vertexField(idx+2, X), vertexField(idx+2, Y), 0,
                                   brk);
             brk = false;
             idx += 3;
             break;
 
           case CURVE_VERTEX:
-            inGeo.addCurveVertex(vertices[idx][X], vertices[idx][Y], 0, brk);
+            inGeo.addCurveVertex(vertexField(idx, X), vertexField(idx, Y), 0, brk);
             brk = false;
             idx++;
             break;
@@ -5251,6 +5539,11 @@ public class PShapeOpenGL extends PShape {
     if (g instanceof PGraphicsOpenGL) {
       PGraphicsOpenGL gl = (PGraphicsOpenGL)g;
       if (visible) {
+        if (gl.shapeInstancing && drawInstance(gl)) {
+          return;
+        }
+        gl.flushInstances();
+
         pre(gl);
 
         updateTessellation();
@@ -5371,6 +5664,55 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  // Adds this shape to the instances batched by the renderer instead of
+  // drawing it right away, returns false if the shape cannot be instanced.
+  protected boolean drawInstance(PGraphicsOpenGL g) {
+    if (g.lights || g.polyShader != null || g.haveRaw() ||
+        !polyAttribs.isEmpty() || (family == GROUP && fragmentedGroup(g))) {
+      return false;
+    }
+
+    int tint = 0xFFFFFFFF;
+    if (!style) {
+      if (g.fill && !g.stroke && !g.tint && image == null && textures == null) {
+        // The fill color is applied per instance, so the geometry doesn't
+        // change when consecutive instances use different colors.
+        int fillColor = g.fillColor;
+        g.fillColor = 0xFFFFFFFF;
+        styles(g);
+        g.fillColor = fillColor;
+        tint = fillColor;
+      } else {
+        styles(g);
+      }
+    }
+
+    PImage tex = image;
+    if (family == GROUP) {
+      tex = null;
+      if (textures != null && textures.size() == 1) {
+        tex = (PImage)textures.toArray()[0];
+      }
+    }
+
+    InstanceBatch batch = g.instanceBatch;
+    if (!batch.accepts(this, tex) || root.modified || !root.tessellated ||
+        (root.dirtyShapes != null && !root.dirtyShapes.isEmpty())) {
+      // The instances in the batch need the current contents of the buffers
+      g.flushInstances();
+    }
+
+    updateTessellation();
+    if (!hasPolys || (is3D() && (hasLines || hasPoints))) {
+      return false;
+    }
+    updateGeometry();
+
+    batch.add(this, tex, g.modelview, tint);
+    return true;
+  }
+
+
   // Returns true if some child shapes below this one either
   // use different texture maps (or only one texture is used by some while
   // others are untextured), or have stroked textures,
@@ -5408,12 +5750,14 @@ public class PShapeOpenGL extends PShape {
   @Override
   protected void drawGeometry(PGraphics g) {
     vertexCount = inGeo.vertexCount;
-    vertices = inGeo.getVertexData();
+    vertexStride = PGraphics.VERTEX_FIELD_COUNT;
+    vertexData = inGeo.getVertexData();
 
     super.drawGeometry(g);
 
     vertexCount = 0;
-    vertices = null;
+    vertexStride = 0;
+    vertexData = null;
   }
 
 
@@ -5547,6 +5891,74 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  // Renders the polys once for each instance in the vertex buffer of
+  // instances of the renderer.
+  protected void renderInstances(PGraphicsOpenGL g, PImage textureImage,
+                                 int instanceCount) {
+    Texture tex = textureImage != null ? g.getTexture(textureImage) : null;
+
+    boolean renderingFill = false, renderingStroke = false;
+    PShader shader = null;
+    IndexCache cache = tessGeo.polyIndexCache;
+    for (int n = firstPolyIndexCache; n <= lastPolyIndexCache; n++) {
+      if (is3D() || (tex != null && (firstLineIndexCache == -1 ||
+                                     n < firstLineIndexCache) &&
+                                    (firstPointIndexCache == -1 ||
+                                     n < firstPointIndexCache))) {
+        if (!renderingFill) {
+          shader = g.getInstancedPolyShader(tex != null);
+          shader.bind();
+          g.bindInstanceAttributes(shader);
+          renderingFill = true;
+        }
+      } else {
+        // Line and point triangles are never textured.
+        if (!renderingStroke) {
+          if (tex != null) {
+            tex.unbind();
+            tex = null;
+          }
+
+          if (shader != null && shader.bound()) {
+            g.unbindInstanceAttributes(shader);
+            shader.unbind();
+          }
+
+          shader = g.getInstancedPolyShader(false);
+          shader.bind();
+          g.bindInstanceAttributes(shader);
+
+          renderingFill = false;
+          renderingStroke = true;
+        }
+      }
+
+      int ioffset = cache.indexOffset[n];
+      int icount = cache.indexCount[n];
+      int voffset = cache.vertexOffset[n];
+
+      shader.setVertexAttribute(root.bufPolyVertex.glId, 4, PGL.FLOAT,
+                                0, 4 * voffset * PGL.SIZEOF_FLOAT);
+      shader.setColorAttribute(root.bufPolyColor.glId, 4, PGL.UNSIGNED_BYTE,
+                               0, 4 * voffset * PGL.SIZEOF_BYTE);
+
+      if (tex != null) {
+        shader.setTexcoordAttribute(root.bufPolyTexCoord.glId, 2, PGL.FLOAT,
+                                    0, 2 * voffset * PGL.SIZEOF_FLOAT);
+        shader.setTexture(tex);
+      }
+
+      shader.drawInstanced(root.bufPolyIndex.glId, icount, ioffset,
+                           instanceCount);
+    }
+
+    if (shader != null && shader.bound()) {
+      g.unbindInstanceAttributes(shader);
+      shader.unbind();
+    }
+  }
+
+
   protected void rawPolys(PGraphicsOpenGL g, PImage textureImage) {
     PGraphics raw = g.getRaw();
 
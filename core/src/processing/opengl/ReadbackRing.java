@@ -0,0 +1,216 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+/**
+ * Schedules the asynchronous reads of the frame buffer into a ring of pixel
+ * buffers. Each read is followed by a fence, and its pixels are only handed
+ * over once the fence is signaled, so that mapping the buffer doesn't wait
+ * for the GPU. When all the buffers are in use, the oldest read is completed
+ * anyway, which stalls until the GPU is done with it.
+ * <p>
+ * Each read carries a request, which tells the renderer what to do with the
+ * pixels, like saving them to a file or passing them to a callback.
+ */
+class ReadbackRing {
+  /**
+   * Buffer and fence operations, implemented with the current context by
+   * the renderer.
+   */
+  interface Transfers {
+    int[] createBuffers(int count);
+    void deleteBuffers(int[] buffers);
+
+    /** Starts reading the frame buffer into a buffer of the given size. */
+    void read(int buffer, int width, int height, boolean resize);
+
+    long fence();
+    boolean isSignaled(long sync);
+    void deleteFence(long sync);
+
+    /** Maps the buffer and hands its pixels over for the request. */
+    void complete(int buffer, int width, int height, Object request);
+  }
+
+  static final int DEFAULT_DEPTH = 3;
+
+  protected Transfers transfers;
+  protected int depth;
+
+  // Created on the first read
+  protected int[] buffers;
+  protected long[] fences;
+  protected Object[] requests;
+  protected int[] widths;
+  protected int[] heights;
+
+  // Circular queue of reads in flight, the oldest at the tail
+  protected int head;
+  protected int tail;
+  protected int size;
+
+  /** Number of reads completed before their fence was signaled. */
+  protected int stallCount;
+
+
+  ReadbackRing(Transfers transfers, int depth) {
+    this.transfers = transfers;
+    setDepth(depth);
+  }
+
+
+  /**
+   * Sets the number of buffers, completing the reads in flight first.
+   */
+  void setDepth(int depth) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("At least one buffer is needed");
+    }
+    if (depth != this.depth) {
+      completeAll();
+      dispose();
+      this.depth = depth;
+    }
+  }
+
+
+  int getDepth() {
+    return depth;
+  }
+
+
+  int size() {
+    return size;
+  }
+
+
+  /** The request of the oldest read in flight, or null if there is none. */
+  Object oldestRequest() {
+    return size > 0 ? requests[tail] : null;
+  }
+
+
+  /**
+   * Starts a read of the frame buffer for the request. If the oldest read
+   * is already finished, or all the buffers are in use, the oldest read is
+   * completed first to make room.
+   */
+  void read(Object request, int width, int height) {
+    if (buffers == null) {
+      buffers = transfers.createBuffers(depth);
+      fences = new long[depth];
+      requests = new Object[depth];
+      widths = new int[depth];
+      heights = new int[depth];
+    }
+    if (size == depth || (size > 0 && transfers.isSignaled(fences[tail]))) {
+      complete(1);
+    }
+
+    boolean resize = widths[head] * heights[head] != width * height;
+    transfers.read(buffers[head], width, height, resize);
+    widths[head] = width;
+    heights[head] = height;
+    fences[head] = transfers.fence();
+    requests[head] = request;
+    head = (head + 1) % depth;
+    size++;
+  }
+
+
+  /**
+   * Completes the reads that are finished, oldest first, up to count
+   * of them. Returns how many were completed.
+   */
+  int completeFinished(int count) {
+    int completed = 0;
+    while (size > 0 && completed < count && transfers.isSignaled(fences[tail])) {
+      complete(1);
+      completed++;
+    }
+    return completed;
+  }
+
+
+  /**
+   * Completes the oldest reads, waiting for them if needed.
+   */
+  void complete(int count) {
+    while (size > 0 && count > 0) {
+      long sync = fences[tail];
+      if (!transfers.isSignaled(sync)) {
+        stallCount++;
+      }
+      transfers.deleteFence(sync);
+      Object request = requests[tail];
+      requests[tail] = null;
+      int buffer = buffers[tail];
+      int width = widths[tail];
+      int height = heights[tail];
+      tail = (tail + 1) % depth;
+      size--;
+      count--;
+      transfers.complete(buffer, width, height, request);
+    }
+  }
+
+
+  void completeAll() {
+    complete(size);
+  }
+
+
+  /**
+   * Completes all the reads up to the last one for an equal request.
+   * Returns false if there was none.
+   */
+  boolean await(Object request) {
+    int last = -1;
+    for (int i = 0; i < size; i++) {
+      if (request.equals(requests[(tail + i) % depth])) {
+        last = i;
+      }
+    }
+    if (last == -1) return false;
+    complete(last + 1);
+    return true;
+  }
+
+
+  /**
+   * Drops the reads in flight and deletes the buffers.
+   */
+  void dispose() {
+    while (size > 0) {
+      transfers.deleteFence(fences[tail]);
+      requests[tail] = null;
+      tail = (tail + 1) % depth;
+      size--;
+    }
+    if (buffers != null) {
+      transfers.deleteBuffers(buffers);
+      buffers = null;
+    }
+    head = tail = size = 0;
+  }
+}
@@ -0,0 +1,184 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import processing.core.PConstants;
+import processing.core.ParallelRange;
+
+/**
+ * Converts texels between the Processing and OpenGL color orders, and
+ * flips them on either axis in the same pass. Every conversion is the same
+ * branch-free swizzle with different masks and shifts,
+ * <pre>
+ *   ((p &amp; mask0) &lt;&lt; shift0) | ((p &gt;&gt;&gt; shift1) &amp; mask1) | (p &amp; keep) | set
+ * </pre>
+ * picked once for the format and the byte order of the platform. Large
+ * images are split by ParallelRange into bands of rows of at least
+ * PARALLEL_MIN_COUNT texels, converted in parallel.
+ */
+class TexelConverter {
+  static final int PARALLEL_MIN_COUNT = 1 << 16;
+
+  /** Leaves the texels as they are, for flipping only. */
+  static final TexelConverter COPY = new TexelConverter(0, 0, 0, 0, 0xFFFFFFFF, 0);
+
+  protected final int mask0, shift0;
+  protected final int shift1, mask1;
+  protected final int keep;
+  protected final int set;
+
+
+  TexelConverter(int mask0, int shift0, int shift1, int mask1,
+                 int keep, int set) {
+    this.mask0 = mask0;
+    this.shift0 = shift0;
+    this.shift1 = shift1;
+    this.mask1 = mask1;
+    this.keep = keep;
+    this.set = set;
+  }
+
+
+  /**
+   * From Processing's ALPHA, RGB or ARGB into the RGBA order of OpenGL.
+   */
+  static TexelConverter toRGBA(int format) {
+    return toRGBA(format, PGL.BIG_ENDIAN);
+  }
+
+
+  static TexelConverter toRGBA(int format, boolean bigEndian) {
+    if (bigEndian) {
+      switch (format) {
+      case PConstants.ALPHA:
+        // xxxA into RGBA, with RGB set to white
+        return new TexelConverter(0xFF, 0, 0, 0, 0, 0xFFFFFF00);
+      case PConstants.RGB:
+        // xRGB into RGBA, with A set to full opacity
+        return new TexelConverter(0xFFFFFF, 8, 0, 0, 0, 0xFF);
+      default:
+        // ARGB into RGBA, RGB shifted left and A brought to the last byte
+        return new TexelConverter(0xFFFFFF, 8, 24, 0xFF, 0, 0);
+      }
+    } else {
+      // RGBA in memory is ABGR as a little endian int
+      switch (format) {
+      case PConstants.ALPHA:
+        // xxxA into ABGR, with RGB set to white
+        return new TexelConverter(0xFF, 24, 0, 0, 0, 0x00FFFFFF);
+      case PConstants.RGB:
+        // xRGB into ABGR, R and B swapped and A set to full opacity
+        return new TexelConverter(0xFF, 16, 16, 0xFF, 0x0000FF00, 0xFF000000);
+      default:
+        // ARGB into ABGR, R and B swapped
+        return new TexelConverter(0xFF, 16, 16, 0xFF, 0xFF00FF00, 0);
+      }
+    }
+  }
+
+
+  /**
+   * From the RGBA order of OpenGL into Processing's ARGB.
+   */
+  static TexelConverter toARGB() {
+    return toARGB(PGL.BIG_ENDIAN);
+  }
+
+
+  static TexelConverter toARGB(boolean bigEndian) {
+    if (bigEndian) {
+      // RGBA into ARGB, RGB shifted right and A brought to the first byte
+      return new TexelConverter(0xFF, 24, 8, 0xFFFFFF, 0, 0);
+    } else {
+      // ABGR into ARGB, R and B swapped
+      return new TexelConverter(0xFF, 16, 16, 0xFF, 0xFF00FF00, 0);
+    }
+  }
+
+
+  int convert(int pixel) {
+    return ((pixel & mask0) << shift0) | ((pixel >>> shift1) & mask1) |
+           (pixel & keep) | set;
+  }
+
+
+  /**
+   * Converts the first width * height texels of src into dst, which can be
+   * the same array, flipping them horizontally and/or vertically.
+   */
+  void convert(int[] src, int[] dst, int width, int height,
+               boolean flipX, boolean flipY) {
+    int count = width * height;
+    if (count <= 0) return;
+    if (src.length < count || dst.length < count) {
+      throw new ArrayIndexOutOfBoundsException("The arrays are too short for " +
+                                               width + "x" + height + " texels");
+    }
+
+    // With a vertical flip, each row is swapped with its mirror,
+    // so only the top half of the rows is visited
+    int rows = flipY ? (height + 1) / 2 : height;
+    int minRows = (PARALLEL_MIN_COUNT + width - 1) / width;
+    if (ParallelRange.chunks(rows, minRows) == 1) {
+      convertRows(src, dst, width, height, flipX, flipY, 0, rows);
+    } else {
+      ParallelRange.run(rows, minRows, (first, last) ->
+        convertRows(src, dst, width, height, flipX, flipY, first, last));
+    }
+  }
+
+
+  protected void convertRows(int[] src, int[] dst, int width, int height,
+                             boolean flipX, boolean flipY,
+                             int firstRow, int lastRow) {
+    for (int y = firstRow; y < lastRow; y++) {
+      int y2 = flipY ? height - 1 - y : y;
+      int row = y * width;
+      int row2 = y2 * width;
+      if (!flipX) {
+        if (y == y2) {
+          for (int i = row; i < row + width; i++) {
+            dst[i] = convert(src[i]);
+          }
+        } else {
+          for (int i = row, j = row2; i < row + width; i++, j++) {
+            int p = src[i];
+            int q = src[j];
+            dst[i] = convert(q);
+            dst[j] = convert(p);
+          }
+        }
+      } else {
+        // A row mapped onto itself is only reversed, so only
+        // its first half is visited
+        int end = (y == y2) ? row + (width + 1) / 2 : row + width;
+        for (int i = row, j = row2 + width - 1; i < end; i++, j--) {
+          int p = src[i];
+          int q = src[j];
+          dst[i] = convert(q);
+          dst[j] = convert(p);
+        }
+      }
+    }
+  }
+}
@@ -339,9 +339,10 @@ public class Texture implements PConstants {
     pgl.bindTexture(glTarget, glName);
 
     loadPixels(w * h);
-    convertToRGBA(pixels, format, w, h);
-    if (invertedX) flipArrayOnX(rgbaPixels, 1);
-    if (invertedY) flipArrayOnY(rgbaPixels, 1);
+    // Converted and flipped in a single pass
+    TexelConverter.toRGBA(format).convert(pixels, rgbaPixels, w, h,
+                                          invertedX, invertedY);
+    rgbaPixUpdateCount++;
     updatePixelBuffer(rgbaPixels);
     pgl.texSubImage2D(glTarget, 0, x, y, w, h, PGL.RGBA, PGL.UNSIGNED_BYTE,
                       pixelBuffer);
@@ -460,10 +461,8 @@ public class Texture implements PConstants {
     pg.popFramebuffer();
 
     tempFbo.getPixels(pixels);
-    convertToARGB(pixels);
-
-    if (invertedX) flipArrayOnX(pixels, 1);
-    if (invertedY) flipArrayOnY(pixels, 1);
+    TexelConverter.toARGB().convert(pixels, pixels, width, height,
+                                    invertedX, invertedY);
   }
 
 
@@ -941,27 +940,21 @@ public class Texture implements PConstants {
    * Flips intArray along the X axis.
    * @param intArray int[]
    * @param mult int
+   * @deprecated set() and get() flip the texels while converting them
    */
+  @Deprecated
   protected void flipArrayOnX(int[] intArray, int mult)  {
-    int index = 0;
-    int xindex = mult * (width - 1);
-    for (int x = 0; x < width / 2; x++) {
-      for (int y = 0; y < height; y++)  {
-        int i = index + mult * y * width;
-        int j = xindex + mult * y * width;
-
-        for (int c = 0; c < mult; c++) {
-          int temp = intArray[i];
-          intArray[i] = intArray[j];
-          intArray[j] = temp;
-
-          i++;
-          j++;
+    TexelConverter.COPY.convert(intArray, intArray, mult * width, height,
+                                true, false);
+    if (mult > 1) {
+      // the ints of each texel were reversed too, put them back in order
+      for (int i = 0; i < mult * width * height; i += mult) {
+        for (int j = i, k = i + mult - 1; j < k; j++, k--) {
+          int temp = intArray[j];
+          intArray[j] = intArray[k];
+          intArray[k] = temp;
         }
-
       }
-      index += mult;
-      xindex -= mult;
     }
   }
 
@@ -970,21 +963,12 @@ public class Texture implements PConstants {
    * Flips intArray along the Y axis.
    * @param intArray int[]
    * @param mult int
+   * @deprecated set() and get() flip the texels while converting them
    */
+  @Deprecated
   protected void flipArrayOnY(int[] intArray, int mult) {
-    int index = 0;
-    int yindex = mult * (height - 1) * width;
-    for (int y = 0; y < height / 2; y++) {
-      for (int x = 0; x < mult * width; x++) {
-        int temp = intArray[index];
-        intArray[index] = intArray[yindex];
-        intArray[yindex] = temp;
-
-        index++;
-        yindex++;
-      }
-      yindex -= mult * width * 2;
-    }
+    TexelConverter.COPY.convert(intArray, intArray, mult * width, height,
+                                false, true);
   }
 
 
@@ -996,67 +980,12 @@ public class Texture implements PConstants {
    * @param format int
    * @param w int
    * @param h int
+   * @deprecated set() converts and flips the texels in a single pass
    */
+  @Deprecated
   protected void convertToRGBA(int[] pixels, int format, int w, int h)  {
-    if (PGL.BIG_ENDIAN)  {
-      switch (format) {
-      case ALPHA:
-        // Converting from xxxA into RGBA. RGB is set to white
-        // (0xFFFFFF, i.e.: (255, 255, 255))
-        for (int i = 0; i< pixels.length; i++) {
-          rgbaPixels[i] = 0xFFFFFF00 | pixels[i];
-        }
-        break;
-      case RGB:
-        // Converting xRGB into RGBA. A is set to 0xFF (255, full opacity).
-        for (int i = 0; i< pixels.length; i++) {
-          int pixel = pixels[i];
-          rgbaPixels[i] = (pixel << 8) | 0xFF;
-        }
-        break;
-      case ARGB:
-        // Converting ARGB into RGBA. Shifting RGB to 8 bits to the left,
-        // and bringing A to the first byte.
-        for (int i = 0; i< pixels.length; i++) {
-          int pixel = pixels[i];
-          rgbaPixels[i] = (pixel << 8) | ((pixel >> 24) & 0xFF);
-        }
-        break;
-      }
-    } else {
-      // LITTLE_ENDIAN
-      // ARGB native, and RGBA opengl means ABGR on windows
-      // for the most part just need to swap two components here
-      // the sun.cpu.endian here might be "false", oddly enough..
-      // (that's why just using an "else", rather than check for "little")
-      switch (format)  {
-      case ALPHA:
-        // Converting xxxA into ARGB, with RGB set to white.
-        for (int i = 0; i< pixels.length; i++) {
-          rgbaPixels[i] = (pixels[i] << 24) | 0x00FFFFFF;
-        }
-        break;
-      case RGB:
-        // We need to convert xRGB into ABGR,
-        // so R and B must be swapped, and the x just made 0xFF.
-        for (int i = 0; i< pixels.length; i++) {
-          int pixel = pixels[i];
-          rgbaPixels[i] = 0xFF000000 |
-                          ((pixel & 0xFF) << 16) | ((pixel & 0xFF0000) >> 16) |
-                          (pixel & 0x0000FF00);
-        }
-        break;
-      case ARGB:
-        // We need to convert ARGB into ABGR,
-        // so R and B must be swapped, A and G just brought back in.
-        for (int i = 0; i < pixels.length; i++) {
-          int pixel = pixels[i];
-          rgbaPixels[i] = ((pixel & 0xFF) << 16) | ((pixel & 0xFF0000) >> 16) |
-                          (pixel & 0xFF00FF00);
-        }
-        break;
-      }
-    }
+    TexelConverter.toRGBA(format).convert(pixels, rgbaPixels, w, h,
+                                          false, false);
     rgbaPixUpdateCount++;
   }
 
@@ -1067,28 +996,8 @@ public class Texture implements PConstants {
    * @param pixels int[]
    */
   protected void convertToARGB(int[] pixels) {
-    int t = 0;
-    int p = 0;
-    if (PGL.BIG_ENDIAN) {
-      // RGBA to ARGB conversion: shifting RGB 8 bits to the right,
-      // and placing A 24 bits to the left.
-      for (int y = 0; y < height; y++) {
-        for (int x = 0; x < width; x++) {
-          int pixel = pixels[p++];
-          pixels[t++] = (pixel >>> 8) | ((pixel << 24) & 0xFF000000);
-        }
-      }
-    } else {
-      // We have to convert ABGR into ARGB, so R and B must be swapped,
-      // A and G just brought back in.
-      for (int y = 0; y < height; y++) {
-        for (int x = 0; x < width; x++) {
-          int pixel = pixels[p++];
-          pixels[t++] = ((pixel & 0xFF) << 16) | ((pixel & 0xFF0000) >> 16) |
-                          (pixel & 0xFF00FF00);
-        }
-      }
-    }
+    TexelConverter.toARGB().convert(pixels, pixels, width, height,
+                                    false, false);
   }
 
 
@@ -0,0 +1,40 @@
+/*
+  Part of the Processing project - http://processing.org
+
+  Copyright (c) 2012-21 The Processing Foundation
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation, version 2.1.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+uniform mat4 projectionMatrix;
+uniform mat4 texMatrix;
+
+attribute vec4 position;
+attribute vec4 color;
+attribute vec2 texCoord;
+
+// Modelview matrix and color multiplier of each instance
+attribute mat4 instanceMatrix;
+attribute vec4 instanceTint;
+
+varying vec4 vertColor;
+varying vec4 vertTexCoord;
+
+void main() {
+  gl_Position = projectionMatrix * instanceMatrix * position;
+
+  vertColor = color * instanceTint;
+  vertTexCoord = texMatrix * vec4(texCoord, 1.0, 1.0);
+}
@@ -0,0 +1,71 @@
+package processing.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class FloatParserTest {
+
+  private static float parse(String s) {
+    byte[] data = s.getBytes(StandardCharsets.US_ASCII);
+    return FloatParser.parse(data, 0, data.length);
+  }
+
+
+  private static String scan(String s) {
+    byte[] data = s.getBytes(StandardCharsets.US_ASCII);
+    return s.substring(0, FloatParser.scan(data, 0, data.length));
+  }
+
+
+  @Test
+  public void testSameAsParseFloat() {
+    String[] numbers = {
+      "0", "-0", "1", "+1", "-1", "0.5", ".5", "-.5", "5.", "3.14159",
+      "1e3", "1E-3", "-2.5e+2", "0.000001", "123456789012345678901234",
+      "0.1234567890123456789", "1e22", "1e23", "1e-30", "3.4e38", "1e39",
+      "0e999", "NaN", "-Infinity"
+    };
+    for (String s : numbers) {
+      Assert.assertEquals(s, Float.parseFloat(s), parse(s), 0);
+    }
+
+    Random random = new Random(1);
+    for (int i = 0; i < 10000; i++) {
+      String s = Float.toString(random.nextFloat() * 2000 - 1000);
+      Assert.assertEquals(s, Float.parseFloat(s), parse(s), 0);
+      s = String.format(Locale.ROOT, "%.6f", random.nextDouble() * 100);
+      Assert.assertEquals(s, Float.parseFloat(s), parse(s), 0);
+    }
+  }
+
+
+  @Test(expected = NumberFormatException.class)
+  public void testNotANumber() {
+    parse("1.2x");
+  }
+
+
+  @Test(expected = NumberFormatException.class)
+  public void testMissingExponent() {
+    parse("1e");
+  }
+
+
+  @Test
+  public void testScan() {
+    Assert.assertEquals("1.5", scan("1.5.5"));
+    Assert.assertEquals("1", scan("1-2"));
+    Assert.assertEquals("-2.5e3", scan("-2.5e3,1"));
+    Assert.assertEquals("1", scan("1e"));
+    Assert.assertEquals("1", scan("1e-L"));
+    Assert.assertEquals(".5", scan(".5"));
+    Assert.assertEquals("", scan("-.L"));
+    Assert.assertEquals("", scan("M"));
+  }
+
+}
@@ -0,0 +1,129 @@
+package processing.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class FramePacerTest {
+  static final long MS = 1000000L;
+  static final long PERIOD = 16 * MS;
+
+
+  /**
+   * Time only moves when waiting or drawing. Sleeps overshoot by a fixed
+   * amount, parks and spins take exactly as long as asked.
+   */
+  static class FakeClock implements FramePacer.Clock {
+    long now = 1000 * MS;
+    long sleepOvershoot;
+    List<String> calls = new ArrayList<>();
+
+    @Override
+    public long nanoTime() {
+      return now;
+    }
+
+    @Override
+    public void sleep(long nanos) {
+      calls.add("sleep");
+      now += nanos + sleepOvershoot;
+    }
+
+    @Override
+    public void park(long nanos) {
+      calls.add("park");
+      now += nanos;
+    }
+
+    @Override
+    public void spin() {
+      calls.add("spin");
+      now += FramePacer.SPIN_NANOS / 4;
+    }
+  }
+
+
+  @Test
+  public void testNoDrift() {
+    FakeClock clock = new FakeClock();
+    clock.sleepOvershoot = 3 * MS;  // more than SLEEP_MARGIN
+    FramePacer pacer = new FramePacer(clock);
+    long start = clock.now;
+    pacer.start();
+
+    for (int frame = 1; frame <= 100; frame++) {
+      clock.now += 5 * MS;  // draw()
+      pacer.waitForNextFrame(PERIOD);
+      long late = clock.now - (start + frame * PERIOD);
+      Assert.assertTrue("frame " + frame + " late by " + late,
+                        late >= 0 && late < 2 * MS);
+    }
+  }
+
+
+  @Test
+  public void testCatchUp() {
+    FakeClock clock = new FakeClock();
+    FramePacer pacer = new FramePacer(clock);
+    long start = clock.now;
+    pacer.start();
+
+    clock.now += 24 * MS;  // half a frame late
+    Assert.assertFalse(pacer.waitForNextFrame(PERIOD));
+    // the next frame is still due on schedule
+    Assert.assertEquals(start + 24 * MS, clock.now);
+    Assert.assertTrue(pacer.waitForNextFrame(PERIOD));
+    Assert.assertEquals(start + 2 * PERIOD, clock.now);
+    Assert.assertEquals(start + 2 * PERIOD, pacer.deadline);
+  }
+
+
+  @Test
+  public void testResync() {
+    FakeClock clock = new FakeClock();
+    FramePacer pacer = new FramePacer(clock);
+    pacer.start();
+
+    clock.now += 5 * PERIOD;  // a long frame
+    long resumed = clock.now;
+    pacer.waitForNextFrame(PERIOD);
+    // the schedule starts over from now
+    Assert.assertEquals(resumed, pacer.deadline);
+    Assert.assertEquals(resumed, clock.now);
+
+    clock.now += MS;
+    pacer.waitForNextFrame(PERIOD);
+    Assert.assertEquals(resumed + PERIOD, clock.now);
+  }
+
+
+  @Test
+  public void testPhases() {
+    FakeClock clock = new FakeClock();
+    FramePacer pacer = new FramePacer(clock);
+    pacer.start();
+    pacer.waitForNextFrame(PERIOD);
+
+    Assert.assertEquals("sleep", clock.calls.get(0));
+    Assert.assertEquals("park", clock.calls.get(1));
+    Assert.assertEquals("spin", clock.calls.get(clock.calls.size() - 1));
+    Assert.assertFalse(clock.calls.subList(2, clock.calls.size()).contains("park"));
+  }
+
+
+  @Test
+  public void testNoSleepWhenShort() {
+    FakeClock clock = new FakeClock();
+    FramePacer pacer = new FramePacer(clock);
+    pacer.start();
+    clock.now += PERIOD - MS;
+    pacer.waitForNextFrame(PERIOD);
+
+    Assert.assertFalse(clock.calls.contains("sleep"));
+    Assert.assertEquals("park", clock.calls.get(0));
+  }
+
+}
@@ -0,0 +1,68 @@
+package processing.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class FrameTimeStatsTest {
+  static final long MS = 1000000L;
+  static final long PERIOD = 1000000000L / 60;
+
+
+  @Test
+  public void testPercentiles() {
+    FrameTimeStats stats = new FrameTimeStats();
+    for (int i = 1; i <= 100; i++) {
+      stats.addFrame(i * MS, 0);
+    }
+    Assert.assertEquals(50, stats.getP50(), 0);
+    Assert.assertEquals(95, stats.getP95(), 0);
+    Assert.assertEquals(99, stats.getP99(), 0);
+    Assert.assertEquals(100, stats.getMax(), 0);
+    Assert.assertEquals(0, stats.getMissedDeadlines());
+  }
+
+
+  @Test
+  public void testMissedDeadlines() {
+    FrameTimeStats stats = new FrameTimeStats();
+    stats.addFrame(PERIOD, PERIOD);
+    stats.addFrame(PERIOD * 14 / 10, PERIOD);  // late, but shown in time
+    stats.addFrame(PERIOD * 2, PERIOD);
+    stats.addFrame(PERIOD * 3, PERIOD);
+    Assert.assertEquals(2, stats.getMissedDeadlines());
+    Assert.assertEquals(4, stats.getFrameCount());
+
+    stats.reset();
+    Assert.assertEquals(0, stats.getMissedDeadlines());
+    Assert.assertEquals(0, stats.getP99(), 0);
+  }
+
+
+  @Test
+  public void testRecentFramesOnly() {
+    FrameTimeStats stats = new FrameTimeStats(10);
+    for (int i = 0; i < 10; i++) {
+      stats.addFrame(100 * MS, 0);
+    }
+    for (int i = 0; i < 10; i++) {
+      stats.addFrame(10 * MS, 0);
+    }
+    Assert.assertEquals(10, stats.getP99(), 0);
+    Assert.assertEquals(100, stats.getMax(), 0);
+    Assert.assertEquals(20, stats.getFrameCount());
+  }
+
+
+  @Test
+  public void testSketchFrames() {
+    PSurfaceHeadlessTest.ClockSketch sketch = new PSurfaceHeadlessTest.ClockSketch();
+    PApplet.runHeadless(sketch, 10);
+    // the first frame has nothing to compare to
+    FrameTimeStats stats = sketch.getFrameStats();
+    Assert.assertEquals(9, stats.getFrameCount());
+    Assert.assertEquals(40, stats.getP50(), 0.01);
+    Assert.assertEquals(0, stats.getMissedDeadlines());
+  }
+
+}
@@ -0,0 +1,43 @@
+package processing.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PAppletTest {
+
+  @Test
+  public void testFormattingOnManyThreads() throws Exception {
+    // Each thread keeps switching between formats, which would mix up
+    // the results if the formatters were shared without a lock
+    List<Thread> threads = new ArrayList<>();
+    List<Throwable> errors = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int digits = t + 2;
+      Thread thread = new Thread(() -> {
+        String pattern = "-(\\d{" + digits + "})-";
+        for (int i = 0; i < 2000; i++) {
+          String padded = PApplet.nf(i % 10, digits);
+          String grouped = PApplet.nfc(1234567);
+          String[] found = PApplet.match("-" + padded + "-", pattern);
+          if (padded.length() != digits || grouped.length() != 9 ||
+              found == null || !found[1].equals(padded)) {
+            synchronized (errors) {
+              errors.add(new AssertionError(padded + " " + grouped));
+            }
+            return;
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertEquals(List.of(), errors);
+  }
+}
@@ -0,0 +1,132 @@
+package processing.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PFontTest {
+
+  // A font of size 10 with glyphs for the given code points, set up the way
+  // subclasses do it, without going through addGlyph()
+  private static PFont createFont(int... codePoints) {
+    PFont font = new PFont();
+    font.size = 10;
+    font.ascii = new int[128];
+    java.util.Arrays.fill(font.ascii, -1);
+    font.glyphs = new PFont.Glyph[codePoints.length];
+    for (int i = 0; i < codePoints.length; i++) {
+      PFont.Glyph glyph = font.new Glyph();
+      glyph.value = codePoints[i];
+      glyph.index = i;
+      glyph.setWidth = 5 + i;
+      font.glyphs[i] = glyph;
+      if (glyph.value < 128) font.ascii[glyph.value] = i;
+    }
+    font.glyphCount = codePoints.length;
+    return font;
+  }
+
+
+  @Test
+  public void testCodePoints() {
+    PFont font = createFont('a', 'i', 0x3B1, 0x4E2D, 0x1F600);
+    Assert.assertEquals(0.5f, font.width('a'), 0);
+    Assert.assertEquals(0.7f, font.width((char) 0x3B1), 1e-6f);
+    Assert.assertEquals(0.9f, font.width(0x1F600), 1e-6f);
+    // spaces are as wide as an i
+    Assert.assertEquals(0.6f, font.width(' '), 1e-6f);
+    Assert.assertEquals(0, font.width('b'), 0);
+
+    Assert.assertSame(font.glyphs[3], font.getGlyph((char) 0x4E2D));
+    Assert.assertSame(font.glyphs[4], font.getGlyphForCodePoint(0x1F600));
+    Assert.assertNull(font.getGlyphForCodePoint(0x1F601));
+    Assert.assertEquals(2, font.index((char) 0x3B1));
+    Assert.assertEquals(-1, font.index('z'));
+  }
+
+
+  @Test
+  public void testManyGlyphs() {
+    int[] codePoints = new int[3000];
+    for (int i = 0; i < codePoints.length; i++) {
+      codePoints[i] = 0x4E00 + 7 * i;
+    }
+    PFont font = createFont(codePoints);
+    for (int i = 0; i < codePoints.length; i++) {
+      Assert.assertEquals(i, font.getGlyphForCodePoint(codePoints[i]).index);
+      Assert.assertNull(font.getGlyphForCodePoint(codePoints[i] + 1));
+    }
+  }
+
+
+  private static PFont createLazyFont() {
+    return new PFont(new java.awt.Font("SansSerif", java.awt.Font.PLAIN, 20), true);
+  }
+
+
+  @Test
+  public void testLazyGlyphs() {
+    PFont font = createLazyFont();
+    PFont.Glyph glyph = font.getGlyph('x');
+    Assert.assertNotNull(glyph);
+    Assert.assertTrue(1 < glyph.width);
+    Assert.assertSame(glyph, font.getGlyph('x'));
+    Assert.assertEquals(1, font.getGlyphCount());
+  }
+
+
+  @Test
+  public void testAsyncGlyphs() throws InterruptedException {
+    PFont expected = createLazyFont();
+    PFont font = createLazyFont();
+    font.setAsync(true);
+    font.requestGlyphs("ab");
+
+    // Glyphs that weren't requested get a blank placeholder at first,
+    // which is already as wide as the real one
+    PFont.Glyph placeholder = font.getGlyph('x');
+    Assert.assertEquals(1, placeholder.width);
+    Assert.assertTrue(placeholder.isPlaceholder());
+    Assert.assertEquals(expected.width('x'), font.width('x'), 0);
+
+    for (int i = 0; i < 500 && !font.isReady(); i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(font.isReady());
+    for (char c : "abx".toCharArray()) {
+      PFont.Glyph glyph = font.getGlyph(c);
+      Assert.assertFalse(glyph.isPlaceholder());
+      Assert.assertEquals(expected.getGlyph(c).width, glyph.width);
+      Assert.assertArrayEquals(expected.getGlyph(c).image.pixels, glyph.image.pixels);
+    }
+    Assert.assertEquals(3, font.getGlyphCount());
+    Assert.assertSame(font.getGlyph('x'), font.getGlyph(2));
+  }
+
+
+  @Test
+  public void testAsyncGlyphsOfSeveralFonts() throws InterruptedException {
+    // The pool threads share their scratch image between fonts of the
+    // same size, which must not mix up their glyphs
+    String[] families = { "Serif", "SansSerif", "Monospaced" };
+    PFont[] fonts = new PFont[families.length];
+    for (int i = 0; i < fonts.length; i++) {
+      fonts[i] = new PFont(new java.awt.Font(families[i], java.awt.Font.PLAIN, 20), true);
+      fonts[i].setAsync(true);
+      fonts[i].requestGlyphs("gW");
+    }
+    for (int i = 0; i < fonts.length; i++) {
+      for (int wait = 0; wait < 500 && !fonts[i].isReady(); wait++) {
+        Thread.sleep(10);
+      }
+      PFont expected =
+        new PFont(new java.awt.Font(families[i], java.awt.Font.PLAIN, 20), true);
+      for (char c : "gW".toCharArray()) {
+        Assert.assertArrayEquals(families[i] + " " + c,
+                                 expected.getGlyph(c).image.pixels,
+                                 fonts[i].getGlyph(c).image.pixels);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,255 @@
+package processing.core;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PGraphicsTest {
+
+  private static float bezier(float a, float b, float c, float d, float t) {
+    float t1 = 1 - t;
+    return (a*t1 + 3*b*t)*t1*t1 + (3*c*t1 + d*t)*t*t;
+  }
+
+
+  // Distance between the curve and its chords, sampled along each chord
+  private static float flatteningError(int segments, float[] x, float[] y) {
+    float error = 0;
+    for (int i = 0; i < segments; i++) {
+      float t0 = (float) i / segments;
+      float t1 = (float) (i + 1) / segments;
+      float x0 = bezier(x[0], x[1], x[2], x[3], t0);
+      float y0 = bezier(y[0], y[1], y[2], y[3], t0);
+      float x1 = bezier(x[0], x[1], x[2], x[3], t1);
+      float y1 = bezier(y[0], y[1], y[2], y[3], t1);
+      for (int k = 1; k < 16; k++) {
+        float f = k / 16f;
+        float t = t0 + f * (t1 - t0);
+        float dx = bezier(x[0], x[1], x[2], x[3], t) - (x0 + f * (x1 - x0));
+        float dy = bezier(y[0], y[1], y[2], y[3], t) - (y0 + f * (y1 - y0));
+        error = Math.max(error, (float) Math.sqrt(dx*dx + dy*dy));
+      }
+    }
+    return error;
+  }
+
+
+  private static int segmentCount(float tolerance, float[] x, float[] y) {
+    return PGraphics.bezierSegmentCount(tolerance,
+                                        x[0], y[0], 0, x[1], y[1], 0,
+                                        x[2], y[2], 0, x[3], y[3], 0);
+  }
+
+
+  @Test
+  public void testStraightBezier() {
+    float[] x = { 0, 100, 200, 300 };
+    float[] y = { 0, 50, 100, 150 };
+    Assert.assertEquals(1, segmentCount(0.25f, x, y));
+  }
+
+
+  @Test
+  public void testBezierTolerance() {
+    float[][] curves = {
+      { 0, 10, 10, 0 },   { 0, 0, 10, 10 },
+      { 0, 500, -200, 300 }, { 0, 400, 400, 0 },
+      { 0, 1, 2, 1 }, { 0, 3, -3, 0 },
+    };
+    for (int c = 0; c < curves.length; c += 2) {
+      float[] x = curves[c];
+      float[] y = curves[c + 1];
+      for (float tolerance : new float[] { 0.1f, 0.25f, 1 }) {
+        int segments = segmentCount(tolerance, x, y);
+        Assert.assertTrue(flatteningError(segments, x, y) <= tolerance);
+        Assert.assertTrue(segments <= PGraphics.MAX_CURVE_SEGMENTS);
+      }
+    }
+
+    // Ten times the size needs about sqrt(10) times the segments
+    float[] x = { 0, 10, 10, 0 };
+    float[] y = { 0, 0, 10, 10 };
+    float[] x10 = { 0, 100, 100, 0 };
+    float[] y10 = { 0, 0, 100, 100 };
+    int n = segmentCount(0.25f, x, y);
+    int n10 = segmentCount(0.25f, x10, y10);
+    Assert.assertTrue(3 * n <= n10 && n10 <= 4 * n);
+  }
+
+
+  @Test
+  public void testCurveTolerance() {
+    PGraphics g = new PGraphics();
+    g.curveTolerance(1);
+    Assert.assertEquals(1, g.curveTolerance, 0);
+    try {
+      g.curveTolerance(0);
+      Assert.fail("a tolerance of 0 would need endless segments");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    Assert.assertEquals(1, g.curveTolerance, 0);
+  }
+
+
+  // Records the lines of text drawn, and counts how often text is measured
+  static class TextGraphics extends PGraphics {
+    StringBuilder lines = new StringBuilder();
+    int measured;
+
+    TextGraphics() {
+      textFont = createFont();
+      textSize = 10;
+      textLeading = 12;
+    }
+
+    // A font of size 10 where a, b and i are 5, 6 and 7 pixels wide
+    static PFont createFont() {
+      PFont font = new PFont();
+      font.size = 10;
+      font.ascii = new int[128];
+      java.util.Arrays.fill(font.ascii, -1);
+      font.glyphs = new PFont.Glyph[3];
+      char[] chars = { 'a', 'b', 'i' };
+      for (int i = 0; i < chars.length; i++) {
+        PFont.Glyph glyph = font.new Glyph();
+        glyph.value = chars[i];
+        glyph.index = i;
+        glyph.setWidth = 5 + i;
+        font.glyphs[i] = glyph;
+        font.ascii[chars[i]] = i;
+      }
+      font.glyphCount = chars.length;
+      return font;
+    }
+
+    @Override
+    protected float textWidthImpl(char[] buffer, int start, int stop) {
+      measured++;
+      return super.textWidthImpl(buffer, start, stop);
+    }
+
+    @Override
+    protected void textLineImpl(char[] buffer, int start, int stop,
+                                float x, float y) {
+      lines.append(new String(buffer, start, stop - start))
+           .append(" @").append(x).append(',').append(y).append('\n');
+    }
+  }
+
+
+  @Test
+  public void testTextLayoutCache() {
+    TextGraphics g = new TextGraphics();
+    g.textAlign(PConstants.RIGHT);
+    g.text("ab\nabab", 100, 20);
+    Assert.assertEquals("ab @89.0,20.0\nabab @78.0,32.0\n", g.lines.toString());
+    Assert.assertEquals(2, g.measured);
+
+    // The same text again is neither split nor measured
+    g.lines.setLength(0);
+    g.text(new String("ab\nabab"), 100, 40);
+    Assert.assertEquals("ab @89.0,40.0\nabab @78.0,52.0\n", g.lines.toString());
+    Assert.assertEquals(2, g.measured);
+    Assert.assertEquals(22, g.textWidth("ab\nabab"), 0);
+    Assert.assertEquals(2, g.measured);
+
+    // A different size is laid out again
+    g.textSize = 20;
+    Assert.assertEquals(44, g.textWidth("ab\nabab"), 0);
+    Assert.assertEquals(4, g.measured);
+  }
+
+
+  @Test
+  public void testTextBox() {
+    TextGraphics g = new TextGraphics();
+    g.textFont.ascent = 8;
+    g.textFont.descent = 2;
+    g.textAlign(PConstants.LEFT);
+    g.text("aa bb aa\nb", 0, 0, 40, 100);
+    Assert.assertEquals("aa bb @0.0,8.0\naa @0.0,20.0\nb @0.0,32.0\n",
+                        g.lines.toString());
+
+    g.lines.setLength(0);
+    int measured = g.measured;
+    g.text("aa bb aa\nb", 0, 0, 40, 100);
+    Assert.assertEquals("aa bb @0.0,8.0\naa @0.0,20.0\nb @0.0,32.0\n",
+                        g.lines.toString());
+    Assert.assertEquals(measured, g.measured);
+  }
+
+
+  @Test
+  public void testAsyncImageSaver() throws Exception {
+    File file = File.createTempFile("saver", ".raw");
+    file.deleteOnExit();
+
+    PGraphics.AsyncImageSaver saver = new PGraphics.AsyncImageSaver();
+    saver.setThrottle(false);
+    saver.setCodec("raw", (image, output) -> {
+      for (int pixel : image.pixels) {
+        output.write(pixel);
+      }
+    });
+    PGraphics g = new PGraphics();
+    g.parent = new PApplet();
+
+    PImage target = saver.getAvailableTarget(4, 2, PConstants.RGB);
+    for (int i = 0; i < 8; i++) {
+      target.pixels[i] = i + 1;
+    }
+    saver.saveTargetAsync(g, target, file);
+    saver.awaitAsyncSaveCompletion(file);
+    Assert.assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 },
+                             Files.readAllBytes(file.toPath()));
+    Assert.assertEquals(1, saver.getSavedCount());
+    Assert.assertEquals(0, saver.getQueueDepth());
+    Assert.assertTrue(saver.getStageNanos(PGraphics.AsyncImageSaver.STAGE_ENCODE) > 0);
+
+    // Only one image fits in the budget, the next one is dropped
+    saver.setThreadCount(3);
+    saver.setMemoryBudget(4 * 100 * 100);
+    saver.setDropFrames(true);
+    target = saver.getAvailableTarget(100, 100, PConstants.RGB);
+    Assert.assertNotNull(target);
+    Assert.assertFalse(saver.hasAvailableTarget());
+    Assert.assertNull(saver.getAvailableTarget(100, 100, PConstants.RGB));
+    Assert.assertEquals(1, saver.getDroppedCount());
+    saver.returnUnusedTarget(target);
+    Assert.assertTrue(saver.hasAvailableTarget());
+    Assert.assertNotNull(saver.getAvailableTarget(100, 100, PConstants.RGB));
+    saver.dispose();
+  }
+
+
+  @Test
+  public void testAsyncImageSaverCodecFailure() throws Exception {
+    File file = File.createTempFile("saver", ".raw");
+    file.deleteOnExit();
+
+    PGraphics.AsyncImageSaver saver = new PGraphics.AsyncImageSaver();
+    saver.setThrottle(false);
+    saver.setThreadCount(1);
+    saver.setCodec("raw", (image, output) -> {
+      throw new IllegalStateException("broken codec");
+    });
+    PGraphics g = new PGraphics();
+    g.parent = new PApplet();
+
+    PImage target = saver.getAvailableTarget(4, 2, PConstants.RGB);
+    Assert.assertFalse(saver.hasAvailableTarget());
+    saver.saveTargetAsync(g, target, file);
+    saver.awaitAsyncSaveCompletion(file);
+    Assert.assertEquals(1, saver.getFailedCount());
+    Assert.assertEquals(0, saver.getSavedCount());
+    Assert.assertEquals(0, saver.getQueueDepth());
+    // The target was given back, so the next image can still be saved
+    Assert.assertTrue(saver.hasAvailableTarget());
+    saver.dispose();
+  }
+
+}
@@ -0,0 +1,98 @@
+package processing.core;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PImageTest {
+
+  private static PImage createImage(int format) {
+    PImage image = new PImage(40, 30, format);
+    for (int i = 0; i < image.pixels.length; i++) {
+      // runs of equal pixels, so that RLE has something to do
+      int value = (i / 7) * 0x01030507;
+      image.pixels[i] = (format == PConstants.ALPHA) ? value & 0xff :
+        (format == PConstants.RGB) ? value | 0xff000000 : value;
+    }
+    return image;
+  }
+
+
+  @Test
+  public void testTGA() throws Exception {
+    for (int format : new int[] { PConstants.RGB, PConstants.ARGB, PConstants.ALPHA }) {
+      PImage image = createImage(format);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      Assert.assertTrue(image.saveTGA(bytes));
+      PImage loaded = PImage.loadTGA(bytes.toByteArray());
+      Assert.assertEquals(format, loaded.format);
+      Assert.assertArrayEquals(image.pixels, loaded.pixels);
+    }
+  }
+
+
+  @Test
+  public void testTGABottomUp() {
+    // Uncompressed, 24 bits, origin at the lower left, with an image ID
+    byte[] tga = new byte[18 + 3 + 2 * 2 * 3];
+    tga[0] = 3;
+    tga[2] = 2;
+    tga[12] = 2;
+    tga[14] = 2;
+    tga[16] = 24;
+    int offset = 21;
+    int[] colors = { 0x0000ff, 0x00ff00, 0xff0000, 0xffffff };  // bottom row first
+    for (int color : colors) {
+      tga[offset++] = (byte) color;
+      tga[offset++] = (byte) (color >> 8);
+      tga[offset++] = (byte) (color >> 16);
+    }
+    PImage image = PImage.loadTGA(tga);
+    Assert.assertArrayEquals(new int[] {
+      0xffff0000, 0xffffffff, 0xff0000ff, 0xff00ff00
+    }, image.pixels);
+  }
+
+
+  @Test
+  public void testTIFF() throws Exception {
+    for (int type : new int[] { BufferedImage.TYPE_3BYTE_BGR,
+                                BufferedImage.TYPE_4BYTE_ABGR,
+                                BufferedImage.TYPE_BYTE_GRAY }) {
+      BufferedImage expected = new BufferedImage(23, 19, type);
+      for (int y = 0; y < 19; y++) {
+        for (int x = 0; x < 23; x++) {
+          expected.setRGB(x, y, (x * 11 << 24) | (x * 10 << 16) | (y * 13 << 8) | (x ^ y));
+        }
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      Assert.assertTrue(ImageIO.write(expected, "tiff", bytes));
+
+      PImage image = PImage.loadTIFF(bytes.toByteArray());
+      Assert.assertNotNull(image);
+      for (int y = 0; y < 19; y++) {
+        for (int x = 0; x < 23; x++) {
+          int pixel = image.pixels[y * 23 + x];
+          if (type == BufferedImage.TYPE_BYTE_GRAY) {
+            Assert.assertEquals(expected.getRaster().getSample(x, y, 0), pixel & 0xff);
+          } else {
+            Assert.assertEquals(expected.getRGB(x, y), pixel);
+          }
+        }
+      }
+    }
+  }
+
+
+  @Test
+  public void testUnsupportedTIFF() {
+    Assert.assertNull(PImage.loadTIFF(new byte[] { 'I', 'I', 0, 0 }));
+    Assert.assertNull(PImage.loadTIFF(new byte[] { 'G', 'I', 'F', '8', '9', 'a', 0, 0 }));
+  }
+
+}
@@ -0,0 +1,98 @@
+package processing.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PMatrixTest {
+
+  private static PMatrix3D createMatrix3D() {
+    PMatrix3D m = new PMatrix3D();
+    m.translate(1, 2, 3);
+    m.rotateY(0.5f);
+    m.scale(2, 3, 4);
+    m.m30 = 0.25f;
+    return m;
+  }
+
+
+  private static float[] createData(int count, int stride) {
+    float[] data = new float[count * stride + 1];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (i % 97) * 0.5f - 20;
+    }
+    return data;
+  }
+
+
+  @Test
+  public void testMultAll3D() {
+    PMatrix3D m = createMatrix3D();
+    int count = 1000;
+    int stride = 5;
+    float[] src = createData(count, stride);
+    float[] dst = new float[src.length];
+    m.multAll(src, 1, dst, 1, count, stride);
+    float[] homogeneous = src.clone();
+    m.multAllHomogeneous(homogeneous, 1, homogeneous, 1, count, stride);
+
+    float[] in = new float[3];
+    float[] in4 = new float[4];
+    float[] out = new float[3];
+    float[] out4 = new float[4];
+    for (int i = 0; i < count; i++) {
+      int index = 1 + i * stride;
+      System.arraycopy(src, index, in, 0, 3);
+      System.arraycopy(src, index, in4, 0, 4);
+      m.mult(in, out);
+      m.mult(in4, out4);
+      for (int j = 0; j < 3; j++) {
+        Assert.assertEquals(out[j], dst[index + j], 0);
+      }
+      for (int j = 0; j < 4; j++) {
+        Assert.assertEquals(out4[j], homogeneous[index + j], 0);
+      }
+      Assert.assertEquals(0, dst[index + 3], 0);
+    }
+  }
+
+
+  @Test
+  public void testMultAllDirections() {
+    PMatrix3D m = createMatrix3D();
+    float[] normals = { 1, 0, 0, 0, 1, 0 };
+    m.multAllDirections(normals, 0, normals, 0, 2, 3);
+    Assert.assertEquals(m.m00, normals[0], 0);
+    Assert.assertEquals(m.m21, normals[5], 0);
+
+    PMatrix2D m2 = new PMatrix2D();
+    m2.translate(10, 20);
+    m2.rotate(0.25f);
+    float[] points = { 3, 4, 5, 6 };
+    float[] directions = points.clone();
+    m2.multAll(points, 0, points, 0, 2, 2);
+    m2.multAllDirections(directions, 0, directions, 0, 2, 2);
+    Assert.assertEquals(m2.multX(5, 6), points[2], 0);
+    Assert.assertEquals(m2.multY(5, 6), points[3], 0);
+    Assert.assertEquals(m2.multX(5, 6) - m2.m02, directions[2], 1e-5f);
+  }
+
+
+  @Test
+  public void testParallel() {
+    PMatrix3D m = createMatrix3D();
+    int count = 8 * MatrixBatch.PARALLEL_MIN_COUNT + 3;
+    float[] data = createData(count, 4);
+    float[] expected = data.clone();
+    m.multAll(data, 0, data, 0, count, 4);
+    m.multPoints(expected, 0, expected, 0, count, 4);
+    Assert.assertArrayEquals(expected, data, 0);
+  }
+
+
+  @Test(expected = ArrayIndexOutOfBoundsException.class)
+  public void testTooShort() {
+    new PMatrix2D().multAll(new float[10], 0, new float[10], 0, 4, 3);
+  }
+
+}
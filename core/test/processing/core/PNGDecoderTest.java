@@ -0,0 +1,106 @@
+package processing.core;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PNGDecoderTest {
+
+  private static BufferedImage createImage(int type) {
+    BufferedImage image = new BufferedImage(29, 17, type);
+    Random random = new Random(type);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        int alpha = (x == 3) ? 0 : (x * 9) & 0xff;
+        int rgb = (x * 8 << 16) | (y * 15 << 8) | random.nextInt(256);
+        image.setRGB(x, y, (alpha << 24) | rgb);
+      }
+    }
+    return image;
+  }
+
+
+  private static byte[] writePNG(BufferedImage image) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Assert.assertTrue(ImageIO.write(image, "png", bytes));
+    return bytes.toByteArray();
+  }
+
+
+  // Pixels decoded by ImageIO and by PNGDecoder from the same file
+  private static void assertSameAsImageIO(byte[] png) throws Exception {
+    BufferedImage expected =
+      ImageIO.read(new java.io.ByteArrayInputStream(png));
+    PImage actual = PNGDecoder.decode(png);
+    Assert.assertEquals(expected.getWidth(), actual.pixelWidth);
+    Assert.assertEquals(expected.getHeight(), actual.pixelHeight);
+    boolean gray = expected.getColorModel().getNumColorComponents() == 1 &&
+      expected.getType() != BufferedImage.TYPE_BYTE_BINARY;
+    for (int y = 0; y < actual.pixelHeight; y++) {
+      for (int x = 0; x < actual.pixelWidth; x++) {
+        int pixel = actual.pixels[y * actual.pixelWidth + x];
+        if (gray) {
+          // getRGB() would convert the gray levels to sRGB
+          int level = expected.getRaster().getSample(x, y, 0);
+          if (expected.getColorModel().getComponentSize(0) == 16) {
+            level >>= 8;
+          }
+          Assert.assertEquals(level, pixel & 0xff);
+        } else {
+          Assert.assertEquals(expected.getRGB(x, y), pixel);
+        }
+      }
+    }
+  }
+
+
+  @Test
+  public void testColorTypes() throws Exception {
+    assertSameAsImageIO(writePNG(createImage(BufferedImage.TYPE_INT_RGB)));
+    assertSameAsImageIO(writePNG(createImage(BufferedImage.TYPE_INT_ARGB)));
+    assertSameAsImageIO(writePNG(createImage(BufferedImage.TYPE_BYTE_GRAY)));
+    assertSameAsImageIO(writePNG(createImage(BufferedImage.TYPE_USHORT_GRAY)));
+    assertSameAsImageIO(writePNG(createImage(BufferedImage.TYPE_BYTE_INDEXED)));
+    assertSameAsImageIO(writePNG(createImage(BufferedImage.TYPE_BYTE_BINARY)));
+  }
+
+
+  @Test
+  public void testFormat() throws Exception {
+    PImage opaque = PNGDecoder.decode(writePNG(createImage(BufferedImage.TYPE_INT_RGB)));
+    Assert.assertEquals(PConstants.RGB, opaque.format);
+    PImage alpha = PNGDecoder.decode(writePNG(createImage(BufferedImage.TYPE_INT_ARGB)));
+    Assert.assertEquals(PConstants.ARGB, alpha.format);
+  }
+
+
+  @Test
+  public void testEncoderRoundTrip() throws Exception {
+    PImage image = new PImage(300, 400, PConstants.ARGB);
+    Random random = new Random(3);
+    for (int i = 0; i < image.pixels.length; i++) {
+      image.pixels[i] = (i % 300 < 150) ? 0xff000000 | i : random.nextInt();
+    }
+    for (int filter = PNGEncoder.FILTER_NONE;
+         filter <= PNGEncoder.FILTER_ADAPTIVE; filter++) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      new PNGEncoder(1, filter).write(image, bytes);
+      PImage decoded = PNGDecoder.decode(bytes.toByteArray());
+      Assert.assertArrayEquals(image.pixels, decoded.pixels);
+    }
+  }
+
+
+  @Test(expected = java.io.IOException.class)
+  public void testTruncated() throws Exception {
+    byte[] png = writePNG(createImage(BufferedImage.TYPE_INT_RGB));
+    PNGDecoder.decode(java.util.Arrays.copyOf(png, png.length / 2));
+  }
+
+}
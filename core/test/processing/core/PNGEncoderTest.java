@@ -0,0 +1,120 @@
+package processing.core;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PNGEncoderTest {
+
+  // Noise on top of gradients, so that the filters have something to do
+  private static PImage createImage(int width, int height, int format) {
+    PImage image = new PImage(width, height, format);
+    Random random = new Random(width * 31 + height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int noise = random.nextInt(16);
+        int a = (format == PConstants.ARGB) ? (x + noise) & 0xff : 0xff;
+        int r = (x * 255 / width + noise) & 0xff;
+        int g = (y * 255 / height) & 0xff;
+        int b = random.nextInt(256);
+        image.pixels[y * width + x] = (format == PConstants.ALPHA) ?
+          r : (a << 24) | (r << 16) | (g << 8) | b;
+      }
+    }
+    return image;
+  }
+
+
+  private static BufferedImage encodeAndDecode(PNGEncoder encoder,
+                                               PImage image) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    encoder.write(image, bytes);
+    return ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+  }
+
+
+  private static void assertSamePixels(PImage expected, BufferedImage actual) {
+    Assert.assertEquals(expected.pixelWidth, actual.getWidth());
+    Assert.assertEquals(expected.pixelHeight, actual.getHeight());
+    for (int y = 0; y < expected.pixelHeight; y++) {
+      for (int x = 0; x < expected.pixelWidth; x++) {
+        int pixel = expected.pixels[y * expected.pixelWidth + x];
+        int argb = actual.getRGB(x, y);
+        if (expected.format == PConstants.ALPHA) {
+          // getRGB() would convert the gray levels to sRGB
+          Assert.assertEquals(pixel & 0xff, actual.getRaster().getSample(x, y, 0));
+        } else if (expected.format == PConstants.RGB) {
+          Assert.assertEquals(pixel | 0xff000000, argb);
+        } else {
+          Assert.assertEquals(pixel, argb);
+        }
+      }
+    }
+  }
+
+
+  @Test
+  public void testFilters() throws Exception {
+    PImage image = createImage(37, 23, PConstants.RGB);
+    for (int filter = PNGEncoder.FILTER_NONE;
+         filter <= PNGEncoder.FILTER_ADAPTIVE; filter++) {
+      PNGEncoder encoder = new PNGEncoder(6, filter);
+      assertSamePixels(image, encodeAndDecode(encoder, image));
+    }
+  }
+
+
+  @Test
+  public void testFormats() throws Exception {
+    PNGEncoder encoder = new PNGEncoder();
+    for (int format : new int[] { PConstants.RGB, PConstants.ARGB, PConstants.ALPHA }) {
+      PImage image = createImage(20, 10, format);
+      assertSamePixels(image, encodeAndDecode(encoder, image));
+    }
+  }
+
+
+  @Test
+  public void testBlocks() throws Exception {
+    // Several blocks of rows, compressed separately and joined
+    PImage image = createImage(500, 600, PConstants.ARGB);
+    assertSamePixels(image, encodeAndDecode(new PNGEncoder(1, PNGEncoder.FILTER_PAETH), image));
+    assertSamePixels(image, encodeAndDecode(new PNGEncoder(0, PNGEncoder.FILTER_NONE), image));
+  }
+
+
+  @Test
+  public void testAdler32Combine() {
+    byte[] data = new byte[100000];
+    new Random(1).nextBytes(data);
+    Adler32 whole = new Adler32();
+    whole.update(data);
+    Adler32 first = new Adler32();
+    first.update(data, 0, 70000);
+    Adler32 second = new Adler32();
+    second.update(data, 70000, 30000);
+    Assert.assertEquals(whole.getValue(),
+                        PNGEncoder.adler32Combine(first.getValue(),
+                                                  second.getValue(), 30000));
+  }
+
+
+  @Test
+  public void testSave() throws Exception {
+    File file = File.createTempFile("encoder", ".png");
+    file.deleteOnExit();
+    PImage image = createImage(64, 64, PConstants.RGB);
+    Assert.assertTrue(image.save(file.getAbsolutePath()));
+    assertSamePixels(image, ImageIO.read(file));
+  }
+
+}
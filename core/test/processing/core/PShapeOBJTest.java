@@ -0,0 +1,152 @@
+package processing.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+public class PShapeOBJTest {
+
+  private static PShapeOBJ load(String obj) {
+    return new PShapeOBJ(null, new BufferedReader(new StringReader(obj)));
+  }
+
+
+  @Test
+  public void testFaces() {
+    PShapeOBJ shape = load(
+      "# comment\n" +
+      "v 0 0 0\n" +
+      "v 1.5 0 0\r\n" +
+      "v 1.5 2 -1e-1\n" +
+      "v 0 2 0\n" +
+      "vt 0 0\n" +
+      "vt 1 0.25\n" +
+      "vn 0 0 1\n" +
+      "f 1/1/1 2/2/1 3/2/1\n" +
+      "f 1//1 3//1 4//1 2//1\n" +
+      "f 1 2 3 4 \\\n" +
+      "  1\n");
+    Assert.assertEquals(PConstants.GROUP, shape.getFamily());
+    Assert.assertEquals(3, shape.getChildCount());
+
+    PShape tri = shape.getChild(0);
+    Assert.assertEquals(PConstants.TRIANGLES, tri.getKind());
+    Assert.assertEquals(1.5f, tri.getVertexX(2), 0);
+    Assert.assertEquals(2, tri.getVertexY(2), 0);
+    Assert.assertEquals(-0.1f, tri.getVertexZ(2), 0);
+    Assert.assertEquals(1, tri.getTextureU(1), 0);
+    Assert.assertEquals(0.75f, tri.getTextureV(1), 0);
+    Assert.assertEquals(1, tri.getNormalZ(0), 0);
+
+    PShape quad = shape.getChild(1);
+    Assert.assertEquals(PConstants.QUADS, quad.getKind());
+    Assert.assertEquals(0, quad.getTextureU(0), 0);
+    Assert.assertEquals(1, quad.getNormalZ(3), 0);
+
+    // The last face continues on the next line
+    Assert.assertEquals(PConstants.POLYGON, shape.getChild(2).getKind());
+    Assert.assertEquals(5, shape.getChild(2).getVertexCount());
+  }
+
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testDeprecatedVertices() {
+    PShape face = load("v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3\n").getChild(0);
+    Assert.assertEquals(3, face.vertices.length);
+    Assert.assertEquals(1, face.vertices[1][PConstants.X], 0);
+    face.setVertex(2, 0, 2, 3);
+    Assert.assertEquals(3, face.vertices[2][PConstants.Z], 0);
+  }
+
+
+  @Test
+  public void testSecondIndex() {
+    // Without texture coordinates, the second index is the normal
+    PShapeOBJ normals = load(
+      "v 0 0 0\nv 1 0 0\nv 0 1 0\nvn 0 1 0\nvn 0 0 1\nf 1/2 2/2 3/1\n");
+    PShape face = normals.getChild(0);
+    Assert.assertEquals(1, face.getNormalZ(0), 0);
+    Assert.assertEquals(1, face.getNormalY(2), 0);
+
+    PShapeOBJ texcoords = load(
+      "v 0 0 0\nv 1 0 0\nv 0 1 0\nvt 0.5 0.5\nvn 0 0 1\nf 1/1 2/1 3/1\n");
+    face = texcoords.getChild(0);
+    Assert.assertEquals(0.5f, face.getTextureU(0), 0);
+    Assert.assertEquals(0, face.getNormalZ(0), 0);
+  }
+
+
+  @Test
+  public void testSecondIndexBeforeTexcoords() {
+    // A vt after a face doesn't make its second index a texture coordinate
+    String obj = "v 0 0 0\nv 1 0 0\nv 0 1 0\nvn 0 0 1\nf 1/1 2/1 3/1\n" +
+                 "vt 0.5 0.5\nf 1/1 2/1 3/1\n";
+    PShapeOBJ shape = load(obj);
+    PShape face = shape.getChild(0);
+    Assert.assertEquals(1, face.getNormalZ(0), 0);
+    Assert.assertEquals(0, face.getTextureU(0), 0);
+    face = shape.getChild(1);
+    Assert.assertEquals(0.5f, face.getTextureU(0), 0);
+    Assert.assertEquals(0, face.getNormalZ(0), 0);
+
+    // Also when the vt is in an earlier chunk than the face
+    byte[] data = obj.getBytes(StandardCharsets.US_ASCII);
+    int split = obj.indexOf("vt");
+    PShapeOBJ.OBJChunk[] chunks = {
+      new PShapeOBJ.OBJChunk(data, 0, split),
+      new PShapeOBJ.OBJChunk(data, split, data.length)
+    };
+    for (PShapeOBJ.OBJChunk chunk : chunks) chunk.parse();
+    PShapeOBJ.OBJGeometry geometry = new PShapeOBJ.OBJGeometry();
+    PShapeOBJ.mergeChunks(null, "", chunks, geometry,
+                          new ArrayList<PShapeOBJ.OBJMaterial>());
+    Assert.assertEquals(2, geometry.faceCount);
+    Assert.assertArrayEquals(new int[] { 1, 0, 1, 2, 0, 1, 3, 0, 1,
+                                         1, 1, 0, 2, 1, 0, 3, 1, 0 },
+                             Arrays.copyOf(geometry.corners, 18));
+  }
+
+
+  @Test
+  public void testParallelChunks() {
+    // A grid large enough to be split in several chunks
+    int size = 300;
+    StringBuilder obj = new StringBuilder();
+    for (int y = 0; y <= size; y++) {
+      for (int x = 0; x <= size; x++) {
+        obj.append("v ").append(x).append(' ').append(y).append(" 0.125\n");
+      }
+    }
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        int i = y * (size + 1) + x + 1;
+        obj.append("f ").append(i).append(' ').append(i + 1).append(' ')
+           .append(i + size + 2).append(' ').append(i + size + 1).append('\n');
+      }
+    }
+    byte[] data = obj.toString().getBytes(StandardCharsets.US_ASCII);
+    Assert.assertTrue(2 * PShapeOBJ.PARALLEL_MIN_SIZE < data.length);
+
+    PShapeOBJ shape = new PShapeOBJ(null, data, "");
+    Assert.assertEquals(size * size, shape.getChildCount());
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        PShape face = shape.getChild(y * size + x);
+        Assert.assertEquals(4, face.getVertexCount());
+        Assert.assertEquals(x, face.getVertexX(0), 0);
+        Assert.assertEquals(y, face.getVertexY(0), 0);
+        Assert.assertEquals(x, face.getVertexX(3), 0);
+        Assert.assertEquals(y + 1, face.getVertexY(3), 0);
+        Assert.assertEquals(0.125f, face.getVertexZ(2), 0);
+      }
+    }
+  }
+
+}
@@ -29,4 +29,102 @@ public class PShapeSVGTest {
     }
   }
 
+
+  private static PShapeSVG parsePath(String d) {
+    try {
+      XML xml = XML.parse("<svg><path d=\"" + d + "\"/></svg>");
+      return (PShapeSVG) new PShapeSVG(xml).getChild(0);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  private static void assertVertices(PShape shape, float... coords) {
+    Assert.assertEquals(coords.length / 2, shape.getVertexCount());
+    for (int i = 0; i < coords.length / 2; i++) {
+      Assert.assertEquals(coords[2 * i], shape.getVertexX(i), 1e-5f);
+      Assert.assertEquals(coords[2 * i + 1], shape.getVertexY(i), 1e-5f);
+    }
+  }
+
+
+  @Test
+  public void testImplicitSeparators() {
+    assertVertices(parsePath("M1.5.5L-1-2.25"),
+                   1.5f, 0.5f, -1, -2.25f);
+    Assert.assertEquals(0.75f, parsePath("M0 0 .75 .5").getVertexX(1), 0);
+  }
+
+
+  @Test
+  public void testExponents() {
+    assertVertices(parsePath("M2.5e2,1E-2 L-1e+1-3e0"),
+                   250, 0.01f, -10, -3);
+    Assert.assertEquals(2.10e-9f, parsePath("M2.10e-9 0").getVertexX(0), 0);
+  }
+
+
+  @Test
+  public void testRelativeAndImplicitCommands() {
+    // After a moveto, extra pairs are treated as linetos
+    PShapeSVG shape = parsePath("m10 10 5 0 0 5h-5v-5z m1 1 l2,2");
+    assertVertices(shape,
+                   10, 10, 15, 10, 15, 15, 10, 15, 10, 10, 11, 11, 13, 13);
+    int[] codes = shape.getVertexCodes();
+    Assert.assertEquals(PConstants.BREAK, codes[5]);
+    Assert.assertTrue(shape.isClosed());
+  }
+
+
+  @Test
+  public void testCurves() {
+    PShapeSVG shape = parsePath("M0,0C0,1 1,1 1,0S2,-1 2,0Q3,1 4,0T6,0");
+    assertVertices(shape,
+                   0, 0, 0, 1, 1, 1, 1, 0, 1, -1, 2, -1, 2, 0,
+                   3, 1, 4, 0, 5, -1, 6, 0);
+  }
+
+
+  @Test
+  public void testArcFlags() {
+    // Flags don't need to be separated from the following numbers
+    PShapeSVG compact = parsePath("M0 0a5 5 0 0110 0");
+    PShapeSVG spaced = parsePath("M0 0 a 5 5 0 0 1 10 0");
+    Assert.assertEquals(spaced.getVertexCount(), compact.getVertexCount());
+    for (int i = 0; i < spaced.getVertexCount(); i++) {
+      Assert.assertEquals(spaced.getVertexX(i), compact.getVertexX(i), 0);
+      Assert.assertEquals(spaced.getVertexY(i), compact.getVertexY(i), 0);
+    }
+    int last = spaced.getVertexCount() - 1;
+    Assert.assertEquals(10, spaced.getVertexX(last), 1e-5f);
+    Assert.assertEquals(0, spaced.getVertexY(last), 1e-5f);
+  }
+
+
+  @Test
+  public void testLargePath() {
+    StringBuilder d = new StringBuilder("M0,0");
+    int count = 100000;
+    for (int i = 1; i <= count; i++) {
+      d.append('l').append(i % 7 - 3.125f).append(',').append(0.5f);
+    }
+    PShapeSVG shape = parsePath(d.toString());
+    Assert.assertEquals(count + 1, shape.getVertexCount());
+    Assert.assertEquals(0.5f * count, shape.getVertexY(count), 1e-2f);
+  }
+
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testDeprecatedVertices() {
+    // Code that still reads the old array finds the loaded vertices there
+    PShape path = parsePath("M 1 2 L 3 4 L 5 6");
+    Assert.assertEquals(3, path.vertices.length);
+    Assert.assertArrayEquals(new float[] { 3, 4 }, path.vertices[1], 0);
+
+    path.setVertex(1, 30, 40);
+    Assert.assertArrayEquals(new float[] { 30, 40 }, path.vertices[1], 0);
+    Assert.assertEquals(40, path.getVertexY(1), 0);
+  }
 }
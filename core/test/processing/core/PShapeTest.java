@@ -0,0 +1,295 @@
+package processing.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PShapeTest {
+
+  private static PShape createPath() {
+    PShape shape = new PShape(PShape.PATH);
+    shape.beginShape();
+    shape.vertex(0, 0);
+    shape.vertex(10, 0);
+    shape.bezierVertex(10, 5, 5, 10, 0, 10);
+    shape.endShape(PConstants.CLOSE);
+    return shape;
+  }
+
+
+  @Test
+  public void testFlatVertices() {
+    PShape shape = createPath();
+    Assert.assertEquals(5, shape.getVertexCount());
+    Assert.assertEquals(2, shape.getVertexStride());
+
+    float[] data = shape.getVertices(null);
+    Assert.assertArrayEquals(new float[] {
+      0, 0, 10, 0, 10, 5, 5, 10, 0, 10
+    }, data, 0);
+
+    PVector vertex = shape.getVertex(3, new PVector(1, 1, 1));
+    Assert.assertEquals(5, vertex.x, 0);
+    Assert.assertEquals(10, vertex.y, 0);
+    Assert.assertEquals(0, vertex.z, 0);
+  }
+
+
+  @Test
+  public void testSetVertices() {
+    PShape shape = createPath();
+    float[] data = shape.getVertices(new float[100]);
+    for (int i = 0; i < 2 * shape.getVertexCount(); i++) {
+      data[i] *= 2;
+    }
+    shape.setVertices(data);
+    Assert.assertEquals(20, shape.getVertexX(1), 0);
+    Assert.assertEquals(20, shape.getVertexY(4), 0);
+
+    try {
+      shape.setVertices(new float[3]);
+      Assert.fail("setVertices() should reject arrays that are too short");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+
+  @Test
+  public void testSetPath() {
+    PShape shape = new PShape(PShape.PATH);
+    shape.setPath(3, new float[][] {
+      { 1, 2, 3 }, { 4, 5, 6 }, { 7, 8, 9 }
+    });
+    Assert.assertEquals(3, shape.getVertexStride());
+    Assert.assertEquals(6, shape.getVertexZ(1), 0);
+
+    PShape copy = new PShape(PShape.PATH);
+    PShape.copyPath(shape, copy);
+    Assert.assertArrayEquals(shape.getVertices(null), copy.getVertices(null), 0);
+  }
+
+
+  @Test
+  public void testFieldsOutsideStride() {
+    PShape shape = createPath();
+    shape.setVertex(1, 3, 4, 0);
+    Assert.assertEquals(3, shape.getVertexX(1), 0);
+
+    try {
+      shape.setVertex(1, 3, 4, 5);
+      Assert.fail("z can't be set on a 2D path");
+    } catch (IllegalArgumentException e) {
+      // expected, same as with a PVector
+    }
+    try {
+      shape.setVertex(1, new PVector(3, 4, 5));
+      Assert.fail("z can't be set on a 2D path");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      shape.getVertexX(shape.getVertexCount());
+      Assert.fail("there is no vertex past the last one");
+    } catch (ArrayIndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testDeprecatedVertices() {
+    // a subclass filling in the vertices the old way
+    PShape shape = new PShape(PShape.PATH) {
+      {
+        vertices = new float[][] { { 1, 2 }, { 3, 4 }, { 5, 6 } };
+        vertexCount = 3;
+      }
+    };
+    Assert.assertEquals(2, shape.getVertexStride());
+    Assert.assertEquals(4, shape.getVertexY(1), 0);
+
+    PShape copy = new PShape(PShape.PATH);
+    PShape.copyPath(shape, copy);
+    Assert.assertEquals(5, copy.getVertexX(2), 0);
+
+    // Edits in place are only seen once the field is set again
+    shape.vertices[1][1] = 40;
+    Assert.assertEquals(4, shape.getVertexY(1), 0);
+    shape.vertices = shape.vertices.clone();
+    Assert.assertEquals(40, shape.getVertexY(1), 0);
+
+    // while setVertex() and setVertices() also update the arrays
+    shape.setVertex(2, 50, 60);
+    Assert.assertEquals(60, shape.vertices[2][1], 0);
+    shape.setVertices(new float[] { 7, 8, 9, 10, 11, 12 });
+    Assert.assertEquals(10, shape.vertices[1][1], 0);
+    Assert.assertEquals(11, shape.getVertexX(2), 0);
+  }
+
+
+  private static PShape createSquare(float x, float y, float size) {
+    PShape shape = new PShape(PShape.PATH);
+    shape.beginShape();
+    shape.vertex(x, y);
+    shape.vertex(x + size, y);
+    shape.vertex(x + size, y + size);
+    shape.vertex(x, y + size);
+    shape.endShape(PConstants.CLOSE);
+    return shape;
+  }
+
+
+  private static PShape createGrid(int size) {
+    PShape group = new PShape(PConstants.GROUP);
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        group.addChild(createSquare(10 * x, 10 * y, 10));
+      }
+    }
+    return group;
+  }
+
+
+  @Test
+  public void testBounds() {
+    PShape group = new PShape(PConstants.GROUP);
+    PShape square = createSquare(10, 20, 5);
+    group.addChild(square);
+    Assert.assertArrayEquals(new float[] { 10, 20, 15, 25 },
+                             group.getBounds(null), 0);
+
+    // Edits to the children reach the cached bounds of the group
+    square.setVertex(2, 30, 40);
+    Assert.assertArrayEquals(new float[] { 10, 20, 30, 40 },
+                             group.getBounds(null), 0);
+
+    group.scale(2);
+    group.translate(1, 0);
+    Assert.assertArrayEquals(new float[] { 22, 40, 62, 80 },
+                             group.getBounds(null), 1e-4f);
+
+    square.setStroke(true);
+    square.setStrokeWeight(2);
+    square.setStrokeJoin(PConstants.ROUND);
+    Assert.assertArrayEquals(new float[] { 18, 36, 66, 84 },
+                             group.getBounds(null), 1e-4f);
+
+    // Nothing is known about shapes rotated out of the plane
+    square.rotateX(0.5f);
+    Assert.assertEquals(Float.NEGATIVE_INFINITY, group.getBounds(null)[0], 0);
+  }
+
+
+  @Test
+  public void testGetChildAt() {
+    PShape grid = createGrid(50);
+    Assert.assertSame(grid.getChild(0), grid.getChildAt(5, 5));
+    Assert.assertSame(grid.getChild(50 * 20 + 31), grid.getChildAt(315, 205));
+    Assert.assertNull(grid.getChildAt(-5, 5));
+    Assert.assertTrue(grid.contains(499, 499));
+    Assert.assertFalse(grid.contains(501, 499));
+
+    // The child drawn last is on top
+    PShape top = createSquare(0, 0, 100);
+    grid.addChild(top);
+    Assert.assertSame(top, grid.getChildAt(5, 5));
+    Assert.assertSame(grid.getChild(50 * 20 + 31), grid.getChildAt(315, 205));
+
+    // Moving a child updates the index
+    top.translate(200, 0);
+    Assert.assertSame(grid.getChild(0), grid.getChildAt(5, 5));
+    Assert.assertSame(top, grid.getChildAt(205, 5));
+
+    // Points are given in the coordinates the group is drawn in
+    grid.scale(0.5f);
+    Assert.assertSame(grid.getChild(50 * 20 + 31), grid.getChildAt(157, 102));
+    Assert.assertFalse(grid.contains(300, 200));
+  }
+
+
+  // Counts the shapes drawn, and only shows the area from 0, 0 to 100, 100
+  static class CountingGraphics extends PGraphics {
+    int shapes;
+
+    @Override
+    protected boolean getVisibleBounds(float[] bounds) {
+      bounds[0] = 0;
+      bounds[1] = 0;
+      bounds[2] = 100;
+      bounds[3] = 100;
+      return true;
+    }
+
+    @Override
+    public void beginShape(int kind) {
+      shapes++;
+    }
+
+    @Override
+    public void vertex(float x, float y) { }
+
+    @Override
+    public void endShape(int mode) { }
+  }
+
+
+  @Test
+  public void testCulling() {
+    PShape grid = createGrid(50);
+    CountingGraphics g = new CountingGraphics();
+    g.noStroke();
+    grid.draw(g);
+    Assert.assertEquals(11 * 11, g.shapes);
+
+    // Without their own style, the shapes are drawn with the stroke of the
+    // renderer, which can reach inside the visible area
+    grid.disableStyle();
+    g.shapes = 0;
+    g.stroke(0);
+    g.strokeJoin(PConstants.ROUND);
+    g.strokeWeight(15);
+    grid.draw(g);
+    Assert.assertEquals(12 * 12, g.shapes);
+  }
+
+
+  @Test
+  public void testNestedCulling() throws Exception {
+    // Nine groups of 5 x 5 squares, side by side, 60 pixels apart
+    PShape groups = new PShape(PConstants.GROUP);
+    for (int i = 0; i < 9; i++) {
+      PShape group = new PShape(PConstants.GROUP);
+      for (int y = 0; y < 5; y++) {
+        for (int x = 0; x < 5; x++) {
+          group.addChild(createSquare(60 * i + 10 * x, 10 * y, 10));
+        }
+      }
+      groups.addChild(group);
+    }
+
+    // The first two groups are visible, and every square in them
+    Thread[] threads = new Thread[4];
+    int[] counts = new int[threads.length];
+    for (int t = 0; t < threads.length; t++) {
+      int index = t;
+      threads[t] = new Thread(() -> {
+        CountingGraphics g = new CountingGraphics();
+        g.noStroke();
+        for (int i = 0; i < 200; i++) {
+          g.shapes = 0;
+          groups.draw(g);
+          if (g.shapes != 50) break;
+        }
+        counts[index] = g.shapes;
+      });
+      threads[t].start();
+    }
+    for (int t = 0; t < threads.length; t++) {
+      threads[t].join();
+      Assert.assertEquals(50, counts[t]);
+    }
+  }
+
+}
@@ -0,0 +1,111 @@
+package processing.core;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PSurfaceHeadlessTest {
+
+  public static class ClockSketch extends PApplet {
+    List<Integer> times = new ArrayList<>();
+    int setupFrameCount = -1;
+
+    @Override
+    public void settings() {
+      size(40, 30);
+    }
+
+    @Override
+    public void setup() {
+      frameRate(25);
+      setupFrameCount = frameCount;
+    }
+
+    @Override
+    public void draw() {
+      background(frameCount * 10);
+      times.add(millis());
+    }
+  }
+
+
+  public static class StillSketch extends PApplet {
+    int draws;
+
+    @Override
+    public void settings() {
+      size(10, 10);
+    }
+
+    @Override
+    public void setup() {
+      noLoop();
+    }
+
+    @Override
+    public void draw() {
+      draws++;
+    }
+  }
+
+
+  @Test
+  public void testFixedClock() {
+    ClockSketch sketch = new ClockSketch();
+    PApplet.runHeadless(sketch, 5);
+
+    Assert.assertEquals(0, sketch.setupFrameCount);
+    Assert.assertEquals(List.of(40, 80, 120, 160, 200), sketch.times);
+    Assert.assertTrue(sketch.finished);
+  }
+
+
+  @Test
+  public void testStep() {
+    ClockSketch sketch = new ClockSketch();
+    PSurfaceHeadless surface = PApplet.initHeadless(sketch);
+    surface.setFrameLimit(2);
+
+    Assert.assertTrue(surface.step());  // setup()
+    Assert.assertTrue(sketch.times.isEmpty());
+    Assert.assertTrue(surface.step());
+    Assert.assertTrue(surface.step());
+    Assert.assertFalse(surface.step());
+    Assert.assertEquals(List.of(40, 80), sketch.times);
+  }
+
+
+  @Test
+  public void testStopsWithoutLoop() {
+    StillSketch sketch = new StillSketch();
+    PApplet.runHeadless(sketch, 0);
+    Assert.assertEquals(1, sketch.draws);
+  }
+
+
+  @Test
+  public void testFrameExport() throws Exception {
+    File folder = Files.createTempDirectory("headless").toFile();
+    ClockSketch sketch = new ClockSketch();
+    PSurfaceHeadless surface = PApplet.initHeadless(sketch);
+    surface.setFrameLimit(3);
+    surface.setFrameExport(new File(folder, "frame-###.png").getAbsolutePath());
+    surface.run();
+
+    for (int frame = 1; frame <= 3; frame++) {
+      File file = new File(folder, "frame-00" + frame + ".png");
+      Assert.assertTrue(file.getName(), file.exists());
+      PImage image = PNGDecoder.decode(Files.readAllBytes(file.toPath()));
+      Assert.assertEquals(40, image.pixelWidth);
+      Assert.assertEquals(0xff000000 | (frame * 0x0a0a0a), image.pixels[0]);
+      file.delete();
+    }
+    folder.delete();
+  }
+
+}
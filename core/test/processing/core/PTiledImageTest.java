@@ -0,0 +1,95 @@
+package processing.core;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PTiledImageTest {
+
+  private static int pattern(int x, int y) {
+    return 0xff000000 | (x << 12) | y;
+  }
+
+
+  // A small image with small tiles, so that only a few fit in the cache
+  private static PTiledImage createImage(File file) throws Exception {
+    PTiledImage image =
+      new PTiledImage(1000, 700, PConstants.ARGB, 64, 4, file);
+    PImage strip = new PImage(1000, 10, PConstants.ARGB);
+    for (int y = 0; y < 700; y += 10) {
+      for (int i = 0; i < strip.pixels.length; i++) {
+        strip.pixels[i] = pattern(i % 1000, y + i / 1000);
+      }
+      image.set(0, y, strip);
+    }
+    return image;
+  }
+
+
+  @Test
+  public void testGetSet() throws Exception {
+    PTiledImage image = createImage(null);
+    Assert.assertEquals(16, image.getTileCols());
+    Assert.assertEquals(11, image.getTileRows());
+    Assert.assertEquals(pattern(0, 0), image.get(0, 0));
+    Assert.assertEquals(pattern(999, 699), image.get(999, 699));
+    Assert.assertEquals(pattern(500, 321), image.get(500, 321));
+    Assert.assertEquals(0, image.get(1000, 0));
+
+    // A region across several tiles, hanging off the right edge
+    PImage region = image.get(950, 100, 100, 100);
+    Assert.assertEquals(pattern(950, 100), region.pixels[0]);
+    Assert.assertEquals(pattern(999, 199), region.pixels[99 * 100 + 49]);
+    Assert.assertEquals(0, region.pixels[99 * 100 + 50]);
+
+    image.set(63, 64, 0xff123456);
+    Assert.assertEquals(0xff123456, image.get(63, 64));
+    image.dispose();
+  }
+
+
+  @Test
+  public void testCopyBlend() throws Exception {
+    PTiledImage image = createImage(null);
+    // copy inside the image, scaled down by two
+    image.copy(0, 0, 200, 200, 600, 400, 100, 100);
+    Assert.assertEquals(pattern(0, 0), image.get(600, 400));
+    Assert.assertEquals(pattern(100, 100) & 0xfff000,
+                        image.get(650, 450) & 0xfff000);
+
+    PImage red = new PImage(10, 10, PConstants.RGB);
+    java.util.Arrays.fill(red.pixels, 0xffff0000);
+    image.blend(red, 0, 0, 10, 10, 60, 60, 10, 10, PConstants.REPLACE);
+    Assert.assertEquals(0xffff0000, image.get(65, 65));
+    Assert.assertEquals(pattern(70, 65), image.get(70, 65));
+    image.dispose();
+  }
+
+
+  @Test
+  public void testProcessTiles() throws Exception {
+    File file = File.createTempFile("tiles", ".raw");
+    PTiledImage image = createImage(file);
+    image.set(10, 10, 0xff000000);  // still in the cache
+    image.processTiles(tile -> {
+      for (int i = 0; i < tile.pixels.length; i++) {
+        tile.pixels[i] ^= 0x00ffffff;
+      }
+    });
+    Assert.assertEquals(0xffffffff, image.get(10, 10));
+    Assert.assertEquals(pattern(999, 699) ^ 0x00ffffff, image.get(999, 699));
+    Assert.assertEquals(pattern(333, 444) ^ 0x00ffffff, image.get(333, 444));
+
+    try {
+      image.loadPixels();
+      Assert.fail("loadPixels() should not be supported");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    image.dispose();
+    Assert.assertFalse(file.exists());
+  }
+
+}
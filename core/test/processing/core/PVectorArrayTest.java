@@ -0,0 +1,88 @@
+package processing.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PVectorArrayTest {
+
+  private static PVectorArray createArray(int count) {
+    PVectorArray array = new PVectorArray();
+    for (int i = 0; i < count; i++) {
+      array.append(i % 17 - 8, i % 5, -(i % 11));
+    }
+    return array;
+  }
+
+
+  @Test
+  public void testList() {
+    PVectorArray array = new PVectorArray(1);
+    array.append(1, 2, 3);
+    array.append(4, 5);
+    array.append(new PVector(6, 7, 8));
+    Assert.assertEquals(3, array.size());
+    Assert.assertEquals(new PVector(4, 5, 0), array.get(1, null));
+
+    array.removeFast(0);
+    Assert.assertEquals(2, array.size());
+    Assert.assertEquals(new PVector(6, 7, 8), array.get(0, new PVector()));
+
+    try {
+      array.get(2, null);
+      Assert.fail("get() should reject indices past the end");
+    } catch (ArrayIndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+
+  @Test
+  public void testBulk() {
+    // Long enough to be updated in parallel
+    int count = 4 * PVectorArray.PARALLEL_MIN_COUNT + 7;
+    PVectorArray positions = createArray(count);
+    PVectorArray velocities = createArray(count);
+    positions.add(velocities, 0.5f).add(1, 0, 0);
+    velocities.normalize();
+    PVectorArray limited = createArray(count).limit(3);
+
+    PVector expected = new PVector();
+    PVector actual = new PVector();
+    for (int i = 0; i < count; i++) {
+      PVector v = new PVector(i % 17 - 8, i % 5, -(i % 11));
+      PVector.mult(v, 1.5f, expected).add(1, 0, 0);
+      Assert.assertEquals(expected, positions.get(i, actual));
+
+      v.normalize(expected);
+      velocities.get(i, actual);
+      Assert.assertEquals(expected.x, actual.x, 1e-6f);
+      Assert.assertEquals(expected.z, actual.z, 1e-6f);
+
+      Assert.assertEquals(v.copy().limit(3).mag(), limited.mag(i), 1e-5f);
+    }
+  }
+
+
+  @Test
+  public void testDistances() {
+    PVectorArray array = createArray(100);
+    float[] dist = array.dist(1, 2, -3, null);
+    int nearest = array.nearest(1, 2, -3);
+    int[] within = new int[100];
+    int found = array.within(1, 2, -3, 2.5f, within);
+
+    PVector point = new PVector(1, 2, -3);
+    int count = 0;
+    for (int i = 0; i < 100; i++) {
+      float d = array.get(i, null).dist(point);
+      Assert.assertEquals(d, dist[i], 1e-6f);
+      Assert.assertTrue(dist[nearest] <= d);
+      if (d <= 2.5f) {
+        Assert.assertEquals(i, within[count++]);
+      }
+    }
+    Assert.assertEquals(count, found);
+  }
+
+}
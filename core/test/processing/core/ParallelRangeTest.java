@@ -0,0 +1,51 @@
+package processing.core;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ParallelRangeTest {
+
+  @Test
+  public void testChunks() {
+    Assert.assertEquals(1, ParallelRange.chunks(0, 100));
+    Assert.assertEquals(1, ParallelRange.chunks(199, 100));
+    Assert.assertEquals(Math.min(2, ParallelRange.PARALLELISM),
+                        ParallelRange.chunks(200, 100));
+    Assert.assertEquals(ParallelRange.PARALLELISM,
+                        ParallelRange.chunks(Integer.MAX_VALUE, 1));
+  }
+
+
+  @Test
+  public void testSmallRangeInCallingThread() {
+    Thread caller = Thread.currentThread();
+    int[] calls = new int[1];
+    ParallelRange.run(150, 100, (first, last) -> {
+      Assert.assertSame(caller, Thread.currentThread());
+      Assert.assertEquals(0, first);
+      Assert.assertEquals(150, last);
+      calls[0]++;
+    });
+    ParallelRange.run(0, 100, (first, last) -> calls[0]++);
+    Assert.assertEquals(1, calls[0]);
+  }
+
+
+  @Test
+  public void testEveryIndexOnce() {
+    int count = 100 * ParallelRange.PARALLELISM + 7;
+    AtomicIntegerArray visits = new AtomicIntegerArray(count);
+    ParallelRange.run(count, 10, (first, last) -> {
+      Assert.assertTrue(10 <= last - first);
+      for (int i = first; i < last; i++) {
+        visits.incrementAndGet(i);
+      }
+    });
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals(1, visits.get(i));
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package processing.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class SketchRunnerTest {
+
+  public static class CountingSketch extends PApplet {
+    int seed;
+    int draws;
+    String label;
+
+    CountingSketch(int seed) {
+      this.seed = seed;
+    }
+
+    @Override
+    public void settings() {
+      size(16, 16);
+    }
+
+    @Override
+    public void setup() {
+      randomSeed(seed);
+    }
+
+    @Override
+    public void draw() {
+      background(random(255));
+      draws++;
+      label = nf(millis(), 5);
+    }
+  }
+
+
+  public static class ExitingSketch extends PApplet {
+    int draws;
+
+    @Override
+    public void settings() {
+      size(8, 8);
+    }
+
+    @Override
+    public void draw() {
+      if (++draws == 3) exit();
+    }
+  }
+
+
+  public static class FailingSketch extends PApplet {
+    @Override
+    public void settings() {
+      size(8, 8);
+    }
+
+    @Override
+    public void draw() {
+      throw new IllegalStateException("broken sketch");
+    }
+  }
+
+
+  @Test
+  public void testFrameBudgets() throws Exception {
+    SketchRunner runner = new SketchRunner(2);
+    runner.setSliceFrames(3);
+
+    List<SketchRunner.Job> jobs = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      jobs.add(runner.run(new CountingSketch(i), 5 + i * 4));
+    }
+    runner.awaitAll();
+    // Finished jobs are forgotten, so their sketches can be collected
+    synchronized (runner.jobs) {
+      Assert.assertTrue(runner.jobs.isEmpty());
+    }
+
+    for (int i = 0; i < jobs.size(); i++) {
+      SketchRunner.Job job = jobs.get(i);
+      CountingSketch sketch = (CountingSketch) job.getSketch();
+      Assert.assertTrue(job.isDone());
+      Assert.assertNull(job.getError());
+      Assert.assertEquals(5 + i * 4, sketch.draws);
+      Assert.assertEquals(5 + i * 4, job.getFrameCount());
+      // Each sketch runs on its own clock, 60 fps by default
+      long period = 1000000000L / 60;
+      Assert.assertEquals(PApplet.nf((int) (sketch.draws * period / 1000000), 5),
+                          sketch.label);
+    }
+    runner.shutdown();
+  }
+
+
+  @Test
+  public void testSameOutputAsAlone() throws Exception {
+    CountingSketch alone = new CountingSketch(7);
+    PApplet.runHeadless(alone, 10);
+
+    SketchRunner runner = new SketchRunner(3);
+    CountingSketch shared = new CountingSketch(7);
+    runner.run(shared, 10);
+    for (int i = 0; i < 4; i++) {
+      runner.run(new CountingSketch(i), 10);
+    }
+    runner.awaitAll();
+    runner.shutdown();
+
+    shared.g.loadPixels();
+    alone.g.loadPixels();
+    Assert.assertArrayEquals(alone.g.pixels, shared.g.pixels);
+  }
+
+
+  @Test
+  public void testExitStopsOnlyThatSketch() throws Exception {
+    SketchRunner runner = new SketchRunner(2);
+    SketchRunner.Job exiting = runner.run(new ExitingSketch(), 100);
+    SketchRunner.Job counting = runner.run(new CountingSketch(1), 30);
+    runner.awaitAll();
+
+    Assert.assertEquals(3, ((ExitingSketch) exiting.getSketch()).draws);
+    Assert.assertTrue(exiting.getSketch().finished);
+    Assert.assertEquals(30, counting.getFrameCount());
+    runner.shutdown();
+  }
+
+
+  @Test
+  public void testErrorsAreKept() throws Exception {
+    SketchRunner runner = new SketchRunner(1);
+    SketchRunner.Job failing = runner.run(new FailingSketch(), 10);
+    SketchRunner.Job counting = runner.run(new CountingSketch(2), 10);
+    runner.awaitAll();
+
+    Assert.assertTrue(failing.getError() instanceof IllegalStateException);
+    Assert.assertNull(counting.getError());
+    Assert.assertEquals(10, counting.getFrameCount());
+    runner.shutdown();
+  }
+
+
+  @Test
+  public void testShutdownCancels() throws Exception {
+    SketchRunner runner = new SketchRunner(1);
+    runner.setSliceFrames(1);
+    SketchRunner.Job endless = runner.run(new CountingSketch(3), 0);
+    while (endless.getFrameCount() < 5) {
+      Thread.sleep(1);
+    }
+    runner.shutdown();
+    Assert.assertTrue(endless.isDone());
+    Assert.assertTrue(endless.getSketch().finished);
+  }
+}
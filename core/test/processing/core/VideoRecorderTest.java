@@ -0,0 +1,198 @@
+package processing.core;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class VideoRecorderTest {
+
+  // Returns the offset of the first atom of this type in [start, stop)
+  private static int findAtom(ByteBuffer data, String type, int start, int stop) {
+    int pos = start;
+    while (pos < stop) {
+      long size = data.getInt(pos) & 0xffffffffL;
+      byte[] name = new byte[4];
+      for (int i = 0; i < 4; i++) name[i] = data.get(pos + 4 + i);
+      if (size == 1) size = data.getLong(pos + 8);
+      if (size < 8) return -1;
+      if (new String(name).equals(type)) return pos;
+      pos += size;
+    }
+    return -1;
+  }
+
+
+  @Test
+  public void testRecording() throws Exception {
+    File file = File.createTempFile("recording", ".mov");
+    file.deleteOnExit();
+
+    int width = 64, height = 48;
+    int[] pixels = new int[width * height];
+    VideoRecorder recorder = new VideoRecorder(file, width, height, 30);
+    int[] colors = { 0xffff0000, 0xff00ff00, 0xff0000ff, 0xffffffff };
+    for (int color : colors) {
+      Arrays.fill(pixels, color);
+      Assert.assertTrue(recorder.addFrame(pixels));
+    }
+    recorder.finish();
+    Assert.assertEquals(4, recorder.getFrameCount());
+    Assert.assertEquals(0, recorder.getDroppedFrames());
+
+    ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    int end = data.capacity();
+    Assert.assertEquals(0, findAtom(data, "ftyp", 0, end));
+    int mdat = findAtom(data, "mdat", 0, end);
+    int moov = findAtom(data, "moov", 0, end);
+    Assert.assertEquals(20, mdat);
+    Assert.assertEquals(moov - mdat, data.getLong(mdat + 8));
+    Assert.assertEquals(end - moov, data.getInt(moov));
+
+    // Walk down to the sample tables
+    int trak = findAtom(data, "trak", moov + 8, end);
+    int mdia = findAtom(data, "mdia", trak + 8, end);
+    int minf = findAtom(data, "minf", mdia + 8, end);
+    int stbl = findAtom(data, "stbl", minf + 8, end);
+    int stsz = findAtom(data, "stsz", stbl + 8, end);
+    int co64 = findAtom(data, "co64", stbl + 8, end);
+    Assert.assertEquals(4, data.getInt(stsz + 16));
+    Assert.assertEquals(4, data.getInt(co64 + 12));
+
+    // The frames are in order, and are complete JPEG images
+    for (int i = 0; i < colors.length; i++) {
+      int size = data.getInt(stsz + 20 + 4 * i);
+      int offset = (int) data.getLong(co64 + 16 + 8 * i);
+      byte[] jpeg = new byte[size];
+      data.position(offset);
+      data.get(jpeg);
+      BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+      Assert.assertEquals(width, image.getWidth());
+      Assert.assertEquals(height, image.getHeight());
+      int rgb = image.getRGB(width / 2, height / 2);
+      for (int shift = 0; shift < 24; shift += 8) {
+        int expected = (colors[i] >> shift) & 0xff;
+        Assert.assertEquals(expected, (rgb >> shift) & 0xff, 8);
+      }
+    }
+
+    try {
+      recorder.addFrame(pixels);
+      Assert.fail("addFrame() should fail once the recording is finished");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+
+  @Test
+  public void testDroppedFrames() throws Exception {
+    File file = File.createTempFile("recording", ".mov");
+    file.deleteOnExit();
+
+    int width = 640, height = 480;
+    int[] pixels = new int[width * height];
+    VideoRecorder recorder =
+      new VideoRecorder(file, width, height, 60, 0.9f, true);
+    int frames = 100;
+    int added = 0;
+    for (int i = 0; i < frames; i++) {
+      Arrays.fill(pixels, i * 0x020202);
+      if (recorder.addFrame(pixels)) added++;
+    }
+    recorder.finish();
+    Assert.assertEquals(added, recorder.getFrameCount());
+    Assert.assertEquals(frames, added + recorder.getDroppedFrames());
+    Assert.assertEquals(0, recorder.getLateFrames());
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      Assert.assertTrue(raf.length() > 36);
+    }
+  }
+
+
+  @Test
+  public void testLongDuration() throws Exception {
+    File file = File.createTempFile("recording", ".mov");
+    file.deleteOnExit();
+
+    // Pretend the movie has as many frames as 30 hours at 60 fps
+    long duration = 30L * 3600 * 60 * VideoRecorder.FRAME_DURATION;
+    VideoRecorder recorder = new VideoRecorder(file, 16, 16, 60) {
+      @Override
+      protected long duration() {
+        return duration;
+      }
+    };
+    recorder.addFrame(new int[16 * 16]);
+    recorder.finish();
+
+    ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    int end = data.capacity();
+    int moov = findAtom(data, "moov", 0, end);
+    int mvhd = findAtom(data, "mvhd", moov + 8, end);
+    Assert.assertEquals(1, data.get(mvhd + 8));
+    Assert.assertEquals(60000, data.getInt(mvhd + 28));
+    Assert.assertEquals(duration, data.getLong(mvhd + 32));
+
+    int trak = findAtom(data, "trak", moov + 8, end);
+    int tkhd = findAtom(data, "tkhd", trak + 8, end);
+    Assert.assertEquals(0x0100000f, data.getInt(tkhd + 8));
+    Assert.assertEquals(1, data.getInt(tkhd + 28));
+    Assert.assertEquals(duration, data.getLong(tkhd + 36));
+
+    int mdia = findAtom(data, "mdia", trak + 8, end);
+    int mdhd = findAtom(data, "mdhd", mdia + 8, end);
+    Assert.assertEquals(1, data.get(mdhd + 8));
+    Assert.assertEquals(duration, data.getLong(mdhd + 32));
+  }
+
+
+  @Test
+  public void testIndexAfterError() throws Exception {
+    File file = File.createTempFile("recording", ".mov");
+    file.deleteOnExit();
+
+    // The third frame fails halfway, after some of it was written
+    VideoRecorder recorder = new VideoRecorder(file, 16, 16, 30) {
+      @Override
+      protected void writeSample(byte[] data) throws IOException {
+        if (sampleCount == 2) {
+          stream.write(data, 0, data.length / 2);
+          throw new IOException("disk full");
+        }
+        super.writeSample(data);
+      }
+    };
+    int[] pixels = new int[16 * 16];
+    for (int i = 0; i < 3; i++) {
+      recorder.addFrame(pixels);
+    }
+    recorder.close();  // doesn't throw, the error was already reported
+
+    ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    int end = data.capacity();
+    int mdat = findAtom(data, "mdat", 0, end);
+    int moov = findAtom(data, "moov", 0, end);
+    Assert.assertEquals(moov - mdat, data.getLong(mdat + 8));
+    Assert.assertEquals(end - moov, data.getInt(moov));
+
+    int trak = findAtom(data, "trak", moov + 8, end);
+    int mdia = findAtom(data, "mdia", trak + 8, end);
+    int minf = findAtom(data, "minf", mdia + 8, end);
+    int stbl = findAtom(data, "stbl", minf + 8, end);
+    int stsz = findAtom(data, "stsz", stbl + 8, end);
+    Assert.assertEquals(2, data.getInt(stsz + 16));
+    Assert.assertTrue(recorder.allEncoders.isEmpty());
+  }
+}
@@ -0,0 +1,130 @@
+package processing.opengl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class BufferRingTest {
+
+  // Fences that record the operations instead of talking to a GL context.
+  private static class FakeFences implements BufferRing.Fences {
+    long next = 1;
+    List<Long> waited = new ArrayList<>();
+    List<Long> deleted = new ArrayList<>();
+
+    @Override
+    public long fence() {
+      return next++;
+    }
+
+    @Override
+    public void waitFence(long sync) {
+      waited.add(sync);
+    }
+
+    @Override
+    public void deleteFence(long sync) {
+      deleted.add(sync);
+    }
+  }
+
+
+  @Test
+  public void testAppendWithoutWaiting() {
+    FakeFences fences = new FakeFences();
+    BufferRing ring = new BufferRing(fences, 100, 300);
+
+    for (int i = 0; i < 4; i++) {
+      Assert.assertTrue(ring.allocate(25, 75));
+      Assert.assertEquals(25 * i, ring.vertexBase);
+      Assert.assertEquals(75 * i, ring.indexBase);
+      ring.fence();
+    }
+    Assert.assertTrue(fences.waited.isEmpty());
+    Assert.assertEquals(4, ring.size);
+  }
+
+
+  @Test
+  public void testWrapWaitsOnOverwrittenRanges() {
+    FakeFences fences = new FakeFences();
+    BufferRing ring = new BufferRing(fences, 100, 300);
+
+    for (int i = 0; i < 3; i++) {
+      ring.allocate(30, 10);
+      ring.fence();
+    }
+
+    // Doesn't fit after the third range, so it goes back to the beginning
+    // and overwrites the first two ranges.
+    Assert.assertTrue(ring.allocate(50, 10));
+    Assert.assertEquals(0, ring.vertexBase);
+    Assert.assertEquals(30, ring.indexBase);
+    Assert.assertEquals(1, fences.waited.size());
+    Assert.assertEquals(2L, (long) fences.waited.get(0));
+    Assert.assertEquals(2, fences.deleted.size());
+    Assert.assertEquals(1, ring.size);
+  }
+
+
+  @Test
+  public void testIndexWrap() {
+    FakeFences fences = new FakeFences();
+    BufferRing ring = new BufferRing(fences, 1000, 100);
+
+    ring.allocate(10, 60);
+    ring.fence();
+
+    // Plenty of vertex space left, but the indices overwrite the first range.
+    Assert.assertTrue(ring.allocate(10, 60));
+    Assert.assertEquals(10, ring.vertexBase);
+    Assert.assertEquals(0, ring.indexBase);
+    Assert.assertEquals(1, fences.waited.size());
+  }
+
+
+  @Test
+  public void testTooLarge() {
+    FakeFences fences = new FakeFences();
+    BufferRing ring = new BufferRing(fences, 100, 100);
+    Assert.assertFalse(ring.allocate(101, 10));
+    Assert.assertFalse(ring.allocate(10, 101));
+  }
+
+
+  @Test
+  public void testPendingLimit() {
+    FakeFences fences = new FakeFences();
+    BufferRing ring = new BufferRing(fences, 100000, 100000);
+
+    for (int i = 0; i <= BufferRing.MAX_PENDING; i++) {
+      ring.allocate(1, 1);
+      ring.fence();
+    }
+    Assert.assertEquals(1, fences.waited.size());
+    Assert.assertEquals(1L, (long) fences.waited.get(0));
+    Assert.assertEquals(BufferRing.MAX_PENDING, ring.size);
+  }
+
+
+  @Test
+  public void testReset() {
+    FakeFences fences = new FakeFences();
+    BufferRing ring = new BufferRing(fences, 100, 100);
+    ring.allocate(10, 10);
+    ring.fence();
+    ring.allocate(10, 10);
+    ring.storage = true;
+
+    ring.reset();
+    Assert.assertEquals(1, fences.deleted.size());
+    Assert.assertEquals(0, ring.size);
+    Assert.assertFalse(ring.storage);
+    Assert.assertTrue(ring.allocate(10, 10));
+    Assert.assertEquals(0, ring.vertexBase);
+  }
+
+}
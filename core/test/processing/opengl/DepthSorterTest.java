@@ -0,0 +1,163 @@
+package processing.opengl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import processing.core.PConstants;
+import processing.core.PShape;
+import processing.opengl.PGraphicsOpenGL.DepthSorter;
+import processing.opengl.PGraphicsOpenGL.IndexCache;
+import processing.opengl.PGraphicsOpenGL.TessGeometry;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+public class DepthSorterTest {
+
+  // Enough triangles to span several index caches
+  // and to calculate the sort keys in parallel.
+  private static final int TRIANGLE_COUNT = 40000;
+
+
+  private static TessGeometry createTriangleSoup(PGraphicsOpenGL pg) {
+    Random random = new Random(1234);
+    PShape shape = pg.createShape();
+    shape.beginShape(PConstants.TRIANGLES);
+    shape.noStroke();
+    shape.fill(255, 100);
+    for (int i = 0; i < TRIANGLE_COUNT; i++) {
+      float x = random.nextFloat() * 2 - 1;
+      float y = random.nextFloat() * 2 - 1;
+      float z = random.nextFloat() * 2 - 1;
+      for (int v = 0; v < 3; v++) {
+        shape.vertex(x + random.nextFloat() * 0.1f,
+                     y + random.nextFloat() * 0.1f,
+                     z + random.nextFloat() * 0.1f);
+      }
+    }
+    shape.endShape();
+
+    PShapeOpenGL glShape = (PShapeOpenGL) shape;
+    glShape.updateTessellation();
+    TessGeometry tessGeo = glShape.tessGeo;
+
+    // All the triangles are drawn without textures
+    IndexCache cache = tessGeo.polyIndexCache;
+    pg.texCache.clear();
+    pg.texCache.addTexture(null, 0, 0, tessGeo.polyIndexCount - 1, cache.size - 1);
+    return tessGeo;
+  }
+
+
+  // Absolute vertex indices of the triangles, sorted so that
+  // two orderings of the same triangles can be compared.
+  private static long[] triangleSet(TessGeometry tessGeo, int[] voffsetMap) {
+    int triangleCount = tessGeo.polyIndexCount / 3;
+    long[] set = new long[triangleCount];
+    for (int ti = 0; ti < triangleCount; ti++) {
+      int voffset = tessGeo.polyIndexCache.vertexOffset[voffsetMap[ti]];
+      long i0 = voffset + tessGeo.polyIndices[3 * ti + 0];
+      long i1 = voffset + tessGeo.polyIndices[3 * ti + 1];
+      long i2 = voffset + tessGeo.polyIndices[3 * ti + 2];
+      set[ti] = (i0 << 40) | (i1 << 20) | i2;
+    }
+    Arrays.sort(set);
+    return set;
+  }
+
+
+  private static float centroidDepth(TessGeometry tessGeo, int[] voffsetMap, int ti) {
+    int voffset = tessGeo.polyIndexCache.vertexOffset[voffsetMap[ti]];
+    float z = 0;
+    for (int v = 0; v < 3; v++) {
+      int i = voffset + tessGeo.polyIndices[3 * ti + v];
+      z += tessGeo.polyVertices[4 * i + 2];
+    }
+    return z;
+  }
+
+
+  private static DepthSorter sort(boolean refine) {
+    PGraphicsOpenGL pg = new PGraphics3D();
+    pg.setPrimary(true);
+    TessGeometry tessGeo = createTriangleSoup(pg);
+
+    DepthSorter sorter = new DepthSorter(pg);
+    sorter.fast = true;
+    sorter.refine = refine;
+
+    int[] identityMap = new int[TRIANGLE_COUNT];
+    IndexCache cache = tessGeo.polyIndexCache;
+    for (int n = 0; n < cache.size; n++) {
+      int first = cache.indexOffset[n] / 3;
+      int last = (cache.indexOffset[n] + cache.indexCount[n]) / 3;
+      Arrays.fill(identityMap, first, last, n);
+    }
+    long[] before = triangleSet(tessGeo, identityMap);
+
+    sorter.sort(tessGeo);
+
+    Assert.assertArrayEquals(before, triangleSet(tessGeo, sorter.voffsetMap));
+    sorter.tessGeo = tessGeo;
+    return sorter;
+  }
+
+
+  @Test
+  public void testSortByCentroid() {
+    DepthSorter sorter = sort(false);
+
+    // With the identity projection, the screen depth is -z, so the
+    // triangles with the largest z should be drawn first.
+    TessGeometry tessGeo = sorter.tessGeo;
+    for (int ti = 1; ti < TRIANGLE_COUNT; ti++) {
+      float z0 = centroidDepth(tessGeo, sorter.voffsetMap, ti - 1);
+      float z1 = centroidDepth(tessGeo, sorter.voffsetMap, ti);
+      Assert.assertTrue(z1 <= z0 + 1e-5f);
+    }
+  }
+
+
+  @Test
+  public void testSortByCentroidWithRefinement() {
+    // Swapping overlapping neighbors should keep the same set of triangles
+    sort(true);
+  }
+
+
+  @Test
+  public void testSortHints() {
+    PGraphicsOpenGL pg = new PGraphics3D();
+    pg.setPrimary(true);
+
+    pg.hint(PConstants.ENABLE_FAST_DEPTH_SORT);
+    Assert.assertTrue(pg.isDepthSortingEnabled);
+    Assert.assertTrue(pg.sorter.fast);
+    Assert.assertTrue(pg.sorter.refine);
+
+    pg.hint(PConstants.DISABLE_DEPTH_SORT_REFINE);
+    Assert.assertFalse(pg.sorter.refine);
+
+    // The regular sorting replaces the fast one
+    pg.hint(PConstants.ENABLE_DEPTH_SORT);
+    Assert.assertTrue(pg.isDepthSortingEnabled);
+    Assert.assertFalse(pg.sorter.fast);
+
+    pg.hint(PConstants.ENABLE_FAST_DEPTH_SORT);
+    Assert.assertTrue(pg.sorter.fast);
+    Assert.assertFalse(pg.sorter.refine);
+    pg.hint(PConstants.ENABLE_DEPTH_SORT);
+    Assert.assertFalse(pg.sorter.fast);
+
+    // Turning sorting off also turns off the fast sorting
+    pg.hint(PConstants.ENABLE_FAST_DEPTH_SORT);
+    pg.hint(PConstants.DISABLE_DEPTH_SORT);
+    Assert.assertFalse(pg.isDepthSortingEnabled);
+    pg.hint(PConstants.ENABLE_DEPTH_SORT);
+    Assert.assertTrue(pg.isDepthSortingEnabled);
+    Assert.assertFalse(pg.sorter.fast);
+
+    pg.hint(PConstants.ENABLE_DEPTH_SORT_REFINE);
+    Assert.assertTrue(pg.sorter.refine);
+  }
+}
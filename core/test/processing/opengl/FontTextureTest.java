@@ -0,0 +1,110 @@
+package processing.opengl;
+
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import processing.core.PFont;
+import processing.core.PImage;
+
+
+public class FontTextureTest {
+
+  // Renderer that records when it's flushed, instead of drawing
+  private static class Renderer extends PGraphics3D {
+    final List<String> flushes = new ArrayList<>();
+    FontTexture atlas;
+    PFont.Glyph glyph;
+    FontTexture.TextureInfo info;
+
+    @Override
+    public void flush() {
+      flushes.add("flush");
+    }
+
+    @Override
+    protected void flushWhileOtherDraws(PGraphicsOpenGL current) {
+      // The glyphs drawn so far have to still be where their UVs point
+      flushes.add(atlas.texinfoMap.get(glyph) == info ? "valid" : "evicted");
+    }
+  }
+
+
+  // Atlas whose pages are full size from the start and don't need GL
+  private static class Atlas extends FontTexture {
+    Atlas(PGraphicsOpenGL pg) {
+      super(pg, false);
+    }
+
+    @Override
+    public boolean addTexture(PGraphicsOpenGL pg) {
+      Texture tex = new Texture(pg) {
+        @Override
+        public void setNative(int[] pixels, int x, int y, int w, int h) { }
+      };
+      tex.width = tex.glWidth = maxSize;
+      tex.height = tex.glHeight = maxSize;
+      if (textures == null) {
+        lastTex = 0;
+        textures = new Texture[] { tex };
+        images = new PImage[] { new PImage(1, 1) };
+        packers = new GlyphPacker[] { new GlyphPacker(maxSize, maxSize) };
+        pageUse = new int[1];
+      } else {
+        lastTex = textures.length;
+        textures = Arrays.copyOf(textures, lastTex + 1);
+        textures[lastTex] = tex;
+        images = Arrays.copyOf(images, lastTex + 1);
+        images[lastTex] = new PImage(1, 1);
+        packers = Arrays.copyOf(packers, lastTex + 1);
+        packers[lastTex] = new GlyphPacker(maxSize, maxSize);
+        pageUse = Arrays.copyOf(pageUse, lastTex + 1);
+      }
+      return false;
+    }
+  }
+
+
+  @Test
+  public void testEvictionFlushesOtherRenderers() {
+    int maxTextureSize = PGraphicsOpenGL.maxTextureSize;
+    PGraphicsOpenGL.maxTextureSize = 64;
+    try {
+      PFont font = new PFont(new Font("SansSerif", Font.PLAIN, 24), true);
+      Renderer primary = new Renderer();
+      Renderer offscreen = new Renderer();
+      Atlas atlas = new Atlas(primary);
+      atlas.maxPages = 2;
+      primary.atlas = offscreen.atlas = atlas;
+
+      // The primary surface draws some text, which isn't flushed yet
+      atlas.begin(primary);
+      primary.glyph = font.getGlyph('W');
+      primary.info = atlas.addToTexture(primary, primary.glyph);
+      Assert.assertNotNull(primary.info);
+
+      // Then an offscreen surface fills the atlas until that glyph is evicted
+      atlas.begin(offscreen);
+      String text = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVXYZ";
+      for (int i = 0; i < text.length(); i++) {
+        atlas.addToTexture(offscreen, font.getGlyph(text.charAt(i)));
+        if (!atlas.texinfoMap.containsKey(primary.glyph)) break;
+      }
+      Assert.assertFalse(atlas.texinfoMap.containsKey(primary.glyph));
+
+      // The primary drew its glyph before any page was cleared, as the
+      // offscreen surface did with its own text
+      Assert.assertFalse(primary.flushes.isEmpty());
+      for (String flush : primary.flushes) {
+        Assert.assertEquals("valid", flush);
+      }
+      Assert.assertEquals(primary.flushes.size(), offscreen.flushes.size());
+    } finally {
+      PGraphicsOpenGL.maxTextureSize = maxTextureSize;
+    }
+  }
+}
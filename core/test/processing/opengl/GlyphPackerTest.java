@@ -0,0 +1,71 @@
+package processing.opengl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+public class GlyphPackerTest {
+
+  @Test
+  public void testExactFit() {
+    GlyphPacker packer = new GlyphPacker(64, 64);
+    for (int i = 0; i < 16; i++) {
+      Assert.assertTrue(packer.pack(16, 16));
+    }
+    Assert.assertFalse(packer.pack(1, 1));
+    Assert.assertEquals(64, packer.usedHeight());
+  }
+
+
+  @Test
+  public void testNoOverlaps() {
+    Random random = new Random(42);
+    GlyphPacker packer = new GlyphPacker(256, 256);
+    List<int[]> rects = new ArrayList<>();
+    while (true) {
+      int w = 3 + random.nextInt(20);
+      int h = 3 + random.nextInt(30);
+      if (!packer.pack(w, h)) break;
+      rects.add(new int[] { packer.packedX, packer.packedY, w, h });
+    }
+
+    int area = 0;
+    for (int i = 0; i < rects.size(); i++) {
+      int[] a = rects.get(i);
+      Assert.assertTrue(0 <= a[0] && a[0] + a[2] <= 256);
+      Assert.assertTrue(0 <= a[1] && a[1] + a[3] <= 256);
+      area += a[2] * a[3];
+      for (int j = i + 1; j < rects.size(); j++) {
+        int[] b = rects.get(j);
+        boolean overlap = a[0] < b[0] + b[2] && b[0] < a[0] + a[2] &&
+                          a[1] < b[1] + b[3] && b[1] < a[1] + a[3];
+        Assert.assertFalse(overlap);
+      }
+    }
+
+    // Glyphs of mixed heights should still fill most of the texture
+    Assert.assertTrue(area > 0.75f * 256 * 256);
+  }
+
+
+  @Test
+  public void testGrowAndClear() {
+    GlyphPacker packer = new GlyphPacker(32, 32);
+    Assert.assertTrue(packer.pack(32, 32));
+    Assert.assertFalse(packer.pack(32, 16));
+
+    packer.grow(64);
+    Assert.assertTrue(packer.pack(32, 16));
+    Assert.assertEquals(32, packer.packedY);
+
+    packer.clear();
+    Assert.assertEquals(0, packer.usedHeight());
+    Assert.assertTrue(packer.pack(32, 64));
+    Assert.assertEquals(0, packer.packedY);
+  }
+
+}
@@ -0,0 +1,95 @@
+package processing.opengl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import processing.core.PConstants;
+import processing.core.PImage;
+import processing.core.PMatrix3D;
+
+
+public class InstanceBatchTest {
+
+  private static PShapeOpenGL createShape(PGraphicsOpenGL pg) {
+    PShapeOpenGL shape = (PShapeOpenGL) pg.createShape();
+    shape.beginShape(PConstants.TRIANGLES);
+    shape.vertex(0, 0);
+    shape.vertex(1, 0);
+    shape.vertex(0, 1);
+    shape.endShape();
+    return shape;
+  }
+
+
+  @Test
+  public void testMatrixLayout() {
+    PGraphicsOpenGL pg = new PGraphics3D();
+    PShapeOpenGL shape = createShape(pg);
+
+    PMatrix3D matrix = new PMatrix3D();
+    matrix.translate(10, 20, 30);
+    matrix.scale(2);
+
+    InstanceBatch batch = new InstanceBatch();
+    batch.add(shape, null, matrix, 0xFF8000FF);
+    Assert.assertEquals(1, batch.count);
+
+    // Columns of the matrix, as read by a mat4 attribute
+    float[] data = batch.instances;
+    Assert.assertEquals(2, data[0], 0);
+    Assert.assertEquals(2, data[5], 0);
+    Assert.assertEquals(2, data[10], 0);
+    Assert.assertEquals(10, data[12], 0);
+    Assert.assertEquals(20, data[13], 0);
+    Assert.assertEquals(30, data[14], 0);
+    Assert.assertEquals(1, data[15], 0);
+
+    // The tint is stored as normalized RGBA
+    Assert.assertEquals(0x80 / 255f, data[16], 1e-6f);
+    Assert.assertEquals(0, data[17], 0);
+    Assert.assertEquals(1, data[18], 0);
+    Assert.assertEquals(1, data[19], 0);
+  }
+
+
+  @Test
+  public void testAccepts() {
+    PGraphicsOpenGL pg = new PGraphics3D();
+    PShapeOpenGL shape0 = createShape(pg);
+    PShapeOpenGL shape1 = createShape(pg);
+    PImage texture = new PImage(4, 4);
+
+    InstanceBatch batch = new InstanceBatch();
+    Assert.assertTrue(batch.isEmpty());
+    Assert.assertTrue(batch.accepts(shape0, null));
+
+    batch.add(shape0, null, new PMatrix3D(), 0xFFFFFFFF);
+    Assert.assertTrue(batch.accepts(shape0, null));
+    Assert.assertFalse(batch.accepts(shape1, null));
+    Assert.assertFalse(batch.accepts(shape0, texture));
+
+    batch.clear();
+    Assert.assertTrue(batch.isEmpty());
+    Assert.assertTrue(batch.accepts(shape1, texture));
+  }
+
+
+  @Test
+  public void testGrowth() {
+    PGraphicsOpenGL pg = new PGraphics3D();
+    PShapeOpenGL shape = createShape(pg);
+
+    InstanceBatch batch = new InstanceBatch();
+    PMatrix3D matrix = new PMatrix3D();
+    int count = 10 * InstanceBatch.INIT_INSTANCE_COUNT + 1;
+    for (int i = 0; i < count; i++) {
+      matrix.reset();
+      matrix.translate(i, 0);
+      batch.add(shape, null, matrix, 0xFFFFFFFF);
+    }
+    Assert.assertEquals(count, batch.count);
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals(i, batch.instances[InstanceBatch.INSTANCE_SIZE * i + 12], 0);
+    }
+  }
+
+}
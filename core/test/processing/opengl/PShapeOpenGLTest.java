@@ -0,0 +1,134 @@
+package processing.opengl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import processing.core.PConstants;
+import processing.core.PShape;
+
+
+public class PShapeOpenGLTest {
+
+  // Tessellation runs on the CPU, so a renderer without a surface
+  // or GL context is enough for these tests.
+  private static PGraphicsOpenGL createRenderer() {
+    PGraphicsOpenGL pg = new PGraphics3D();
+    pg.setPrimary(true);
+    return pg;
+  }
+
+
+  private static PShapeOpenGL createTriangles(PGraphicsOpenGL pg, boolean stroke) {
+    PShape shape = pg.createShape();
+    shape.beginShape(PConstants.TRIANGLES);
+    shape.fill(255);
+    if (stroke) {
+      shape.stroke(0);
+    } else {
+      shape.noStroke();
+    }
+    for (int i = 0; i < 12; i++) {
+      shape.vertex(i, i % 3, i * 0.5f);
+    }
+    shape.endShape();
+    return (PShapeOpenGL) shape;
+  }
+
+
+  @Test
+  public void testSetVertexWithoutTessellation() {
+    PGraphicsOpenGL pg = createRenderer();
+    PShape group = pg.createShape(PConstants.GROUP);
+    PShapeOpenGL child0 = createTriangles(pg, false);
+    PShapeOpenGL child1 = createTriangles(pg, false);
+    group.addChild(child0);
+    group.addChild(child1);
+    child1.translate(10, 20, 30);
+    group.rotateZ(0.5f);
+
+    PShapeOpenGL root = (PShapeOpenGL) group;
+    root.updateTessellation();
+    root.initModified();
+
+    child1.setVertex(4, 5, 6, 7);
+    child1.setNormal(9, 0, 1, 0);
+    Assert.assertTrue(root.tessellated);
+
+    root.updateTessellation();
+    Assert.assertTrue(root.tessellated);
+
+    // Only the face containing the edited vertex is modified, since its
+    // normals are calculated automatically.
+    Assert.assertEquals(child1.firstPolyVertex + 4, root.firstModifiedPolyVertex);
+    Assert.assertEquals(child1.firstPolyVertex + 4, root.lastModifiedPolyVertex);
+    Assert.assertEquals(child1.firstPolyVertex + 3, root.firstModifiedPolyNormal);
+    Assert.assertEquals(child1.firstPolyVertex + 11, root.lastModifiedPolyNormal);
+
+    float[] vertices = root.tessGeo.polyVertices.clone();
+    float[] normals = root.tessGeo.polyNormals.clone();
+
+    // Results should be the same as those from a full tessellation.
+    root.markForTessellation();
+    root.updateTessellation();
+    Assert.assertArrayEquals(root.tessGeo.polyVertices, vertices, 1e-4f);
+    Assert.assertArrayEquals(root.tessGeo.polyNormals, normals, 1e-4f);
+  }
+
+
+  @Test
+  public void testSetFillWithoutTessellation() {
+    PGraphicsOpenGL pg = createRenderer();
+    PShapeOpenGL shape = createTriangles(pg, false);
+    shape.updateTessellation();
+    shape.initModified();
+
+    shape.setFill(7, 0xFFFF0000);
+    Assert.assertTrue(shape.tessellated);
+    Assert.assertEquals(7, shape.firstModifiedPolyColor);
+    Assert.assertEquals(7, shape.lastModifiedPolyColor);
+    Assert.assertEquals(PGL.javaToNativeARGB(0xFFFF0000),
+                        shape.tessGeo.polyColors[7]);
+  }
+
+
+  @Test
+  public void testSetVertexWithStroke() {
+    PGraphicsOpenGL pg = createRenderer();
+    PShapeOpenGL shape = createTriangles(pg, true);
+    shape.updateTessellation();
+
+    // Stroke geometry doesn't map onto the input vertices.
+    shape.setVertex(4, 5, 6, 7);
+    Assert.assertFalse(shape.tessellated);
+  }
+
+
+  private static int countLineVertices(PGraphicsOpenGL pg, float size) {
+    PShape shape = pg.createShape();
+    shape.beginShape();
+    shape.noFill();
+    shape.stroke(0);
+    shape.vertex(0, 0);
+    shape.bezierVertex(size, 0, size, size, 0, size);
+    shape.endShape();
+    PShapeOpenGL path = (PShapeOpenGL) shape;
+    path.updateTessellation();
+    return path.tessGeo.lineVertexCount;
+  }
+
+
+  @Test
+  public void testAdaptiveCurves() {
+    PGraphicsOpenGL pg = createRenderer();
+    int small = countLineVertices(pg, 2);
+    int large = countLineVertices(pg, 2000);
+    Assert.assertEquals(small, large);
+
+    pg.hint(PConstants.ENABLE_ADAPTIVE_CURVES);
+    Assert.assertTrue(countLineVertices(pg, 2) < small);
+    Assert.assertTrue(countLineVertices(pg, 2000) > large);
+
+    pg.hint(PConstants.DISABLE_ADAPTIVE_CURVES);
+    Assert.assertEquals(small, countLineVertices(pg, 2));
+  }
+
+}
@@ -0,0 +1,261 @@
+package processing.opengl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+public class ReadbackRingTest {
+
+  // Transfers that record the operations instead of talking to a GL context.
+  // Fences are only signaled when the test says so.
+  private static class FakeTransfers implements ReadbackRing.Transfers {
+    int nextBuffer = 10;
+    long nextFence = 1;
+    Set<Long> signaled = new HashSet<>();
+    List<Long> deletedFences = new ArrayList<>();
+    List<int[]> deletedBuffers = new ArrayList<>();
+    List<Integer> readBuffers = new ArrayList<>();
+    List<Boolean> resized = new ArrayList<>();
+    List<Object> completed = new ArrayList<>();
+    List<Integer> completedBuffers = new ArrayList<>();
+
+    @Override
+    public int[] createBuffers(int count) {
+      int[] buffers = new int[count];
+      for (int i = 0; i < count; i++) {
+        buffers[i] = nextBuffer++;
+      }
+      return buffers;
+    }
+
+    @Override
+    public void deleteBuffers(int[] buffers) {
+      deletedBuffers.add(buffers);
+    }
+
+    @Override
+    public void read(int buffer, int width, int height, boolean resize) {
+      readBuffers.add(buffer);
+      resized.add(resize);
+    }
+
+    @Override
+    public long fence() {
+      return nextFence++;
+    }
+
+    @Override
+    public boolean isSignaled(long sync) {
+      return signaled.contains(sync);
+    }
+
+    @Override
+    public void deleteFence(long sync) {
+      deletedFences.add(sync);
+    }
+
+    @Override
+    public void complete(int buffer, int width, int height, Object request) {
+      completedBuffers.add(buffer);
+      completed.add(request);
+    }
+
+    void signalAll() {
+      for (long sync = 1; sync < nextFence; sync++) {
+        signaled.add(sync);
+      }
+    }
+  }
+
+
+  @Test
+  public void testReadsWithoutStalling() {
+    FakeTransfers transfers = new FakeTransfers();
+    ReadbackRing ring = new ReadbackRing(transfers, 3);
+
+    ring.read("a", 4, 4);
+    ring.read("b", 4, 4);
+    ring.read("c", 4, 4);
+    Assert.assertEquals(3, ring.size());
+    Assert.assertTrue(transfers.completed.isEmpty());
+    Assert.assertEquals(List.of(10, 11, 12), transfers.readBuffers);
+    // Buffers are sized on their first use only
+    Assert.assertEquals(List.of(true, true, true), transfers.resized);
+    Assert.assertEquals(0, ring.stallCount);
+  }
+
+
+  @Test
+  public void testFullRingCompletesOldest() {
+    FakeTransfers transfers = new FakeTransfers();
+    ReadbackRing ring = new ReadbackRing(transfers, 2);
+
+    ring.read("a", 4, 4);
+    ring.read("b", 4, 4);
+    ring.read("c", 4, 4);
+    Assert.assertEquals(List.of("a"), transfers.completed);
+    Assert.assertEquals(List.of(1L), transfers.deletedFences);
+    Assert.assertEquals(1, ring.stallCount);
+
+    // The freed buffer is reused, same size so no reallocation
+    Assert.assertEquals(List.of(10, 11, 10), transfers.readBuffers);
+    Assert.assertEquals(List.of(true, true, false), transfers.resized);
+    Assert.assertEquals(2, ring.size());
+
+    ring.read("d", 8, 8);
+    Assert.assertEquals(Boolean.TRUE, transfers.resized.get(3));
+  }
+
+
+  @Test
+  public void testSignaledReadCompletedEarly() {
+    FakeTransfers transfers = new FakeTransfers();
+    ReadbackRing ring = new ReadbackRing(transfers, 3);
+
+    ring.read("a", 4, 4);
+    transfers.signaled.add(1L);
+    ring.read("b", 4, 4);
+    Assert.assertEquals(List.of("a"), transfers.completed);
+    Assert.assertEquals(0, ring.stallCount);
+    Assert.assertEquals(1, ring.size());
+  }
+
+
+  @Test
+  public void testCompleteFinishedInOrder() {
+    FakeTransfers transfers = new FakeTransfers();
+    ReadbackRing ring = new ReadbackRing(transfers, 4);
+
+    ring.read("a", 4, 4);
+    ring.read("b", 4, 4);
+    ring.read("c", 4, 4);
+    // Only the later reads are done, the oldest still holds them back
+    transfers.signaled.add(2L);
+    transfers.signaled.add(3L);
+    Assert.assertEquals(0, ring.completeFinished(3));
+
+    transfers.signaled.add(1L);
+    Assert.assertEquals(2, ring.completeFinished(2));
+    Assert.assertEquals(List.of("a", "b"), transfers.completed);
+    Assert.assertEquals(1, ring.completeFinished(5));
+    Assert.assertEquals(List.of("a", "b", "c"), transfers.completed);
+    Assert.assertEquals(0, ring.size());
+    Assert.assertEquals(0, ring.stallCount);
+  }
+
+
+  @Test
+  public void testAwaitCompletesThroughLastMatch() {
+    FakeTransfers transfers = new FakeTransfers();
+    ReadbackRing ring = new ReadbackRing(transfers, 4);
+
+    ring.read("a", 4, 4);
+    ring.read("b", 4, 4);
+    ring.read("a", 4, 4);
+    ring.read("c", 4, 4);
+
+    Assert.assertFalse(ring.await("d"));
+    Assert.assertTrue(transfers.completed.isEmpty());
+
+    Assert.assertTrue(ring.await("a"));
+    Assert.assertEquals(List.of("a", "b", "a"), transfers.completed);
+    Assert.assertEquals(1, ring.size());
+  }
+
+
+  @Test
+  public void testOldestRequest() {
+    FakeTransfers transfers = new FakeTransfers();
+    ReadbackRing ring = new ReadbackRing(transfers, 3);
+    Assert.assertNull(ring.oldestRequest());
+
+    ring.read("a", 4, 4);
+    ring.read("b", 4, 4);
+    Assert.assertEquals("a", ring.oldestRequest());
+    ring.complete(1);
+    Assert.assertEquals("b", ring.oldestRequest());
+    ring.complete(1);
+    Assert.assertNull(ring.oldestRequest());
+  }
+
+
+  @Test
+  public void testAwaitOldest() {
+    FakeTransfers transfers = new FakeTransfers();
+    ReadbackRing ring = new ReadbackRing(transfers, 3);
+
+    ring.read("a", 4, 4);
+    ring.read("b", 4, 4);
+    Assert.assertTrue(ring.await("a"));
+    Assert.assertEquals(List.of("a"), transfers.completed);
+  }
+
+
+  @Test
+  public void testWrapAround() {
+    FakeTransfers transfers = new FakeTransfers();
+    ReadbackRing ring = new ReadbackRing(transfers, 3);
+
+    for (int i = 0; i < 10; i++) {
+      ring.read(i, 4, 4);
+      transfers.signalAll();
+    }
+    ring.completeAll();
+    List<Object> expected = new ArrayList<>();
+    for (int i = 0; i < 10; i++) expected.add(i);
+    Assert.assertEquals(expected, transfers.completed);
+    Assert.assertEquals(0, ring.stallCount);
+    Assert.assertEquals(10, transfers.deletedFences.size());
+  }
+
+
+  @Test
+  public void testSetDepthCompletesAndRecreates() {
+    FakeTransfers transfers = new FakeTransfers();
+    ReadbackRing ring = new ReadbackRing(transfers, 2);
+
+    ring.read("a", 4, 4);
+    ring.read("b", 4, 4);
+    ring.setDepth(4);
+    Assert.assertEquals(List.of("a", "b"), transfers.completed);
+    Assert.assertEquals(1, transfers.deletedBuffers.size());
+    Assert.assertArrayEquals(new int[] { 10, 11 }, transfers.deletedBuffers.get(0));
+    Assert.assertEquals(4, ring.getDepth());
+
+    for (int i = 0; i < 4; i++) ring.read(i, 4, 4);
+    Assert.assertEquals(List.of(12, 13, 14, 15),
+                        transfers.readBuffers.subList(2, 6));
+    Assert.assertEquals(4, ring.size());
+  }
+
+
+  @Test
+  public void testDisposeDropsReads() {
+    FakeTransfers transfers = new FakeTransfers();
+    ReadbackRing ring = new ReadbackRing(transfers, 3);
+
+    ring.read("a", 4, 4);
+    ring.read("b", 4, 4);
+    ring.dispose();
+    Assert.assertTrue(transfers.completed.isEmpty());
+    Assert.assertEquals(List.of(1L, 2L), transfers.deletedFences);
+    Assert.assertEquals(1, transfers.deletedBuffers.size());
+    Assert.assertEquals(0, ring.size());
+
+    // Usable again after disposal
+    ring.read("c", 4, 4);
+    Assert.assertEquals(1, ring.size());
+  }
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidDepth() {
+    new ReadbackRing(new FakeTransfers(), 0);
+  }
+
+}
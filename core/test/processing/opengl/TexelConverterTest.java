@@ -0,0 +1,185 @@
+package processing.opengl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+import processing.core.PConstants;
+
+
+public class TexelConverterTest {
+
+  // The per texel conversions that Texture used before the kernels
+  private static int referenceToRGBA(int pixel, int format, boolean bigEndian) {
+    if (bigEndian) {
+      switch (format) {
+      case PConstants.ALPHA: return 0xFFFFFF00 | pixel;
+      case PConstants.RGB: return (pixel << 8) | 0xFF;
+      default: return (pixel << 8) | ((pixel >> 24) & 0xFF);
+      }
+    } else {
+      switch (format) {
+      case PConstants.ALPHA: return (pixel << 24) | 0x00FFFFFF;
+      case PConstants.RGB:
+        return 0xFF000000 | ((pixel & 0xFF) << 16) |
+               ((pixel & 0xFF0000) >> 16) | (pixel & 0x0000FF00);
+      default:
+        return ((pixel & 0xFF) << 16) | ((pixel & 0xFF0000) >> 16) |
+               (pixel & 0xFF00FF00);
+      }
+    }
+  }
+
+
+  private static int referenceToARGB(int pixel, boolean bigEndian) {
+    if (bigEndian) {
+      return (pixel >>> 8) | ((pixel << 24) & 0xFF000000);
+    } else {
+      return ((pixel & 0xFF) << 16) | ((pixel & 0xFF0000) >> 16) |
+             (pixel & 0xFF00FF00);
+    }
+  }
+
+
+  private static int[] createPixels(int count, int format) {
+    Random random = new Random(count);
+    int[] pixels = new int[count];
+    for (int i = 0; i < count; i++) {
+      pixels[i] = (format == PConstants.ALPHA) ?
+        random.nextInt(256) : random.nextInt();
+    }
+    return pixels;
+  }
+
+
+  // Where the texel at x, y ends up after the flips
+  private static int flipped(int x, int y, int width, int height,
+                             boolean flipX, boolean flipY) {
+    int fx = flipX ? width - 1 - x : x;
+    int fy = flipY ? height - 1 - y : y;
+    return fy * width + fx;
+  }
+
+
+  @Test
+  public void testToRGBA() {
+    for (boolean bigEndian : new boolean[] { false, true }) {
+      for (int format : new int[] { PConstants.ALPHA, PConstants.RGB, PConstants.ARGB }) {
+        int[] pixels = createPixels(7 * 5, format);
+        int[] rgba = new int[pixels.length];
+        TexelConverter.toRGBA(format, bigEndian).convert(pixels, rgba, 7, 5,
+                                                         false, false);
+        for (int i = 0; i < pixels.length; i++) {
+          Assert.assertEquals(referenceToRGBA(pixels[i], format, bigEndian), rgba[i]);
+        }
+      }
+    }
+  }
+
+
+  @Test
+  public void testToARGB() {
+    for (boolean bigEndian : new boolean[] { false, true }) {
+      int[] pixels = createPixels(9 * 4, PConstants.ARGB);
+      int[] argb = pixels.clone();
+      TexelConverter.toARGB(bigEndian).convert(argb, argb, 9, 4, false, false);
+      for (int i = 0; i < pixels.length; i++) {
+        Assert.assertEquals(referenceToARGB(pixels[i], bigEndian), argb[i]);
+      }
+    }
+  }
+
+
+  @Test
+  public void testRoundTrip() {
+    for (boolean bigEndian : new boolean[] { false, true }) {
+      int[] pixels = createPixels(16, PConstants.ARGB);
+      int[] rgba = new int[16];
+      TexelConverter.toRGBA(PConstants.ARGB, bigEndian).convert(pixels, rgba, 4, 4,
+                                                                true, true);
+      TexelConverter.toARGB(bigEndian).convert(rgba, rgba, 4, 4, true, true);
+      Assert.assertArrayEquals(pixels, rgba);
+    }
+  }
+
+
+  @Test
+  public void testFlips() {
+    // Odd and even sizes, to cover the middle row and column
+    int[][] sizes = { { 5, 3 }, { 4, 6 }, { 1, 7 }, { 7, 1 } };
+    for (int[] size : sizes) {
+      int width = size[0];
+      int height = size[1];
+      int[] pixels = createPixels(width * height, PConstants.ARGB);
+      for (int flips = 0; flips < 4; flips++) {
+        boolean flipX = (flips & 1) != 0;
+        boolean flipY = (flips & 2) != 0;
+
+        int[] copy = new int[pixels.length];
+        int[] inPlace = pixels.clone();
+        TexelConverter.COPY.convert(pixels, copy, width, height, flipX, flipY);
+        TexelConverter.COPY.convert(inPlace, inPlace, width, height, flipX, flipY);
+        for (int y = 0; y < height; y++) {
+          for (int x = 0; x < width; x++) {
+            int i = flipped(x, y, width, height, flipX, flipY);
+            Assert.assertEquals(pixels[y * width + x], copy[i]);
+            Assert.assertEquals(pixels[y * width + x], inPlace[i]);
+          }
+        }
+      }
+    }
+  }
+
+
+  @Test
+  public void testParallel() {
+    // Large enough to be split into bands of rows
+    int width = 1031;
+    int height = 517;
+    int[] pixels = createPixels(width * height, PConstants.ARGB);
+    for (int flips = 0; flips < 4; flips++) {
+      boolean flipX = (flips & 1) != 0;
+      boolean flipY = (flips & 2) != 0;
+      int[] rgba = new int[pixels.length];
+      TexelConverter.toRGBA(PConstants.ARGB, false).convert(pixels, rgba,
+                                                            width, height,
+                                                            flipX, flipY);
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          int pixel = pixels[y * width + x];
+          int i = flipped(x, y, width, height, flipX, flipY);
+          Assert.assertEquals(referenceToRGBA(pixel, PConstants.ARGB, false), rgba[i]);
+        }
+      }
+    }
+  }
+
+
+  @Test(expected = ArrayIndexOutOfBoundsException.class)
+  public void testShortArray() {
+    TexelConverter.COPY.convert(new int[10], new int[12], 4, 3, false, false);
+  }
+
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testDeprecatedTextureFlips() {
+    Texture texture = new Texture(new PGraphics3D());
+    texture.width = 3;
+    texture.height = 2;
+
+    // two ints per texel, which stay in order
+    int[] array = { 0, 1, 2, 3, 4, 5, 10, 11, 12, 13, 14, 15 };
+    texture.flipArrayOnX(array, 2);
+    Assert.assertArrayEquals(new int[] { 4, 5, 2, 3, 0, 1,
+                                         14, 15, 12, 13, 10, 11 }, array);
+    texture.flipArrayOnY(array, 2);
+    Assert.assertArrayEquals(new int[] { 14, 15, 12, 13, 10, 11,
+                                         4, 5, 2, 3, 0, 1 }, array);
+
+    int[] texels = { 1, 2, 3, 4, 5, 6 };
+    texture.flipArrayOnX(texels, 1);
+    Assert.assertArrayEquals(new int[] { 3, 2, 1, 6, 5, 4 }, texels);
+  }
+}